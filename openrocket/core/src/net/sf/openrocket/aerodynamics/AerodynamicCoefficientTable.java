@@ -0,0 +1,638 @@
+package net.sf.openrocket.aerodynamics;
+
+import static net.sf.openrocket.util.MathUtil.pow2;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import net.sf.openrocket.aerodynamics.barrowman.FinSetCalc;
+import net.sf.openrocket.rocketcomponent.ExternalComponent;
+import net.sf.openrocket.rocketcomponent.ExternalComponent.Finish;
+import net.sf.openrocket.rocketcomponent.FinSet;
+import net.sf.openrocket.rocketcomponent.FlightConfiguration;
+import net.sf.openrocket.rocketcomponent.FlightConfigurationId;
+import net.sf.openrocket.rocketcomponent.Rocket;
+import net.sf.openrocket.rocketcomponent.RocketComponent;
+import net.sf.openrocket.rocketcomponent.SymmetricComponent;
+import net.sf.openrocket.util.Coordinate;
+import net.sf.openrocket.util.MathUtil;
+import net.sf.openrocket.util.PolyInterpolator;
+
+/**
+ * The aerodynamic coefficients of one flight configuration, tabulated for the TabulatedBarrowmanCalculator.
+ * <p>
+ * The non-axial forces without roll are tabulated over the Mach number, the angle of attack and the direction
+ * of the lateral airflow theta.  The theta axis is left out when the forces do not depend on it, as for three or
+ * more evenly spaced fins.  The roll damping depends only on the Mach number and on the roll rate relative to the
+ * velocity, and the pressure and base drag only on the Mach number, so they have tables of their own.  The tables
+ * are interpolated linearly.  A Mach number row of the non-axial and roll damping tables is computed through the
+ * public interface of a BarrowmanCalculator the first time a flight needs it.
+ * <p>
+ * The friction drag depends on the Reynolds number and the pitch and yaw damping on the pitch center, so they are
+ * computed from sums over the components that are precomputed here, with the formulas of BarrowmanCalculator.
+ * <p>
+ * The computed rows are never changed, so a table may be shared by the calculators of several threads.
+ */
+class AerodynamicCoefficientTable {
+
+	/** Mach number step of the tables, with nodes at the kinks of the coefficients at Mach 0.05, 0.9 and 1.1 */
+	static final double MACH_STEP = 0.025;
+	/** Angle of attack step of the non-axial table, from 0 to 180 degrees */
+	private static final double AOA_STEP = Math.PI / 180;
+	private static final int AOA_COUNT = 181;
+	/** Nodes of the theta axis, if the forces depend on theta */
+	private static final int THETA_COUNT = 36;
+	/** Step of the roll rate times the reference length over the velocity, and the nodes on either side of zero */
+	private static final double ROLL_STEP = 0.02;
+	private static final int ROLL_NODES = 100;
+	/** Slower roll rates are not damped by the fin calculators */
+	private static final double MIN_ROLL_RATE = 0.1;
+
+	// the values of a node of the non-axial table
+	private static final int CN = 0;
+	private static final int CM = 1;
+	private static final int CSIDE = 2;
+	private static final int CYAW = 3;
+	private static final int CNA = 4;
+	private static final int CP_X = 5;
+	private static final int CP_Y = 6;
+	private static final int CP_Z = 7;
+	private static final int CP_WEIGHT = 8;
+	private static final int CROLL_FORCE = 9;
+	private static final int VALUES = 10;
+
+	private final Rocket rocket;
+	private final FlightConfigurationId fcid;
+	private final int modID;
+	private final long stages;
+
+	/** A copy of the configuration, which computes the rows */
+	private final FlightConfiguration configuration;
+	private final BarrowmanCalculator calculator = new BarrowmanCalculator();
+	private final FlightConditions nodeConditions;
+	private final WarningSet nodeWarnings = new WarningSet();
+
+	private final double refLength;
+	private final double refArea;
+	private final int machCount;
+	private final double maxMach;
+	private final int thetaCount;
+
+	private final AtomicReferenceArray<double[]> nonAxialRows;
+	private final AtomicReferenceArray<double[]> rollDampingRows;
+	private final double[] pressureCD;
+	private final double[] baseCD;
+
+	private final WarningSet subsonicWarnings = new WarningSet();
+	private final WarningSet supersonicWarnings = new WarningSet();
+
+	// friction drag sums, by finish
+	private final boolean perfectFinish;
+	private final double length;
+	private final double[] roughnessLimit;
+	private final double[] bodyWetArea;
+	private final double[] finFrictionArea;
+	private final double bodyCorrection;
+
+	// pitch and yaw damping
+	private final double bodyDamping;
+	private final double dampingLength;
+	private final double[] finDamping;
+	private final double[] finPosition;
+
+
+	AerodynamicCoefficientTable(FlightConfiguration configuration, double maxMach) {
+		this.rocket = configuration.getRocket();
+		this.fcid = configuration.getFlightConfigurationID();
+		this.modID = configuration.getModID();
+		this.stages = getStages(configuration);
+
+		this.configuration = configuration.clone();
+		this.configuration.copyStages(configuration);
+		this.nodeConditions = new FlightConditions(this.configuration);
+		this.refLength = nodeConditions.getRefLength();
+		this.refArea = nodeConditions.getRefArea();
+
+		this.machCount = (int) Math.ceil(maxMach / MACH_STEP) + 1;
+		this.maxMach = (machCount - 1) * MACH_STEP;
+		this.thetaCount = dependsOnTheta() ? THETA_COUNT : 1;
+		this.nonAxialRows = new AtomicReferenceArray<double[]>(machCount);
+		this.rollDampingRows = new AtomicReferenceArray<double[]>(machCount);
+
+		pressureCD = new double[machCount];
+		baseCD = new double[machCount];
+		nodeConditions.setAOA(0);
+		nodeConditions.setTheta(0);
+		for (int i = 0; i < machCount; i++) {
+			nodeConditions.setMach(i * MACH_STEP);
+			AerodynamicForces forces = calculator.getAerodynamicForces(this.configuration, nodeConditions, nodeWarnings);
+			pressureCD[i] = forces.getPressureCD();
+			baseCD[i] = forces.getBaseCD();
+		}
+
+		// the warnings that do not depend on the angle of attack
+		nodeConditions.setMach(0.3);
+		calculator.getAerodynamicForces(this.configuration, nodeConditions, subsonicWarnings);
+		nodeConditions.setMach(1.2);
+		calculator.getAerodynamicForces(this.configuration, nodeConditions, supersonicWarnings);
+		subsonicWarnings.immute();
+		supersonicWarnings.immute();
+
+		// friction drag, as in BarrowmanCalculator.calculateFrictionDrag
+		perfectFinish = rocket.isPerfectFinish();
+		// the length of the configuration itself, which is cached until the rocket changes
+		length = configuration.getLength();
+		roughnessLimit = new double[Finish.values().length];
+		Arrays.fill(roughnessLimit, Double.NaN);
+		bodyWetArea = new double[roughnessLimit.length];
+		finFrictionArea = new double[roughnessLimit.length];
+		double maxR = 0, len = 0;
+		for (RocketComponent c : activeComponents()) {
+			if (!(c instanceof SymmetricComponent) && !(c instanceof FinSet))
+				continue;
+
+			Finish finish = ((ExternalComponent) c).getFinish();
+			roughnessLimit[finish.ordinal()] = 0.032 * Math.pow(finish.getRoughnessSize() / length, 0.2);
+			if (c.isCDOverridden())
+				continue;
+
+			if (c instanceof SymmetricComponent) {
+				SymmetricComponent s = (SymmetricComponent) c;
+				bodyWetArea[finish.ordinal()] += s.getComponentWetArea();
+				double r = Math.max(s.getForeRadius(), s.getAftRadius());
+				if (r > maxR)
+					maxR = r;
+				len += c.getLength();
+			} else {
+				FinSet f = (FinSet) c;
+				double mac = new FinSetCalc(f).getMACLength();
+				finFrictionArea[finish.ordinal()] += (1 + 2 * f.getThickness() / mac) * 2 * f.getFinCount() * f.getPlanformArea();
+			}
+		}
+		double fB = (len + 0.0001) / maxR;
+		bodyCorrection = (1 + 1.0 / (2 * fB));
+
+		// damping multiplier, as in BarrowmanCalculator.getDampingMultiplier
+		double area = 0, bodyLength = 0;
+		ArrayList<FinSet> fins = new ArrayList<FinSet>();
+		for (RocketComponent c : activeComponents()) {
+			if (c instanceof SymmetricComponent) {
+				SymmetricComponent s = (SymmetricComponent) c;
+				area += s.getComponentPlanformArea();
+				bodyLength += s.getLength();
+			} else if (c instanceof FinSet) {
+				fins.add((FinSet) c);
+			}
+		}
+		double diameter = (bodyLength > 0) ? area / bodyLength : 0;
+		dampingLength = bodyLength;
+		bodyDamping = 0.275 * diameter / (refArea * refLength);
+		finDamping = new double[fins.size()];
+		finPosition = new double[fins.size()];
+		for (int i = 0; i < fins.size(); i++) {
+			FinSet f = fins.get(i);
+			finDamping[i] = 0.6 * Math.min(f.getFinCount(), 4) * f.getPlanformArea();
+			finPosition[i] = f.toAbsolute(new Coordinate(new FinSetCalc(f).getMidchordPos()))[0].x;
+		}
+	}
+
+
+	/**
+	 * Return the components of the active stages of the configuration copy, in tree order.
+	 */
+	private ArrayList<RocketComponent> activeComponents() {
+		ArrayList<RocketComponent> components = new ArrayList<RocketComponent>();
+		for (RocketComponent c : rocket) {
+			if (configuration.isComponentActive(c))
+				components.add(c);
+		}
+		return components;
+	}
+
+
+	/**
+	 * Return whether the table is the one of the configuration in its current state.
+	 */
+	boolean isFor(FlightConfiguration configuration) {
+		return (rocket == configuration.getRocket()) && (modID == configuration.getModID()) &&
+				fcid.equals(configuration.getFlightConfigurationID()) && (stages == getStages(configuration));
+	}
+
+	double getMaxMach() {
+		return maxMach;
+	}
+
+	/**
+	 * Return whether the forces depend on the direction of the lateral airflow, by probing them all around.
+	 */
+	private boolean dependsOnTheta() {
+		double[] reference = new double[VALUES];
+		double[] node = new double[VALUES];
+		for (double aoa : new double[] { 5 * AOA_STEP, 40 * AOA_STEP }) {
+			evaluateNonAxial(0.3, aoa, 0, reference, 0);
+			for (int i = 1; i < THETA_COUNT; i++) {
+				evaluateNonAxial(0.3, aoa, 2 * Math.PI * i / THETA_COUNT, node, 0);
+				for (int v = 0; v < VALUES; v++) {
+					if (Math.abs(node[v] - reference[v]) > 1e-9 * (1 + Math.abs(reference[v])))
+						return true;
+				}
+			}
+		}
+		return false;
+	}
+
+
+	/**
+	 * Interpolate the aerodynamic forces, including the drag and the damping moments, as computed by
+	 * BarrowmanCalculator.getAerodynamicForces.
+	 *
+	 * @return	the forces, or <code>null</code> if the conditions are outside the table
+	 */
+	AerodynamicForces getAerodynamicForces(FlightConditions conditions, WarningSet warnings) {
+		double mach = conditions.getMach();
+		if (!(mach <= maxMach))
+			return null;
+		if ((conditions.getRefLength() != refLength) || (conditions.getRefArea() != refArea))
+			return null;
+
+		double rollRate = conditions.getRollRate();
+		double velocity = conditions.getVelocity();
+		double roll = 0;
+		if (Math.abs(rollRate) >= MIN_ROLL_RATE) {
+			roll = rollRate * refLength / velocity / ROLL_STEP;
+			if (!(Math.abs(roll) <= ROLL_NODES))
+				return null;
+		}
+
+		if (conditions.getAOA() > 17.5 * Math.PI / 180)
+			warnings.add(new Warning.LargeAOA(conditions.getAOA()));
+		warnings.addAll((mach > 1.1) ? supersonicWarnings : subsonicWarnings);
+
+		double m = mach / MACH_STEP;
+		int i = Math.min((int) m, machCount - 2);
+		double fm = m - i;
+
+		// Non-axial forces
+		double[] lower = nonAxialRow(i);
+		double[] upper = nonAxialRow(i + 1);
+
+		double a = conditions.getAOA() / AOA_STEP;
+		int j = Math.min((int) a, AOA_COUNT - 2);
+		double fa = a - j;
+
+		int k0 = 0, k1 = 0;
+		double ft = 0;
+		if (thetaCount > 1) {
+			double t = conditions.getTheta() % (2 * Math.PI);
+			if (t < 0)
+				t += 2 * Math.PI;
+			t = t * thetaCount / (2 * Math.PI);
+			k0 = Math.min((int) t, thetaCount - 1);
+			k1 = (k0 + 1) % thetaCount;
+			ft = t - k0;
+		}
+		int o00 = (j * thetaCount + k0) * VALUES;
+		int o01 = (j * thetaCount + k1) * VALUES;
+		int o10 = ((j + 1) * thetaCount + k0) * VALUES;
+		int o11 = ((j + 1) * thetaCount + k1) * VALUES;
+
+		AerodynamicForces total = new AerodynamicForces().zero();
+		total.setCN(interpolate(lower, upper, o00, o01, o10, o11, fm, fa, ft, CN));
+		total.setCm(interpolate(lower, upper, o00, o01, o10, o11, fm, fa, ft, CM));
+		total.setCside(interpolate(lower, upper, o00, o01, o10, o11, fm, fa, ft, CSIDE));
+		total.setCyaw(interpolate(lower, upper, o00, o01, o10, o11, fm, fa, ft, CYAW));
+		total.setCNa(interpolate(lower, upper, o00, o01, o10, o11, fm, fa, ft, CNA));
+		total.setCP(new Coordinate(interpolate(lower, upper, o00, o01, o10, o11, fm, fa, ft, CP_X),
+				interpolate(lower, upper, o00, o01, o10, o11, fm, fa, ft, CP_Y),
+				interpolate(lower, upper, o00, o01, o10, o11, fm, fa, ft, CP_Z),
+				interpolate(lower, upper, o00, o01, o10, o11, fm, fa, ft, CP_WEIGHT)));
+
+		double rollForce = interpolate(lower, upper, o00, o01, o10, o11, fm, fa, ft, CROLL_FORCE);
+		double rollDamping = 0;
+		if (roll != 0) {
+			double r = roll + ROLL_NODES;
+			int n = Math.min((int) r, 2 * ROLL_NODES - 1);
+			double fr = r - n;
+			double[] lowerDamping = rollDampingRow(i);
+			double[] upperDamping = rollDampingRow(i + 1);
+			double low = lowerDamping[n] + fr * (lowerDamping[n + 1] - lowerDamping[n]);
+			double high = upperDamping[n] + fr * (upperDamping[n + 1] - upperDamping[n]);
+			rollDamping = low + fm * (high - low);
+		}
+		total.setCrollForce(rollForce);
+		total.setCrollDamp(rollDamping);
+		total.setCroll(rollForce - rollDamping);
+
+		// Drag
+		double pressure = pressureCD[i] + fm * (pressureCD[i + 1] - pressureCD[i]);
+		double base = baseCD[i] + fm * (baseCD[i + 1] - baseCD[i]);
+		total.setFrictionCD(calculateFrictionDrag(conditions, mach, velocity));
+		total.setPressureCD(pressure);
+		total.setBaseCD(base);
+		total.setCD(total.getFrictionCD() + total.getPressureCD() + total.getBaseCD());
+		total.setCaxial(calculateAxialDrag(conditions, total.getCD()));
+
+		// Pitch and yaw damping moments
+		double cgx = conditions.getPitchCenter().x;
+		double mul = bodyDamping * (MathUtil.pow4(cgx) + MathUtil.pow4(dampingLength - cgx));
+		for (int f = 0; f < finDamping.length; f++) {
+			mul += finDamping[f] * MathUtil.pow3(Math.abs(finPosition[f] - cgx)) / (refArea * refLength);
+		}
+		applyDampingMoments(conditions, total, mul);
+		total.setCm(total.getCm() - total.getPitchDampingMoment());
+		total.setCyaw(total.getCyaw() - total.getYawDampingMoment());
+
+		return total;
+	}
+
+
+	private static double interpolate(double[] lower, double[] upper, int o00, int o01, int o10, int o11,
+			double fm, double fa, double ft, int value) {
+		double low = bilinear(lower, o00 + value, o01 + value, o10 + value, o11 + value, fa, ft);
+		double high = bilinear(upper, o00 + value, o01 + value, o10 + value, o11 + value, fa, ft);
+		return low + fm * (high - low);
+	}
+
+	private static double bilinear(double[] row, int i00, int i01, int i10, int i11, double fa, double ft) {
+		double low = row[i00] + ft * (row[i01] - row[i00]);
+		double high = row[i10] + ft * (row[i11] - row[i10]);
+		return low + fa * (high - low);
+	}
+
+
+	private double calculateFrictionDrag(FlightConditions conditions, double mach, double velocity) {
+		double Re = velocity * length / conditions.getAtmosphericConditions().getKinematicViscosity();
+		double Cf = calculateSkinFriction(Re, mach, perfectFinish);
+		double roughnessCorrection = calculateRoughnessCorrection(mach);
+
+		double finFriction = 0;
+		double bodyFriction = 0;
+		for (int f = 0; f < roughnessLimit.length; f++) {
+			if (Double.isNaN(roughnessLimit[f]))
+				continue;
+			double limit = roughnessLimit[f] * roughnessCorrection;
+			double componentCf;
+			if (perfectFinish) {
+				// For perfect finish require Re > 1e6
+				componentCf = ((Re > 1.0e6) && (limit > Cf)) ? limit : Cf;
+			} else {
+				componentCf = Math.max(Cf, limit);
+			}
+			finFriction += componentCf * finFrictionArea[f];
+			bodyFriction += componentCf * bodyWetArea[f];
+		}
+		return (finFriction + bodyCorrection * bodyFriction) / refArea;
+	}
+
+
+	/**
+	 * Skin friction coefficient of a surface, not limited by its roughness, as in
+	 * BarrowmanCalculator.calculateFrictionDrag.
+	 */
+	private static double calculateSkinFriction(double Re, double mach, boolean perfectFinish) {
+		double c1 = 1.0, c2 = 1.0;
+		double Cf;
+
+		if (perfectFinish) {
+
+			// Assume partial laminar layer.  Roughness-limitation is checked later.
+			if (Re < 1e4) {
+				// Too low, constant
+				Cf = 1.33e-2;
+			} else if (Re < 5.39e5) {
+				// Fully laminar
+				Cf = 1.328 / MathUtil.safeSqrt(Re);
+			} else {
+				// Transitional
+				Cf = 1.0 / pow2(1.50 * Math.log(Re) - 5.6) - 1700 / Re;
+			}
+
+			// Compressibility correction
+
+			if (mach < 1.1) {
+				// Below Re=1e6 no correction
+				if (Re > 1e6) {
+					if (Re < 3e6) {
+						c1 = 1 - 0.1 * pow2(mach) * (Re - 1e6) / 2e6; // transition to turbulent
+					} else {
+						c1 = 1 - 0.1 * pow2(mach);
+					}
+				}
+			}
+			if (mach > 0.9) {
+				if (Re > 1e6) {
+					if (Re < 3e6) {
+						c2 = 1 + (1.0 / Math.pow(1 + 0.045 * pow2(mach), 0.25) - 1) * (Re - 1e6) / 2e6;
+					} else {
+						c2 = 1.0 / Math.pow(1 + 0.045 * pow2(mach), 0.25);
+					}
+				}
+			}
+
+			// Applying continuously around Mach 1
+			if (mach < 0.9) {
+				Cf *= c1;
+			} else if (mach < 1.1) {
+				Cf *= (c2 * (mach - 0.9) / 0.2 + c1 * (1.1 - mach) / 0.2);
+			} else {
+				Cf *= c2;
+			}
+
+		} else {
+
+			// Assume fully turbulent.  Roughness-limitation is checked later.
+			if (Re < 1e4) {
+				// Too low, constant
+				Cf = 1.48e-2;
+			} else {
+				// Turbulent
+				Cf = 1.0 / pow2(1.50 * Math.log(Re) - 5.6);
+			}
+
+			// Compressibility correction
+
+			if (mach < 1.1) {
+				c1 = 1 - 0.1 * pow2(mach);
+			}
+			if (mach > 0.9) {
+				c2 = 1 / Math.pow(1 + 0.15 * pow2(mach), 0.58);
+			}
+			// Applying continuously around Mach 1
+			if (mach < 0.9) {
+				Cf *= c1;
+			} else if (mach < 1.1) {
+				Cf *= c2 * (mach - 0.9) / 0.2 + c1 * (1.1 - mach) / 0.2;
+			} else {
+				Cf *= c2;
+			}
+
+		}
+
+		return Cf;
+	}
+
+
+	/**
+	 * Mach correction of the roughness-limited skin friction coefficient, as in
+	 * BarrowmanCalculator.calculateFrictionDrag.
+	 */
+	private static double calculateRoughnessCorrection(double mach) {
+		if (mach < 0.9) {
+			return 1 - 0.1 * pow2(mach);
+		} else if (mach > 1.1) {
+			return 1 / (1 + 0.18 * pow2(mach));
+		} else {
+			double c1 = 1 - 0.1 * pow2(0.9);
+			double c2 = 1.0 / (1 + 0.18 * pow2(1.1));
+			return c2 * (mach - 0.9) / 0.2 + c1 * (1.1 - mach) / 0.2;
+		}
+	}
+
+
+	private static final double[] axialDragPoly1, axialDragPoly2;
+	static {
+		PolyInterpolator interpolator;
+		interpolator = new PolyInterpolator(
+				new double[] { 0, 17 * Math.PI / 180 },
+				new double[] { 0, 17 * Math.PI / 180 }
+				);
+		axialDragPoly1 = interpolator.interpolator(1, 1.3, 0, 0);
+
+		interpolator = new PolyInterpolator(
+				new double[] { 17 * Math.PI / 180, Math.PI / 2 },
+				new double[] { 17 * Math.PI / 180, Math.PI / 2 },
+				new double[] { Math.PI / 2 }
+				);
+		axialDragPoly2 = interpolator.interpolator(1.3, 0, 0, 0, 0);
+	}
+
+	/**
+	 * The axial drag from the total drag coefficient, as in BarrowmanCalculator.calculateAxialDrag.
+	 */
+	private static double calculateAxialDrag(FlightConditions conditions, double cd) {
+		double aoa = MathUtil.clamp(conditions.getAOA(), 0, Math.PI);
+		double mul;
+
+		if (aoa > Math.PI / 2)
+			aoa = Math.PI - aoa;
+		if (aoa < 17 * Math.PI / 180)
+			mul = PolyInterpolator.eval(aoa, axialDragPoly1);
+		else
+			mul = PolyInterpolator.eval(aoa, axialDragPoly2);
+
+		if (conditions.getAOA() < Math.PI / 2)
+			return mul * cd;
+		else
+			return -mul * cd;
+	}
+
+	/**
+	 * Set the pitch and yaw damping moments for the damping multiplier, as in
+	 * BarrowmanCalculator.calculateDampingMoments.
+	 */
+	private static void applyDampingMoments(FlightConditions conditions, AerodynamicForces total, double mul) {
+		double pitchRate = conditions.getPitchRate();
+		double yawRate = conditions.getYawRate();
+		double velocity = conditions.getVelocity();
+
+		mul *= 3; // TODO: Higher damping yields much more realistic apogee turn
+
+		// find magnitude of damping moments, and clamp so they can't
+		// exceed magnitude of pitch and yaw moments
+		double pitchDampingMomentMagnitude = MathUtil.min(mul * pow2(pitchRate / velocity), total.getCm());
+		double yawDampingMomentMagnitude = MathUtil.min(mul * pow2(yawRate / velocity), total.getCyaw());
+
+		// multiply by sign of pitch and yaw rates
+		total.setPitchDampingMoment(MathUtil.sign(pitchRate) * pitchDampingMomentMagnitude);
+		total.setYawDampingMoment(MathUtil.sign(yawRate) * yawDampingMomentMagnitude);
+	}
+
+
+	private double[] nonAxialRow(int i) {
+		double[] row = nonAxialRows.get(i);
+		if (row == null)
+			row = computeNonAxialRow(i);
+		return row;
+	}
+
+	private synchronized double[] computeNonAxialRow(int i) {
+		double[] row = nonAxialRows.get(i);
+		if (row != null)
+			return row;
+
+		row = new double[AOA_COUNT * thetaCount * VALUES];
+		for (int j = 0; j < AOA_COUNT; j++) {
+			for (int k = 0; k < thetaCount; k++) {
+				evaluateNonAxial(i * MACH_STEP, j * AOA_STEP, 2 * Math.PI * k / thetaCount, row,
+						(j * thetaCount + k) * VALUES);
+			}
+		}
+		nonAxialRows.set(i, row);
+		return row;
+	}
+
+	private void evaluateNonAxial(double mach, double aoa, double theta, double[] values, int offset) {
+		nodeConditions.setMach(mach);
+		nodeConditions.setAOA(aoa);
+		nodeConditions.setTheta(theta);
+		nodeConditions.setRollRate(0);
+		AerodynamicForces forces = calculator.getAerodynamicForces(configuration, nodeConditions, nodeWarnings);
+		values[offset + CN] = forces.getCN();
+		// Without pitch and yaw rates the damping moments subtracted from the moments are zero, or clamped to the
+		// moments themselves, so adding them back restores the moments exactly.
+		values[offset + CM] = forces.getCm() + forces.getPitchDampingMoment();
+		values[offset + CSIDE] = forces.getCside();
+		values[offset + CYAW] = forces.getCyaw() + forces.getYawDampingMoment();
+		values[offset + CNA] = forces.getCNa();
+		values[offset + CP_X] = forces.getCP().x;
+		values[offset + CP_Y] = forces.getCP().y;
+		values[offset + CP_Z] = forces.getCP().z;
+		values[offset + CP_WEIGHT] = forces.getCP().weight;
+		values[offset + CROLL_FORCE] = forces.getCrollForce();
+	}
+
+
+	private double[] rollDampingRow(int i) {
+		double[] row = rollDampingRows.get(i);
+		if (row == null)
+			row = computeRollDampingRow(i);
+		return row;
+	}
+
+	private synchronized double[] computeRollDampingRow(int i) {
+		double[] row = rollDampingRows.get(i);
+		if (row != null)
+			return row;
+
+		// The damping depends on the Mach number through beta only, which is 1 at low speeds.  The Mach number of
+		// the first row is raised until the roll rates of its nodes are fast enough to be damped.
+		nodeConditions.setAOA(0);
+		nodeConditions.setTheta(0);
+		nodeConditions.setMach(1);
+		double minMach = 2 * MIN_ROLL_RATE * refLength / (ROLL_STEP * nodeConditions.getVelocity());
+		nodeConditions.setMach(Math.max(i * MACH_STEP, minMach));
+		double velocity = nodeConditions.getVelocity();
+
+		row = new double[2 * ROLL_NODES + 1];
+		for (int n = -ROLL_NODES; n <= ROLL_NODES; n++) {
+			if (n == 0)
+				continue;
+			nodeConditions.setRollRate(n * ROLL_STEP * velocity / refLength);
+			row[n + ROLL_NODES] = calculator.getAerodynamicForces(configuration, nodeConditions, nodeWarnings).getCrollDamp();
+		}
+		nodeConditions.setRollRate(0);
+		rollDampingRows.set(i, row);
+		return row;
+	}
+
+
+	private static long getStages(FlightConfiguration configuration) {
+		long stages = 0;
+		for (int i = 0; i < Math.min(configuration.getStageCount(), 64); i++) {
+			if (configuration.isStageActive(i))
+				stages |= 1L << i;
+		}
+		return stages;
+	}
+}
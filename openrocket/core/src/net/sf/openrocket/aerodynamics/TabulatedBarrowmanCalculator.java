@@ -0,0 +1,95 @@
+package net.sf.openrocket.aerodynamics;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import net.sf.openrocket.rocketcomponent.FlightConfiguration;
+
+/**
+ * An aerodynamic calculator that interpolates the forces of the extended Barrowman method from tables
+ * of the coefficients of the flight configuration.  It is meant for flying the same rocket many times,
+ * as in Monte Carlo studies or reinforcement learning, and is selected by setting it as the aerodynamic
+ * calculator of the simulation conditions.
+ * <p>
+ * The tables are computed for the configuration, its modification ID and its active stages the first
+ * time they are needed, and are shared by the calculators returned by {@link #newInstance()}, which may be
+ * used by other threads.  Above the maximum Mach number of the tables, and for the CP and force analysis,
+ * the forces are those of the BarrowmanCalculator.
+ */
+public class TabulatedBarrowmanCalculator extends BarrowmanCalculator {
+
+	/** The number of tables kept, of the configurations flown last */
+	private static final int MAX_TABLES = 8;
+
+	private final double maxMach;
+	private final List<AerodynamicCoefficientTable> tables;
+
+	/** The table of the last configuration flown by this calculator */
+	private AerodynamicCoefficientTable table = null;
+
+
+	public TabulatedBarrowmanCalculator() {
+		this(2.0);
+	}
+
+	/**
+	 * @param maxMach	the largest Mach number of the tables
+	 */
+	public TabulatedBarrowmanCalculator(double maxMach) {
+		this(maxMach, new ArrayList<AerodynamicCoefficientTable>());
+	}
+
+	private TabulatedBarrowmanCalculator(double maxMach, List<AerodynamicCoefficientTable> tables) {
+		this.maxMach = maxMach;
+		this.tables = tables;
+	}
+
+
+	/**
+	 * Return a new calculator that shares the tables of this one.
+	 */
+	@Override
+	public TabulatedBarrowmanCalculator newInstance() {
+		return new TabulatedBarrowmanCalculator(maxMach, tables);
+	}
+
+
+	public double getMaxMach() {
+		return maxMach;
+	}
+
+
+	@Override
+	public AerodynamicForces getAerodynamicForces(FlightConfiguration configuration,
+			FlightConditions conditions, WarningSet warnings) {
+		if (warnings == null)
+			warnings = ignoreWarningSet;
+
+		AerodynamicForces forces = getTable(configuration).getAerodynamicForces(conditions, warnings);
+		if (forces == null)
+			return super.getAerodynamicForces(configuration, conditions, warnings);
+		return forces;
+	}
+
+
+	private AerodynamicCoefficientTable getTable(FlightConfiguration configuration) {
+		if ((table != null) && table.isFor(configuration))
+			return table;
+
+		synchronized (tables) {
+			for (int i = 0; i < tables.size(); i++) {
+				if (tables.get(i).isFor(configuration)) {
+					table = tables.remove(i);
+					tables.add(table);
+					return table;
+				}
+			}
+
+			table = new AerodynamicCoefficientTable(configuration, maxMach);
+			tables.add(table);
+			if (tables.size() > MAX_TABLES)
+				tables.remove(0);
+			return table;
+		}
+	}
+}
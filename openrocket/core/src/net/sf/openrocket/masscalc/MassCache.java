@@ -0,0 +1,201 @@
+package net.sf.openrocket.masscalc;
+
+import java.util.ArrayList;
+
+import net.sf.openrocket.motor.Motor;
+import net.sf.openrocket.motor.MotorConfiguration;
+import net.sf.openrocket.motor.ThrustCurveMotor;
+import net.sf.openrocket.rocketcomponent.FlightConfiguration;
+import net.sf.openrocket.rocketcomponent.MotorMount;
+import net.sf.openrocket.rocketcomponent.RocketComponent;
+import net.sf.openrocket.util.Coordinate;
+import net.sf.openrocket.util.Transformation;
+
+/**
+ * Mass properties of a flight configuration, cached for the steps of a simulation.
+ *
+ * The structure only changes with the rocket or the active stages, so it is calculated
+ * once per configuration modID and stage set.  The motors are collected from the component
+ * tree at the same time, after which their mass only depends on the time.  The results are
+ * those of MassCalculator.calculateStructure and MassCalculator.calculateMotor, except for the
+ * rounding of the CM of several motor clusters.
+ *
+ * A cache is not thread safe; each simulation needs its own.
+ */
+public class MassCache {
+
+	// the configuration and its state the data was calculated for
+	private FlightConfiguration configuration = null;
+	private int modID = -1;
+	private long stages = 0;
+
+	private RigidBody structure = null;
+	private MotorCluster[] clusters = null;
+
+
+	/**
+	 * Calculates mass data of the rocket's structure, as MassCalculator.calculateStructure
+	 *
+	 * @param config		the rocket configuration to calculate for
+	 * @return				the MassData struct of the rocket
+	 */
+	public RigidBody getStructure( final FlightConfiguration config ){
+		revalidate( config );
+		if( null == structure ){
+			structure = MassCalculator.calculateStructure( config );
+		}
+		return structure;
+	}
+
+	/**
+	 * Calculates mass data of the rocket's motors, as MassCalculator.calculateMotor of a
+	 * simulation status at the given time.
+	 *
+	 * @param config		the rocket configuration to calculate for
+	 * @param time			the simulation time
+	 * @return				the MassData struct of the motors
+	 */
+	public RigidBody getMotor( final FlightConfiguration config, final double time ){
+		revalidate( config );
+		if( null == clusters ){
+			ArrayList<MotorCluster> list = new ArrayList<MotorCluster>();
+			collectMotors( config, config.getRocket(), Transformation.IDENTITY, list );
+			clusters = list.toArray( new MotorCluster[ list.size() ]);
+		}
+
+		// (1) the CM of all clusters
+		Coordinate centerOfMass = Coordinate.ZERO;
+		for( MotorCluster cluster : clusters ){
+			cluster.calculate( time );
+			if( 0 < cluster.cm.weight ){
+				if( 0 == centerOfMass.weight ){
+					centerOfMass = cluster.cm;
+				}else{
+					centerOfMass = centerOfMass.average( cluster.cm );
+				}
+			}
+		}
+
+		// (2) their MOIs about it, as RigidBody.rebase
+		double Ir=0, It=0;
+		for( MotorCluster cluster : clusters ){
+			if( 0 < cluster.cm.weight ){
+				final double dx = cluster.cm.x - centerOfMass.x;
+				final double dy = cluster.cm.y - centerOfMass.y;
+				final double dz = cluster.cm.z - centerOfMass.z;
+				Ir += cluster.Ir + cluster.cm.weight*(dy*dy + dz*dz);
+				It += cluster.It + cluster.cm.weight*(dx*dx + dz*dz);
+			}
+		}
+
+		return new RigidBody( centerOfMass, Ir, It, It );
+	}
+
+
+	private void revalidate( final FlightConfiguration config ){
+		final long configStages = getStages( config );
+		if(( config == configuration )&&( config.getModID() == modID )&&( configStages == stages )){
+			return;
+		}
+
+		configuration = config;
+		modID = config.getModID();
+		stages = configStages;
+		structure = null;
+		clusters = null;
+	}
+
+	private static long getStages( final FlightConfiguration config ){
+		long stages = 0;
+		for( int i = 0; i < Math.min( config.getStageCount(), 64 ); i++ ){
+			if( config.isStageActive( i )){
+				stages |= 1L << i;
+			}
+		}
+		return stages;
+	}
+
+	/**
+	 * Collect the motor clusters of the active mounts in the order of MassCalculation.calculateMotors
+	 */
+	private static void collectMotors( final FlightConfiguration config, final RocketComponent component,
+			final Transformation parentTransform, final ArrayList<MotorCluster> list ){
+		if( component.isMotorMount() && config.isComponentActive( component )){
+			final MotorConfiguration motorConfig = ((MotorMount) component).getMotorConfig( config.getId() );
+			if( ! motorConfig.isEmpty() ){
+				list.add( new MotorCluster( component, motorConfig, parentTransform ));
+			}
+		}
+
+		final int instanceCount = component.getInstanceCount();
+		Coordinate[] instanceLocations = component.getInstanceLocations();
+		for( int instanceNumber = 0; instanceNumber < instanceCount; ++instanceNumber) {
+			Transformation currentTransform = parentTransform.applyTransformation( Transformation.getTranslationTransform( instanceLocations[instanceNumber] ));
+			for (RocketComponent child : component.getChildren()) {
+				collectMotors( config, child, currentTransform, list );
+			}
+		}
+	}
+
+
+	/**
+	 * The motors of a mount, as MassCalculation.calculateMountData
+	 */
+	private static class MotorCluster {
+		private final Motor motor;
+		private final Transformation transform;
+		// location of the motor from the rocket's reference point
+		private final double motorX;
+		private final int instanceCount;
+		private final double unitRotationalInertia;
+		private final double unitLongitudinalInertia;
+		// squared distances of the motors from the centerline, if off-center
+		private final double[] offsetDistances2;
+
+		// the data at the last time calculated
+		private Coordinate cm = Coordinate.ZERO;
+		private double Ir = 0;
+		private double It = 0;
+
+		MotorCluster( final RocketComponent mount, final MotorConfiguration motorConfig, final Transformation transform ){
+			this.motor = motorConfig.getMotor();
+			this.transform = transform;
+			this.motorX = mount.getPosition().x + motorConfig.getX();
+			this.instanceCount = mount.getInstanceCount();
+			this.unitRotationalInertia = motorConfig.getUnitRotationalInertia();
+			this.unitLongitudinalInertia = motorConfig.getUnitLongitudinalInertia();
+
+			if( 1 < instanceCount ){
+				final Coordinate[] offsets = mount.getInstanceOffsets();
+				offsetDistances2 = new double[ offsets.length ];
+				for( int i = 0; i < offsets.length; i++ ){
+					offsetDistances2[i] = Math.pow( Math.hypot( offsets[i].y, offsets[i].z ), 2 );
+				}
+			}else{
+				offsetDistances2 = new double[0];
+			}
+		}
+
+		void calculate( final double time ){
+			final double eachMass;
+			final double eachCMx;  // CoM from beginning of motor
+			if( motor instanceof ThrustCurveMotor ){
+				final Coordinate motorCM = ((ThrustCurveMotor) motor).getCenterOfMass( time );
+				eachMass = motorCM.weight;
+				eachCMx = motorCM.x;
+			}else{
+				eachMass = motor.getTotalMass( time );
+				eachCMx = motor.getCMx( time );
+			}
+
+			final Coordinate clusterLocalCM = new Coordinate( motorX + eachCMx, 0, 0, eachMass*instanceCount);
+			cm = transform.transform( clusterLocalCM );
+
+			Ir = unitRotationalInertia*instanceCount*eachMass;
+			for( double distance2 : offsetDistances2 ){
+				Ir += eachMass*distance2;
+			}
+			It = unitLongitudinalInertia*instanceCount*eachMass;
+		}
+	}
+}
@@ -268,14 +268,20 @@ public class ThrustCurveMotor implements Motor, Comparable<ThrustCurveMotor>, Se
 	}
 	
 	private int getIndex( final double motorTime ){
+		// binary search for the first time point after the motor time
 		int lowerBoundIndex=0;
-		int upperBoundIndex=0;
-		while( ( upperBoundIndex < time.length ) && ( motorTime >= time[upperBoundIndex] )){
-			lowerBoundIndex = upperBoundIndex;
-			++upperBoundIndex;
-		}	
+		int upperBoundIndex=time.length;
+		while( lowerBoundIndex < upperBoundIndex ){
+			final int middleIndex = (lowerBoundIndex + upperBoundIndex) >>> 1;
+			if( motorTime >= time[middleIndex] ){
+				lowerBoundIndex = middleIndex+1;
+			}else{
+				upperBoundIndex = middleIndex;
+			}
+		}
 		
-		return lowerBoundIndex; 
+		// the time point before it
+		return Math.max( lowerBoundIndex-1, 0 );
 	}
 	
 	private double getIndexFraction( final double motorTime, final int index ){
@@ -550,6 +556,18 @@ public class ThrustCurveMotor implements Motor, Comparable<ThrustCurveMotor>, Se
 		return foundTime;
 	}
 	
+	/**
+	 * Return the total mass of the motor and its CG along the motor, as by
+	 * getTotalMass and getCMx, but interpolated only once.
+	 * 
+	 * @param motorTime  time since motor ignition
+	 * @return the CG, weighted by the total mass
+	 */
+	public Coordinate getCenterOfMass( final double motorTime ){
+		final double pseudoIndex = getPseudoIndex( motorTime); 
+		return interpolateCenterOfMassAtIndex( pseudoIndex);
+	}
+	
 	@Override
 	public double getTotalMass( final double motorTime){
 		final double pseudoIndex = getPseudoIndex( motorTime); 
@@ -2,7 +2,7 @@ package net.sf.openrocket.simulation;
 
 import java.util.Collection;
 
-import net.sf.openrocket.masscalc.MassCalculator;
+import net.sf.openrocket.masscalc.MassCache;
 import net.sf.openrocket.masscalc.RigidBody;
 import net.sf.openrocket.models.atmosphere.AtmosphericConditions;
 import net.sf.openrocket.simulation.exception.SimulationException;
@@ -13,6 +13,9 @@ import net.sf.openrocket.util.Quaternion;
 
 public abstract class AbstractSimulationStepper implements SimulationStepper {
 	
+	/** Mass properties of the configuration being flown, which only change with the rocket or its stages */
+	private final MassCache massCache = new MassCache();
+	
 	/**
 	 * Compute the atmospheric conditions, allowing listeners to override.
 	 * 
@@ -119,7 +122,7 @@ public abstract class AbstractSimulationStepper implements SimulationStepper {
 			return structureMass;
 		}
 		
-		structureMass = MassCalculator.calculateStructure( status.getConfiguration() );  
+		structureMass = massCache.getStructure( status.getConfiguration() );
 						
 		// Call post-listener
 		structureMass = SimulationListenerHelper.firePostMassCalculation(status, structureMass);
@@ -140,7 +143,7 @@ public abstract class AbstractSimulationStepper implements SimulationStepper {
 			return motorMass;
 		}
 		
-		motorMass = MassCalculator.calculateMotor( status );  
+		motorMass = massCache.getMotor( status.getConfiguration(), status.getSimulationTime() );
 
 				
 		// Call post-listener
@@ -0,0 +1,658 @@
+package net.sf.openrocket.simulation;
+
+import java.util.List;
+
+import net.sf.openrocket.l10n.Translator;
+import net.sf.openrocket.masscalc.MassCalculator;
+import net.sf.openrocket.masscalc.RigidBody;
+import net.sf.openrocket.motor.MotorConfiguration;
+import net.sf.openrocket.motor.MotorConfigurationId;
+import net.sf.openrocket.rocketcomponent.AxialStage;
+import net.sf.openrocket.rocketcomponent.FlightConfiguration;
+import net.sf.openrocket.rocketcomponent.FlightConfigurationId;
+import net.sf.openrocket.rocketcomponent.MotorMount;
+import net.sf.openrocket.rocketcomponent.Rocket;
+import net.sf.openrocket.rocketcomponent.RocketComponent;
+import net.sf.openrocket.simulation.exception.MotorIgnitionException;
+import net.sf.openrocket.simulation.exception.SimulationCalculationException;
+import net.sf.openrocket.simulation.exception.SimulationException;
+import net.sf.openrocket.simulation.exception.SimulationLaunchException;
+import net.sf.openrocket.simulation.listeners.InterleavedSimulationListener;
+import net.sf.openrocket.simulation.listeners.SimulationListenerHelper;
+import net.sf.openrocket.startup.Application;
+import net.sf.openrocket.util.Coordinate;
+import net.sf.openrocket.util.MathUtil;
+import net.sf.openrocket.util.Quaternion;
+import net.sf.openrocket.util.WorldCoordinate;
+
+/**
+ * A simulation engine that flies a batch of simulations of the same rocket and flight configuration in lockstep,
+ * e.g. the flights of a dispersion study or the episodes of RocketLander training.
+ * <p>
+ * The position, velocity, orientation and rotation velocity of the flights are integrated in primitive arrays,
+ * and every stage of the RK4 step is evaluated for the whole batch before the next one.  Every flight selects its
+ * own time step like RK4SimulationStepper, so the flights take their steps together but not at the same times.
+ * The flights share one flight configuration and the mass of the rocket structure, which is computed once.
+ * Every flight keeps its own status, listeners, motors, aerodynamic calculator and flight data, and its listeners
+ * are called like under BasicEventSimulationEngine, so listeners that override the acceleration calculation (like
+ * the thrust vectoring of RocketLander) fly unchanged.  Listeners that keep state per thread implement
+ * {@link InterleavedSimulationListener}.
+ * <p>
+ * A flight is masked out of the batch when it hits the ground after liftoff, when a listener ends it with a
+ * SimulationException, or when its values become NaN or too large.  A RuntimeException of a flight, e.g. a failing
+ * listener, masks out that flight as well, so the others fly on and every flight's listeners see its end.
+ * <p>
+ * Until then a flight is the one of BasicEventSimulationEngine, except that recovery devices are not deployed,
+ * stages are not separated and the rocket does not tumble, so a flight only ends when it hits the ground.
+ */
+public class BatchSimulationEngine {
+
+	private static final Translator trans = Application.getTranslator();
+
+	/** State values of a flight:  position, velocity, orientation (w, x, y, z) and rotation velocity */
+	private static final int STATE = 13;
+	/** Derivatives of a flight, in the layout of the stages of RK4SimulationStepper */
+	private static final int DERIVATIVES = 12;
+
+	private static final int POSITION = 0;
+	private static final int VELOCITY = 3;
+	private static final int ORIENTATION = 6;
+	private static final int ROTATION_VELOCITY = 10;
+
+	private FlightConfigurationId fcid;
+
+	private RK4SimulationStatus[] statuses;
+	private BatchStepper[] steppers;
+	private FlightData[] flightData;
+	private Coordinate[] origins;
+	private Coordinate[] originVelocities;
+
+	/** Whether a flight is still flying, and whether it takes the current step */
+	private boolean[] active;
+	private boolean[] stepping;
+	private int activeCount;
+
+	private double[] state;
+	private double[] timeSteps;
+	private final double[][] k = new double[4][];
+	/** Rotation vector of the orientation step being taken */
+	private final RK4SimulationStepper.MutableVector rotation = new RK4SimulationStepper.MutableVector();
+
+	/** The flight whose listeners were called last */
+	private int current;
+
+
+	/**
+	 * Fly a batch of simulations.  The simulations must fly the same rocket and flight configuration.  Every
+	 * simulation uses the aerodynamic calculator of its conditions, so simulations that should share the caches of a
+	 * calculator are given the same instance.
+	 *
+	 * @param batch		the conditions of the simulations
+	 * @return			the flight data of every simulation, in the order of the batch
+	 */
+	public FlightData[] simulate(List<SimulationConditions> batch) throws SimulationException {
+		int n = batch.size();
+		if (n == 0) {
+			return new FlightData[0];
+		}
+
+		SimulationConditions first = batch.get(0);
+		Rocket rocket = first.getRocket();
+		this.fcid = first.getFlightConfigurationID();
+		for (SimulationConditions conditions : batch) {
+			if (conditions.getRocket() != rocket || !fcid.equals(conditions.getFlightConfigurationID())) {
+				throw new IllegalArgumentException("The simulations of a batch must fly the same rocket and flight configuration");
+			}
+		}
+
+		FlightConfiguration configuration = rocket.getFlightConfiguration(fcid).clone();
+		if (!configuration.hasMotors()) {
+			throw new MotorIgnitionException(trans.get("BasicEventSimulationEngine.error.noMotorsDefined"));
+		}
+		RigidBody structureMass = MassCalculator.calculateStructure(configuration);
+
+		statuses = new RK4SimulationStatus[n];
+		steppers = new BatchStepper[n];
+		flightData = new FlightData[n];
+		origins = new Coordinate[n];
+		originVelocities = new Coordinate[n];
+		active = new boolean[n];
+		stepping = new boolean[n];
+		activeCount = 0;
+		state = new double[n * STATE];
+		timeSteps = new double[n];
+		for (int s = 0; s < k.length; s++) {
+			k[s] = new double[n * DERIVATIVES];
+		}
+
+		for (int i = 0; i < n; i++) {
+			SimulationConditions conditions = batch.get(i);
+			flightData[i] = new FlightData();
+
+			SimulationStatus status = new SimulationStatus(configuration, conditions);
+			status.getEventQueue().add(new FlightEvent(FlightEvent.Type.LAUNCH, 0, rocket));
+			status.setFlightData(new FlightDataBranch(rocket.getTopmostStage().getName(), FlightDataType.TYPE_TIME));
+
+			current = i;
+			try {
+				SimulationListenerHelper.fireStartSimulation(status);
+				steppers[i] = new BatchStepper(structureMass);
+				statuses[i] = steppers[i].initialize(status);
+				// the stepper clones the configuration, but nothing changes it in a batch
+				statuses[i].setConfiguration(configuration);
+			} catch (SimulationException | RuntimeException e) {
+				abort(i, status, e);
+				continue;
+			}
+
+			// Get originating position (in case listener has modified launch position)
+			origins[i] = statuses[i].getRocketPosition();
+			originVelocities[i] = statuses[i].getRocketVelocity();
+			active[i] = true;
+			activeCount++;
+			try {
+				if (!handleEvents(statuses[i])) {
+					finish(i);
+				}
+			} catch (SimulationException | RuntimeException e) {
+				abort(i, statuses[i], e);
+			}
+		}
+
+		while (activeCount > 0) {
+			step();
+		}
+
+		FlightData[] result = flightData;
+		statuses = null;
+		steppers = null;
+		flightData = null;
+		return result;
+	}
+
+
+	/**
+	 * Take one step of every active flight.
+	 */
+	private void step() {
+		int n = statuses.length;
+
+		//// First position and the time step, after the preStep of the listeners
+		for (int i = 0; i < n; i++) {
+			stepping[i] = false;
+			if (!active[i])
+				continue;
+			RK4SimulationStatus status = statuses[i];
+			try {
+				resume(i);
+				if (SimulationListenerHelper.firePreStep(status)) {
+					// Step at most to the next event
+					double maxStepTime = Double.MAX_VALUE;
+					FlightEvent nextEvent = status.getEventQueue().peek();
+					if (nextEvent != null) {
+						maxStepTime = MathUtil.max(nextEvent.getTime() - status.getSimulationTime(), 0.001);
+					}
+					loadState(i, status);
+					timeSteps[i] = steppers[i].startStep(status, maxStepTime, k[0], i * DERIVATIVES);
+					stepping[i] = true;
+				}
+			} catch (SimulationException | RuntimeException e) {
+				abort(i, status, e);
+			}
+		}
+
+		//// Second, third and fourth position at t + h/2, t + h/2 and t + h
+		for (int s = 1; s < 4; s++) {
+			double fraction = (s == 3) ? 1.0 : 0.5;
+			for (int i = 0; i < n; i++) {
+				if (!stepping[i] || !active[i])
+					continue;
+				RK4SimulationStatus status = statuses[i];
+				try {
+					resume(i);
+					RK4SimulationStatus intermediate = steppers[i].intermediateStatus(status);
+					setIntermediateState(i, intermediate, k[s - 1], timeSteps[i] * fraction);
+					steppers[i].evaluateStage(intermediate, k[s], i * DERIVATIVES);
+				} catch (SimulationException | RuntimeException e) {
+					abort(i, status, e);
+				}
+			}
+		}
+
+		//// Sum all together, and the postStep of the listeners and the events
+		for (int i = 0; i < n; i++) {
+			if (!active[i])
+				continue;
+			RK4SimulationStatus status = statuses[i];
+			try {
+				resume(i);
+				if (stepping[i]) {
+					sumStages(i);
+					storeState(i, status);
+				}
+				SimulationListenerHelper.firePostStep(status);
+				checkNaN(status);
+				handleStep(i, status);
+				if (!handleEvents(status)) {
+					finish(i);
+				}
+			} catch (SimulationException | RuntimeException e) {
+				abort(i, status, e);
+			}
+		}
+	}
+
+
+	/**
+	 * Make the listeners of a flight current, if the listeners of another flight were called last.
+	 */
+	private void resume(int i) {
+		if (current != i) {
+			current = i;
+			SimulationListenerHelper.fireResumeSimulation(statuses[i]);
+		}
+	}
+
+
+	private void loadState(int i, SimulationStatus status) {
+		int o = i * STATE;
+		Coordinate position = status.getRocketPosition();
+		Coordinate velocity = status.getRocketVelocity();
+		Quaternion orientation = status.getRocketOrientationQuaternion();
+		Coordinate rotationVelocity = status.getRocketRotationVelocity();
+		state[o + POSITION] = position.x;
+		state[o + POSITION + 1] = position.y;
+		state[o + POSITION + 2] = position.z;
+		state[o + VELOCITY] = velocity.x;
+		state[o + VELOCITY + 1] = velocity.y;
+		state[o + VELOCITY + 2] = velocity.z;
+		state[o + ORIENTATION] = orientation.getW();
+		state[o + ORIENTATION + 1] = orientation.getX();
+		state[o + ORIENTATION + 2] = orientation.getY();
+		state[o + ORIENTATION + 3] = orientation.getZ();
+		state[o + ROTATION_VELOCITY] = rotationVelocity.x;
+		state[o + ROTATION_VELOCITY + 1] = rotationVelocity.y;
+		state[o + ROTATION_VELOCITY + 2] = rotationVelocity.z;
+	}
+
+
+	/**
+	 * Set the intermediate status to the state of flight i advanced by the derivatives d for the time h.
+	 */
+	private void setIntermediateState(int i, RK4SimulationStatus intermediate, double[] d, double h) {
+		int o = i * STATE;
+		int p = i * DERIVATIVES;
+		intermediate.setSimulationTime(statuses[i].getSimulationTime() + h);
+		intermediate.setRocketPosition(new Coordinate(
+				state[o + POSITION] + d[p + 3] * h,
+				state[o + POSITION + 1] + d[p + 4] * h,
+				state[o + POSITION + 2] + d[p + 5] * h));
+		intermediate.setRocketVelocity(new Coordinate(
+				state[o + VELOCITY] + d[p] * h,
+				state[o + VELOCITY + 1] + d[p + 1] * h,
+				state[o + VELOCITY + 2] + d[p + 2] * h));
+		rotation.x = d[p + 9] * h;
+		rotation.y = d[p + 10] * h;
+		rotation.z = d[p + 11] * h;
+		intermediate.setRocketOrientationQuaternion(rotate(o));
+		intermediate.setRocketRotationVelocity(new Coordinate(
+				state[o + ROTATION_VELOCITY] + d[p + 6] * h,
+				state[o + ROTATION_VELOCITY + 1] + d[p + 7] * h,
+				state[o + ROTATION_VELOCITY + 2] + d[p + 8] * h));
+	}
+
+
+	/**
+	 * Advance the state of flight i by its step, y(n+1) = y(n) + h*(k1 + 2*k2 + 2*k3 + k4)/6.
+	 */
+	private void sumStages(int i) {
+		int o = i * STATE;
+		int p = i * DERIVATIVES;
+		double m = timeSteps[i] / 6;
+		for (int j = 0; j < 3; j++) {
+			state[o + VELOCITY + j] += sum(p + j, m);
+			state[o + POSITION + j] += sum(p + 3 + j, m);
+			state[o + ROTATION_VELOCITY + j] += sum(p + 6 + j, m);
+		}
+		rotation.x = sum(p + 9, m);
+		rotation.y = sum(p + 10, m);
+		rotation.z = sum(p + 11, m);
+		Quaternion orientation = rotate(o).normalizeIfNecessary();
+		state[o + ORIENTATION] = orientation.getW();
+		state[o + ORIENTATION + 1] = orientation.getX();
+		state[o + ORIENTATION + 2] = orientation.getY();
+		state[o + ORIENTATION + 3] = orientation.getZ();
+	}
+
+	private double sum(int index, double m) {
+		return ((k[1][index] + k[2][index]) * 2 + k[0][index] + k[3][index]) * m;
+	}
+
+	/**
+	 * The orientation of the state at offset o rotated by the rotation vector.
+	 */
+	private Quaternion rotate(int o) {
+		return rotation.rotate(state[o + ORIENTATION], state[o + ORIENTATION + 1], state[o + ORIENTATION + 2],
+				state[o + ORIENTATION + 3]);
+	}
+
+
+	/**
+	 * Store the state of flight i into its status after its step.
+	 */
+	private void storeState(int i, RK4SimulationStatus status) throws SimulationException {
+		int o = i * STATE;
+		double h = timeSteps[i];
+		Coordinate position = new Coordinate(state[o + POSITION], state[o + POSITION + 1], state[o + POSITION + 2]);
+		Coordinate velocity = new Coordinate(state[o + VELOCITY], state[o + VELOCITY + 1], state[o + VELOCITY + 2]);
+		Coordinate rotationVelocity = new Coordinate(state[o + ROTATION_VELOCITY], state[o + ROTATION_VELOCITY + 1],
+				state[o + ROTATION_VELOCITY + 2]);
+		status.setRocketPosition(position);
+		status.setRocketVelocity(velocity);
+		status.setRocketRotationVelocity(rotationVelocity);
+		status.setRocketOrientationQuaternion(new Quaternion(state[o + ORIENTATION], state[o + ORIENTATION + 1],
+				state[o + ORIENTATION + 2], state[o + ORIENTATION + 3]));
+
+		WorldCoordinate w = status.getSimulationConditions().getLaunchSite();
+		w = status.getSimulationConditions().getGeodeticComputation().addCoordinate(w, position);
+		status.setRocketWorldPosition(w);
+
+		status.setSimulationTime(status.getSimulationTime() + h);
+		status.setPreviousTimeStep(h);
+
+		// Verify that values don't run out of range
+		if (velocity.length2() > 1e18 || position.length2() > 1e18 || rotationVelocity.length2() > 1e18) {
+			throw new SimulationCalculationException(trans.get("error.valuesTooLarge"));
+		}
+	}
+
+
+	/**
+	 * Add the events of the step of flight i, as BasicEventSimulationEngine does after a step.
+	 */
+	private void handleStep(int i, RK4SimulationStatus status) throws SimulationException {
+		if (status.getRocketPosition().z > status.getMaxAlt()) {
+			status.setMaxAlt(status.getRocketPosition().z);
+		}
+
+		// Position relative to start location
+		Coordinate relativePosition = status.getRocketPosition().sub(origins[i]);
+
+		if (!status.isLiftoff()) {
+			// Verify if the position is starting above the ground
+			boolean startingAboveGround = (status.getRocketPosition().z > 1.0);
+
+			// Avoid sinking into ground before liftoff
+			if ((relativePosition.z < 0) && (!startingAboveGround)) {
+				status.setRocketPosition(origins[i]);
+				status.setRocketVelocity(originVelocities[i]);
+			}
+			// Detect lift-off
+			if ((relativePosition.z > 0.02) || startingAboveGround) {
+				addEvent(status, new FlightEvent(FlightEvent.Type.LIFTOFF, status.getSimulationTime()));
+			}
+		} else if (status.getRocketPosition().z < 0) {
+			// Ground hit ends the flight, there are no recovery devices or landing steppers in a batch
+			status.setRocketPosition(status.getRocketPosition().setZ(0));
+			addEvent(status, new FlightEvent(FlightEvent.Type.GROUND_HIT, status.getSimulationTime()));
+			addEvent(status, new FlightEvent(FlightEvent.Type.SIMULATION_END, status.getSimulationTime()));
+		}
+
+		// Check for launch guide clearance
+		if (!status.isLaunchRodCleared() &&
+				relativePosition.length() > status.getSimulationConditions().getLaunchRodLength()) {
+			addEvent(status, new FlightEvent(FlightEvent.Type.LAUNCHROD, status.getSimulationTime(), null));
+		}
+
+		// Check for apogee
+		if (!status.isApogeeReached() && status.getRocketPosition().z < status.getMaxAlt() - 0.01) {
+			status.setMaxAltTime(status.getSimulationTime());
+			addEvent(status, new FlightEvent(FlightEvent.Type.APOGEE, status.getSimulationTime(),
+					status.getConfiguration().getRocket()));
+		}
+	}
+
+
+	/**
+	 * Handle the events of a flight that are due, like BasicEventSimulationEngine without the staging, recovery
+	 * and tumbling events.
+	 *
+	 * @return	false if the flight has ended
+	 */
+	private boolean handleEvents(SimulationStatus status) throws SimulationException {
+		boolean ret = true;
+
+		for (FlightEvent event = nextEvent(status); event != null; event = nextEvent(status)) {
+
+			// Check for motor ignition events, add ignition events to queue
+			for (MotorClusterState state : status.getActiveMotors()) {
+				if (state.testForIgnition(event)) {
+					MotorClusterState sourceState = (MotorClusterState) event.getData();
+					double ignitionDelay = 0;
+					if (event.getType() == FlightEvent.Type.EJECTION_CHARGE)
+						ignitionDelay = sourceState.getEjectionDelay();
+
+					MotorMount mount = state.getMount();
+					MotorConfiguration motorInstance = mount.getMotorConfig(this.fcid);
+					ignitionDelay += motorInstance.getIgnitionDelay();
+
+					addEvent(status, new FlightEvent(FlightEvent.Type.IGNITION, status.getSimulationTime() + ignitionDelay,
+							(RocketComponent) mount, state));
+				}
+			}
+
+			// Call simulation listeners, allow aborting event handling
+			if (!SimulationListenerHelper.fireHandleFlightEvent(status, event)) {
+				continue;
+			}
+
+			switch (event.getType()) {
+
+			case IGNITION: {
+				MotorClusterState motorState = (MotorClusterState) event.getData();
+				motorState.ignite(event.getTime());
+				status.setMotorIgnited(true);
+				status.getFlightData().addEvent(event);
+
+				MotorConfigurationId motorId = motorState.getID();
+				MotorMount mount = (MotorMount) event.getSource();
+				if (!SimulationListenerHelper.fireMotorIgnition(status, motorId, mount, motorState)) {
+					continue;
+				}
+
+				// and queue up the burnout for this motor, as well
+				addEvent(status, new FlightEvent(FlightEvent.Type.BURNOUT,
+						status.getSimulationTime() + motorState.getBurnTime(), event.getSource(), motorState));
+				break;
+			}
+
+			case LIFTOFF:
+				status.setLiftoff(true);
+				status.getFlightData().addEvent(event);
+				break;
+
+			case LAUNCHROD:
+				status.setLaunchRodCleared(true);
+				status.getFlightData().addEvent(event);
+				break;
+
+			case BURNOUT: {
+				// If motor burnout occurs without lift-off, abort
+				if (!status.isLiftoff()) {
+					throw new SimulationLaunchException(trans.get("BasicEventSimulationEngine.error.earlyMotorBurnout"));
+				}
+
+				MotorClusterState motorState = (MotorClusterState) event.getData();
+				motorState.burnOut(event.getTime());
+
+				AxialStage stage = motorState.getMount().getStage();
+				if (motorState.hasEjectionCharge()) {
+					addEvent(status, new FlightEvent(FlightEvent.Type.EJECTION_CHARGE,
+							status.getSimulationTime() + motorState.getEjectionDelay(), stage, event.getData()));
+				}
+				status.getFlightData().addEvent(event);
+				break;
+			}
+
+			case EJECTION_CHARGE: {
+				MotorClusterState motorState = (MotorClusterState) event.getData();
+				motorState.expend(event.getTime());
+				status.getFlightData().addEvent(event);
+				break;
+			}
+
+			case APOGEE:
+				status.setApogeeReached(true);
+				status.getFlightData().addEvent(event);
+				// No recovery device deploys in a batch, so apogee is the optimum
+				if (status.getSimulationConditions().isCalculateExtras()) {
+					status.getFlightData().setOptimumAltitude(status.getMaxAlt());
+					status.getFlightData().setTimeToOptimumAltitude(status.getMaxAltTime());
+				}
+				break;
+
+			case SIMULATION_END:
+				ret = false;
+				status.getFlightData().addEvent(event);
+				break;
+
+			case LAUNCH:
+			case GROUND_HIT:
+				status.getFlightData().addEvent(event);
+				break;
+
+			default:
+				// staging, recovery and tumbling events are not generated in a batch
+				break;
+			}
+		}
+
+		if (1200 < status.getSimulationTime()) {
+			ret = false;
+			status.getFlightData().addEvent(new FlightEvent(FlightEvent.Type.SIMULATION_END, status.getSimulationTime()));
+		}
+
+		// If no motor has ignited, abort
+		if (!status.isMotorIgnited()) {
+			throw new MotorIgnitionException(trans.get("BasicEventSimulationEngine.error.noIgnition"));
+		}
+
+		return ret;
+	}
+
+
+	private void addEvent(SimulationStatus status, FlightEvent event) throws SimulationException {
+		if (SimulationListenerHelper.fireAddFlightEvent(status, event)) {
+			status.getEventQueue().add(event);
+		}
+	}
+
+
+	/**
+	 * Return the next flight event of a flight to handle, or null.  Jumps the simulation time forward in case
+	 * no motors have been ignited.
+	 */
+	private FlightEvent nextEvent(SimulationStatus status) {
+		EventQueue queue = status.getEventQueue();
+		FlightEvent event = queue.peek();
+		if (event == null)
+			return null;
+
+		if (!status.isMotorIgnited() && event.getTime() > status.getSimulationTime()) {
+			status.setSimulationTime(event.getTime());
+		}
+		if (event.getTime() <= status.getSimulationTime()) {
+			return queue.poll();
+		} else {
+			return null;
+		}
+	}
+
+
+	private void checkNaN(SimulationStatus status) throws SimulationException {
+		if (Double.isNaN(status.getSimulationTime() + status.getPreviousTimeStep()) ||
+				status.getRocketPosition().isNaN() ||
+				status.getRocketVelocity().isNaN() ||
+				status.getRocketOrientationQuaternion().isNaN() ||
+				status.getRocketRotationVelocity().isNaN()) {
+			throw new SimulationException(trans.get("BasicEventSimulationEngine.error.NaNResult"));
+		}
+	}
+
+
+	/**
+	 * Mask out a flight that a listener or the calculation aborted.
+	 */
+	private void abort(int i, SimulationStatus status, Exception cause) {
+		SimulationException e = (cause instanceof SimulationException) ? (SimulationException) cause
+				: new SimulationException(cause);
+		fireEndSimulation(status, e);
+		// Add FlightEvent for Abort.
+		status.getFlightData().addEvent(new FlightEvent(FlightEvent.Type.EXCEPTION, status.getSimulationTime(),
+				status.getConfiguration().getRocket(), e.getLocalizedMessage()));
+		status.getWarnings().add(e.getLocalizedMessage());
+
+		if (statuses[i] == null) {
+			// aborted before the flight started
+			flightData[i].addBranch(status.getFlightData());
+			fireEndSimulation(status, null);
+			flightData[i].getWarningSet().addAll(status.getWarnings());
+		} else {
+			finish(i);
+		}
+	}
+
+
+	/**
+	 * Mask out a flight that has ended.  Like BasicEventSimulationEngine, the listeners are also told about the
+	 * end of a simulation without an exception.
+	 */
+	private void finish(int i) {
+		RK4SimulationStatus status = statuses[i];
+		if (active[i]) {
+			active[i] = false;
+			activeCount--;
+		}
+		flightData[i].addBranch(status.getFlightData());
+		fireEndSimulation(status, null);
+		flightData[i].getWarningSet().addAll(status.getWarnings());
+	}
+
+
+	/**
+	 * Tell the listeners of a flight about its end.  A listener failing there only adds a warning to its flight,
+	 * the flight has already been masked out.
+	 */
+	private void fireEndSimulation(SimulationStatus status, SimulationException e) {
+		try {
+			SimulationListenerHelper.fireEndSimulation(status, e);
+		} catch (RuntimeException failure) {
+			status.getWarnings().add(failure.toString());
+		}
+	}
+
+
+	/**
+	 * RK4 stepper whose structure mass is the one of the whole batch.
+	 */
+	private static class BatchStepper extends RK4SimulationStepper {
+		private final RigidBody structureMass;
+
+		BatchStepper(RigidBody structureMass) {
+			this.structureMass = structureMass;
+		}
+
+		@Override
+		protected RigidBody calculateStructureMass(SimulationStatus status) throws SimulationException {
+			// Call pre-listener
+			RigidBody mass = SimulationListenerHelper.firePreMassCalculation(status);
+			if (mass != null) {
+				return mass;
+			}
+
+			// Call post-listener
+			return SimulationListenerHelper.firePostMassCalculation(status, structureMass);
+		}
+	}
+
+}
@@ -1,10 +1,9 @@
 package net.sf.openrocket.simulation;
 
+import java.util.AbstractList;
 import java.util.Arrays;
-import java.util.HashMap;
-import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Map;
+import java.util.RandomAccess;
 
 import net.sf.openrocket.util.ArrayList;
 import net.sf.openrocket.util.Monitorable;
@@ -22,6 +21,9 @@ import net.sf.openrocket.util.Mutable;
  * will be created and all previous values will be set to NaN.
  * <p>
  * After populating a FlightDataBranch object it can be made immutable by calling {@link #immute()}.
+ * <p>
+ * The values are stored in a primitive column per variable type, found through the ordinal of the type,
+ * so adding points and setting values does not allocate except when the columns grow.
  * 
  * @author Sampo Niskanen <sampo.niskanen@iki.fi>
  */
@@ -30,11 +32,21 @@ public class FlightDataBranch implements Monitorable {
 	/** The name of this flight data branch. */
 	private final String branchName;
 	
-	private final Map<FlightDataType, ArrayList<Double>> values =
-			new LinkedHashMap<FlightDataType, ArrayList<Double>>();
+	/** Small, since some listeners replace the branch of a status on every step */
+	private static final int INITIAL_CAPACITY = 8;
+	
+	/** Column of each type ordinal plus one, zero if the type is not included */
+	private int[] columnOfOrdinal = new int[0];
+	/** Types, values, minimum and maximum of every column, in the order the types were added */
+	private FlightDataType[] types = new FlightDataType[0];
+	private double[][] values = new double[0][];
+	private double[] minValues = new double[0];
+	private double[] maxValues = new double[0];
+	private int numTypes = 0;
 	
-	private final Map<FlightDataType, Double> maxValues = new HashMap<FlightDataType, Double>();
-	private final Map<FlightDataType, Double> minValues = new HashMap<FlightDataType, Double>();
+	/** Number of points, and the length of every column - unset values are NaN */
+	private int length = 0;
+	private int capacity = 0;
 	
 	/**
 	 * time for the rocket to reach apogee if the flight had been no recovery deployment
@@ -65,14 +77,12 @@ public class FlightDataBranch implements Monitorable {
 		this.branchName = name;
 		
 		for (FlightDataType t : types) {
-			if (values.containsKey(t)) {
+			if (column(t) >= 0) {
 				throw new IllegalArgumentException("Value type " + t + " specified multiple " +
 						"times in constructor.");
 			}
 			
-			values.put(t, new ArrayList<Double>());
-			minValues.put(t, Double.NaN);
-			maxValues.put(t, Double.NaN);
+			addColumn(t);
 		}
 	}
 	
@@ -95,9 +105,10 @@ public class FlightDataBranch implements Monitorable {
 	public void addPoint() {
 		mutable.check();
 		
-		for (FlightDataType t : values.keySet()) {
-			values.get(t).add(Double.NaN);
+		if (length == capacity) {
+			grow();
 		}
+		length++;
 		modID++;
 	}
 	
@@ -113,31 +124,23 @@ public class FlightDataBranch implements Monitorable {
 	public void setValue(FlightDataType type, double value) {
 		mutable.check();
 		
-		ArrayList<Double> list = values.get(type);
-		
-		if (list == null) {
-			list = new ArrayList<Double>();
-			int n = getLength();
-			for (int i = 0; i < n; i++) {
-				list.add(Double.NaN);
-			}
-			values.put(type, list);
-			minValues.put(type, value);
-			maxValues.put(type, value);
+		int column = column(type);
+		if (column < 0) {
+			column = addColumn(type);
 		}
 		
-		if (list.size() > 0) {
-			list.set(list.size() - 1, value);
+		if (length > 0) {
+			values[column][length - 1] = value;
 		}
 		
-		double min = minValues.get(type);
-		double max = maxValues.get(type);
+		double min = minValues[column];
+		double max = maxValues[column];
 		
 		if (Double.isNaN(min) || (value < min)) {
-			minValues.put(type, value);
+			minValues[column] = value;
 		}
 		if (Double.isNaN(max) || (value > max)) {
-			maxValues.put(type, value);
+			maxValues[column] = value;
 		}
 		modID++;
 	}
@@ -155,7 +158,7 @@ public class FlightDataBranch implements Monitorable {
 	 * natural order.
 	 */
 	public FlightDataType[] getTypes() {
-		FlightDataType[] array = values.keySet().toArray(new FlightDataType[0]);
+		FlightDataType[] array = Arrays.copyOf(types, numTypes);
 		Arrays.sort(array);
 		return array;
 	}
@@ -164,24 +167,23 @@ public class FlightDataBranch implements Monitorable {
 	 * Return the number of data points in this branch.
 	 */
 	public int getLength() {
-		for (FlightDataType t : values.keySet()) {
-			return values.get(t).size();
-		}
-		return 0;
+		if (numTypes == 0)
+			return 0;
+		return length;
 	}
 	
 	/**
 	 * Return an array of values for the specified variable type.
 	 * 
 	 * @param type	the variable type.
-	 * @return		a list of the variable values, or <code>null</code> if
-	 * 				the variable type hasn't been added to this branch.
+	 * @return		a read-only list of the variable values of the current points, or
+	 * 				<code>null</code> if the variable type hasn't been added to this branch.
 	 */
 	public List<Double> get(FlightDataType type) {
-		ArrayList<Double> list = values.get(type);
-		if (list == null)
+		int column = column(type);
+		if (column < 0)
 			return null;
-		return list.clone();
+		return new ColumnView(values[column], length);
 	}
 	
 	/**
@@ -192,10 +194,10 @@ public class FlightDataBranch implements Monitorable {
 	 * @return		the last value in this branch, or NaN.
 	 */
 	public double getLast(FlightDataType type) {
-		ArrayList<Double> list = values.get(type);
-		if (list == null || list.isEmpty())
+		int column = column(type);
+		if (column < 0 || length == 0)
 			return Double.NaN;
-		return list.get(list.size() - 1);
+		return values[column][length - 1];
 	}
 	
 	/**
@@ -206,10 +208,10 @@ public class FlightDataBranch implements Monitorable {
 	 * @return		the minimum value in this branch, or NaN.
 	 */
 	public double getMinimum(FlightDataType type) {
-		Double v = minValues.get(type);
-		if (v == null)
+		int column = column(type);
+		if (column < 0)
 			return Double.NaN;
-		return v;
+		return minValues[column];
 	}
 	
 	/**
@@ -220,10 +222,10 @@ public class FlightDataBranch implements Monitorable {
 	 * @return		the maximum value in this branch, or NaN.
 	 */
 	public double getMaximum(FlightDataType type) {
-		Double v = maxValues.get(type);
-		if (v == null)
+		int column = column(type);
+		if (column < 0)
 			return Double.NaN;
-		return v;
+		return maxValues[column];
 	}
 	
 	
@@ -344,4 +346,75 @@ public class FlightDataBranch implements Monitorable {
 		return modID;
 	}
 	
+	
+	/**
+	 * Return the column of the type, or -1 if the type has not been added.
+	 */
+	private int column(FlightDataType type) {
+		int ordinal = type.getOrdinal();
+		if (ordinal >= columnOfOrdinal.length)
+			return -1;
+		return columnOfOrdinal[ordinal] - 1;
+	}
+	
+	private int addColumn(FlightDataType type) {
+		int ordinal = type.getOrdinal();
+		if (ordinal >= columnOfOrdinal.length) {
+			columnOfOrdinal = Arrays.copyOf(columnOfOrdinal, Math.max(ordinal + 1, 2 * columnOfOrdinal.length));
+		}
+		if (numTypes == types.length) {
+			int n = Math.max(8, 2 * numTypes);
+			types = Arrays.copyOf(types, n);
+			values = Arrays.copyOf(values, n);
+			minValues = Arrays.copyOf(minValues, n);
+			maxValues = Arrays.copyOf(maxValues, n);
+		}
+		double[] column = new double[capacity];
+		Arrays.fill(column, Double.NaN);
+		types[numTypes] = type;
+		values[numTypes] = column;
+		minValues[numTypes] = Double.NaN;
+		maxValues[numTypes] = Double.NaN;
+		columnOfOrdinal[ordinal] = numTypes + 1;
+		return numTypes++;
+	}
+	
+	/**
+	 * Grow every column, filling the new points with NaN.
+	 */
+	private void grow() {
+		int newCapacity = Math.max(INITIAL_CAPACITY, capacity + (capacity >> 1));
+		for (int i = 0; i < numTypes; i++) {
+			double[] column = Arrays.copyOf(values[i], newCapacity);
+			Arrays.fill(column, capacity, newCapacity, Double.NaN);
+			values[i] = column;
+		}
+		capacity = newCapacity;
+	}
+	
+	/**
+	 * Read-only view of the first points of a column.
+	 */
+	private static class ColumnView extends AbstractList<Double> implements RandomAccess {
+		private final double[] column;
+		private final int size;
+		
+		private ColumnView(double[] column, int size) {
+			this.column = column;
+			this.size = size;
+		}
+		
+		@Override
+		public Double get(int index) {
+			if (index < 0 || index >= size)
+				throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+			return column[index];
+		}
+		
+		@Override
+		public int size() {
+			return size;
+		}
+	}
+	
 }
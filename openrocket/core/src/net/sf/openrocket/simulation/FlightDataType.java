@@ -36,6 +36,9 @@ public class FlightDataType implements Comparable<FlightDataType> {
 	/** NOTE: The String key here is now the symbol */
 	private static final Map<String, FlightDataType> EXISTING_TYPES = new HashMap<String, FlightDataType>();
 	
+	/** Ordinals of the type names, lower case - equal types share their ordinal.  MUST BE DEFINED BEFORE ANY TYPES!! */
+	private static final Map<String, Integer> ORDINALS = new HashMap<String, Integer>();
+	
 	
 	//// Time
 	public static final FlightDataType TYPE_TIME = newType(trans.get("FlightDataType.TYPE_TIME"), "t", UnitGroup.UNITS_FLIGHT_TIME, 1);
@@ -382,6 +385,7 @@ public class FlightDataType implements Comparable<FlightDataType> {
 	private final UnitGroup units;
 	private final int priority;
 	private final int hashCode;
+	private final int ordinal;
 	
 	
 	private FlightDataType(String typeName, String symbol, UnitGroup units, int priority) {
@@ -394,6 +398,16 @@ public class FlightDataType implements Comparable<FlightDataType> {
 		this.units = units;
 		this.priority = priority;
 		this.hashCode = this.name.toLowerCase(Locale.ENGLISH).hashCode();
+		this.ordinal = ordinalOf(this.name.toLowerCase(Locale.ENGLISH));
+	}
+	
+	private static synchronized int ordinalOf(String lowerCaseName) {
+		Integer ordinal = ORDINALS.get(lowerCaseName);
+		if (ordinal == null) {
+			ordinal = ORDINALS.size();
+			ORDINALS.put(lowerCaseName, ordinal);
+		}
+		return ordinal;
 	}
 	
 	/*
@@ -414,6 +428,13 @@ public class FlightDataType implements Comparable<FlightDataType> {
 		return units;
 	}
 	
+	/**
+	 * A small index of this type, the same for all equal types.  Used by FlightDataBranch to find its column.
+	 */
+	int getOrdinal() {
+		return ordinal;
+	}
+	
 	@Override
 	public String toString() {
 		return name; //+" ("+symbol+") "+units.getDefaultUnit().toString();
@@ -63,6 +63,21 @@ public class RK4SimulationStepper extends AbstractSimulationStepper {
 	
 	private Random random;
 	
+	/*
+	 * Scratch objects of step(), reused on every step instead of allocating them per step.
+	 * A stepper is only used by the thread of its simulation.
+	 */
+	private final DataStore store = new DataStore();
+	private final RK4Parameters k1 = new RK4Parameters();
+	private final RK4Parameters k2 = new RK4Parameters();
+	private final RK4Parameters k3 = new RK4Parameters();
+	private final RK4Parameters k4 = new RK4Parameters();
+	private final double[] dt = new double[8];
+	private final MutableVector delta = new MutableVector();
+	private RK4SimulationStatus status2;
+	private RK4SimulationStatus status2Source;
+	private int status2SourceModID;
+	
 	
 	
 	
@@ -93,12 +108,108 @@ public class RK4SimulationStepper extends AbstractSimulationStepper {
 	public void step(SimulationStatus simulationStatus, double maxTimeStep) throws SimulationException {
 		
 		RK4SimulationStatus status = (RK4SimulationStatus) simulationStatus;
-		DataStore store = new DataStore();
+		startStep(status, maxTimeStep);
 		
-		////////  Perform RK4 integration:  ////////
+
+		//// Second position, k2 = f(t + h/2, y + k1*h/2)
+		
+		computeParameters(intermediateStatus(status, k1, store.timestep / 2), store, k2);
+		
+
+		//// Third position, k3 = f(t + h/2, y + k2*h/2)
+		
+		computeParameters(intermediateStatus(status, k2, store.timestep / 2), store, k3);
+		
+
+		//// Fourth position, k4 = f(t + h, y + k3*h)
+		
+		computeParameters(intermediateStatus(status, k3, store.timestep), store, k4);
+		
+
+		//// Sum all together,  y(n+1) = y(n) + h*(k1 + 2*k2 + 2*k3 + k4)/6
+		status.setRocketVelocity(delta.setRK4Sum(k1.a, k2.a, k3.a, k4.a, store.timestep).addTo(status.getRocketVelocity()));
+		status.setRocketPosition(delta.setRK4Sum(k1.v, k2.v, k3.v, k4.v, store.timestep).addTo(status.getRocketPosition()));
+		status.setRocketRotationVelocity(delta.setRK4Sum(k1.ra, k2.ra, k3.ra, k4.ra, store.timestep).addTo(status.getRocketRotationVelocity()));
+		status.setRocketOrientationQuaternion(delta.setRK4Sum(k1.rv, k2.rv, k3.rv, k4.rv, store.timestep).rotate(status.getRocketOrientationQuaternion()).normalizeIfNecessary());
+		
+		WorldCoordinate w = status.getSimulationConditions().getLaunchSite();
+		w = status.getSimulationConditions().getGeodeticComputation().addCoordinate(w, status.getRocketPosition());
+		status.setRocketWorldPosition(w);
+		
+		if (!(0 <= store.timestep)) {
+			// Also catches NaN
+			throw new IllegalArgumentException("Stepping backwards in time, timestep=" +store.timestep);
+		}
+		status.setSimulationTime(status.getSimulationTime() + store.timestep);
 		
-		RK4SimulationStatus status2;
-		RK4Parameters k1, k2, k3, k4;
+		status.setPreviousTimeStep(store.timestep);
+		
+		// Verify that values don't run out of range
+		if (status.getRocketVelocity().length2() > 1e18 ||
+				status.getRocketPosition().length2() > 1e18 ||
+				status.getRocketRotationVelocity().length2() > 1e18) {
+			throw new SimulationCalculationException(trans.get("error.valuesTooLarge"));
+		}
+	}
+	
+	
+	/*
+	 * The stages of a step for BatchSimulationEngine, which evaluates every stage over the whole batch before
+	 * the next one and sums the stages itself.  The derivatives are written into k at offset as the linear
+	 * acceleration, velocity, rotational acceleration and rotational velocity, x, y and z each.
+	 */
+	
+	/**
+	 * Start a step like step() does:  evaluate the first stage at status, select the time step and store the
+	 * flight data of the step.
+	 * 
+	 * @return	the length of the step
+	 */
+	double startStep(RK4SimulationStatus status, double maxTimeStep, double[] k, int offset) throws SimulationException {
+		startStep(status, maxTimeStep);
+		k1.copyTo(k, offset);
+		return store.timestep;
+	}
+	
+	/**
+	 * Evaluate a later stage of the step at the intermediate state, a scratch copy of status returned by
+	 * intermediateStatus(status) whose time and state the caller has advanced.
+	 */
+	void evaluateStage(RK4SimulationStatus intermediate, double[] k, int offset) throws SimulationException {
+		computeParameters(intermediate, store, k2);
+		k2.copyTo(k, offset);
+	}
+	
+	/**
+	 * A shallow copy of status like status.clone().  The copy is cloned again only when status has changed since
+	 * the last call, i.e. once per step, and between the stages of a step the same scratch object is returned with
+	 * the state that the evaluation of a stage overwrites reset to that of status.
+	 */
+	RK4SimulationStatus intermediateStatus(RK4SimulationStatus status) {
+		if (status2 == null || status2Source != status || status2SourceModID != status.getModID()) {
+			status2 = status.clone();
+			status2Source = status;
+			status2SourceModID = status.getModID();
+		} else {
+			status2.setSimulationTime(status.getSimulationTime());
+			status2.setRocketPosition(status.getRocketPosition());
+			status2.setRocketVelocity(status.getRocketVelocity());
+			status2.setRocketOrientationQuaternion(status.getRocketOrientationQuaternion());
+			status2.setRocketRotationVelocity(status.getRocketRotationVelocity());
+			status2.setMaxZVelocity(status.getMaxZVelocity());
+			status2.setStartWarningTime(status.getStartWarningTime());
+		}
+		return status2;
+	}
+	
+	
+	/**
+	 * The first stage of a step, up to the selection of the time step and storing the flight data.
+	 */
+	private void startStep(RK4SimulationStatus status, double maxTimeStep) throws SimulationException {
+		store.reset();
+		
+		////////  Perform RK4 integration:  ////////
 		
 		/*
 		 * Start with previous time step which is used to compute the initial thrust estimate.
@@ -121,7 +232,7 @@ public class RK4SimulationStepper extends AbstractSimulationStepper {
 
 		//// First position, k1 = f(t, y)
 		
-		k1 = computeParameters(status, store);
+		computeParameters(status, store, k1);
 		
 		/*
 		 * Select the actual time step to use.  It is the minimum of the following:
@@ -139,7 +250,6 @@ public class RK4SimulationStepper extends AbstractSimulationStepper {
 		 * 
 		 * The step is still at least 1/20th of the user-selected time step.
 		 */
-		double[] dt = new double[8];
 		Arrays.fill(dt, Double.MAX_VALUE);
 
 		// If the user selected a really small timestep, use MIN_TIME_STEP instead.
@@ -196,7 +306,7 @@ public class RK4SimulationStepper extends AbstractSimulationStepper {
 						" timestep=" + store.timestep +
 						", recomputing k1 parameters");
 				 */
-				k1 = computeParameters(status, store);
+				computeParameters(status, store, k1);
 			} else {
 				// MODIFIED CODE HERE log.trace("Thrust estimate differs from correct value by " +
 				/*
@@ -212,89 +322,29 @@ public class RK4SimulationStepper extends AbstractSimulationStepper {
 		// Store data
 		// TODO: MEDIUM: Store acceleration etc of entire RK4 step, store should be cloned or something...
 		storeData(status, store);
-		
-
-		//// Second position, k2 = f(t + h/2, y + k1*h/2)
-		
-		status2 = status.clone();
-		status2.setSimulationTime(status.getSimulationTime() + store.timestep / 2);
-		status2.setRocketPosition(status.getRocketPosition().add(k1.v.multiply(store.timestep / 2)));
-		status2.setRocketVelocity(status.getRocketVelocity().add(k1.a.multiply(store.timestep / 2)));
-		status2.setRocketOrientationQuaternion(status.getRocketOrientationQuaternion().multiplyLeft(Quaternion.rotation(k1.rv.multiply(store.timestep / 2))));
-		status2.setRocketRotationVelocity(status.getRocketRotationVelocity().add(k1.ra.multiply(store.timestep / 2)));
-		
-		k2 = computeParameters(status2, store);
-		
-
-		//// Third position, k3 = f(t + h/2, y + k2*h/2)
-		
-		status2 = status.clone();
-		status2.setSimulationTime(status.getSimulationTime() + store.timestep / 2);
-		status2.setRocketPosition(status.getRocketPosition().add(k2.v.multiply(store.timestep / 2)));
-		status2.setRocketVelocity(status.getRocketVelocity().add(k2.a.multiply(store.timestep / 2)));
-		status2.setRocketOrientationQuaternion(status2.getRocketOrientationQuaternion().multiplyLeft(Quaternion.rotation(k2.rv.multiply(store.timestep / 2))));
-		status2.setRocketRotationVelocity(status.getRocketRotationVelocity().add(k2.ra.multiply(store.timestep / 2)));
-		
-		k3 = computeParameters(status2, store);
-		
-
-		//// Fourth position, k4 = f(t + h, y + k3*h)
-		
-		status2 = status.clone();
-		status2.setSimulationTime(status.getSimulationTime() + store.timestep);
-		status2.setRocketPosition(status.getRocketPosition().add(k3.v.multiply(store.timestep)));
-		status2.setRocketVelocity(status.getRocketVelocity().add(k3.a.multiply(store.timestep)));
-		status2.setRocketOrientationQuaternion(status2.getRocketOrientationQuaternion().multiplyLeft(Quaternion.rotation(k3.rv.multiply(store.timestep))));
-		status2.setRocketRotationVelocity(status.getRocketRotationVelocity().add(k3.ra.multiply(store.timestep)));
-		
-		k4 = computeParameters(status2, store);
-		
-
-		//// Sum all together,  y(n+1) = y(n) + h*(k1 + 2*k2 + 2*k3 + k4)/6
-		Coordinate deltaV, deltaP, deltaR, deltaO;
-		deltaV = k2.a.add(k3.a).multiply(2).add(k1.a).add(k4.a).multiply(store.timestep / 6);
-		deltaP = k2.v.add(k3.v).multiply(2).add(k1.v).add(k4.v).multiply(store.timestep / 6);
-		deltaR = k2.ra.add(k3.ra).multiply(2).add(k1.ra).add(k4.ra).multiply(store.timestep / 6);
-		deltaO = k2.rv.add(k3.rv).multiply(2).add(k1.rv).add(k4.rv).multiply(store.timestep / 6);
-		
-
-		status.setRocketVelocity(status.getRocketVelocity().add(deltaV));
-		status.setRocketPosition(status.getRocketPosition().add(deltaP));
-		status.setRocketRotationVelocity(status.getRocketRotationVelocity().add(deltaR));
-		status.setRocketOrientationQuaternion(status.getRocketOrientationQuaternion().multiplyLeft(Quaternion.rotation(deltaO)).normalizeIfNecessary());
-		
-		WorldCoordinate w = status.getSimulationConditions().getLaunchSite();
-		w = status.getSimulationConditions().getGeodeticComputation().addCoordinate(w, status.getRocketPosition());
-		status.setRocketWorldPosition(w);
-		
-		if (!(0 <= store.timestep)) {
-			// Also catches NaN
-			throw new IllegalArgumentException("Stepping backwards in time, timestep=" +store.timestep);
-		}
-		status.setSimulationTime(status.getSimulationTime() + store.timestep);
-		
-		status.setPreviousTimeStep(store.timestep);
-		
-		// Verify that values don't run out of range
-		if (status.getRocketVelocity().length2() > 1e18 ||
-				status.getRocketPosition().length2() > 1e18 ||
-				status.getRocketRotationVelocity().length2() > 1e18) {
-			throw new SimulationCalculationException(trans.get("error.valuesTooLarge"));
-		}
 	}
 	
 	
 
 
 
-	private RK4Parameters computeParameters(RK4SimulationStatus status, DataStore dataStore)
+	/**
+	 * The state of an intermediate RK4 position, status advanced by the derivatives k for the time h.  The state
+	 * is a shallow copy of status like status.clone(), see intermediateStatus(status).
+	 */
+	private RK4SimulationStatus intermediateStatus(RK4SimulationStatus status, RK4Parameters k, double h) {
+		RK4SimulationStatus status2 = intermediateStatus(status);
+		status2.setSimulationTime(status.getSimulationTime() + h);
+		status2.setRocketPosition(delta.setScaled(k.v, h).addTo(status.getRocketPosition()));
+		status2.setRocketVelocity(delta.setScaled(k.a, h).addTo(status.getRocketVelocity()));
+		status2.setRocketOrientationQuaternion(delta.setScaled(k.rv, h).rotate(status.getRocketOrientationQuaternion()));
+		status2.setRocketRotationVelocity(delta.setScaled(k.ra, h).addTo(status.getRocketRotationVelocity()));
+		return status2;
+	}
+	
+	
+	private void computeParameters(RK4SimulationStatus status, DataStore dataStore, RK4Parameters params)
 			throws SimulationException {
-		RK4Parameters params = new RK4Parameters();
-		
-		//		if (dataStore == null) {
-		//			dataStore = new DataStore();
-		//		}
-
 		dataStore.coriolisAcceleration = status.getSimulationConditions().getGeodeticComputation()
 				.getCoriolisAcceleration(status.getRocketWorldPosition(), status.getRocketVelocity());
 		
@@ -308,8 +358,6 @@ public class RK4SimulationStepper extends AbstractSimulationStepper {
 		checkNaN(params.ra);
 		checkNaN(params.v);
 		checkNaN(params.rv);
-		
-		return params;
 	}
 	
 	
@@ -732,6 +780,21 @@ public class RK4SimulationStepper extends AbstractSimulationStepper {
 		public Coordinate ra;
 		/** Rotational velocity */
 		public Coordinate rv;
+		
+		void copyTo(double[] k, int offset) {
+			k[offset] = a.x;
+			k[offset + 1] = a.y;
+			k[offset + 2] = a.z;
+			k[offset + 3] = v.x;
+			k[offset + 4] = v.y;
+			k[offset + 5] = v.z;
+			k[offset + 6] = ra.x;
+			k[offset + 7] = ra.y;
+			k[offset + 8] = ra.z;
+			k[offset + 9] = rv.x;
+			k[offset + 10] = rv.y;
+			k[offset + 11] = rv.z;
+		}
 	}
 	
 	private static class DataStore {
@@ -767,6 +830,89 @@ public class RK4SimulationStepper extends AbstractSimulationStepper {
 		
 		public Rotation2D thetaRotation;
 		
+		public void reset() {
+			timestep = Double.NaN;
+			accelerationData = null;
+			atmosphericConditions = null;
+			flightConditions = null;
+			longitudinalAcceleration = Double.NaN;
+			rocketMass = null;
+			motorMass = null;
+			coriolisAcceleration = null;
+			linearAcceleration = null;
+			angularAcceleration = null;
+			forces = null;
+			windSpeed = Double.NaN;
+			gravity = Double.NaN;
+			thrustForce = Double.NaN;
+			dragForce = Double.NaN;
+			lateralPitchRate = Double.NaN;
+			rollAcceleration = Double.NaN;
+			lateralPitchAcceleration = Double.NaN;
+			thetaRotation = null;
+		}
+	}
+	
+	/**
+	 * Mutable vector for the arithmetic of the RK4 integration.  The results are computed in the same order of
+	 * operations as the immutable Coordinate and Quaternion methods they replace, so the trajectories stay
+	 * identical, but only the final Coordinate or Quaternion is allocated.
+	 */
+	static final class MutableVector {
+		double x, y, z, weight;
+		
+		/** Set to c.multiply(m). */
+		MutableVector setScaled(Coordinate c, double m) {
+			x = c.x * m;
+			y = c.y * m;
+			z = c.z * m;
+			weight = c.weight * m;
+			return this;
+		}
+		
+		/** Set to k2.add(k3).multiply(2).add(k1).add(k4).multiply(h / 6). */
+		MutableVector setRK4Sum(Coordinate k1, Coordinate k2, Coordinate k3, Coordinate k4, double h) {
+			double m = h / 6;
+			x = ((k2.x + k3.x) * 2 + k1.x + k4.x) * m;
+			y = ((k2.y + k3.y) * 2 + k1.y + k4.y) * m;
+			z = ((k2.z + k3.z) * 2 + k1.z + k4.z) * m;
+			weight = ((k2.weight + k3.weight) * 2 + k1.weight + k4.weight) * m;
+			return this;
+		}
+		
+		/** Return base.add(this). */
+		Coordinate addTo(Coordinate base) {
+			return new Coordinate(base.x + x, base.y + y, base.z + z, base.weight + weight);
+		}
+		
+		/** Return orientation.multiplyLeft(Quaternion.rotation(this)). */
+		Quaternion rotate(Quaternion orientation) {
+			return rotate(orientation.getW(), orientation.getX(), orientation.getY(), orientation.getZ());
+		}
+		
+		/** Return the orientation (w, qx, qy, qz) multiplied left by Quaternion.rotation(this). */
+		Quaternion rotate(double w, double qx, double qy, double qz) {
+			double a, b, c, d;
+			double length = MathUtil.safeSqrt(x * x + y * y + z * z);
+			if (length < 0.000001) {
+				a = 1;
+				b = 0;
+				c = 0;
+				d = 0;
+			} else {
+				double sin = Math.sin(length / 2);
+				a = Math.cos(length / 2);
+				b = sin * x / length;
+				c = sin * y / length;
+				d = sin * z / length;
+			}
+			
+			return new Quaternion(
+					a * w - b * qx - c * qy - d * qz,
+					a * qx + b * w + c * qz - d * qy,
+					a * qy + c * w + d * qx - b * qz,
+					a * qz + d * w + b * qy - c * qx);
+		}
 	}
 	
 }
@@ -5,12 +5,12 @@ import com.google.gson.GsonBuilder;
 import net.sf.openrocket.simulation.FlightDataBranch;
 import net.sf.openrocket.simulation.FlightDataType;
 import net.sf.openrocket.simulation.SimulationStatus;
+import net.sf.openrocket.simulation.extension.impl.rocketlander.RLEpisodeRandom;
 import net.sf.openrocket.simulation.extension.impl.rocketlander.RLModelSingleton;
 import net.sf.openrocket.util.Coordinate;
 import net.sf.openrocket.util.Quaternion;
 
 import java.io.Serializable;
-import java.util.Random;
 
 public class InitialConditions implements Serializable {
     private static Gson gson = new GsonBuilder().setPrettyPrinting().create();
@@ -76,7 +76,7 @@ public class InitialConditions implements Serializable {
     }
 
     private static double calculateNumberInRange(double[] minMax) {
-        return minMax[0] + new Random().nextDouble() * (minMax[1] - minMax[0]);
+        return minMax[0] + RLEpisodeRandom.current().nextDouble() * (minMax[1] - minMax[0]);
     }
 
     private Coordinate calculatePositionCoordinate() {
@@ -0,0 +1,236 @@
+package net.sf.openrocket.simulation.extension.impl.rocketlander;
+
+import net.sf.openrocket.simulation.extension.impl.rocketlander.StateActionTuple.*;
+import net.sf.openrocket.simulation.extension.impl.rocketlander.customexpressions.Expression;
+
+import java.util.*;
+
+/**
+ * Every action an MDPDefinition can choose from for one symmetry axis, enumerated once and shared by all simulations.
+ *
+ * The candidates are enumerated in value function order, so for a definition without child MDP selections the
+ * action values of a state are the contiguous slice [stateIndex, stateIndex + size) of its value function.  The part
+ * of the fallback reward that only depends on the action is evaluated once per candidate.
+ *
+ * Child MDP fields that are decided by MDPSelectionExpressions depend on the state, so their candidates are
+ * enumerated with every child MDP and filtered by the selected child in getCandidates.
+ */
+public class ActionEnumeration {
+    private final MDPDefinition definition;
+    private final Expression reward;
+    private final Expression[] expressionList;
+
+    /** templates of the candidates - never modified, hand out copies only **/
+    private final Action[] actions;
+    private final int[] actionIndeces;
+    private final float[] actionRewards;
+
+    /** fields whose value is chosen by MDPSelectionExpressions and their value for every candidate **/
+    private final String[] selectionFields;
+    private final int[][] selectionValues;
+
+    /** distinct candidates when no selection is needed **/
+    private final int[] candidates;
+
+    public static ActionEnumeration get(MDPDefinition definition, String symmetry) {
+        int cacheIndex = cacheIndex(symmetry);
+        if (cacheIndex == -1) return new ActionEnumeration(definition, symmetry);
+
+        ActionEnumeration[] cache = definition.actionEnumerations;
+        if (cache == null) {
+            cache = new ActionEnumeration[3];
+            definition.actionEnumerations = cache;
+        }
+        ActionEnumeration enumeration = cache[cacheIndex];
+        if ((enumeration == null) || !enumeration.isValidFor(definition)) {
+            // concurrent builds produce identical enumerations - the last one wins
+            enumeration = new ActionEnumeration(definition, symmetry);
+            cache[cacheIndex] = enumeration;
+        }
+        return enumeration;
+    }
+
+    private static int cacheIndex(String symmetry) {
+        if (symmetry == null) return 0;
+        if (symmetry.equals("X")) return 1;
+        if (symmetry.equals("Y")) return 2;
+        return -1;
+    }
+
+    private boolean isValidFor(MDPDefinition definition) {
+        return (this.definition == definition) && (reward == definition._reward) && (expressionList == definition.expressionList);
+    }
+
+    private ActionEnumeration(MDPDefinition definition, String symmetry) {
+        this.definition = definition;
+        this.reward = definition._reward;
+        this.expressionList = definition.expressionList;
+
+        ArrayList<String> actionStrings = new ArrayList<>();  // these have actual components (e.g. gimbalX - NOT gimbal)
+        ArrayList<int[]> possibleActionInts = new ArrayList<>();
+        ArrayList<String> selectionFieldList = new ArrayList<>();
+
+        HashSet<String> symmetryAxes = definition.symmetryAxesHashSet;
+        int index = 0;
+        for (String actionField: definition.actionDefinitionFields) {
+            String realField = actionField;
+            if ((symmetryAxes != null) && symmetryAxes.contains(actionField))
+                realField += symmetry;
+            actionStrings.add(realField);
+            if ((definition.childrenMDPOptions != null) && definition.childrenMDPOptions.containsKey(realField)) {
+                possibleActionInts.add(childMDPInts(definition, realField, selectionFieldList));
+            } else {
+                int[] minMax = definition.actionDefinitionIntegers[index];
+                int[] values = new int[minMax[1] - minMax[0] + 1];
+                for (int i = 0; i < values.length; i++)
+                    values[i] = minMax[0] + i;
+                possibleActionInts.add(values);
+            }
+            index++;
+        }
+
+        if (definition.childrenMDPOptions != null) {
+            for (String field: definition.childrenMDPOptions.keySet()) {
+                // if already choosing the child MDP in the actionDefinition skip this logic - else it's needed to still compute children
+                if (definition.actionDefinition.containsKey(field))
+                    continue;
+                actionStrings.add(field);
+                possibleActionInts.add(childMDPInts(definition, field, selectionFieldList));
+            }
+        }
+
+        int size = actionStrings.size();
+        int[] actionSlots = new int[size];
+        int[] indeces = new int[size];
+        int[] maxIndeces = new int[size];
+        int numActions = 1;
+        for (int i = 0; i < size; i++) {
+            actionSlots[i] = FieldSlotRegistry.slot(actionStrings.get(i));
+            maxIndeces[i] = possibleActionInts.get(i).length - 1;
+            numActions *= possibleActionInts.get(i).length;
+        }
+
+        selectionFields = selectionFieldList.toArray(new String[selectionFieldList.size()]);
+        int[] selectionPositions = new int[selectionFields.length];
+        for (int i = 0; i < selectionFields.length; i++)
+            selectionPositions[i] = actionStrings.indexOf(selectionFields[i]);
+
+        actions = new Action[numActions];
+        actionIndeces = new int[numActions];
+        actionRewards = new float[numActions];
+        selectionValues = new int[numActions][selectionFields.length];
+        for (int a = 0; a < numActions; a++) {
+            int[] actionValues = new int[size];
+            for (int i = 0; i < size; i++)
+                actionValues[i] = possibleActionInts.get(i)[indeces[i]];
+            Action action = new Action(actionSlots, actionValues, definition);
+            action.setSymmetry(symmetry, true);
+
+            actions[a] = action;
+            actionIndeces[a] = MDPDefinition.computeIndexAction(action);
+            actionRewards[a] = (reward == null) ? 0.0f : reward.evaluateFloat(action);
+            for (int i = 0; i < selectionFields.length; i++)
+                selectionValues[a][i] = actionValues[selectionPositions[i]];
+            incrementIndeces(indeces, maxIndeces);
+        }
+
+        candidates = distinctActions(allCandidates(numActions));
+    }
+
+    private static int[] childMDPInts(MDPDefinition definition, String field, ArrayList<String> selectionFieldList) {
+        if ((definition._MDPSelectionExpressions != null) && definition._MDPSelectionExpressions.containsKey(field)) {
+            // any child can be selected - filtered once the state is known
+            selectionFieldList.add(field);
+            int[] values = new int[definition.childrenMDPIntegerOptions.size()];
+            for (int i = 0; i < values.length; i++)
+                values[i] = i;
+            return values;
+        }
+        String[] MDPNames = definition.childrenMDPOptions.get(field);
+        LinkedHashSet<Integer> values = new LinkedHashSet<>();
+        for (String MDPName: MDPNames)
+            values.add(definition.childrenMDPIntegerOptions.get(MDPName));
+        int[] result = new int[values.size()];
+        int i = 0;
+        for (int value: values)
+            result[i++] = value;
+        return result;
+    }
+
+    private static boolean incrementIndeces(int[] indeces, int[] maxIndeces) {
+        for (int position = indeces.length - 1; position >= 0; position--) {
+            if (indeces[position] < maxIndeces[position]) {
+                indeces[position] += 1;
+                return true;
+            }
+            indeces[position] = 0;
+        }
+        return false;
+    }
+
+    private static int[] allCandidates(int numActions) {
+        int[] all = new int[numActions];
+        for (int i = 0; i < numActions; i++)
+            all[i] = i;
+        return all;
+    }
+
+    /**
+     * Actions that only differ in fields outside of the actionDefinition are equal - keep the first one only.
+     */
+    private int[] distinctActions(int[] selected) {
+        int[] distinct = new int[selected.length];
+        int numDistinct = 0;
+        for (int candidate: selected) {
+            boolean duplicate = false;
+            for (int i = 0; i < numDistinct; i++) {
+                if ((actionIndeces[distinct[i]] == actionIndeces[candidate]) && actions[distinct[i]].equals(actions[candidate])) {
+                    duplicate = true;
+                    break;
+                }
+            }
+            if (!duplicate)
+                distinct[numDistinct++] = candidate;
+        }
+        return (numDistinct == distinct.length) ? distinct : Arrays.copyOf(distinct, numDistinct);
+    }
+
+    public boolean needsSelection() {
+        return selectionFields.length != 0;
+    }
+
+    public String[] getSelectionFields() {
+        return selectionFields;
+    }
+
+    /**
+     * @param selectedValues the selected child MDP integer of every selection field, or -1 if there is none
+     * @return the candidates that may be chosen, shared when no selection is needed
+     */
+    public int[] getCandidates(int[] selectedValues) {
+        if (!needsSelection()) return candidates;
+
+        int[] selected = new int[actions.length];
+        int numSelected = 0;
+        for (int a = 0; a < actions.length; a++) {
+            boolean matches = true;
+            for (int i = 0; i < selectionFields.length; i++)
+                matches = matches && (selectionValues[a][i] == selectedValues[i]);
+            if (matches)
+                selected[numSelected++] = a;
+        }
+        return distinctActions(Arrays.copyOf(selected, numSelected));
+    }
+
+    public int getActionIndex(int candidate) {
+        return actionIndeces[candidate];
+    }
+
+    public float getActionReward(int candidate) {
+        return actionRewards[candidate];
+    }
+
+    public Action copyAction(int candidate) {
+        return actions[candidate].deepcopy();
+    }
+}
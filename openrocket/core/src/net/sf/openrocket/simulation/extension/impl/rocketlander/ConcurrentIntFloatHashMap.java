@@ -0,0 +1,248 @@
+package net.sf.openrocket.simulation.extension.impl.rocketlander;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Primitive int to float hash map used by the sparse value functions.
+ *
+ * Open addressing with linear probing, split into independently locked segments.  Reads never lock: they probe
+ * the current table of a segment, which is only ever replaced as a whole when the segment grows.  Writes lock
+ * their segment.  Entries cost 16 bytes at the maximum load factor of 1/2, compared to roughly 80 bytes for a
+ * HashMap<Integer, Float> entry with its boxed key and value.
+ *
+ * Keys must be non-negative (value function indices).  Absent keys read as 0.0f like unvisited table entries.
+ */
+public class ConcurrentIntFloatHashMap implements Serializable {
+    private static final long serialVersionUID = -5396562928520124910L;
+
+    private static final int EMPTY = -1;
+    private static final int SEGMENT_BITS = 6;
+    private static final int NUM_SEGMENTS = 1 << SEGMENT_BITS;
+    private static final int INITIAL_SEGMENT_CAPACITY = 16;
+
+    private transient Segment[] segments;
+
+    public interface EntryConsumer {
+        void accept(int key, float value);
+    }
+
+    public ConcurrentIntFloatHashMap() {
+        initializeSegments();
+    }
+
+    private void initializeSegments() {
+        segments = new Segment[NUM_SEGMENTS];
+        for (int i = 0; i < NUM_SEGMENTS; i++)
+            segments[i] = new Segment();
+    }
+
+    private static int hash(int key) {
+        // murmur3 finalizer - value function indices of neighbouring states are consecutive
+        int h = key;
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    private Segment segmentFor(int hash) {
+        return segments[hash >>> (32 - SEGMENT_BITS)];
+    }
+
+    public float get(int key) {
+        int hash = hash(key);
+        Table table = segmentFor(hash).table;
+        int mask = table.mask;
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            int slotKey = table.keys.get(slot);
+            if (slotKey == key) return Float.intBitsToFloat(table.values.get(slot));
+            if (slotKey == EMPTY) return 0.0f;
+        }
+    }
+
+    public boolean containsKey(int key) {
+        int hash = hash(key);
+        Table table = segmentFor(hash).table;
+        int mask = table.mask;
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            int slotKey = table.keys.get(slot);
+            if (slotKey == key) return true;
+            if (slotKey == EMPTY) return false;
+        }
+    }
+
+    public void put(int key, float value) {
+        if (key < 0) throw new IllegalArgumentException("Negative key " + key);
+        int hash = hash(key);
+        Segment segment = segmentFor(hash);
+        synchronized (segment) {
+            segment.values(hash, key).set(segment.lastSlot, Float.floatToRawIntBits(value));
+        }
+    }
+
+    /**
+     * value = value + alpha * (target - value), with absent keys starting from 0.0f
+     *
+     * @return the updated value
+     */
+    public float updateTowards(int key, float target, float alpha) {
+        if (key < 0) throw new IllegalArgumentException("Negative key " + key);
+        int hash = hash(key);
+        Segment segment = segmentFor(hash);
+        synchronized (segment) {
+            AtomicIntegerArray values = segment.values(hash, key);
+            float oldValue = Float.intBitsToFloat(values.get(segment.lastSlot));
+            float newValue = oldValue + alpha * (target - oldValue);
+            values.set(segment.lastSlot, Float.floatToRawIntBits(newValue));
+            return newValue;
+        }
+    }
+
+    /**
+     * value = value + delta, with absent keys starting from 0.0f
+     *
+     * @return the updated value
+     */
+    public float add(int key, float delta) {
+        if (key < 0) throw new IllegalArgumentException("Negative key " + key);
+        int hash = hash(key);
+        Segment segment = segmentFor(hash);
+        synchronized (segment) {
+            AtomicIntegerArray values = segment.values(hash, key);
+            float newValue = Float.intBitsToFloat(values.get(segment.lastSlot)) + delta;
+            values.set(segment.lastSlot, Float.floatToRawIntBits(newValue));
+            return newValue;
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment: segments) {
+            synchronized (segment) {
+                size += segment.size;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Visit every entry.  Each segment is locked while it is visited, so every segment is seen consistently.
+     */
+    public void forEach(EntryConsumer consumer) {
+        for (Segment segment: segments) {
+            synchronized (segment) {
+                Table table = segment.table;
+                for (int slot = 0; slot <= table.mask; slot++) {
+                    int key = table.keys.get(slot);
+                    if (key != EMPTY)
+                        consumer.accept(key, Float.intBitsToFloat(table.values.get(slot)));
+                }
+            }
+        }
+    }
+
+    public ConcurrentIntFloatHashMap copy() {
+        ConcurrentIntFloatHashMap copy = new ConcurrentIntFloatHashMap();
+        forEach(copy::put);
+        return copy;
+    }
+
+    /** Compact serialization: the entry count followed by the (key, value) pairs. **/
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        ConcurrentIntFloatHashMap snapshot = copy();
+        out.writeInt(snapshot.size());
+        for (Segment segment: snapshot.segments) {
+            Table table = segment.table;
+            for (int slot = 0; slot <= table.mask; slot++) {
+                int key = table.keys.get(slot);
+                if (key == EMPTY) continue;
+                out.writeInt(key);
+                out.writeFloat(Float.intBitsToFloat(table.values.get(slot)));
+            }
+        }
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        initializeSegments();
+        int size = in.readInt();
+        for (int i = 0; i < size; i++) {
+            int key = in.readInt();
+            put(key, in.readFloat());
+        }
+    }
+
+    /*
+    Private implementation.  Details.
+     */
+
+    private static final class Table {
+        final AtomicIntegerArray keys;
+        final AtomicIntegerArray values;
+        final int mask;
+
+        Table(int capacity) {
+            keys = new AtomicIntegerArray(capacity);
+            values = new AtomicIntegerArray(capacity);
+            mask = capacity - 1;
+            for (int i = 0; i < capacity; i++)
+                keys.lazySet(i, EMPTY);
+        }
+    }
+
+    private static final class Segment {
+        volatile Table table = new Table(INITIAL_SEGMENT_CAPACITY);
+        int size = 0;
+        int lastSlot = -1;
+
+        /**
+         * Find or insert the slot of key and return the values array it lives in.  The slot is left in lastSlot.
+         * Must hold the segment lock.
+         */
+        AtomicIntegerArray values(int hash, int key) {
+            if ((size + 1) * 2 > table.mask + 1)
+                grow();
+            Table current = table;
+            int mask = current.mask;
+            for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+                int slotKey = current.keys.get(slot);
+                if (slotKey == key) {
+                    lastSlot = slot;
+                    return current.values;
+                }
+                if (slotKey == EMPTY) {
+                    // value is zero in a fresh slot, so readers that see the key also see a valid value
+                    current.keys.set(slot, key);
+                    size++;
+                    lastSlot = slot;
+                    return current.values;
+                }
+            }
+        }
+
+        private void grow() {
+            Table oldTable = table;
+            Table newTable = new Table((oldTable.mask + 1) * 2);
+            int newMask = newTable.mask;
+            for (int oldSlot = 0; oldSlot <= oldTable.mask; oldSlot++) {
+                int key = oldTable.keys.get(oldSlot);
+                if (key == EMPTY) continue;
+                int slot = hash(key) & newMask;
+                while (newTable.keys.get(slot) != EMPTY)
+                    slot = (slot + 1) & newMask;
+                newTable.values.lazySet(slot, oldTable.values.get(oldSlot));
+                newTable.keys.lazySet(slot, key);
+            }
+            // publishing through the volatile field makes the lazily written entries visible to readers
+            table = newTable;
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package net.sf.openrocket.simulation.extension.impl.rocketlander;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Interns the state and action field names into dense integer slots.
+ *
+ * Slots are shared by every MDPDefinition, so the int[] values of a State or Action can be read and copied across
+ * definitions of a hierarchy without any name lookups.  Names are registered once (definition setup, expression
+ * parsing) and never removed.
+ */
+public class FieldSlotRegistry {
+    private static final ConcurrentHashMap<String, Integer> slots = new ConcurrentHashMap<>();
+    private static volatile String[] names = new String[0];
+
+    private FieldSlotRegistry() {}
+
+    /**
+     * @return the slot of the field, registering it if needed
+     */
+    public static int slot(String field) {
+        Integer slot = slots.get(field);
+        if (slot != null) return slot;
+        return register(field);
+    }
+
+    /**
+     * @return the slot of the field, or -1 if no definition or expression ever used it
+     */
+    public static int lookup(String field) {
+        Integer slot = slots.get(field);
+        if (slot == null) return -1;
+        return slot;
+    }
+
+    public static int size() {
+        return names.length;
+    }
+
+    public static String name(int slot) {
+        return names[slot];
+    }
+
+    private static synchronized int register(String field) {
+        Integer slot = slots.get(field);
+        if (slot != null) return slot;
+        String[] newNames = Arrays.copyOf(names, names.length + 1);
+        newNames[names.length] = field;
+        names = newNames;
+        slots.put(field, names.length - 1);
+        return names.length - 1;
+    }
+}
@@ -25,6 +25,7 @@ public class MDPDefinition implements Serializable {
     public double discount = 0.999;
     public double stepDiscount = 0.9;
     public double alpha = 0.1;
+    public double lambda = 0.9;
     public double exploration = 0.05;
     public String[] symmetryAxes = null;
     public boolean passDownSymmetryAxis = false;
@@ -41,8 +42,12 @@ public class MDPDefinition implements Serializable {
     public transient LinkedHashMap<String, LinkedHashMap<String, String>> symmetryExpressions = null;
     public LinkedHashMap<String, float[]> noActionState = null;
     public LinkedHashMap<String, float[]> successConditions = null;
+    public RLTileCoding tileCoding = null;  // null: a table, or a map when the table would be too large
+    public RLAdaptiveDiscretization adaptiveDiscretization = null;  // null: the full grid of the stateDefinition
 
     public transient RLValueFunction valueFunction = null;
+    public transient RLReplayBuffer replayBuffer = null;
+    public transient RLFrozenPolicy frozenPolicy = null;
 
     public transient int indexProduct = 0;
     public transient int temporaryIndexProductForAction = 0;
@@ -53,6 +58,18 @@ public class MDPDefinition implements Serializable {
     public transient LinkedHashMap<String, Integer> childrenMDPIntegerOptions = null;
     public transient LinkedHashMap<String, Float> precisions = null;
     public transient LinkedHashMap<String, Float> rangeShifts = null;
+    public transient long[] indexStrides = null;
+    public transient int[] stateDefinitionSlots = null;
+    public transient int[] actionDefinitionSlots = null;
+    public transient LinkedHashMap<String, int[][]> symmetrySlotAssignments = null;
+    public transient LinkedHashMap<String, int[]> actionSymmetrySlots = null;
+    transient int[] expressionSlots = null;
+    transient Expression[] expressionList = null;
+    private transient float[] slotPrecisions = null;
+    private transient float[] slotRangeShifts = null;
+    private transient boolean[] actionSlots = null;
+    public transient long layoutHash = 0;
+    transient ActionEnumeration[] actionEnumerations = null;
 
     public transient boolean tryToReadFromFile = true;
 
@@ -94,6 +111,7 @@ public class MDPDefinition implements Serializable {
 
     public void setValueFunction(RLValueFunction valueFunction) {
         this.valueFunction = valueFunction;
+        this.frozenPolicy = null;  // exported from the previous value function
     }
 
 
@@ -126,10 +144,12 @@ public class MDPDefinition implements Serializable {
         if (state_a == null || state_b == null) return false;
         if (state_a.definition != state_b.definition) return false;
 
+        if (state_a.definition.adaptiveDiscretization != null)
+            return state_a.getIndex() == state_b.getIndex();
+
         boolean equivalent = true;
-        for (Object objectField : state_a.definition.stateDefinitionFields) {
-            String stateField = (String)objectField;
-            equivalent = equivalent && state_a.get(stateField) == state_b.get(stateField);
+        for (int slot : state_a.definition.stateDefinitionSlots) {
+            equivalent = equivalent && state_a.get(slot) == state_b.get(slot);
         }
         return equivalent;
     }
@@ -178,12 +198,22 @@ public class MDPDefinition implements Serializable {
         this.expressions = expressions;
         if (this.expressions == null) {
             this._expressions = null;
+            this.expressionSlots = null;
+            this.expressionList = null;
             return;
         }
         this._expressions = new LinkedHashMap<>();
         for (Map.Entry<String, String> entry: this.expressions.entrySet()) {
             this._expressions.put(entry.getKey(), CustomExpressionEvaluator.getInstance().generateExpression(entry.getValue()));
         }
+        this.expressionSlots = new int[_expressions.size()];
+        this.expressionList = new Expression[_expressions.size()];
+        int i = 0;
+        for (Map.Entry<String, Expression> entry: this._expressions.entrySet()) {
+            expressionSlots[i] = FieldSlotRegistry.slot(entry.getKey());
+            expressionList[i] = entry.getValue();
+            i++;
+        }
     }
 
     public void setMDPSelectionExpressions(LinkedHashMap<String, ArrayList<String>> MDPSelectionExpressions) {
@@ -234,14 +264,19 @@ public class MDPDefinition implements Serializable {
                 model = new MonteCarlo(this); break;
             case "TD0":
                 model = new TD0(this); break;
+            case "SARSALAMBDA":
+                model = new SarsaLambda(this); break;
+            case "QLAMBDA":
+                model = new QLambda(this); break;
             default:
-                System.out.println("METHOD NAME NOT DEFINED IN THE IMPLEMENTATION.  Must choose between MC, TD0, SARSA.");
+                System.out.println("METHOD NAME NOT DEFINED IN THE IMPLEMENTATION.  Must choose between MC, TD0, SARSALAMBDA, QLAMBDA.");
                 return null;
         }
         model.setTerminalDiscount((float)discount);
         model.setStepDiscount((float)stepDiscount);
         model.setAlpha((float)alpha);
         model.setExploration((float)exploration);
+        model.setLambda((float)lambda);
         return model;
     }
 
@@ -263,29 +298,27 @@ public class MDPDefinition implements Serializable {
 
     /** Index computation code **/
 
-    public static int computeIndex(StateActionTuple stateActionTuple) {
-        return computeIndexState(stateActionTuple.state) + computeIndexAction(stateActionTuple.action);
+    public static long computeIndex(StateActionTuple stateActionTuple) {
+        return stateActionTuple.state.getIndex() + computeIndexAction(stateActionTuple.action);
     }
 
-    public static int computeIndexState(State state) {
-        int index = 0;
-        int currentSize = 0;
+    public static long computeIndexState(State state) {
+        long index = 0;
         MDPDefinition definition = state.definition;
-        int indeces[] = definition.indeces;
-        int product = definition.indexProduct;
+        if (definition.adaptiveDiscretization != null) {
+            RLValueFunction valueFunction = definition.valueFunction;
+            if ((valueFunction == null) || (valueFunction.getPartition() == null))
+                throw new IllegalStateException("MDPDefinition " + definition.name + " has no adaptive value function to partition its states yet");
+            return (long) valueFunction.getPartition().cell(state) * definition.temporaryIndexProductForAction;
+        }
+        int[] slots = definition.stateDefinitionSlots;
+        long[] strides = definition.indexStrides;
 
-        int i = 0;
-        for (String stateField: definition.stateDefinitionFields) {
+        for (int i = 0; i < slots.length; i++) {
             int[] minMax = definition.stateDefinitionIntegers[i];
             int minValue = minMax[0];
-            int maxValue = minMax[1];
-            int currentValue = (int) state.get(stateField);
-            currentValue = Math.max(currentValue, minValue);
-            currentValue = Math.min(currentValue, maxValue);
-            product /= indeces[currentSize];
-            index += (currentValue - minValue) * product;
-            currentSize += 1;
-            i++;
+            int currentValue = Math.min(Math.max(state.get(slots[i]), minValue), minMax[1]);
+            index += (currentValue - minValue) * strides[i];
         }
         return index;
     }
@@ -293,22 +326,16 @@ public class MDPDefinition implements Serializable {
     public static int computeIndexAction(Action action) {
         int index = 0;
         MDPDefinition definition = action.definition;
-        int currentSize = definition.stateDefinitionFields.length;
-        int indeces[] = definition.indeces;
-        int product = definition.temporaryIndexProductForAction;
+        int[] slots = definition.actionDefinitionSlots;
+        long[] strides = definition.indexStrides;
+        int offset = definition.stateDefinitionSlots.length;
 
-        int i = 0;
-        for (String actionField: definition.actionDefinitionFields) {
+        for (int i = 0; i < slots.length; i++) {
             int[] minMax = definition.actionDefinitionIntegers[i];
             int minValue = minMax[0];
-            int maxValue = minMax[1];
-            int currentValue = (int) action.get(actionField);
-            currentValue = Math.max(currentValue, minValue);
-            currentValue = Math.min(currentValue, maxValue);
-            product /= indeces[currentSize];
-            index += (currentValue - minValue) * product;
-            currentSize += 1;
-            i++;
+            int currentValue = Math.min(Math.max(action.get(slots[i]), minValue), minMax[1]);
+            // the action fields come last, so their strides stay below the action product
+            index += (currentValue - minValue) * (int) strides[offset + i];
         }
         return index;
     }
@@ -317,11 +344,20 @@ public class MDPDefinition implements Serializable {
     /** Set all transient properties **/
 
     private void setAllTransientProperties() {
+        actionEnumerations = null;
         convertAnglesToRadians();
         buildChildrenMDPIntegerOptions();
         predefineAllPrecisions();
+        generateFieldSlots();
         generateStateActionDefinitionIntegers();
         generateIndecesDefinition();
+        if (tileCoding != null)
+            tileCoding.initialize(this);
+        if (adaptiveDiscretization != null) {
+            adaptiveDiscretization.initialize(this);
+            indexProduct = adaptiveDiscretization.getTableSize();
+        }
+        generateLayoutHash();
     }
 
     private void convertAnglesToRadians() {
@@ -411,6 +447,69 @@ public class MDPDefinition implements Serializable {
         }
     }
 
+    /**
+     * Resolve every field this definition reads or writes to its FieldSlotRegistry slot once, so States and Actions
+     * of this definition are accessed by array index only.
+     */
+    private void generateFieldSlots() {
+        stateDefinitionSlots = new int[stateDefinitionFields.length];
+        for (int i = 0; i < stateDefinitionFields.length; i++)
+            stateDefinitionSlots[i] = FieldSlotRegistry.slot(stateDefinitionFields[i]);
+        actionDefinitionSlots = new int[actionDefinitionFields.length];
+        for (int i = 0; i < actionDefinitionFields.length; i++)
+            actionDefinitionSlots[i] = FieldSlotRegistry.slot(actionDefinitionFields[i]);
+
+        symmetrySlotAssignments = new LinkedHashMap<>();
+        actionSymmetrySlots = new LinkedHashMap<>();
+        for (String axis: new String[]{"X", "Y"}) {
+            LinkedHashMap<String, String> assignments = (symmetryExpressions == null) ? new LinkedHashMap<>() : symmetryExpressions.get(axis);
+            int[][] slotAssignments = new int[assignments.size()][];
+            int i = 0;
+            for (Map.Entry<String, String> entry: assignments.entrySet()) {
+                slotAssignments[i] = new int[]{FieldSlotRegistry.slot(entry.getKey()), FieldSlotRegistry.slot(entry.getValue())};
+                i++;
+            }
+            symmetrySlotAssignments.put(axis, slotAssignments);
+
+            int[] symmetrySlots = new int[actionDefinitionFields.length];
+            for (int j = 0; j < actionDefinitionFields.length; j++) {
+                String actionField = actionDefinitionFields[j];
+                boolean isSymmetric = (symmetryAxesHashSet != null) && symmetryAxesHashSet.contains(actionField);
+                symmetrySlots[j] = isSymmetric ? FieldSlotRegistry.slot(actionField + axis) : -1;
+            }
+            actionSymmetrySlots.put(axis, symmetrySlots);
+        }
+
+        for (String field: precisions.keySet())
+            FieldSlotRegistry.slot(field);
+        int size = FieldSlotRegistry.size();
+        slotPrecisions = new float[size];
+        slotRangeShifts = new float[size];
+        Arrays.fill(slotPrecisions, 0.0000001f);
+        for (Map.Entry<String, Float> entry: precisions.entrySet())
+            slotPrecisions[FieldSlotRegistry.slot(entry.getKey())] = entry.getValue();
+        for (Map.Entry<String, Float> entry: rangeShifts.entrySet())
+            slotRangeShifts[FieldSlotRegistry.slot(entry.getKey())] = entry.getValue();
+
+        actionSlots = new boolean[size];
+        for (int slot: actionDefinitionSlots)
+            actionSlots[slot] = true;
+    }
+
+    public float getPrecision(int slot) {
+        if ((slot < 0) || (slot >= slotPrecisions.length)) return 0.0000001f;
+        return slotPrecisions[slot];
+    }
+
+    public float getRangeShift(int slot) {
+        if ((slot < 0) || (slot >= slotRangeShifts.length)) return 0.0f;
+        return slotRangeShifts[slot];
+    }
+
+    public boolean isActionSlot(int slot) {
+        return (slot >= 0) && (slot < actionSlots.length) && actionSlots[slot];
+    }
+
     public float getPrecisionFromField(String field) {
         if (stateDefinition.containsKey(field)) {
             return stateDefinition.get(field)[2];
@@ -498,7 +597,7 @@ public class MDPDefinition implements Serializable {
     private void generateIndecesDefinition(){
         int[] indeces = new int[stateDefinitionIntegers.length + actionDefinitionIntegers.length];
         int index = 0;
-        int indexProduct = 1;
+        long indexProduct = 1;
 
         for (int[] minMax: stateDefinitionIntegers) {
             indeces[index] = (minMax[1] - minMax[0] + 1);
@@ -515,13 +614,56 @@ public class MDPDefinition implements Serializable {
         }
         this.temporaryIndexProductForAction = temporaryIndexProductForAction;
 
+        // stride of each field is the product of the sizes of all fields after it, as a long since a tile coded
+        // index may exceed an int; indexProduct is only a table size and is capped
+        long[] indexStrides = new long[indeces.length];
+        long stride = 1;
+        for (int i = indeces.length - 1; i >= 0; i--) {
+            indexStrides[i] = stride;
+            stride *= indeces[i];
+        }
+        this.indexStrides = indexStrides;
+
         this.indeces = indeces;
-        this.indexProduct = indexProduct;
+        this.indexProduct = (int) Math.min(indexProduct, Integer.MAX_VALUE);
     }
 
 
 
 
+    /**
+     * 64-bit FNV-1a hash over everything that decides where a state-action pair lands in the value function.
+     * Stored value functions are only valid for a definition with the same layout hash.
+     */
+    private void generateLayoutHash() {
+        StringBuilder layout = new StringBuilder();
+        for (String field: stateDefinitionFields)
+            layout.append(field).append(Arrays.toString(stateDefinition.get(field))).append(';');
+        layout.append('|');
+        for (String field: actionDefinitionFields)
+            layout.append(field).append(Arrays.toString(actionDefinition.get(field))).append(';');
+        layout.append('|');
+        if (childrenMDPOptions != null) {
+            for (Map.Entry<String, String[]> entry: childrenMDPOptions.entrySet())
+                layout.append(entry.getKey()).append(Arrays.toString(entry.getValue())).append(';');
+        }
+        layout.append('|');
+        if (symmetryAxes != null)
+            layout.append(Arrays.toString(symmetryAxes));
+        if (tileCoding != null)
+            layout.append("|tileCoding:").append(tileCoding.layout());
+        if (adaptiveDiscretization != null)
+            layout.append("|adaptiveDiscretization:").append(adaptiveDiscretization.layout());
+
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < layout.length(); i++) {
+            hash ^= layout.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        layoutHash = hash;
+    }
+
+
     public static String cleanJsonStringByRemovingArraySpaces(String jsonString) {
         return jsonString.replaceAll("\\[\\s*(\\d|-)", "[$1")
                 .replaceAll("(\\d,)\\s*(\\d|-)", "$1 $2")
@@ -0,0 +1,61 @@
+package net.sf.openrocket.simulation.extension.impl.rocketlander;
+
+import java.io.Serializable;
+
+/**
+ * Adaptive discretization of the state fields of an MDPDefinition, the backend of a value function table whose state
+ * cells are the leaves of an RLStatePartition instead of the full grid of the stateDefinition.
+ *
+ * The precision of the stateDefinition becomes the finest resolution a cell can be split down to.  The partition starts
+ * with initialCells cells and splits the cells that receive many updates - or a high TD error compared to the other
+ * cells - until maxCells are used, so the table only grows where the lander actually flies.  Action fields are never
+ * partitioned.
+ *
+ * Selected per definition by its JSON, e.g.  "adaptiveDiscretization": {"maxCells": 65536, "initialCells": 64}
+ */
+public class RLAdaptiveDiscretization implements Serializable {
+    private static final long serialVersionUID = -5667379173169079159L;
+
+    public int maxCells = 1 << 16;
+    public int initialCells = 64;
+    public int splitVisits = 2000;   // updates after which a cell is split
+    public float splitError = 2.0f;  // or after splitVisits / 4 updates, if its mean error is this many times the mean
+
+    transient int numFields;
+    transient int[] slots;
+    transient int[] minValues;
+    transient int[] maxValues;
+    transient int stateStride;
+
+    /**
+     * Derive the partitioned fields and their ranges from the state fields of the definition.
+     */
+    public void initialize(MDPDefinition definition) {
+        if (definition.tileCoding != null)
+            throw new IllegalArgumentException("MDPDefinition " + definition.name + " cannot combine tile coding and adaptive discretization");
+        if ((maxCells < 1) || (initialCells > maxCells))
+            throw new IllegalArgumentException("MDPDefinition " + definition.name + " needs 1 <= initialCells <= maxCells");
+        long tableSize = (long) maxCells * definition.temporaryIndexProductForAction;
+        if ((tableSize > Integer.MAX_VALUE) || !RLValueFunction.isReasonableTableSize((int) tableSize))
+            throw new IllegalArgumentException("MDPDefinition " + definition.name + " has too many adaptive cells for a table");
+
+        numFields = definition.stateDefinitionSlots.length;
+        slots = definition.stateDefinitionSlots.clone();
+        minValues = new int[numFields];
+        maxValues = new int[numFields];
+        for (int i = 0; i < numFields; i++) {
+            minValues[i] = definition.stateDefinitionIntegers[i][0];
+            maxValues[i] = definition.stateDefinitionIntegers[i][1];
+        }
+        stateStride = definition.temporaryIndexProductForAction;
+    }
+
+    public int getTableSize() { return maxCells * stateStride; }
+
+    /**
+     * Appended to the layout hash of the definition, so cells are only read back for the same partitioning.
+     */
+    String layout() {
+        return Integer.toString(maxCells);
+    }
+}
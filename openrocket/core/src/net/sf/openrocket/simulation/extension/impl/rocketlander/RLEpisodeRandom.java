@@ -0,0 +1,102 @@
+package net.sf.openrocket.simulation.extension.impl.rocketlander;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Random numbers of the episode running on the current thread.
+ *
+ * Every episode draws from its own SplittableRandom, seeded from the master seed and the episode number only.
+ * Exploration, initial conditions and RRT sampling therefore never share a generator between threads, and an
+ * episode is replayed exactly by setting the same master seed and episode number.
+ *
+ * Episodes are numbered in the order they start, unless the number is assigned with setNextEpisode beforehand
+ * (e.g. by RLTrainingRunner, which numbers episodes independently of the worker that flies them).
+ */
+public class RLEpisodeRandom {
+    private static volatile long masterSeed = System.nanoTime();
+    private static final AtomicLong episodeCounter = new AtomicLong();
+
+    private static final ThreadLocal<SplittableRandom> random = new ThreadLocal<>();
+    private static final ThreadLocal<Long> nextEpisode = new ThreadLocal<>();
+    private static final ThreadLocal<Long> currentEpisode = new ThreadLocal<>();
+
+    public static long getMasterSeed() { return masterSeed; }
+
+    /**
+     * Set the master seed and restart the episode numbering.
+     */
+    public static void setMasterSeed(long seed) {
+        masterSeed = seed;
+        episodeCounter.set(0);
+    }
+
+    /**
+     * Number the next episode started on this thread.
+     */
+    public static void setNextEpisode(long episode) {
+        nextEpisode.set(episode);
+    }
+
+    /**
+     * Start the random stream of a new episode on this thread.  Called when a simulation starts.
+     */
+    public static SplittableRandom startEpisode() {
+        Long episode = nextEpisode.get();
+        nextEpisode.remove();
+        if (episode == null) episode = episodeCounter.getAndIncrement();
+        SplittableRandom episodeRandom = new SplittableRandom(episodeSeed(masterSeed, episode));
+        random.set(episodeRandom);
+        currentEpisode.set(episode);
+        return episodeRandom;
+    }
+
+    /**
+     * Continue an episode started earlier on this thread, e.g. when the simulations of a batch are interleaved.
+     */
+    public static void resumeEpisode(long episode, SplittableRandom episodeRandom) {
+        random.set(episodeRandom);
+        currentEpisode.set(episode);
+    }
+
+    /**
+     * The number of the episode running on this thread, or -1 if none was started.
+     */
+    public static long currentEpisode() {
+        Long episode = currentEpisode.get();
+        return (episode == null) ? -1 : episode;
+    }
+
+    /**
+     * The random stream of the episode running on this thread.
+     */
+    public static SplittableRandom current() {
+        SplittableRandom episodeRandom = random.get();
+        if (episodeRandom == null) return startEpisode();
+        return episodeRandom;
+    }
+
+    /**
+     * A new copy of the random stream of an episode, independent of the episode running on this thread.
+     */
+    public static SplittableRandom episodeRandom(long episode) {
+        return new SplittableRandom(episodeSeed(masterSeed, episode));
+    }
+
+    /**
+     * Seed of the simulation itself (wind turbulence and RK4 noise) for an episode.
+     */
+    public static int simulationSeed(long episode) {
+        return (int) episodeSeed(~masterSeed, episode);
+    }
+
+    /**
+     * Related seeds give overlapping SplittableRandom streams, so the seed is mixed first (murmur3 finalizer).
+     */
+    static long episodeSeed(long masterSeed, long episode) {
+        long z = masterSeed + episode * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 33)) * 0xFF51AFD7ED558CCDL;
+        z = (z ^ (z >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        return z ^ (z >>> 33);
+    }
+}
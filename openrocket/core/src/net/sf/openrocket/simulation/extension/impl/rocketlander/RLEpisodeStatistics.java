@@ -0,0 +1,50 @@
+package net.sf.openrocket.simulation.extension.impl.rocketlander;
+
+/**
+ * Running totals over finished training episodes, shared by every simulation thread.
+ */
+public class RLEpisodeStatistics {
+    private long episodes = 0;
+    private long successes = 0;
+    private long rewardedEpisodes = 0;
+    private double terminalRewardSum = 0;
+
+    /**
+     * @param terminalReward terminal reward of the top level MDP, or NaN if it has none
+     */
+    public synchronized void recordEpisode(boolean success, double terminalReward) {
+        episodes++;
+        if (success) successes++;
+        if (!Double.isNaN(terminalReward)) {
+            rewardedEpisodes++;
+            terminalRewardSum += terminalReward;
+        }
+    }
+
+    public synchronized long getEpisodes() {
+        return episodes;
+    }
+
+    public synchronized double getSuccessRate() {
+        if (episodes == 0) return 0.0;
+        return successes / (double) episodes;
+    }
+
+    public synchronized double getMeanTerminalReward() {
+        if (rewardedEpisodes == 0) return Double.NaN;
+        return terminalRewardSum / rewardedEpisodes;
+    }
+
+    public synchronized RLEpisodeStatistics snapshotAndReset() {
+        RLEpisodeStatistics snapshot = new RLEpisodeStatistics();
+        snapshot.episodes = episodes;
+        snapshot.successes = successes;
+        snapshot.rewardedEpisodes = rewardedEpisodes;
+        snapshot.terminalRewardSum = terminalRewardSum;
+        episodes = 0;
+        successes = 0;
+        rewardedEpisodes = 0;
+        terminalRewardSum = 0;
+        return snapshot;
+    }
+}
@@ -0,0 +1,116 @@
+package net.sf.openrocket.simulation.extension.impl.rocketlander;
+
+/**
+ * The greedy policy of a trained MDPDefinition, collapsed into the best ActionEnumeration candidate of every state.
+ *
+ * Flying a frozen policy is a single table lookup per MDP level instead of a scan of the action values.  A state is
+ * frozen only if all of its candidates were visited - otherwise the greedy choice depends on the reward fallback of
+ * the continuous state, so the table holds UNFROZEN and RLModelSingleton evaluates it as before.  Ties go to the
+ * first candidate, so frozen flights are deterministic.
+ *
+ * The candidates of the X and Y symmetry axes are enumerated in the same order, so one table serves both.  For
+ * child MDP fields decided by MDPSelectionExpressions there is a column for every combination of selected children.
+ */
+public class RLFrozenPolicy {
+    public static final short UNFROZEN = -1;
+
+    private final int numStates;
+    private final int stateStride;
+    private final int selectionBase;
+    private final int numSelections;
+    private final short[] candidates;
+
+    /**
+     * Collapse the current value function of the definition into its greedy candidates.
+     */
+    public static RLFrozenPolicy export(MDPDefinition definition) {
+        ActionEnumeration enumeration = ActionEnumeration.get(definition, exportSymmetry(definition));
+        RLFrozenPolicy policy = new RLFrozenPolicy(definition);
+        RLValueFunction valueFunction = definition.valueFunction;
+
+        int[] selectedValues = new int[enumeration.getSelectionFields().length];
+        for (int selection = 0; selection < policy.numSelections; selection++) {
+            int remainder = selection;
+            for (int i = 0; i < selectedValues.length; i++) {
+                selectedValues[i] = (remainder % policy.selectionBase) - 1;
+                remainder /= policy.selectionBase;
+            }
+            int[] selectionCandidates = enumeration.getCandidates(selectedValues);
+            for (int state = 0; state < policy.numStates; state++) {
+                policy.candidates[state * policy.numSelections + selection] =
+                        bestCandidate(valueFunction, state * policy.stateStride, enumeration, selectionCandidates);
+            }
+        }
+        return policy;
+    }
+
+    /**
+     * @param stateIndex the value function index of the state, as computed by MDPDefinition.computeIndexState
+     * @param selection the combination of selected children, see selection
+     * @return the greedy candidate of the state, or UNFROZEN
+     */
+    public int get(long stateIndex, int selection) {
+        return candidates[(int) (stateIndex / stateStride) * numSelections + selection];
+    }
+
+    /**
+     * Combination of the selected child MDP integers, each -1 if there is none.
+     */
+    public int selection(int[] selectedValues) {
+        int selection = 0;
+        for (int i = selectedValues.length - 1; i >= 0; i--)
+            selection = selection * selectionBase + (selectedValues[i] + 1);
+        return selection;
+    }
+
+    /** Number of states and selections whose candidate is frozen. **/
+    public int getNumFrozen() {
+        int numFrozen = 0;
+        for (short candidate : candidates)
+            if (candidate != UNFROZEN) numFrozen++;
+        return numFrozen;
+    }
+
+    public int size() {
+        return candidates.length;
+    }
+
+    /*
+    Private implementation.  Details.
+     */
+
+    private RLFrozenPolicy(MDPDefinition definition) {
+        stateStride = definition.temporaryIndexProductForAction;
+        numStates = definition.indexProduct / stateStride;
+        int numSelectionFields = ActionEnumeration.get(definition, exportSymmetry(definition)).getSelectionFields().length;
+        selectionBase = (definition.childrenMDPIntegerOptions == null) ? 1 : definition.childrenMDPIntegerOptions.size() + 1;
+        long selections = 1;
+        for (int i = 0; i < numSelectionFields; i++)
+            selections *= selectionBase;
+        long size = numStates * selections;
+        if ((size > Integer.MAX_VALUE) || !RLValueFunction.isReasonableTableSize((int) size))
+            throw new IllegalArgumentException("MDPDefinition " + definition.name + " has too many states to freeze its policy");
+        numSelections = (int) selections;
+        candidates = new short[(int) size];
+    }
+
+    /** Definitions with symmetry axes only act on one of them, and every axis is enumerated in the same order. **/
+    private static String exportSymmetry(MDPDefinition definition) {
+        return ((definition.symmetryAxesHashSet == null) || definition.symmetryAxesHashSet.isEmpty()) ? null : "X";
+    }
+
+    private static short bestCandidate(RLValueFunction valueFunction, int stateIndex, ActionEnumeration enumeration, int[] selectionCandidates) {
+        int best = UNFROZEN;
+        float bestValue = Float.NEGATIVE_INFINITY;
+        for (int candidate : selectionCandidates) {
+            if (candidate > Short.MAX_VALUE) return UNFROZEN;
+            float value = valueFunction.get(stateIndex + enumeration.getActionIndex(candidate));
+            if (value == 0.0f) return UNFROZEN;  // unvisited - the reward fallback decides at flight time
+            if (value > bestValue) {
+                bestValue = value;
+                best = candidate;
+            }
+        }
+        return (short) best;
+    }
+}
@@ -3,6 +3,8 @@ package net.sf.openrocket.simulation.extension.impl.rocketlander;
 import net.sf.openrocket.simulation.SimulationStatus;
 import net.sf.openrocket.simulation.extension.impl.rocketlander.methods.*;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.*;
 
 import net.sf.openrocket.simulation.extension.impl.rocketlander.StateActionTuple.*;
@@ -13,7 +15,6 @@ import static net.sf.openrocket.simulation.extension.impl.initialconditions.Init
 
 public class RLModelSingleton {
     private static volatile RLModelSingleton instance;
-    private Random randomGenerator = new Random();
     ValueFunctionManager valueFunctionManager;
 
     private LinkedHashMap<String, MDPDefinition> methods = new LinkedHashMap<>();
@@ -27,6 +28,10 @@ public class RLModelSingleton {
 
     private StringBuilder stringBuilder = new StringBuilder();
     private boolean smartPrintBuffer = false;
+    private RLEpisodeStatistics episodeStatistics = new RLEpisodeStatistics();
+    private RLReplayLearner replayLearner = null;
+    private RLTrajectoryFile trajectoryFile = null;
+    private volatile boolean policyFrozen = false;
 
     public enum SimulationType {
         _1D, _2D, _3D
@@ -185,142 +190,73 @@ public class RLModelSingleton {
         simulationType = updatedSimType;
     }
 
-    private HashSet<Integer> generatePossibleActionValuesInts(int value, int[] definition) {
-        HashSet<Integer> possibleActionValues = new HashSet<>();
-        for (int i = definition[0]; i <= definition[1]; i++) {
-            possibleActionValues.add(i);
-        }
-        return possibleActionValues;
-    }
-
-    private HashSet<Integer> generatePossibleActionValuesMDPInts(State state, String MDPActionSelectionField) {
-        MDPDefinition definition = state.definition;
-        HashSet<Integer> possibleActionValues = new HashSet<>();
+    private String selectChildMDPName(State state, String MDPActionSelectionField) {
+        ArrayList<Object[]> advancedIfElseExpression = (state.definition._MDPSelectionExpressions.get(MDPActionSelectionField));
 
-        if ((definition._MDPSelectionExpressions != null) && definition._MDPSelectionExpressions.containsKey(MDPActionSelectionField)) {
-            ArrayList<Object[]> advancedIfElseExpression = (definition._MDPSelectionExpressions.get(MDPActionSelectionField));
-
-            String selectedMDPName = null;
-            for (int i = 0; i < advancedIfElseExpression.size(); i += 2) {
-                Expression expression = (Expression) advancedIfElseExpression.get(i)[0];
-                String tempMDPName = (String) advancedIfElseExpression.get(i)[1];
-                if (methods.containsKey(tempMDPName) && (expression.evaluate(state) != 0)) {  // 0 is false, 1 is true
-                    selectedMDPName = tempMDPName;
-                    break;
-                }
+        String selectedMDPName = null;
+        for (int i = 0; i < advancedIfElseExpression.size(); i += 2) {
+            Expression expression = (Expression) advancedIfElseExpression.get(i)[0];
+            String tempMDPName = (String) advancedIfElseExpression.get(i)[1];
+            if (methods.containsKey(tempMDPName) && (expression.evaluate(state) != 0)) {  // 0 is false, 1 is true
+                selectedMDPName = tempMDPName;
+                break;
             }
-            if (selectedMDPName == null) {
-                if (advancedIfElseExpression.size() == 0) {
-                    System.out.println("Unable to generate MDP selection!");
-                } else {
-                    // System.out.println("Defaulting MDP SELECTION - BAD.");
-                    // default to last one!
-                    selectedMDPName = (String)advancedIfElseExpression.get(advancedIfElseExpression.size() - 1)[1];
-                    // if the last one isn't defined, restart the switch from the top until one is defined
-                    if (!methods.containsKey(selectedMDPName)) {
-                        for (int i = 0; i < advancedIfElseExpression.size(); i += 2) {
-                            selectedMDPName = (String) advancedIfElseExpression.get(i)[1];
-                            if (methods.containsKey(selectedMDPName)) {
-                                break;
-                            }
+        }
+        if (selectedMDPName == null) {
+            if (advancedIfElseExpression.size() == 0) {
+                System.out.println("Unable to generate MDP selection!");
+            } else {
+                // System.out.println("Defaulting MDP SELECTION - BAD.");
+                // default to last one!
+                selectedMDPName = (String)advancedIfElseExpression.get(advancedIfElseExpression.size() - 1)[1];
+                // if the last one isn't defined, restart the switch from the top until one is defined
+                if (!methods.containsKey(selectedMDPName)) {
+                    for (int i = 0; i < advancedIfElseExpression.size(); i += 2) {
+                        selectedMDPName = (String) advancedIfElseExpression.get(i)[1];
+                        if (methods.containsKey(selectedMDPName)) {
+                            break;
                         }
                     }
                 }
             }
-            // overrides the traditional options calculations of that MDP Field Name
-            if (selectedMDPName != null)
-                possibleActionValues.add(definition.childrenMDPIntegerOptions.get(selectedMDPName));
-        } else {
-            String[] MDPNames = definition.childrenMDPOptions.get(MDPActionSelectionField);
-            for (String MDPName : MDPNames) {
-                // convert MDPName to fixed integer number
-                possibleActionValues.add((Integer) definition.childrenMDPIntegerOptions.get(MDPName));
-            }
-        }
-        return possibleActionValues;
-    }
-
-    private boolean incrementIndeces(int[] indeces, int[] maxIndeces) {
-        return _incrementIndeces(indeces, maxIndeces, indeces.length - 1);
-    }
-
-    public boolean _incrementIndeces(int[] indeces, int[] maxIndeces, int position) {
-        if (position == -1) return false;
-        if (indeces[position] < maxIndeces[position]) {
-            indeces[position] += 1;
-            return true;
         }
-        indeces[position] = 0;
-        return _incrementIndeces(indeces, maxIndeces, position - 1);
+        return selectedMDPName;
     }
 
     /***
     In the future need to also consider the state and the velocity we are currently at.
      ***/
 
-    public HashSet<Action> generatePossibleActions(State state) {
-        ArrayList<ArrayList<Integer>> possibleActionInts = new ArrayList<>();
-
-        HashSet<String> symmetryAxes = state.definition.symmetryAxesHashSet;
-        String[] actionFields = state.definition.actionDefinitionFields;
-        ArrayList<String> actionStrings = new ArrayList<>();  // these have actual components (e.g. gimbalX - NOT gimbal)
-        int index = 0;
-        for (String actionField: actionFields) {
-            String realField = actionField;
-            if (symmetryAxes != null) {
-                if (symmetryAxes.contains(actionField))
-                    realField += state.symmetry;
-            }
-            actionStrings.add(realField);
-            if ((state.definition.childrenMDPOptions != null) && state.definition.childrenMDPOptions.containsKey(realField)) {
-                ArrayList<Integer> childMDPOptions = new ArrayList<>(generatePossibleActionValuesMDPInts(state, realField));
-                possibleActionInts.add(childMDPOptions);
-                if (childMDPOptions.size() != 1) {
-                    // System.out.println("Expression evaluation for child MDP selection did not evaluate correctly.  This should not be possible!");
-                }
-            } else {
-                possibleActionInts.add(new ArrayList<>(generatePossibleActionValuesInts(state.get(realField), state.definition.actionDefinitionIntegers[index])));
-            }
-            index++;
-        }
+    /**
+     * Candidates of the cached ActionEnumeration that can be chosen in this state.
+     */
+    private int[] possibleActionCandidates(State state, ActionEnumeration enumeration) {
+        if (!enumeration.needsSelection()) return enumeration.getCandidates(null);
 
-        if ((state.definition.childrenMDPOptions != null) && (state.definition.childrenMDPOptions.size() != 0)) {
-            for (Map.Entry<String, String[]> entry: state.definition.childrenMDPOptions.entrySet()) {
-                // if already choosing the child MDP in the actionDefinition skip this logic - else it's needed to still compute children
-                if (state.definition.actionDefinition.containsKey(entry.getKey()))
-                    continue;
-                actionStrings.add(entry.getKey());
-                ArrayList<Integer> childMDPOptions = new ArrayList<>(generatePossibleActionValuesMDPInts(state, entry.getKey()));
-                possibleActionInts.add(childMDPOptions);
-            }
-        }
+        // overrides the traditional options calculations of that MDP Field Name
+        return enumeration.getCandidates(selectedChildMDPValues(state, enumeration));
+    }
 
-        int size = actionStrings.size();
-        int[] indeces = new int[size];
-        int[] maxIndeces = new int[size];
-        for (int i = 0; i < size; i++) {
-            indeces[i] = 0;
-            maxIndeces[i] = possibleActionInts.get(i).size() - 1;
+    private int[] selectedChildMDPValues(State state, ActionEnumeration enumeration) {
+        String[] selectionFields = enumeration.getSelectionFields();
+        int[] selectedValues = new int[selectionFields.length];
+        for (int i = 0; i < selectionFields.length; i++) {
+            String selectedMDPName = selectChildMDPName(state, selectionFields[i]);
+            Integer selectedValue = (selectedMDPName == null) ? null : state.definition.childrenMDPIntegerOptions.get(selectedMDPName);
+            selectedValues[i] = (selectedValue == null) ? -1 : selectedValue;
         }
+        return selectedValues;
+    }
 
+    public HashSet<Action> generatePossibleActions(State state) {
+        ActionEnumeration enumeration = ActionEnumeration.get(state.definition, state.symmetry);
         HashSet<Action> possibleActions = new HashSet<>();
-        while (true) {
-            HashMap<String, Integer> actionValueMap = new HashMap<>();
-            for (int i = 0; i < size; i++) {
-                actionValueMap.put(actionStrings.get(i), possibleActionInts.get(i).get(indeces[i]));
-            }
-            Action action = new Action(actionValueMap, state.definition);
-            action.setSymmetry(state.symmetry, true);
-            possibleActions.add(action);
-
-            if (!incrementIndeces(indeces, maxIndeces)) {
-                break;
-            }
-        }
+        for (int candidate: possibleActionCandidates(state, enumeration))
+            possibleActions.add(enumeration.copyAction(candidate));
         return possibleActions;
     }
 
-    private void addHierarchicalMDPSelection(SimulationStatus status, CoupledStates coupledStates, Action action) {
+    private void addHierarchicalMDPSelection(StateFeatures features, CoupledStates coupledStates, Action action) {
         if (action.definition.childrenMDPOptions != null) {
             for (String MDPActionSelectionField : action.definition.childrenMDPOptions.keySet()) {
                 int SelectedMDPID = action.get(MDPActionSelectionField);
@@ -355,9 +291,7 @@ public class RLModelSingleton {
                 if (selectedMDPName == null) actuallyCreateNewState = false;
 
                 if (actuallyCreateNewState) {
-                    State childState = new State(status, methods.get(selectedMDPName));
-                    childState.setSymmetry(symmetryAxis);
-                    coupledStates.add(childState);
+                    coupledStates.add(new State(features, methods.get(selectedMDPName), symmetryAxis));
                 }
             }
         }
@@ -365,13 +299,20 @@ public class RLModelSingleton {
 
     // policy management
 
+    /**
+     * The kinematic features of the status are computed once and projected into the state of every level.  Every
+     * chosen action is applied once to the states so far, and every new child state gets the actions chosen so far,
+     * so the last action writing a field wins as before.  Only states changed by an action re-run their expressions.
+     */
     private Object[] run_policy(SimulationStatus status, LinkedHashMap<String, ArrayList<StateActionTuple>> SA) {
         ArrayList<Action> actions = new ArrayList<>();
         CoupledStates coupledStates = new CoupledStates();
         MDPDefinition firstDefinition = null;
         for (String key: methods.keySet()) { firstDefinition = methods.get(key); break; }
         if (firstDefinition == null) return new Object[]{null, null};
-        coupledStates.add(new State(status, firstDefinition));
+        StateFeatures features = new StateFeatures(status);
+        coupledStates.add(new State(features, firstDefinition, null));
+        BitSet changedStates = new BitSet();
 
         int methodCounter = 0;
         while (methodCounter != coupledStates.size()) {
@@ -392,22 +333,25 @@ public class RLModelSingleton {
             }
 
             if (MDPDefinition.needToChooseNewAction(state, lastState, bestAction)) {
-                HashSet<Action> possibleActions = generatePossibleActions(state);
-                bestAction = policy(state, possibleActions, method);
+                bestAction = policy(state, method);
                 bestAction.setSymmetry(state.symmetry);
                 addStateActionTupleIfNotDuplicate(new StateActionTuple(state, bestAction), stateActionTuples);
             }
 
             // dynamically adds entries to coupledStates - bad convention but required!
-            addHierarchicalMDPSelection(status, coupledStates, bestAction);
+            int numStates = coupledStates.size();
+            addHierarchicalMDPSelection(features, coupledStates, bestAction);
 
             // propagate selection
-            actions.add(bestAction);
-            for (Action a: actions) {
-                for (State s : coupledStates) {
-                    a.applyDefinitionValuesToState(s);
+            for (int i = numStates; i < coupledStates.size(); i++) {
+                for (Action a: actions) {
+                    if (a.applyDefinitionValuesToState(coupledStates.get(i))) changedStates.set(i);
                 }
             }
+            actions.add(bestAction);
+            for (int i = 0; i < coupledStates.size(); i++) {
+                if (bestAction.applyDefinitionValuesToState(coupledStates.get(i))) changedStates.set(i);
+            }
 
             methodCounter += 1;
         }
@@ -415,8 +359,8 @@ public class RLModelSingleton {
         coupledStates.freeze();
 
         // need to update the expressions after getting the new data
-        for (State s: coupledStates)
-            s.runMDPDefinitionExpressions();
+        for (int i = changedStates.nextSetBit(0); i >= 0; i = changedStates.nextSetBit(i + 1))
+            coupledStates.get(i).runMDPDefinitionExpressions();
 
         CoupledActions coupledActions = new CoupledActions(actions.toArray(new Action[actions.size()]));
 
@@ -433,11 +377,12 @@ public class RLModelSingleton {
 
     public CoupledStates generateCoupledStatesBasedOnLastActions(SimulationStatus status, CoupledActions coupledActions) {
         CoupledStates coupledStates = new CoupledStates();
-        coupledStates.add(new State(status, coupledActions.get(0).definition));
+        StateFeatures features = new StateFeatures(status);
+        coupledStates.add(new State(features, coupledActions.get(0).definition, null));
 
         int methodCounter = 0;
         while (methodCounter != coupledStates.size()) {
-            addHierarchicalMDPSelection(status, coupledStates, coupledActions.get(methodCounter));
+            addHierarchicalMDPSelection(features, coupledStates, coupledActions.get(methodCounter));
             methodCounter += 1;
         }
 
@@ -448,44 +393,93 @@ public class RLModelSingleton {
         return run_policy(status, SA);
     }
 
-    private Action policy(State state, HashSet<Action> possibleActions, BaseMethodImplementation method) {
-        HashSet<Action> bestActions = new HashSet<>();
+    /**
+     * Epsilon-greedy selection over the cached candidates.  The greedy case scans the value function entries of the
+     * state directly and only evaluates the reward fallback for unvisited (0.0) entries.
+     * With frozen policies, the greedy candidate of a frozen state is looked up instead.
+     */
+    private Action policy(State state, BaseMethodImplementation method) {
+        ActionEnumeration enumeration = ActionEnumeration.get(state.definition, state.symmetry);
+        if (policyFrozen) {
+            RLFrozenPolicy frozenPolicy = state.definition.frozenPolicy;
+            if (frozenPolicy != null) {
+                int selection = enumeration.needsSelection() ? frozenPolicy.selection(selectedChildMDPValues(state, enumeration)) : 0;
+                int candidate = frozenPolicy.get(state.getIndex(), selection);
+                if (candidate != RLFrozenPolicy.UNFROZEN)
+                    return enumeration.copyAction(candidate);
+            }
+        }
+        int[] candidates = possibleActionCandidates(state, enumeration);
 
-        float explorationPercentage = method.getExploration();
+        // frozen policies never explore
+        float explorationPercentage = policyFrozen ? 0.0f : method.getExploration();
 
-        float val = Float.NEGATIVE_INFINITY;
         boolean greedy = true;
-        double randomDouble = randomGenerator.nextDouble();
+        double randomDouble = RLEpisodeRandom.current().nextDouble();
         if (randomDouble <= explorationPercentage) {
             greedy = false;
         }
 
-        float stateReward = method.definition._reward.evaluateFloat(state);
-        for (Action action: possibleActions) {
-            float v = method.valueFunction(state, action);
-            if (v == 0.0f) {
-                v = stateReward + method.definition._reward.evaluateFloat(action);
+        if (!greedy) {
+            if (candidates.length == 0) {
+                System.out.println("Size of best actions is 0.  This will cause failure - WHY IS IT HAPPENING?");
             }
-            if (greedy) {
-                if (v > val) {
-                    // value is best compared to all previous encounters.  Reset bestAction ArrayList.
-                    val = v;
-                    bestActions = new HashSet<>();
-                    bestActions.add(action);
-                } else if (v == val) {
-                    // value is equal to other best value.  Add to bestAction ArrayList.
-                    bestActions.add(action);
-                }
-            } else {
-                bestActions.add(action);
+            return enumeration.copyAction(candidates[RLEpisodeRandom.current().nextInt(candidates.length)]);
+        }
+
+        RLValueFunction valueFunction = state.definition.valueFunction;
+        long stateIndex = state.getIndex();
+
+        float val = Float.NEGATIVE_INFINITY;
+        int[] bestCandidates = new int[candidates.length];
+        int numBestCandidates = 0;
+        for (int candidate: candidates) {
+            float v = valueFunction.get(stateIndex + enumeration.getActionIndex(candidate));
+            if (v == 0.0f)
+                v = state.getReward() + enumeration.getActionReward(candidate);
+            if (v > val) {
+                // value is best compared to all previous encounters.  Reset the best candidates.
+                val = v;
+                numBestCandidates = 0;
+                bestCandidates[numBestCandidates++] = candidate;
+            } else if (v == val) {
+                // value is equal to other best value.  Add to the best candidates.
+                bestCandidates[numBestCandidates++] = candidate;
             }
         }
-        if (bestActions.size() == 0) {
+        if (numBestCandidates == 0) {
             System.out.println("Size of best actions is 0.  This will cause failure - WHY IS IT HAPPENING?");
         }
         // ties broken completely at random
-        ArrayList<Action> selectableActions = new ArrayList<>(bestActions);
-        return selectableActions.get(randomGenerator.nextInt(bestActions.size()));
+        return enumeration.copyAction(bestCandidates[RLEpisodeRandom.current().nextInt(numBestCandidates)]);
+    }
+
+    /**
+     * Fly the greedy policies of the current value functions without exploring or learning.  Every definition is
+     * collapsed into an RLFrozenPolicy, so a decision is a table lookup per MDP level.
+     */
+    public synchronized void freezePolicies() {
+        for (MDPDefinition definition: methods.values()) {
+            try {
+                RLFrozenPolicy frozenPolicy = RLFrozenPolicy.export(definition);
+                System.out.println("Frozen policy of " + definition.name + ": " + frozenPolicy.getNumFrozen() + " of " +
+                        frozenPolicy.size() + " states frozen");
+                definition.frozenPolicy = frozenPolicy;
+            } catch (IllegalArgumentException e) {
+                System.out.println(e.getMessage() + ".  Flying it greedily.");
+            }
+        }
+        policyFrozen = true;
+    }
+
+    public synchronized void unfreezePolicies() {
+        policyFrozen = false;
+        for (MDPDefinition definition: methods.values())
+            definition.frozenPolicy = null;
+    }
+
+    public boolean isPolicyFrozen() {
+        return policyFrozen;
     }
 
     public void updateStepStateActionValueFunction(LinkedHashMap<String, ArrayList<StateActionTuple>> SA, LinkedHashMap<String, Integer> lastUpdateSizes) {
@@ -497,7 +491,7 @@ public class RLModelSingleton {
                 if (method.definition.symmetryAxes == null) {
                     method.updateStepCustomFunction(SA.get(methodName), reward);
                 } else {
-                    if (0.5 < randomGenerator.nextDouble()) {
+                    if (0.5 < RLEpisodeRandom.current().nextDouble()) {
                         method.updateStepCustomFunction(SA.get(methodName + "X"), reward);
                         method.updateStepCustomFunction(SA.get(methodName + "Y"), reward);
                     } else {
@@ -510,37 +504,126 @@ public class RLModelSingleton {
     }
 
     public void updateTerminalStateActionValueFunction(LinkedHashMap<String, ArrayList<StateActionTuple>> SA, TerminationBooleans terminationBooleans) {
-        for (Map.Entry<String, MDPDefinition> entry: methods.entrySet()) {
-            String methodName = entry.getKey();
-            for (BaseMethodImplementation method: entry.getValue().models) {
-                if (method.definition._terminalReward == null) continue;  // terminalReward not specified, skip method!
-                Expression terminalReward = method.definition._terminalReward;
-                Expression reward = method.definition._reward;
-
-                if ((method.definition.symmetryAxes == null) || (method.definition.symmetryAxes.length == 0)) {
-                    method.updateTerminalCustomFunction(SA.get(methodName), terminalReward, reward);
-                } else {
-                    if (0.5 < randomGenerator.nextDouble()) {
-                        method.updateTerminalCustomFunction(SA.get(methodName + "X"), terminalReward, reward);
-                        method.updateTerminalCustomFunction(SA.get(methodName + "Y"), terminalReward, reward);
+        // frozen policies only fly - nothing is learned
+        if (!policyFrozen) {
+            for (Map.Entry<String, MDPDefinition> entry: methods.entrySet()) {
+                String methodName = entry.getKey();
+                for (BaseMethodImplementation method: entry.getValue().models) {
+                    if (method.definition._terminalReward == null) continue;  // terminalReward not specified, skip method!
+                    Expression terminalReward = method.definition._terminalReward;
+                    Expression reward = method.definition._reward;
+
+                    if ((method.definition.symmetryAxes == null) || (method.definition.symmetryAxes.length == 0)) {
+                        method.updateTerminalCustomFunction(SA.get(methodName), terminalReward, reward);
                     } else {
-                        method.updateTerminalCustomFunction(SA.get(methodName + "Y"), terminalReward, reward);
-                        method.updateTerminalCustomFunction(SA.get(methodName + "X"), terminalReward, reward);
+                        if (0.5 < RLEpisodeRandom.current().nextDouble()) {
+                            method.updateTerminalCustomFunction(SA.get(methodName + "X"), terminalReward, reward);
+                            method.updateTerminalCustomFunction(SA.get(methodName + "Y"), terminalReward, reward);
+                        } else {
+                            method.updateTerminalCustomFunction(SA.get(methodName + "Y"), terminalReward, reward);
+                            method.updateTerminalCustomFunction(SA.get(methodName + "X"), terminalReward, reward);
+                        }
                     }
                 }
             }
         }
 
-        if (terminationBooleans.totalSuccess()) {
-            stringBuilder.append('+');
-        } else {
-            stringBuilder.append('-');
+        episodeStatistics.recordEpisode(terminationBooleans.totalSuccess(), topLevelTerminalReward(SA));
+
+        synchronized (stringBuilder) {
+            if (terminationBooleans.totalSuccess()) {
+                stringBuilder.append('+');
+            } else {
+                stringBuilder.append('-');
+            }
+            if (!smartPrintBuffer) {
+                printAndClearStringBuffer(false);
+            }
         }
-        if (!smartPrintBuffer) {
-            printAndClearStringBuffer(false);
+    }
+
+    /**
+     * Release what the methods keep for the state actions of an ended episode, whether or not it had its terminal
+     * update.  Must be called on the thread that flew the episode.
+     */
+    public void releaseEpisode(LinkedHashMap<String, ArrayList<StateActionTuple>> SA) {
+        for (MDPDefinition definition: methods.values()) {
+            for (BaseMethodImplementation method: definition.models) {
+                for (ArrayList<StateActionTuple> stateActionTuples: SA.values())
+                    method.releaseEpisode(stateActionTuples);
+            }
         }
     }
 
+    private double topLevelTerminalReward(LinkedHashMap<String, ArrayList<StateActionTuple>> SA) {
+        // the first method is the top of the hierarchy
+        if (methods.isEmpty()) return Double.NaN;
+        Map.Entry<String, MDPDefinition> top = methods.entrySet().iterator().next();
+        ArrayList<StateActionTuple> stateActionTuples = SA.get(top.getKey());
+        if ((top.getValue()._terminalReward == null) || (stateActionTuples == null) || stateActionTuples.isEmpty())
+            return Double.NaN;
+        return top.getValue()._terminalReward.evaluate(stateActionTuples.get(stateActionTuples.size() - 1).state);
+    }
+
+    public RLEpisodeStatistics getEpisodeStatistics() {
+        return episodeStatistics;
+    }
+
+    /**
+     * Route all value function updates through per-definition replay buffers learned by a background thread.
+     * Transitions stored by a previous run are added to the buffers for replay.
+     */
+    public synchronized void enableReplay(int capacity, int replaysPerTransition) {
+        if (replayLearner != null) return;
+        ArrayList<RLReplayBuffer> replayBuffers = new ArrayList<>();
+        for (MDPDefinition definition: methods.values()) {
+            definition.replayBuffer = new RLReplayBuffer(definition, capacity);
+            if (RLObjectFileStore.getInstance().tryToReadReplayBufferFromDefinition(definition))
+                System.out.println("Replaying " + definition.replayBuffer.size() + " stored transitions of " + definition.name);
+            replayBuffers.add(definition.replayBuffer);
+        }
+        replayLearner = new RLReplayLearner(replayBuffers, replaysPerTransition, ~RLEpisodeRandom.getMasterSeed());
+        replayLearner.start();
+    }
+
+    /**
+     * Learn the remaining transitions, store the replay buffers and go back to updating on the simulation threads.
+     */
+    public synchronized void disableReplay() throws InterruptedException {
+        if (replayLearner == null) return;
+        replayLearner.stop();
+        System.out.println("Replay learner: " + replayLearner.getLearnedTransitions() + " transitions learned, " +
+                replayLearner.getReplayedTransitions() + " replayed, " + replayLearner.getDroppedTransitions() + " dropped");
+        RLObjectFileStore.storeReplayBuffers();
+        for (MDPDefinition definition: methods.values())
+            definition.replayBuffer = null;
+        replayLearner = null;
+    }
+
+    public boolean isReplayEnabled() {
+        return replayLearner != null;
+    }
+
+    /**
+     * Record the trajectory of every following episode into a new log in the directory.
+     */
+    public synchronized RLTrajectoryFile startTrajectorySession(File directory) throws IOException {
+        stopTrajectorySession();
+        trajectoryFile = RLTrajectoryFile.createSession(directory);
+        return trajectoryFile;
+    }
+
+    public synchronized void stopTrajectorySession() throws IOException {
+        if (trajectoryFile == null) return;
+        RLTrajectoryFile file = trajectoryFile;
+        trajectoryFile = null;
+        file.close();
+    }
+
+    public RLTrajectoryFile getTrajectoryFile() {
+        return trajectoryFile;
+    }
+
     public void printStatusInformationOnSingleSimTermination(SimulationStatus status) {
         if (!smartPrintBuffer)
             printStatusInformation(status);
@@ -564,8 +647,11 @@ public class RLModelSingleton {
     }
 
     public void printAndClearStringBuffer(boolean goNewline) {
-        String result = stringBuilder.toString();
-        stringBuilder.setLength(0);
+        String result;
+        synchronized (stringBuilder) {
+            result = stringBuilder.toString();
+            stringBuilder.setLength(0);
+        }
         String successInfo = "";
         if (result.length() > 1) {
             int num_successes = 0;
@@ -10,6 +10,7 @@ https://www.java2novice.com/java-file-io-operations/read-write-object-from-file/
 
 public class RLObjectFileStore {
     private static String actionValueFunctionFileName = "actionValue";
+    private static String replayBufferFileName = "replay";
 
     private static class InstanceHolder {
         private static final RLObjectFileStore instance = new RLObjectFileStore();
@@ -22,15 +23,36 @@ public class RLObjectFileStore {
     private RLObjectFileStore(){}
 
     public boolean tryToReadActionValueFunctionFromDefinition(MDPDefinition definition) {
-        String fileName = actionValueFunctionFileName + definition.name + ".txt";
+        File binaryFile = new File(binaryFileName(definition.name));
+        if (RLValueFunctionFile.exists(binaryFile)) {
+            try {
+                RLValueFunction valueFunction = RLValueFunctionFile.read(definition, binaryFile);
+                if (valueFunction == null)
+                    return false;  // layout is different so must re-allocate
+                definition.setValueFunction(valueFunction);
+                return true;
+            } catch (IOException e) {
+                e.printStackTrace();
+                return false;
+            }
+        }
+        // legacy files only hold tables and maps
+        if ((definition.tileCoding != null) || (definition.adaptiveDiscretization != null)) return false;
+        return tryToReadLegacyActionValueFunction(definition, new File(legacyFileName(definition.name)));
+    }
+
+    /**
+     * Read a value function stored with Java serialization by older versions.
+     */
+    private boolean tryToReadLegacyActionValueFunction(MDPDefinition definition, File legacyFile) {
         boolean exists = false;
         try {
-            File tempFile = new File(fileName);
-            exists = tempFile.exists();
+            exists = legacyFile.exists();
         } catch (Exception e) {
             exists = false;
         }
         if (exists) {
+            String fileName = legacyFile.getPath();
             try {
                 try {
                     float[] valueFunctionTable = (float[]) readObjects(fileName);
@@ -50,6 +72,27 @@ public class RLObjectFileStore {
         return exists;
     }
 
+    /**
+     * Convert a Java-serialized value function (actionValue*.txt) into the binary format.
+     * The definition must be the one the legacy file was trained with - the old format does not record it.
+     *
+     * @return whether the legacy file could be read and converted
+     */
+    public boolean convertLegacyActionValueFunction(MDPDefinition definition, File legacyFile, File binaryFile) {
+        RLValueFunction previousValueFunction = definition.valueFunction;
+        try {
+            if (!tryToReadLegacyActionValueFunction(definition, legacyFile))
+                return false;
+            RLValueFunctionFile.write(definition, definition.valueFunction, binaryFile);
+            return true;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        } finally {
+            definition.setValueFunction(previousValueFunction);
+        }
+    }
+
     // starting to attempt to move the actionValueFunction to the MDP Definition
 
     public static void storeDefinition(MDPDefinition definition, String fileName) {
@@ -62,16 +105,53 @@ public class RLObjectFileStore {
 
     public static void storeActionValueFunctions(){
         for (Map.Entry<String, MDPDefinition> entry: RLModelSingleton.getInstance().getMethods().entrySet()) {
-            if (entry.getValue().valueFunction.isTable) {
-                float[] actionValueFunctionTable = entry.getValue().valueFunction.getValueFunctionTable();
-                storeObject(actionValueFunctionTable, actionValueFunctionFileName + entry.getKey() + ".txt");
-            } else {
-                HashMap<Integer, Float> actionValueFunctionMap = entry.getValue().valueFunction.getValueFunctionMap();
-                storeObject(actionValueFunctionMap, actionValueFunctionFileName + entry.getKey() + ".txt");
+            MDPDefinition definition = entry.getValue();
+            try {
+                RLValueFunctionFile.write(definition, definition.valueFunction, new File(binaryFileName(entry.getKey())));
+            } catch (IOException e) {
+                e.printStackTrace();
             }
         }
     }
 
+    public static void storeReplayBuffers() {
+        for (Map.Entry<String, MDPDefinition> entry: RLModelSingleton.getInstance().getMethods().entrySet()) {
+            RLReplayBuffer replayBuffer = entry.getValue().replayBuffer;
+            if (replayBuffer == null) continue;
+            try {
+                replayBuffer.write(new File(replayFileName(entry.getKey())));
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Add the transitions stored by a previous run to the replay buffer of the definition.
+     */
+    public boolean tryToReadReplayBufferFromDefinition(MDPDefinition definition) {
+        File file = new File(replayFileName(definition.name));
+        if (!file.exists() || (definition.replayBuffer == null)) return false;
+        try {
+            return definition.replayBuffer.read(file) != -1;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    public static String replayFileName(String definitionName) {
+        return replayBufferFileName + definitionName + RLReplayBuffer.EXTENSION;
+    }
+
+    public static String binaryFileName(String definitionName) {
+        return actionValueFunctionFileName + definitionName + RLValueFunctionFile.EXTENSION;
+    }
+
+    public static String legacyFileName(String definitionName) {
+        return actionValueFunctionFileName + definitionName + ".txt";
+    }
+
     /*
     Private implementation.  Details.
      */
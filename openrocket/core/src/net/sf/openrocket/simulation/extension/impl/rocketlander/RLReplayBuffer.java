@@ -0,0 +1,388 @@
+package net.sf.openrocket.simulation.extension.impl.rocketlander;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Ring buffer of the value function transitions of one MDPDefinition, learned by the RLReplayLearner thread.
+ *
+ * A transition moves the entry at index towards reward + discount * value(nextIndex), or towards reward alone if
+ * nextIndex is -1 (terminal and Monte Carlo returns).  The records are stored off-heap as primitives:
+ *   long index, long nextIndex, float reward, float discount, float alpha, int generation
+ * The generation is the RLStatePartition generation the indeces were computed with.  A record whose cell has been
+ * split since is dropped from learning and replay, as its indeces may be the wrong half of the split.
+ *
+ * Simulation threads only append records, to a bounded lock-free queue for any number of producers: a producer claims
+ * the next position of the queue and publishes its record through the sequence number of the slot, like the
+ * Visualize3DFrameQueue.  A producer never waits for the learner; a record finding the queue full is dropped and
+ * counted.  The learner thread drains the queue into the replay ring and its sum tree, which only it changes.  Every
+ * record is learned once in the order it was added, and is then replayed with a probability proportional to its
+ * priority (|TD error| + epsilon)^PRIORITY_EXPONENT.  New records get the largest priority seen so far.  The monitor of
+ * the buffer only orders the learner against write, which stores the replay ring from a checkpointing thread.
+ *
+ * File layout (little-endian): int magic ("RLRB"), int version, long MDPDefinition layout hash, int record count,
+ * then the records oldest first, without their generation - a stored partition is read with its records, so they
+ * start from its current generation.  Version 1 files, whose indeces were ints, are still read.
+ */
+public class RLReplayBuffer {
+    public static final String EXTENSION = ".rlrb";
+    private static final int MAGIC = 0x42524C52;  // "RLRB" in little-endian byte order
+    private static final int VERSION = 2;
+    private static final int RECORD_BYTES = 32;
+    private static final int FILE_RECORD_BYTES = 28;
+    private static final double PRIORITY_EPSILON = 0.01;
+    private static final double PRIORITY_EXPONENT = 0.6;
+    private static final double IMPORTANCE_EXPONENT = 0.4;
+    private static final int MAX_INCOMING_SLOTS = 1 << 16;
+
+    private final MDPDefinition definition;
+    private final int capacity;
+
+    // the queue of records added and not yet learned
+    private final int incomingMask;
+    private final long[] incomingIndeces;
+    private final long[] incomingNextIndeces;
+    private final float[] incomingRewards;
+    private final float[] incomingDiscounts;
+    private final float[] incomingAlphas;
+    private final int[] incomingGenerations;
+    private final AtomicLongArray incomingSequences;
+    private final AtomicLong incomingTail = new AtomicLong();
+    private volatile long incomingHead = 0;  // only written by the learner
+    private final AtomicLong dropped = new AtomicLong();
+
+    // the replay ring, only changed by the learner
+    private final ByteBuffer records;
+    private final int treeSize;
+    private final double[] priorityTree;
+    private double maxPriority = 1.0;
+    private long stored = 0;  // records ever stored in the ring
+    private volatile long stale = 0;  // records dropped because their cell was split, only written by the learner
+
+    public RLReplayBuffer(MDPDefinition definition, int capacity) {
+        this.definition = definition;
+        this.capacity = capacity;
+        int incomingSlots = 1;
+        while ((incomingSlots < capacity) && (incomingSlots < MAX_INCOMING_SLOTS)) incomingSlots <<= 1;
+        this.incomingMask = incomingSlots - 1;
+        this.incomingIndeces = new long[incomingSlots];
+        this.incomingNextIndeces = new long[incomingSlots];
+        this.incomingRewards = new float[incomingSlots];
+        this.incomingDiscounts = new float[incomingSlots];
+        this.incomingAlphas = new float[incomingSlots];
+        this.incomingGenerations = new int[incomingSlots];
+        this.incomingSequences = new AtomicLongArray(incomingSlots);
+        for (int slot = 0; slot < incomingSlots; slot++)
+            incomingSequences.set(slot, slot);
+        this.records = ByteBuffer.allocateDirect(capacity * RECORD_BYTES).order(ByteOrder.nativeOrder());
+        int treeSize = 1;
+        while (treeSize < capacity) treeSize <<= 1;
+        this.treeSize = treeSize;
+        this.priorityTree = new double[2 * treeSize];
+    }
+
+    public MDPDefinition getDefinition() { return definition; }
+    public int getCapacity() { return capacity; }
+
+    /**
+     * @return the number of records in the replay ring
+     */
+    public synchronized int size() {
+        return (int) Math.min(stored, capacity);
+    }
+
+    /**
+     * @return the number of records dropped because the learner fell a whole queue behind
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * @return the number of records dropped because the partition split their cell after they were added
+     */
+    public long getStale() {
+        return stale;
+    }
+
+    /**
+     * Queue a record whose indeces were computed with the current partition generation.
+     */
+    public void add(long index, float reward, long nextIndex, float discount, float alpha) {
+        RLValueFunction valueFunction = definition.valueFunction;
+        add(index, reward, nextIndex, discount, alpha, (valueFunction == null) ? 0 : valueFunction.getGeneration());
+    }
+
+    /**
+     * Queue a record for the learner.  Never blocks; if the queue is full the record is dropped.
+     *
+     * @param generation the partition generation read before the indeces were computed, see RLValueFunction.getGeneration
+     */
+    public void add(long index, float reward, long nextIndex, float discount, float alpha, int generation) {
+        while (true) {
+            long position = incomingTail.get();
+            int slot = (int) position & incomingMask;
+            long difference = incomingSequences.get(slot) - position;
+            if (difference == 0) {
+                if (incomingTail.compareAndSet(position, position + 1)) {
+                    incomingIndeces[slot] = index;
+                    incomingNextIndeces[slot] = nextIndex;
+                    incomingRewards[slot] = reward;
+                    incomingDiscounts[slot] = discount;
+                    incomingAlphas[slot] = alpha;
+                    incomingGenerations[slot] = generation;
+                    incomingSequences.lazySet(slot, position + 1);
+                    return;
+                }
+            } else if (difference < 0) {
+                // the learner has not taken the record of the previous round yet
+                dropped.incrementAndGet();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Learn the records added since the last call, in order.  Must only be called by the learner thread.
+     *
+     * @return the number of records learned
+     */
+    public int learnNew(int maxRecords, Batch batch) {
+        synchronized (this) {
+            int count = Math.min(Math.min(maxRecords, batch.capacity()), capacity);
+            batch.size = 0;
+            while (batch.size < count) {
+                long position = incomingHead;
+                int incomingSlot = (int) position & incomingMask;
+                if (incomingSequences.get(incomingSlot) != position + 1) break;
+                int slot = store(incomingIndeces[incomingSlot], incomingNextIndeces[incomingSlot],
+                        incomingRewards[incomingSlot], incomingDiscounts[incomingSlot], incomingAlphas[incomingSlot],
+                        incomingGenerations[incomingSlot]);
+                incomingSequences.lazySet(incomingSlot, position + incomingMask + 1);
+                incomingHead = position + 1;
+                batch.load(this, slot, 1.0f);
+            }
+        }
+        learn(batch);
+        return batch.size;
+    }
+
+    /**
+     * Replay records sampled by priority.  Must only be called by the learner thread.
+     */
+    public int replay(SplittableRandom random, int count, Batch batch) {
+        synchronized (this) {
+            int size = (int) Math.min(stored, capacity);
+            count = Math.min(count, batch.capacity());
+            double total = priorityTree[1];
+            if ((size == 0) || (total <= 0)) return 0;
+            batch.size = 0;
+            for (int i = 0; i < count; i++) {
+                int slot = sampleSlot(random.nextDouble() * total);
+                double probability = priorityTree[treeSize + slot] / total;
+                // importance sampling weight, capped at 1 so replays never take larger steps than online updates
+                float weight = (float) Math.min(1.0, Math.pow(size * probability, -IMPORTANCE_EXPONENT));
+                batch.load(this, slot, weight);
+            }
+        }
+        learn(batch);
+        return batch.size;
+    }
+
+    /**
+     * Store all records, so a later run can replay them.
+     */
+    public void write(File file) throws IOException {
+        ByteBuffer data;
+        int count;
+        synchronized (this) {
+            count = (int) Math.min(stored, capacity);
+            data = ByteBuffer.allocate(4 + 4 + 8 + 4 + count * FILE_RECORD_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            data.putInt(MAGIC);
+            data.putInt(VERSION);
+            data.putLong(definition.layoutHash);
+            data.putInt(count);
+            for (long i = stored - count; i < stored; i++) {
+                int position = (int) (i % capacity) * RECORD_BYTES;
+                data.putLong(records.getLong(position));
+                data.putLong(records.getLong(position + 8));
+                data.putFloat(records.getFloat(position + 16));
+                data.putFloat(records.getFloat(position + 20));
+                data.putFloat(records.getFloat(position + 24));
+            }
+        }
+        data.flip();
+        File temporaryFile = new File(file.getPath() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporaryFile.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (data.hasRemaining())
+                channel.write(data);
+        }
+        Files.move(temporaryFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Add the records of a previous run for replay, before the learner is started.  They are not learned in order again.
+     *
+     * @return the number of records read, or -1 if the file was written for a different definition layout
+     */
+    public int read(File file) throws IOException {
+        ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(file.toPath())).order(ByteOrder.LITTLE_ENDIAN);
+        if (data.getInt() != MAGIC)
+            throw new IOException("Not a replay buffer file: " + file);
+        int version = data.getInt();
+        if ((version != 1) && (version != VERSION))
+            throw new IOException("Unsupported replay buffer file version " + version + ": " + file);
+        if (data.getLong() != definition.layoutHash) {
+            System.out.println("Stored replay buffer " + file + " does not match the layout of MDPDefinition " + definition.name + ".  Ignoring it.");
+            return -1;
+        }
+        int count = data.getInt();
+        RLValueFunction valueFunction = definition.valueFunction;
+        int generation = (valueFunction == null) ? 0 : valueFunction.getGeneration();
+        synchronized (this) {
+            for (int i = 0; i < count; i++) {
+                long index = (version == 1) ? data.getInt() : data.getLong();
+                long nextIndex = (version == 1) ? data.getInt() : data.getLong();
+                float reward = data.getFloat();
+                float discount = data.getFloat();
+                float alpha = data.getFloat();
+                store(index, nextIndex, reward, discount, alpha, generation);
+            }
+        }
+        return count;
+    }
+
+    /*
+    Private implementation.  Details.
+     */
+
+    private void learn(Batch batch) {
+        RLValueFunction valueFunction = definition.valueFunction;
+        long staleRecords = 0;
+        for (int i = 0; i < batch.size; i++) {
+            int generation = batch.generations[i];
+            if (valueFunction.isStale(batch.indeces[i], generation)
+                    || ((batch.nextIndeces[i] != -1) && valueFunction.isStale(batch.nextIndeces[i], generation))) {
+                batch.errors[i] = -1;
+                staleRecords++;
+                continue;
+            }
+            float target = batch.rewards[i];
+            if (batch.nextIndeces[i] != -1)
+                target += batch.discounts[i] * valueFunction.get(batch.nextIndeces[i]);
+            float oldValue = valueFunction.get(batch.indeces[i]);
+            valueFunction.updateTowards(batch.indeces[i], target, batch.alphas[i] * batch.weights[i]);
+            batch.errors[i] = Math.abs(target - oldValue);
+        }
+        synchronized (this) {
+            for (int i = 0; i < batch.size; i++) {
+                if (batch.errors[i] < 0) {
+                    // stale - never replayed again
+                    setPriority(batch.slots[i], 0);
+                    continue;
+                }
+                double priority = Math.pow(batch.errors[i] + PRIORITY_EPSILON, PRIORITY_EXPONENT);
+                maxPriority = Math.max(maxPriority, priority);
+                setPriority(batch.slots[i], priority);
+            }
+            if (staleRecords != 0) stale += staleRecords;
+        }
+    }
+
+    /**
+     * Store a record in the replay ring, over the oldest one once it is full.
+     *
+     * @return the slot of the record
+     */
+    private int store(long index, long nextIndex, float reward, float discount, float alpha, int generation) {
+        int slot = (int) (stored % capacity);
+        int position = slot * RECORD_BYTES;
+        records.putLong(position, index);
+        records.putLong(position + 8, nextIndex);
+        records.putFloat(position + 16, reward);
+        records.putFloat(position + 20, discount);
+        records.putFloat(position + 24, alpha);
+        records.putInt(position + 28, generation);
+        setPriority(slot, maxPriority);
+        stored++;
+        return slot;
+    }
+
+    private void setPriority(int slot, double priority) {
+        int node = treeSize + slot;
+        double change = priority - priorityTree[node];
+        while (node >= 1) {
+            priorityTree[node] += change;
+            node >>= 1;
+        }
+    }
+
+    private int sampleSlot(double value) {
+        int node = 1;
+        while (node < treeSize) {
+            int left = 2 * node;
+            if ((value < priorityTree[left]) || (priorityTree[left + 1] <= 0)) {
+                node = left;
+            } else {
+                value -= priorityTree[left];
+                node = left + 1;
+            }
+        }
+        return Math.min(node - treeSize, capacity - 1);
+    }
+
+    /**
+     * Primitive copies of the records being learned, reused by the learner thread.
+     */
+    public static class Batch {
+        int size = 0;
+        final int[] slots;
+        final long[] indeces;
+        final long[] nextIndeces;
+        final float[] rewards;
+        final float[] discounts;
+        final float[] alphas;
+        final int[] generations;
+        final float[] weights;
+        final float[] errors;
+
+        public Batch(int capacity) {
+            slots = new int[capacity];
+            indeces = new long[capacity];
+            nextIndeces = new long[capacity];
+            rewards = new float[capacity];
+            discounts = new float[capacity];
+            alphas = new float[capacity];
+            generations = new int[capacity];
+            weights = new float[capacity];
+            errors = new float[capacity];
+        }
+
+        int capacity() {
+            return slots.length;
+        }
+
+        private void load(RLReplayBuffer buffer, int slot, float weight) {
+            int i = size++;
+            int position = slot * RECORD_BYTES;
+            slots[i] = slot;
+            indeces[i] = buffer.records.getLong(position);
+            nextIndeces[i] = buffer.records.getLong(position + 8);
+            rewards[i] = buffer.records.getFloat(position + 16);
+            discounts[i] = buffer.records.getFloat(position + 20);
+            alphas[i] = buffer.records.getFloat(position + 24);
+            generations[i] = buffer.records.getInt(position + 28);
+            weights[i] = weight;
+        }
+    }
+}
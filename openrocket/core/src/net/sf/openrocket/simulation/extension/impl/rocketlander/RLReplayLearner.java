@@ -0,0 +1,108 @@
+package net.sf.openrocket.simulation.extension.impl.rocketlander;
+
+import java.util.Collection;
+import java.util.SplittableRandom;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Background thread that applies the transitions of RLReplayBuffers to the value functions.
+ *
+ * New transitions are learned in order first.  Every learned transition then pays for replaysPerTransition
+ * prioritized replays of the same buffer, so an expensive simulated step is learned from several times.
+ */
+public class RLReplayLearner {
+    private static final int BATCH_SIZE = 256;
+    private static final long IDLE_NANOS = 1000 * 1000;
+
+    private final RLReplayBuffer[] buffers;
+    private final int replaysPerTransition;
+    private final SplittableRandom random;
+    private final RLReplayBuffer.Batch batch = new RLReplayBuffer.Batch(BATCH_SIZE);
+    private final long[] replayCredits;
+
+    private volatile boolean running = false;
+    private Thread thread = null;
+    private long learnedTransitions = 0;
+    private long replayedTransitions = 0;
+
+    public RLReplayLearner(Collection<RLReplayBuffer> buffers, int replaysPerTransition, long seed) {
+        this.buffers = buffers.toArray(new RLReplayBuffer[buffers.size()]);
+        this.replaysPerTransition = replaysPerTransition;
+        this.random = new SplittableRandom(seed);
+        this.replayCredits = new long[this.buffers.length];
+    }
+
+    public synchronized void start() {
+        if (running) return;
+        running = true;
+        thread = new Thread(this::run, "RLReplayLearner");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stop the thread once every transition added so far is learned.
+     */
+    public synchronized void stop() throws InterruptedException {
+        if (!running) return;
+        running = false;
+        LockSupport.unpark(thread);
+        thread.join();
+        thread = null;
+    }
+
+    public long getLearnedTransitions() { return learnedTransitions; }
+    public long getReplayedTransitions() { return replayedTransitions; }
+
+    /**
+     * @return the transitions the simulations added while the queue of their buffer was full
+     */
+    public long getDroppedTransitions() {
+        long dropped = 0;
+        for (RLReplayBuffer buffer: buffers)
+            dropped += buffer.getDropped();
+        return dropped;
+    }
+
+    /*
+    Private implementation.  Details.
+     */
+
+    private void run() {
+        while (running) {
+            if (learnStep() == 0)
+                LockSupport.parkNanos(IDLE_NANOS);
+        }
+        // drain whatever the simulations added before stopping
+        while (learnNewOnly() != 0);
+    }
+
+    private int learnStep() {
+        int work = 0;
+        for (int i = 0; i < buffers.length; i++) {
+            int learned = buffers[i].learnNew(BATCH_SIZE, batch);
+            learnedTransitions += learned;
+            replayCredits[i] += (long) learned * replaysPerTransition;
+            work += learned;
+
+            int replays = (int) Math.min(replayCredits[i], BATCH_SIZE);
+            if (replays > 0) {
+                int replayed = buffers[i].replay(random, replays, batch);
+                replayCredits[i] = (replayed == 0) ? 0 : replayCredits[i] - replayed;
+                replayedTransitions += replayed;
+                work += replayed;
+            }
+        }
+        return work;
+    }
+
+    private int learnNewOnly() {
+        int work = 0;
+        for (RLReplayBuffer buffer: buffers) {
+            int learned = buffer.learnNew(BATCH_SIZE, batch);
+            learnedTransitions += learned;
+            work += learned;
+        }
+        return work;
+    }
+}
@@ -0,0 +1,258 @@
+package net.sf.openrocket.simulation.extension.impl.rocketlander;
+
+import net.sf.openrocket.simulation.extension.impl.rocketlander.StateActionTuple.*;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * kd-partition of the discretized state fields of an RLAdaptiveDiscretization, kept in primitive arrays.
+ *
+ * Every inner node splits the integer values of one field in two halves, and every leaf is a cell of the value
+ * function table.  A split keeps the cell of the old leaf for its lower half and copies its values into a new cell for
+ * the upper half, so both halves start from what the parent learned.  The field split is the widest one relative to
+ * its full range, down to a single integer value of the stateDefinition precision.
+ *
+ * Lookups never lock - the children of a node are published last, through an AtomicIntegerArray, so a reader either
+ * sees a leaf or a fully built split.  Splits are synchronized.  The update statistics are kept without locking, so
+ * concurrent updates may lose a few counts - they only decide when to split.
+ *
+ * Indeces computed before a split may point to the wrong half of the split cell.  Every split therefore increments the
+ * generation of the partition and stamps it on both halves: an index taken with an earlier generation than the last
+ * split of its cell is stale, and the replay buffer and eligibility traces drop it instead of learning the wrong half.
+ */
+public class RLStatePartition {
+    private static final int NODE_INTS = 5;
+
+    private final RLAdaptiveDiscretization discretization;
+    private final int[] splitFields;
+    private final int[] splitValues;
+    private final int[] parents;
+    private final int[] cells;
+    private final AtomicIntegerArray children;  // left child of an inner node, 0 for a leaf - the right one follows it
+    private int numNodes;
+    private volatile int numCells;
+    private volatile int generation = 0;  // number of splits
+    private final int[] splitGenerations;  // generation of the last split of every cell
+
+    private final int[] leaves;  // leaf node of every cell
+    private final int[] updates;
+    private final float[] errors;
+    private final boolean[] finest;
+    private long totalUpdates = 0;
+    private double totalError = 0;
+
+    /**
+     * Partition with the initial cells of the discretization, split breadth first.
+     */
+    public RLStatePartition(RLAdaptiveDiscretization discretization) {
+        this(discretization, true);
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        queue.add(0);
+        while ((numCells < discretization.initialCells) && !queue.isEmpty()) {
+            int node = queue.poll();
+            if (split(node, null)) {
+                queue.add(children.get(node));
+                queue.add(children.get(node) + 1);
+            }
+        }
+    }
+
+    /**
+     * The cell of the state, as a row of the value function table.
+     */
+    public int cell(State state) {
+        int[] slots = discretization.slots;
+        int node = 0;
+        int child;
+        while ((child = children.get(node)) != 0) {
+            // values outside the range of the field land in the outermost cells, like clamping them
+            node = (state.get(slots[splitFields[node]]) < splitValues[node]) ? child : child + 1;
+        }
+        return cells[node];
+    }
+
+    public int getNumCells() {
+        return numCells;
+    }
+
+    /**
+     * The generation to stamp an index with - read before the index is computed.
+     */
+    public int getGeneration() {
+        return generation;
+    }
+
+    /**
+     * @return true if the cell of the index was split after the generation the index was computed with
+     */
+    public boolean isStale(long index, int indexGeneration) {
+        // the volatile read also makes the split generations written before it visible
+        if (indexGeneration >= generation) return false;
+        return splitGenerations[(int) (index / discretization.stateStride)] > indexGeneration;
+    }
+
+    /**
+     * Account an update of the value function at index, splitting its cell once it is due.
+     *
+     * @param error the error the update corrected
+     */
+    public void recordUpdate(RLValueFunction valueFunction, int index, float error) {
+        int cell = index / discretization.stateStride;
+        if (finest[cell] || (numCells == discretization.maxCells)) return;
+
+        int cellUpdates = ++updates[cell];
+        float cellError = errors[cell] += Math.abs(error);
+        totalUpdates++;
+        totalError += Math.abs(error);
+
+        boolean due = cellUpdates >= discretization.splitVisits;
+        if (!due && (cellUpdates >= discretization.splitVisits / 4))
+            due = cellError / cellUpdates >= discretization.splitError * totalError / totalUpdates;
+        if (due) {
+            synchronized (this) {
+                // another thread may have split the cell since
+                int node = leaves[cell];
+                if ((children.get(node) == 0) && (updates[cell] >= cellUpdates))
+                    split(node, valueFunction);
+            }
+        }
+    }
+
+    /**
+     * Snapshot of the nodes, little-endian: int number of nodes, int number of cells, then per node its split field,
+     * split value, parent, cell and left child.
+     */
+    public synchronized ByteBuffer toByteBuffer() {
+        ByteBuffer buffer = ByteBuffer.allocate(8 + numNodes * NODE_INTS * 4).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(numNodes);
+        buffer.putInt(numCells);
+        for (int node = 0; node < numNodes; node++) {
+            buffer.putInt(splitFields[node]);
+            buffer.putInt(splitValues[node]);
+            buffer.putInt(parents[node]);
+            buffer.putInt(cells[node]);
+            buffer.putInt(children.get(node));
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Read the nodes written by toByteBuffer.
+     *
+     * @return the partition, or null if it does not fit the discretization
+     */
+    public static RLStatePartition fromByteBuffer(RLAdaptiveDiscretization discretization, ByteBuffer buffer) {
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        int numNodes = buffer.getInt();
+        int numCells = buffer.getInt();
+        if ((numCells < 1) || (numCells > discretization.maxCells) || (numNodes != 2 * numCells - 1)) return null;
+
+        RLStatePartition partition = new RLStatePartition(discretization, false);
+        for (int node = 0; node < numNodes; node++) {
+            partition.splitFields[node] = buffer.getInt();
+            partition.splitValues[node] = buffer.getInt();
+            partition.parents[node] = buffer.getInt();
+            partition.cells[node] = buffer.getInt();
+            int child = buffer.getInt();
+            if (child == 0) {
+                if ((partition.cells[node] < 0) || (partition.cells[node] >= numCells)) return null;
+                partition.leaves[partition.cells[node]] = node;
+            } else if ((child < 0) || (child + 1 >= numNodes)) {
+                return null;
+            }
+            partition.children.set(node, child);
+        }
+        partition.numNodes = numNodes;
+        partition.numCells = numCells;
+        return partition;
+    }
+
+    /*
+    Private implementation.  Details.
+     */
+
+    private RLStatePartition(RLAdaptiveDiscretization discretization, boolean root) {
+        this.discretization = discretization;
+        int maxNodes = 2 * discretization.maxCells - 1;
+        splitFields = new int[maxNodes];
+        splitValues = new int[maxNodes];
+        parents = new int[maxNodes];
+        cells = new int[maxNodes];
+        children = new AtomicIntegerArray(maxNodes);
+        leaves = new int[discretization.maxCells];
+        updates = new int[discretization.maxCells];
+        errors = new float[discretization.maxCells];
+        finest = new boolean[discretization.maxCells];
+        splitGenerations = new int[discretization.maxCells];
+        if (root) {
+            numNodes = 1;
+            numCells = 1;
+            parents[0] = -1;
+        }
+    }
+
+    /**
+     * Split a leaf in two halves of its widest field, copying its values to the new cell if there is a value function.
+     *
+     * @return false if the leaf is already a single value of every field or all cells are in use
+     */
+    private synchronized boolean split(int node, RLValueFunction valueFunction) {
+        int cell = cells[node];
+        if (numCells == discretization.maxCells) return false;
+
+        int[] lower = discretization.minValues.clone();
+        int[] upper = discretization.maxValues.clone();
+        for (int child = node, parent = parents[node]; parent >= 0; child = parent, parent = parents[parent]) {
+            int field = splitFields[parent];
+            if (child == children.get(parent))
+                upper[field] = Math.min(upper[field], splitValues[parent] - 1);
+            else
+                lower[field] = Math.max(lower[field], splitValues[parent]);
+        }
+        int splitField = -1;
+        double widest = 0;
+        for (int field = 0; field < discretization.numFields; field++) {
+            int width = upper[field] - lower[field] + 1;
+            double relativeWidth = width / (double) (discretization.maxValues[field] - discretization.minValues[field] + 1);
+            if ((width >= 2) && (relativeWidth > widest)) {
+                widest = relativeWidth;
+                splitField = field;
+            }
+        }
+        if (splitField == -1) {
+            finest[cell] = true;
+            return false;
+        }
+
+        int left = numNodes;
+        int right = numNodes + 1;
+        int newCell = numCells;
+        splitFields[node] = splitField;
+        splitValues[node] = lower[splitField] + (upper[splitField] - lower[splitField] + 1) / 2;
+        parents[left] = node;
+        parents[right] = node;
+        cells[left] = cell;
+        cells[right] = newCell;
+        leaves[cell] = left;
+        leaves[newCell] = right;
+        updates[cell] = 0;
+        errors[cell] = 0;
+        if (valueFunction != null) {
+            int stride = discretization.stateStride;
+            for (int action = 0; action < stride; action++)
+                valueFunction.put(newCell * stride + action, valueFunction.getEntry(cell * stride + action));
+        }
+        numNodes += 2;
+        numCells++;
+        splitGenerations[cell] = generation + 1;
+        splitGenerations[newCell] = generation + 1;
+        children.set(node, left);  // publishes the split
+        // only after the split, so an index computed with this generation is one of the halves
+        generation++;
+        return true;
+    }
+}
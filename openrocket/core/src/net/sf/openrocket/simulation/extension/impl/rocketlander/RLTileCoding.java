@@ -0,0 +1,112 @@
+package net.sf.openrocket.simulation.extension.impl.rocketlander;
+
+import java.io.Serializable;
+import java.util.LinkedHashMap;
+
+/**
+ * Tile coding of the state-action index space of an MDPDefinition, the backend of a linear RLValueFunction whose size
+ * does not depend on the number of fields.
+ *
+ * Every tiling covers the discretized state fields with tiles of tileWidth cells (tileWidths per field), offset from
+ * the other tilings by a fraction of a tile so that neighbouring states share some of their tiles.  Action fields are
+ * never generalized over - their tiles are one cell wide.  The tiles of a state-action index are hashed into a fixed
+ * number of weights, and the value is the sum of the weights of its tile in every tiling.  The index is a long, so the
+ * product of the field sizes only has to fit a long, however large the table of the definition would be.
+ *
+ * Selected per definition by its JSON, e.g.  "tileCoding": {"tilings": 8, "weights": 1048576, "tileWidth": 4}
+ */
+public class RLTileCoding implements Serializable {
+    private static final long serialVersionUID = 5080946160593713339L;
+
+    public int tilings = 8;
+    public int weights = 1 << 20;
+    public int tileWidth = 4;
+    public LinkedHashMap<String, Integer> tileWidths = null;
+
+    private transient int weightMask;
+    private transient int[] fieldSizes;
+    private transient long[] fieldStrides;
+    private transient long[] fieldWidths;  // tile width in cells, times tilings
+    private transient long[] fieldOffsets; // per tiling and field, in cells times tilings
+
+    /**
+     * Derive the layout of the tiles from the index fields of the definition.
+     */
+    public void initialize(MDPDefinition definition) {
+        long indexSpace = 1;
+        try {
+            for (int size : definition.indeces)
+                indexSpace = Math.multiplyExact(indexSpace, size);
+        } catch (ArithmeticException e) {
+            throw new IllegalArgumentException("The index space of MDPDefinition " + definition.name + " does not fit a long");
+        }
+
+        int numWeights = 1;
+        while (numWeights < weights) numWeights <<= 1;
+        weightMask = numWeights - 1;
+
+        int numFields = definition.indeces.length;
+        int numStateFields = definition.stateDefinitionFields.length;
+        fieldSizes = definition.indeces.clone();
+        fieldStrides = definition.indexStrides.clone();
+        fieldWidths = new long[numFields];
+        fieldOffsets = new long[tilings * numFields];
+        for (int i = 0; i < numFields; i++) {
+            int width = 1;
+            if (i < numStateFields) {
+                String field = definition.stateDefinitionFields[i];
+                width = (tileWidths != null && tileWidths.containsKey(field)) ? tileWidths.get(field) : tileWidth;
+            }
+            fieldWidths[i] = (long) Math.max(1, width) * tilings;
+            // asymmetric displacements (1, 3, 5, ...) keep the tilings from lining up along the diagonals
+            for (int tiling = 0; tiling < tilings; tiling++)
+                fieldOffsets[tiling * numFields + i] = (long) Math.max(1, width) * ((tiling * (2 * i + 1)) % tilings);
+        }
+    }
+
+    public int getNumWeights() { return weightMask + 1; }
+    public int getNumTilings() { return tilings; }
+
+    /**
+     * The weight of the tile of the state-action index in the tiling.
+     */
+    public int weightIndex(long index, int tiling) {
+        long hash = (tiling + 1) * 0x9E3779B97F4A7C15L;
+        for (int i = 0; i < fieldSizes.length; i++)
+            hash = mix(hash, tile((index / fieldStrides[i]) % fieldSizes[i], i, tiling));
+        return (int) hash & weightMask;
+    }
+
+    /**
+     * The weights of the tiles of the state-action index in every tiling, as weightIndex, decoding its cells once.
+     *
+     * @param weights   at least getNumTilings() entries, filled with the weight of each tiling
+     */
+    public void weightIndeces(long index, long[] weights) {
+        for (int tiling = 0; tiling < tilings; tiling++)
+            weights[tiling] = (tiling + 1) * 0x9E3779B97F4A7C15L;
+        for (int i = 0; i < fieldSizes.length; i++) {
+            long cell = (index / fieldStrides[i]) % fieldSizes[i];
+            for (int tiling = 0; tiling < tilings; tiling++)
+                weights[tiling] = mix(weights[tiling], tile(cell, i, tiling));
+        }
+        for (int tiling = 0; tiling < tilings; tiling++)
+            weights[tiling] &= weightMask;
+    }
+
+    private long tile(long cell, int field, int tiling) {
+        return (cell * tilings + fieldOffsets[tiling * fieldSizes.length + field]) / fieldWidths[field];
+    }
+
+    private static long mix(long hash, long tile) {
+        hash = (hash ^ tile) * 0xFF51AFD7ED558CCDL;
+        return hash ^ (hash >>> 32);
+    }
+
+    /**
+     * Appended to the layout hash of the definition, so weights are only read back for the same tiles.
+     */
+    String layout() {
+        return tilings + "," + weights + "," + tileWidth + "," + ((tileWidths == null) ? "" : tileWidths.toString());
+    }
+}
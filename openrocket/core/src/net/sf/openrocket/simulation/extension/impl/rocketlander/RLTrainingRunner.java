@@ -0,0 +1,255 @@
+package net.sf.openrocket.simulation.extension.impl.rocketlander;
+
+import net.sf.openrocket.document.Simulation;
+import net.sf.openrocket.simulation.BasicEventSimulationEngine;
+import net.sf.openrocket.simulation.BatchSimulationEngine;
+import net.sf.openrocket.simulation.SimulationConditions;
+import net.sf.openrocket.simulation.SimulationStatus;
+import net.sf.openrocket.simulation.exception.SimulationException;
+import net.sf.openrocket.simulation.extension.SimulationExtension;
+import net.sf.openrocket.simulation.listeners.AbstractSimulationListener;
+import net.sf.openrocket.simulation.listeners.SimulationListener;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs RocketLander training episodes of a simulation on a pool of worker threads, without any user interface.
+ *
+ * Every worker flies its own copy of the simulation, while all of them train the shared value functions of the
+ * MDPDefinitions set in RLModelSingleton.  Only the RocketLander extensions of the simulation are applied, so no
+ * visualization is started.  The value functions are checkpointed through RLObjectFileStore.
+ *
+ * Episode n draws its random numbers from RLEpisodeRandom with episode number n, so a run with a single worker is
+ * reproduced exactly by the same master seed, unless the updates go through the replay learner thread.
+ *
+ * With a batch size above 1 every worker flies its episodes in batches on a BatchSimulationEngine.  The episodes of a
+ * batch learn from each other in the order of their steps, so a batch run is reproduced by the same batch size only.
+ *
+ * An episode that fails is logged and counted as finished, so one failing episode neither stops its worker nor the run.
+ */
+public class RLTrainingRunner {
+    private static final Logger log = LoggerFactory.getLogger(RLTrainingRunner.class);
+
+    private final Simulation simulation;
+    private final int workers;
+    private long checkpointInterval = 10000;
+    private long reportInterval = 1000;
+    private int replayCapacity = 0;
+    private int replaysPerTransition = 4;
+    private File trajectoryDirectory = null;
+    private int batchSize = 1;
+
+    private final AtomicLong startedEpisodes = new AtomicLong();
+    private final AtomicLong finishedEpisodes = new AtomicLong();
+    private long lastReportTime;
+    private long lastReportEpisodes;
+
+    public RLTrainingRunner(Simulation simulation, int workers) {
+        this.simulation = simulation;
+        this.workers = Math.max(1, workers);
+    }
+
+    public void setCheckpointInterval(long checkpointInterval) { this.checkpointInterval = checkpointInterval; }
+    public void setReportInterval(long reportInterval) { this.reportInterval = reportInterval; }
+
+    /**
+     * Learn through replay buffers of the given capacity instead of on the worker threads (0 disables replay).
+     */
+    public void setReplay(int replayCapacity, int replaysPerTransition) {
+        this.replayCapacity = replayCapacity;
+        this.replaysPerTransition = replaysPerTransition;
+    }
+
+    public static boolean hasRocketLanderExtension(Simulation simulation) {
+        for (SimulationExtension extension: simulation.getSimulationExtensions()) {
+            if (extension instanceof RocketLanderExtension)
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Record the trajectories of the session into a new RLTrajectoryFile in the directory (null disables recording).
+     */
+    public void setTrajectoryDirectory(File trajectoryDirectory) {
+        this.trajectoryDirectory = trajectoryDirectory;
+    }
+
+    /**
+     * Fly the episodes of a worker in lockstep batches of the given size (1 flies them one by one).
+     */
+    public void setBatchSize(int batchSize) {
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    /**
+     * Fly the given number of episodes and store the value functions at the end.
+     */
+    public void train(long episodes) throws InterruptedException, IOException {
+        run(episodes, false);
+    }
+
+    /**
+     * Fly the given number of episodes with the frozen greedy policies of the value functions, without exploring or
+     * learning, e.g. for dispersion studies of a trained controller.  Nothing is stored.
+     */
+    public void fly(long episodes) throws InterruptedException, IOException {
+        run(episodes, true);
+    }
+
+    /*
+    Private implementation.  Details.
+     */
+
+    private void run(long episodes, boolean frozen) throws InterruptedException, IOException {
+        RLModelSingleton model = RLModelSingleton.getInstance();
+        if (frozen)
+            model.freezePolicies();
+        model.setSmartPrintBuffer(true);
+        model.getEpisodeStatistics().snapshotAndReset();
+        startedEpisodes.set(0);
+        finishedEpisodes.set(0);
+        lastReportTime = System.nanoTime();
+        lastReportEpisodes = 0;
+        System.out.println("Master seed: " + RLEpisodeRandom.getMasterSeed());
+        try {
+            if ((replayCapacity > 0) && !frozen)
+                model.enableReplay(replayCapacity, replaysPerTransition);
+            try {
+                if (trajectoryDirectory != null)
+                    System.out.println("Recording trajectories to " + model.startTrajectorySession(trajectoryDirectory).getFile());
+                runWorkers(episodes, frozen);
+            } finally {
+                model.stopTrajectorySession();
+            }
+        } finally {
+            // learn the transitions still in the replay buffers before the value functions are stored
+            model.disableReplay();
+            if (frozen)
+                model.unfreezePolicies();
+            model.setSmartPrintBuffer(false);
+        }
+        report(true);
+        if (!frozen)
+            RLObjectFileStore.storeActionValueFunctions();
+    }
+
+    private void runWorkers(long episodes, boolean frozen) throws InterruptedException {
+        ArrayList<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < workers; i++) {
+            // each worker needs its own simulation - simulation options and extensions are not thread safe
+            Simulation workerSimulation = simulation.duplicateSimulation(simulation.getRocket());
+            Thread thread = new Thread(() -> runEpisodes(workerSimulation, episodes, !frozen), "RLTrainingWorker-" + i);
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread: threads)
+            thread.join();
+    }
+
+    private void runEpisodes(Simulation workerSimulation, long episodes, boolean checkpoint) {
+        ArrayList<SimulationConditions> batch = new ArrayList<>();
+        long episode;
+        while ((episode = startedEpisodes.getAndIncrement()) < episodes) {
+            try {
+                batch.add(episodeConditions(workerSimulation, episode));
+            } catch (SimulationException | RuntimeException e) {
+                log.warn("Training episode " + episode + " could not be started", e);
+                finishEpisodes(1, episodes, checkpoint);
+                continue;
+            }
+            if (batch.size() == batchSize) {
+                runBatch(batch);
+                finishEpisodes(batch.size(), episodes, checkpoint);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            runBatch(batch);
+            finishEpisodes(batch.size(), episodes, checkpoint);
+        }
+    }
+
+    private void finishEpisodes(int count, long episodes, boolean checkpoint) {
+        for (int i = 0; i < count; i++) {
+            long finished = finishedEpisodes.incrementAndGet();
+            if ((reportInterval > 0) && (finished % reportInterval == 0))
+                report(false);
+            if (checkpoint && (checkpointInterval > 0) && (finished % checkpointInterval == 0) && (finished != episodes))
+                checkpoint();
+        }
+    }
+
+    private static void runBatch(ArrayList<SimulationConditions> batch) {
+        try {
+            if (batch.size() == 1) {
+                new BasicEventSimulationEngine().simulate(batch.get(0));
+            } else {
+                new BatchSimulationEngine().simulate(batch);
+            }
+        } catch (SimulationException | RuntimeException e) {
+            // the episodes still count as finished - the run must not wait for them
+            log.warn("Training " + (batch.size() == 1 ? "episode" : "batch") + " failed", e);
+            // the basic engine does not end a simulation failing with a RuntimeException
+            for (SimulationConditions conditions: batch) {
+                for (SimulationListener listener: conditions.getSimulationListenerList()) {
+                    if (listener instanceof RocketLanderListener)
+                        ((RocketLanderListener) listener).releaseEpisode();
+                }
+            }
+        }
+    }
+
+    private static SimulationConditions episodeConditions(Simulation workerSimulation, long episode) throws SimulationException {
+        workerSimulation.getOptions().setRandomSeed(RLEpisodeRandom.simulationSeed(episode));
+        SimulationConditions conditions = workerSimulation.getOptions().toSimulationConditions();
+        conditions.setSimulation(workerSimulation);
+        // the random stream depends on the episode number only, not on the worker flying it - the episode is numbered
+        // when it starts, as the episodes of a batch all start before the first one steps
+        conditions.getSimulationListenerList().add(new EpisodeNumbering(episode));
+        for (SimulationExtension extension: workerSimulation.getSimulationExtensions()) {
+            if (extension instanceof RocketLanderExtension)
+                extension.initialize(conditions);
+        }
+        return conditions;
+    }
+
+    private static class EpisodeNumbering extends AbstractSimulationListener {
+        private final long episode;
+
+        EpisodeNumbering(long episode) {
+            this.episode = episode;
+        }
+
+        @Override
+        public void startSimulation(SimulationStatus status) {
+            RLEpisodeRandom.setNextEpisode(episode);
+        }
+    }
+
+    private synchronized void checkpoint() {
+        RLObjectFileStore.storeActionValueFunctions();
+        RLObjectFileStore.storeReplayBuffers();
+        System.out.println("Checkpoint stored after " + finishedEpisodes.get() + " episodes");
+    }
+
+    private synchronized void report(boolean last) {
+        long now = System.nanoTime();
+        long finished = finishedEpisodes.get();
+        double seconds = (now - lastReportTime) / 1e9;
+        double episodesPerSecond = (finished - lastReportEpisodes) / Math.max(seconds, 1e-9);
+        lastReportTime = now;
+        lastReportEpisodes = finished;
+
+        RLEpisodeStatistics statistics = RLModelSingleton.getInstance().getEpisodeStatistics().snapshotAndReset();
+        if (last && (statistics.getEpisodes() == 0)) return;
+        System.out.println(String.format("episodes: %d  episodes/s: %.1f  success: %.1f%%  mean terminal reward: %.3f",
+                finished, episodesPerSecond, 100.0 * statistics.getSuccessRate(), statistics.getMeanTerminalReward()));
+    }
+}
@@ -0,0 +1,209 @@
+package net.sf.openrocket.simulation.extension.impl.rocketlander;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.LinkedHashMap;
+
+/**
+ * Append-only binary log of the episodes of one training session, written by RLTrajectoryRecorders.
+ *
+ * Layout (little-endian):
+ *   int     magic ("RLTR")
+ *   int     version
+ *   int     number of kinematic columns, then per column: int name length, UTF-8 name
+ *   episodes, one after the other:
+ *     int     episode magic ("EPIS")
+ *     int     size of the rest of the episode in bytes
+ *     long    episode number (RLEpisodeRandom)
+ *     int     success (TerminationBooleans.totalSuccess)
+ *     int     number of steps
+ *     int     number of tracks (MDP and symmetry axis), then per track: int name length, UTF-8 name
+ *     columns: per kinematic column, steps doubles
+ *     tracks:  per track, steps ints state index, steps ints action index, steps floats reward
+ *
+ * A track holds -1 indeces and a NaN reward for the steps its MDP was not part of the hierarchy.  The state index of a
+ * tile coded MDP beyond an int is logged as -1 too; its state follows from the kinematic columns.
+ * Episodes are written whole, so a log that was not closed cleanly can still be read up to its last episode.
+ */
+public class RLTrajectoryFile implements Closeable {
+    public static final String EXTENSION = ".rltr";
+    static final int MAGIC = 0x52544C52;  // "RLTR" in little-endian byte order
+    static final int EPISODE_MAGIC = 0x53495045;  // "EPIS" in little-endian byte order
+    private static final int VERSION = 1;
+
+    public static final String[] COLUMNS = new String[]{
+            "time",
+            "positionX", "positionY", "positionZ",
+            "velocityX", "velocityY", "velocityZ",
+            "orientationW", "orientationX", "orientationY", "orientationZ",
+            "angleVelocityX", "angleVelocityY", "angleVelocityZ",
+            "thrust", "gimbalX", "gimbalY", "lateralThrustX", "lateralThrustY"
+    };
+
+    private final File file;
+    private final FileChannel channel;
+    private long episodes = 0;
+
+    private RLTrajectoryFile(File file) throws IOException {
+        this.file = file;
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+
+        byte[][] names = new byte[COLUMNS.length][];
+        int size = 4 + 4 + 4;
+        for (int i = 0; i < COLUMNS.length; i++) {
+            names[i] = COLUMNS[i].getBytes(StandardCharsets.UTF_8);
+            size += 4 + names[i].length;
+        }
+        ByteBuffer header = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC);
+        header.putInt(VERSION);
+        header.putInt(names.length);
+        for (byte[] name: names) {
+            header.putInt(name.length);
+            header.put(name);
+        }
+        header.flip();
+        writeFully(header);
+    }
+
+    /**
+     * Start the log of a new training session in the directory, named after the current time.
+     */
+    public static RLTrajectoryFile createSession(File directory) throws IOException {
+        String sessionName = new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date());
+        File file = new File(directory, "trajectories-" + sessionName + EXTENSION);
+        for (int i = 1; file.exists(); i++)
+            file = new File(directory, "trajectories-" + sessionName + "-" + i + EXTENSION);
+        return new RLTrajectoryFile(file);
+    }
+
+    public File getFile() { return file; }
+    public synchronized long getEpisodes() { return episodes; }
+
+    /**
+     * Append a complete episode block, as built by RLTrajectoryRecorder.
+     */
+    synchronized void append(ByteBuffer episode) throws IOException {
+        writeFully(episode);
+        episodes++;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        channel.close();
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining())
+            channel.write(buffer);
+    }
+
+    /**
+     * Reads the episodes of a log in the order they were written.
+     */
+    public static class Reader {
+        private final MappedByteBuffer buffer;
+        private final String[] columns;
+
+        public Reader(File file) throws IOException {
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            if (buffer.getInt() != MAGIC)
+                throw new IOException("Not a trajectory file: " + file);
+            int version = buffer.getInt();
+            if (version != VERSION)
+                throw new IOException("Unsupported trajectory file version " + version + ": " + file);
+            columns = new String[buffer.getInt()];
+            for (int i = 0; i < columns.length; i++)
+                columns[i] = readString(buffer);
+        }
+
+        public String[] getColumns() { return columns; }
+
+        /**
+         * @return the next episode, or null at the end of the log (or at a partially written episode)
+         */
+        public Episode next() {
+            if (buffer.remaining() < 8) return null;
+            int start = buffer.position();
+            if (buffer.getInt() != EPISODE_MAGIC) return null;
+            int size = buffer.getInt();
+            if (buffer.remaining() < size) {
+                buffer.position(start);
+                return null;
+            }
+
+            Episode episode = new Episode();
+            episode.episode = buffer.getLong();
+            episode.success = buffer.getInt() != 0;
+            int steps = buffer.getInt();
+            episode.steps = steps;
+            episode.trackNames = new String[buffer.getInt()];
+            for (int i = 0; i < episode.trackNames.length; i++)
+                episode.trackNames[i] = readString(buffer);
+
+            episode.columns = new LinkedHashMap<>();
+            for (String column: columns) {
+                double[] values = new double[steps];
+                buffer.asDoubleBuffer().get(values);
+                buffer.position(buffer.position() + 8 * steps);
+                episode.columns.put(column, values);
+            }
+            int numTracks = episode.trackNames.length;
+            episode.stateIndeces = new int[numTracks][steps];
+            episode.actionIndeces = new int[numTracks][steps];
+            episode.rewards = new float[numTracks][steps];
+            for (int t = 0; t < numTracks; t++) {
+                buffer.asIntBuffer().get(episode.stateIndeces[t]);
+                buffer.position(buffer.position() + 4 * steps);
+                buffer.asIntBuffer().get(episode.actionIndeces[t]);
+                buffer.position(buffer.position() + 4 * steps);
+                buffer.asFloatBuffer().get(episode.rewards[t]);
+                buffer.position(buffer.position() + 4 * steps);
+            }
+            return episode;
+        }
+
+        private static String readString(ByteBuffer buffer) {
+            byte[] bytes = new byte[buffer.getInt()];
+            buffer.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+
+    public static class Episode {
+        public long episode;
+        public boolean success;
+        public int steps;
+        public String[] trackNames;
+        public LinkedHashMap<String, double[]> columns;
+        public int[][] stateIndeces;
+        public int[][] actionIndeces;
+        public float[][] rewards;
+
+        public double[] getColumn(String name) {
+            return columns.get(name);
+        }
+
+        /**
+         * @return the index of the track of the MDP (with the symmetry axis appended), or -1 if it was never active
+         */
+        public int getTrack(String name) {
+            for (int i = 0; i < trackNames.length; i++) {
+                if (trackNames[i].equals(name)) return i;
+            }
+            return -1;
+        }
+    }
+}
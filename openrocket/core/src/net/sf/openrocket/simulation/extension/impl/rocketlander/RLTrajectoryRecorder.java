@@ -0,0 +1,184 @@
+package net.sf.openrocket.simulation.extension.impl.rocketlander;
+
+import net.sf.openrocket.simulation.SimulationStatus;
+import net.sf.openrocket.simulation.extension.impl.rocketlander.StateActionTuple.*;
+import net.sf.openrocket.util.Coordinate;
+import net.sf.openrocket.util.Quaternion;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Records the steps of the episodes flown by one RocketLanderListener into an RLTrajectoryFile.
+ *
+ * Steps are kept in primitive columns that are sized for a whole episode up front and reused by the next episode,
+ * so recording a step only stores numbers.  The episode is encoded and appended to the file when it ends.
+ */
+public class RLTrajectoryRecorder {
+    private static final int INITIAL_STEPS = 512;
+    private static final int INITIAL_TRACKS = 8;
+
+    private final RLTrajectoryFile file;
+    private int capacity = INITIAL_STEPS;
+    private int steps = 0;
+    private double[][] columns = new double[RLTrajectoryFile.COLUMNS.length][INITIAL_STEPS];
+
+    private int numTracks = 0;
+    private MDPDefinition[] trackDefinitions = new MDPDefinition[INITIAL_TRACKS];
+    private String[] trackSymmetries = new String[INITIAL_TRACKS];
+    private int[][] stateIndeces = new int[INITIAL_TRACKS][INITIAL_STEPS];
+    private int[][] actionIndeces = new int[INITIAL_TRACKS][INITIAL_STEPS];
+    private float[][] rewards = new float[INITIAL_TRACKS][INITIAL_STEPS];
+
+    private ByteBuffer episodeBuffer = ByteBuffer.allocateDirect(64 * 1024).order(ByteOrder.LITTLE_ENDIAN);
+
+    public RLTrajectoryRecorder(RLTrajectoryFile file) {
+        this.file = file;
+    }
+
+    public RLTrajectoryFile getFile() { return file; }
+
+    public void startEpisode() {
+        steps = 0;
+        numTracks = 0;
+    }
+
+    /**
+     * Record the status after a step together with the states and the actions chosen in it.
+     */
+    public void recordStep(SimulationStatus status, CoupledStates states, CoupledActions actions) {
+        if (steps == capacity) grow();
+        int step = steps++;
+
+        Coordinate position = status.getRocketPosition();
+        Coordinate velocity = status.getRocketVelocity();
+        Quaternion orientation = status.getRocketOrientationQuaternion();
+        Coordinate rotationVelocity = status.getRocketRotationVelocity();
+        int column = 0;
+        columns[column++][step] = status.getSimulationTime();
+        columns[column++][step] = position.x;
+        columns[column++][step] = position.y;
+        columns[column++][step] = position.z;
+        columns[column++][step] = velocity.x;
+        columns[column++][step] = velocity.y;
+        columns[column++][step] = velocity.z;
+        columns[column++][step] = orientation.getW();
+        columns[column++][step] = orientation.getX();
+        columns[column++][step] = orientation.getY();
+        columns[column++][step] = orientation.getZ();
+        columns[column++][step] = rotationVelocity.x;
+        columns[column++][step] = rotationVelocity.y;
+        columns[column++][step] = rotationVelocity.z;
+        columns[column++][step] = actions.getDouble("thrust");
+        columns[column++][step] = actions.getDouble("gimbalX");
+        columns[column++][step] = actions.getDouble("gimbalY");
+        columns[column++][step] = actions.getDouble("lateralThrustX");
+        columns[column][step] = actions.getDouble("lateralThrustY");
+
+        for (int t = 0; t < numTracks; t++) {
+            stateIndeces[t][step] = -1;
+            actionIndeces[t][step] = -1;
+            rewards[t][step] = Float.NaN;
+        }
+        // the policy creates exactly one action per coupled state
+        int numStates = Math.min(states.size(), actions.size());
+        for (int i = 0; i < numStates; i++) {
+            State state = states.get(i);
+            int track = track(state.definition, state.symmetry);
+            // the policy has already computed these for the states it chose a new action in
+            long stateIndex = state.getIndex();
+            stateIndeces[track][step] = (stateIndex <= Integer.MAX_VALUE) ? (int) stateIndex : -1;
+            actionIndeces[track][step] = MDPDefinition.computeIndexAction(actions.get(i));
+            rewards[track][step] = state.getReward();
+        }
+    }
+
+    public void finishEpisode(boolean success) throws IOException {
+        if (steps == 0) return;
+
+        byte[][] trackNames = new byte[numTracks][];
+        int size = 8 + 4 + 4 + 4;
+        for (int t = 0; t < numTracks; t++) {
+            String name = trackDefinitions[t].name + ((trackSymmetries[t] == null) ? "" : trackSymmetries[t]);
+            trackNames[t] = name.getBytes(StandardCharsets.UTF_8);
+            size += 4 + trackNames[t].length;
+        }
+        size += columns.length * 8 * steps + numTracks * 12 * steps;
+
+        if (episodeBuffer.capacity() < 8 + size)
+            episodeBuffer = ByteBuffer.allocateDirect(Math.max(8 + size, 2 * episodeBuffer.capacity())).order(ByteOrder.LITTLE_ENDIAN);
+        ByteBuffer buffer = episodeBuffer;
+        buffer.clear();
+        buffer.putInt(RLTrajectoryFile.EPISODE_MAGIC);
+        buffer.putInt(size);
+        buffer.putLong(RLEpisodeRandom.currentEpisode());
+        buffer.putInt(success ? 1 : 0);
+        buffer.putInt(steps);
+        buffer.putInt(numTracks);
+        for (byte[] name: trackNames) {
+            buffer.putInt(name.length);
+            buffer.put(name);
+        }
+        for (double[] values: columns) {
+            buffer.asDoubleBuffer().put(values, 0, steps);
+            buffer.position(buffer.position() + 8 * steps);
+        }
+        for (int t = 0; t < numTracks; t++) {
+            buffer.asIntBuffer().put(stateIndeces[t], 0, steps);
+            buffer.position(buffer.position() + 4 * steps);
+            buffer.asIntBuffer().put(actionIndeces[t], 0, steps);
+            buffer.position(buffer.position() + 4 * steps);
+            buffer.asFloatBuffer().put(rewards[t], 0, steps);
+            buffer.position(buffer.position() + 4 * steps);
+        }
+        buffer.flip();
+        file.append(buffer);
+        steps = 0;
+    }
+
+    /*
+    Private implementation.  Details.
+     */
+
+    private int track(MDPDefinition definition, String symmetry) {
+        for (int t = 0; t < numTracks; t++) {
+            if ((trackDefinitions[t] == definition) && ((symmetry == null) ? (trackSymmetries[t] == null) : symmetry.equals(trackSymmetries[t])))
+                return t;
+        }
+        if (numTracks == trackDefinitions.length) {
+            int tracks = 2 * numTracks;
+            trackDefinitions = Arrays.copyOf(trackDefinitions, tracks);
+            trackSymmetries = Arrays.copyOf(trackSymmetries, tracks);
+            stateIndeces = Arrays.copyOf(stateIndeces, tracks);
+            actionIndeces = Arrays.copyOf(actionIndeces, tracks);
+            rewards = Arrays.copyOf(rewards, tracks);
+            for (int t = numTracks; t < tracks; t++) {
+                stateIndeces[t] = new int[capacity];
+                actionIndeces[t] = new int[capacity];
+                rewards[t] = new float[capacity];
+            }
+        }
+        int track = numTracks++;
+        trackDefinitions[track] = definition;
+        trackSymmetries[track] = symmetry;
+        // the track was not active in the earlier steps
+        Arrays.fill(stateIndeces[track], 0, steps, -1);
+        Arrays.fill(actionIndeces[track], 0, steps, -1);
+        Arrays.fill(rewards[track], 0, steps, Float.NaN);
+        return track;
+    }
+
+    private void grow() {
+        capacity *= 2;
+        for (int c = 0; c < columns.length; c++)
+            columns[c] = Arrays.copyOf(columns[c], capacity);
+        for (int t = 0; t < stateIndeces.length; t++) {
+            stateIndeces[t] = Arrays.copyOf(stateIndeces[t], capacity);
+            actionIndeces[t] = Arrays.copyOf(actionIndeces[t], capacity);
+            rewards[t] = Arrays.copyOf(rewards[t], capacity);
+        }
+    }
+}
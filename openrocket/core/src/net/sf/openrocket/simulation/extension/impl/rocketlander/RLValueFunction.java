@@ -1,16 +1,38 @@
 package net.sf.openrocket.simulation.extension.impl.rocketlander;
 
+import java.nio.FloatBuffer;
 import java.util.*;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 
+/**
+ * Action-value storage shared by every simulation that trains the same MDPDefinition.
+ *
+ * Table mode keeps the raw float bits of every entry in an AtomicIntegerArray, so reads are plain volatile
+ * loads and updates are compare-and-set loops on a single cell.  No per-entry lock objects are allocated.
+ * Map mode (used when the index product is too large for a table) stores the visited entries in a primitive
+ * ConcurrentIntFloatHashMap, which locks one of its segments per update and reads without locking.
+ *
+ * A table loaded from a binary value function file starts out as a read-only view of the mapped file.  The view
+ * is copied into the atomic table on the first write, so flying a trained model never copies the table.
+ *
+ * Tile coded mode keeps the weights of an RLTileCoding in the table instead.  The value of an index is the sum of its
+ * weight in every tiling, and an update moves each of those weights by alpha / tilings of the error, the linear
+ * gradient step.  The table size is fixed by the coding, however many fields the definition has, and only this mode
+ * takes indeces beyond an int.
+ *
+ * Adaptive mode is a table whose state rows are the cells of an RLStatePartition.  Every update is accounted to the
+ * partition, which splits the busiest cells as the value function learns.
+ */
 public class RLValueFunction {
     private static final long MAX_TABLE_SIZE = 10 * 1000 * 1000;  // 10 milion
-    public static final ReentrantLock mainLock = new ReentrantLock();
-    public transient ReentrantLock[] locks = null;
 
     public boolean isTable;
-    private float[] valueFunctionTable = null;
-    private HashMap<Integer, Float> valueFunctionMap = null;
+    public final RLTileCoding tileCoding;
+    private final RLStatePartition partition;
+    private volatile AtomicIntegerArray valueFunctionTable = null;
+    private FloatBuffer mappedTable = null;
+    private ConcurrentIntFloatHashMap valueFunctionMap = null;
+    private final ThreadLocal<long[]> tileWeights;  // scratch of the weight indeces of an index, per thread
 
     public static boolean isReasonableTableSize(int size) {
         return (size >= 0) && (size <= MAX_TABLE_SIZE);
@@ -18,75 +40,263 @@ public class RLValueFunction {
 
     public RLValueFunction(float[] valueFunctionTable) {
         isTable = true;
-        this.valueFunctionTable = valueFunctionTable;
-        if (valueFunctionTable == null) {
-            locks = null;
-            return;
-        }
-        locks = new ReentrantLock[valueFunctionTable.length];
+        tileCoding = null;
+        tileWeights = null;
+        partition = null;
+        if (valueFunctionTable == null) return;
+        this.valueFunctionTable = new AtomicIntegerArray(valueFunctionTable.length);
         for (int i = 0; i < valueFunctionTable.length; i++) {
-            locks[i] = new ReentrantLock();
+            // zero bits are already the default - skip the volatile write
+            if (valueFunctionTable[i] != 0.0f)
+                this.valueFunctionTable.lazySet(i, Float.floatToRawIntBits(valueFunctionTable[i]));
         }
         checkTableValues();
     }
 
     private void checkTableValues() {
-        for (int i = 0; i < valueFunctionTable.length; i++) {
-            if (Float.isNaN(valueFunctionTable[i])) {
+        for (int i = 0; i < valueFunctionTable.length(); i++) {
+            if (Float.isNaN(getEntry(i))) {
                 System.out.println("NAN IN TABLE!");
             }
         }
     }
 
-    public RLValueFunction(HashMap<Integer, Float> valueFunctionMap) {
+    public RLValueFunction(FloatBuffer mappedTable) {
+        this(mappedTable, (RLTileCoding) null);
+    }
+
+    public RLValueFunction(ConcurrentIntFloatHashMap valueFunctionMap) {
         isTable = false;
+        tileCoding = null;
+        tileWeights = null;
+        partition = null;
         this.valueFunctionMap = valueFunctionMap;
     }
 
+    /**
+     * Tile coded value function with all weights zero.
+     */
+    public RLValueFunction(RLTileCoding tileCoding) {
+        isTable = true;
+        this.tileCoding = tileCoding;
+        this.tileWeights = (tileCoding == null) ? null : ThreadLocal.withInitial(() -> new long[tileCoding.getNumTilings()]);
+        partition = null;
+        this.valueFunctionTable = new AtomicIntegerArray(tileCoding.getNumWeights());
+    }
+
+    /**
+     * Adaptive table with the initial cells of the discretization and all values zero.
+     */
+    public RLValueFunction(RLAdaptiveDiscretization discretization) {
+        isTable = true;
+        tileCoding = null;
+        tileWeights = null;
+        partition = new RLStatePartition(discretization);
+        this.valueFunctionTable = new AtomicIntegerArray(discretization.getTableSize());
+    }
+
+    /**
+     * Table, or tile coding weights, read from a file.
+     */
+    public RLValueFunction(FloatBuffer mappedTable, RLTileCoding tileCoding) {
+        isTable = true;
+        this.tileCoding = tileCoding;
+        this.tileWeights = (tileCoding == null) ? null : ThreadLocal.withInitial(() -> new long[tileCoding.getNumTilings()]);
+        partition = null;
+        this.mappedTable = mappedTable;
+    }
+
+    /**
+     * Adaptive table and its partition read from a file.
+     */
+    public RLValueFunction(FloatBuffer mappedTable, RLStatePartition partition) {
+        isTable = true;
+        tileCoding = null;
+        tileWeights = null;
+        this.partition = partition;
+        this.mappedTable = mappedTable;
+    }
+
+    /**
+     * Value functions serialized before the primitive map was introduced.
+     */
+    public RLValueFunction(HashMap<Integer, Float> legacyValueFunctionMap) {
+        this(new ConcurrentIntFloatHashMap());
+        for (Map.Entry<Integer, Float> entry: legacyValueFunctionMap.entrySet())
+            valueFunctionMap.put(entry.getKey(), entry.getValue());
+    }
+
+    public RLStatePartition getPartition() {
+        return partition;
+    }
+
+    /**
+     * The partition generation to stamp indeces with, always 0 without a partition.
+     */
+    public int getGeneration() {
+        return (partition == null) ? 0 : partition.getGeneration();
+    }
+
+    /**
+     * @return true if the index was computed with a partition generation before its cell was split
+     */
+    public boolean isStale(long index, int generation) {
+        return (partition != null) && partition.isStale(index, generation);
+    }
+
+    /**
+     * Snapshot of the table values, used when storing the value function to disk.
+     */
     public float[] getValueFunctionTable() {
-        if (isTable) return valueFunctionTable;
-        else return null;
+        if (!isTable || (valueFunctionTable == null && mappedTable == null)) return null;
+        float[] snapshot = new float[size()];
+        for (int i = 0; i < snapshot.length; i++) {
+            snapshot[i] = getEntry(i);
+        }
+        return snapshot;
     }
 
-    public HashMap<Integer, Float> getValueFunctionMap() {
-        if (!isTable) return valueFunctionMap;
-        else return null;
+    /**
+     * Snapshot of the visited entries, used when storing the value function to disk.
+     */
+    public ConcurrentIntFloatHashMap getValueFunctionMap() {
+        if (isTable) return null;
+        return valueFunctionMap.copy();
+    }
+
+    public float get(long index) {
+        if (tileCoding != null) {
+            long[] weights = tileWeights.get();
+            tileCoding.weightIndeces(index, weights);
+            return sumEntries(weights);
+        }
+        return getEntry((int) index);
     }
 
-    public float get(int index) {
+    /**
+     * Stored entry i: a table cell, a tile coding weight, or the value of map index i.
+     */
+    public float getEntry(int index) {
         if (isTable) {
-            return valueFunctionTable[index];
+            AtomicIntegerArray table = valueFunctionTable;
+            if (table == null) return mappedTable.get(index);
+            return Float.intBitsToFloat(table.get(index));
         } else {
-            if (!valueFunctionMap.containsKey(index)) return 0.0f;
             return valueFunctionMap.get(index);
         }
     }
 
-    public void put(int index, float value) {
-        if (isTable) {
-            valueFunctionTable[index] = value;
+    public void put(long index, float value) {
+        if (tileCoding != null) {
+            updateTowards(index, value, 1.0f);
+        } else if (isTable) {
+            writableTable().set((int) index, Float.floatToRawIntBits(value));
         } else {
-            valueFunctionMap.put(index, value);
+            valueFunctionMap.put((int) index, value);
         }
     }
 
-    public void lock(int index) {
-        if (locks != null) {
-            locks[index].lock();
+    /**
+     * Atomically moves the value at index a step of size alpha towards target:
+     * value = value + alpha * (target - value)
+     *
+     * @return the updated value
+     */
+    public float updateTowards(long index, float target, float alpha) {
+        if (tileCoding != null) {
+            AtomicIntegerArray table = writableTable();
+            long[] weights = tileWeights.get();
+            tileCoding.weightIndeces(index, weights);
+            float value = sumEntries(weights);
+            float step = alpha * (target - value) / weights.length;
+            for (long weight : weights)
+                addEntry(table, (int) weight, step);
+            return value + alpha * (target - value);
+        } else if (isTable) {
+            AtomicIntegerArray table = writableTable();
+            int cell = (int) index;
+            while (true) {
+                int oldBits = table.get(cell);
+                float oldValue = Float.intBitsToFloat(oldBits);
+                float newValue = oldValue + alpha * (target - oldValue);
+                if (table.compareAndSet(cell, oldBits, Float.floatToRawIntBits(newValue))) {
+                    if (partition != null)
+                        partition.recordUpdate(this, cell, target - oldValue);
+                    return newValue;
+                }
+            }
+        } else {
+            return valueFunctionMap.updateTowards((int) index, target, alpha);
         }
     }
 
-    public void unlock(int index) {
-        if (locks != null) {
-            locks[index].unlock();
+    /**
+     * Atomically adds delta to the value at index, spread over the tilings of a tile coded value function.
+     *
+     * @return the updated value
+     */
+    public float add(long index, float delta) {
+        if (tileCoding != null) {
+            AtomicIntegerArray table = writableTable();
+            long[] weights = tileWeights.get();
+            tileCoding.weightIndeces(index, weights);
+            float value = 0.0f;
+            for (long weight : weights)
+                value += addEntry(table, (int) weight, delta / weights.length);
+            return value;
+        } else if (isTable) {
+            float value = addEntry(writableTable(), (int) index, delta);
+            if (partition != null)
+                partition.recordUpdate(this, (int) index, delta);
+            return value;
+        } else {
+            return valueFunctionMap.add((int) index, delta);
         }
     }
 
-    public void lockMainLock() {
-        mainLock.lock();
+    private float sumEntries(long[] weights) {
+        float value = 0.0f;
+        for (long weight : weights)
+            value += getEntry((int) weight);
+        return value;
     }
 
-    public void unlockMainLock() {
-        mainLock.unlock();
+    private static float addEntry(AtomicIntegerArray table, int index, float delta) {
+        while (true) {
+            int oldBits = table.get(index);
+            float newValue = Float.intBitsToFloat(oldBits) + delta;
+            if (table.compareAndSet(index, oldBits, Float.floatToRawIntBits(newValue)))
+                return newValue;
+        }
+    }
+
+    public boolean isReadOnly() {
+        return isTable && (valueFunctionTable == null) && (mappedTable != null);
+    }
+
+    private AtomicIntegerArray writableTable() {
+        AtomicIntegerArray table = valueFunctionTable;
+        if (table != null) return table;
+        synchronized (this) {
+            if (valueFunctionTable == null) {
+                table = new AtomicIntegerArray(mappedTable.capacity());
+                for (int i = 0; i < table.length(); i++) {
+                    float value = mappedTable.get(i);
+                    if (value != 0.0f)
+                        table.lazySet(i, Float.floatToRawIntBits(value));
+                }
+                valueFunctionTable = table;
+            }
+            return valueFunctionTable;
+        }
+    }
+
+    public int size() {
+        if (isTable) {
+            AtomicIntegerArray table = valueFunctionTable;
+            if (table != null) return table.length();
+            return (mappedTable == null) ? 0 : mappedTable.capacity();
+        }
+        return valueFunctionMap.size();
     }
 }
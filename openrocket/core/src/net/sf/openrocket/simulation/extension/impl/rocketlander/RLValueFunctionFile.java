@@ -0,0 +1,291 @@
+package net.sf.openrocket.simulation.extension.impl.rocketlander;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Versioned binary format for trained action-value functions.
+ *
+ * Layout (little-endian):
+ *   int     magic ("RLVF")
+ *   int     version
+ *   long    MDPDefinition layout hash
+ *   int     kind (0 = dense table, 1 = sparse map, 2 = tile coding weights, 3 = adaptive table)
+ *   int     number of index fields, then per field: int name length, UTF-8 name, int field size
+ *   long    entry count
+ *   int     data offset from the start of the file (8-byte aligned)
+ *   data:   dense, tile coding -> entry count raw floats
+ *           sparse             -> entry count (int index, float value) pairs
+ *           adaptive           -> entry count raw floats, then the nodes of the RLStatePartition
+ *
+ * Dense tables and tile coding weights are read through a read-only memory mapping, so loading is independent of the table size and
+ * several JVMs flying the same model share the pages of the file.
+ *
+ * A mapped file may not be replaced on every platform while it is mapped, and the mapping only goes away once the buffer is
+ * collected.  Each write therefore creates a new version next to the file name given, name.N.rlvf for actionValueX.rlvf, and
+ * read loads the newest one.  Older versions are deleted once they are no longer mapped.
+ */
+public class RLValueFunctionFile {
+    public static final String EXTENSION = ".rlvf";
+    private static final int MAGIC = 0x46564C52;  // "RLVF" in little-endian byte order
+    private static final int VERSION = 1;
+    private static final int KIND_DENSE = 0;
+    private static final int KIND_SPARSE = 1;
+    private static final int KIND_TILE_CODING = 2;
+    private static final int KIND_ADAPTIVE = 3;
+
+    private RLValueFunctionFile() {}
+
+    public static void write(MDPDefinition definition, RLValueFunction valueFunction, File file) throws IOException {
+        // snapshot the map first so the header entry count matches the written pairs
+        ConcurrentIntFloatHashMap valueFunctionMap = valueFunction.isTable ? null : valueFunction.getValueFunctionMap();
+        long entryCount = valueFunction.isTable ? valueFunction.size() : valueFunctionMap.size();
+        // the partition before the table - cells split after the snapshot are not referenced by it
+        ByteBuffer partition = (valueFunction.getPartition() != null) ? valueFunction.getPartition().toByteBuffer() : null;
+        int kind = (valueFunction.tileCoding != null) ? KIND_TILE_CODING : (partition != null) ? KIND_ADAPTIVE
+                : valueFunction.isTable ? KIND_DENSE : KIND_SPARSE;
+        ByteBuffer header = buildHeader(definition, kind, entryCount);
+        File latestFile = latestVersion(file);
+        File versionFile = versionFile(file, (latestFile == null) ? 1 : version(file, latestFile) + 1);
+        File temporaryFile = new File(versionFile.getPath() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporaryFile.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeFully(channel, header);
+            if (valueFunction.isTable) {
+                writeDenseData(channel, valueFunction);
+                if (partition != null)
+                    writeFully(channel, partition);
+            } else {
+                writeSparseData(channel, valueFunctionMap);
+            }
+        }
+        // name the new version only once it is complete - a checkpoint is never left half written
+        Files.move(temporaryFile.toPath(), versionFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+
+        // the older versions may still be mapped, in which case they are deleted by a later write
+        for (File olderFile : versions(file)) {
+            if (!olderFile.equals(versionFile))
+                olderFile.delete();
+        }
+    }
+
+    /**
+     * @return whether a value function was written to the file name
+     */
+    public static boolean exists(File file) {
+        return latestVersion(file) != null;
+    }
+
+    /**
+     * @return the newest version written to the file name, or null if there is none
+     */
+    public static File latestVersion(File file) {
+        File latestFile = null;
+        for (File versionFile : versions(file)) {
+            if ((latestFile == null) || (version(file, versionFile) > version(file, latestFile)))
+                latestFile = versionFile;
+        }
+        return latestFile;
+    }
+
+    /**
+     * Read a value function stored for the definition.
+     *
+     * @return the value function, or null if the file was written for a different definition layout
+     */
+    public static RLValueFunction read(MDPDefinition definition, File file) throws IOException {
+        File latestFile = latestVersion(file);
+        if (latestFile == null)
+            throw new FileNotFoundException("No value function was written to " + file);
+        file = latestFile;
+
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+        if (buffer.getInt() != MAGIC)
+            throw new IOException("Not a binary value function file: " + file);
+        int version = buffer.getInt();
+        if (version != VERSION)
+            throw new IOException("Unsupported value function file version " + version + ": " + file);
+
+        long layoutHash = buffer.getLong();
+        int kind = buffer.getInt();
+        int numFields = buffer.getInt();
+        boolean layoutMatches = (layoutHash == definition.layoutHash) && (numFields == definition.indeces.length);
+        for (int i = 0; i < numFields; i++) {
+            byte[] name = new byte[buffer.getInt()];
+            buffer.get(name);
+            int fieldSize = buffer.getInt();
+            if (layoutMatches) {
+                layoutMatches = new String(name, StandardCharsets.UTF_8).equals(indexFieldName(definition, i))
+                        && (fieldSize == definition.indeces[i]);
+            }
+        }
+        long entryCount = buffer.getLong();
+        int dataOffset = buffer.getInt();
+
+        if (!layoutMatches) {
+            System.out.println("Stored value function " + file + " does not match the layout of MDPDefinition " + definition.name + ".  Ignoring it.");
+            return null;
+        }
+
+        buffer.position(dataOffset);
+        if (kind == KIND_DENSE || kind == KIND_TILE_CODING) {
+            RLTileCoding tileCoding = (kind == KIND_TILE_CODING) ? definition.tileCoding : null;
+            if ((kind == KIND_TILE_CODING) != (definition.tileCoding != null)) return null;
+            if (definition.adaptiveDiscretization != null) return null;
+            if (entryCount != ((tileCoding != null) ? tileCoding.getNumWeights() : definition.indexProduct)) return null;
+            FloatBuffer table = buffer.slice().order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+            table.limit((int) entryCount);
+            return new RLValueFunction(table, tileCoding);
+        } else if (kind == KIND_ADAPTIVE) {
+            if ((definition.adaptiveDiscretization == null) || (entryCount != definition.indexProduct)) return null;
+            int partitionOffset = dataOffset + (int) entryCount * 4;
+            buffer.position(partitionOffset);
+            RLStatePartition partition = RLStatePartition.fromByteBuffer(definition.adaptiveDiscretization, buffer);
+            if (partition == null) return null;
+            // the table must end where the partition starts - its capacity is the size of the table
+            buffer.position(dataOffset);
+            buffer.limit(partitionOffset);
+            FloatBuffer table = buffer.slice().order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+            return new RLValueFunction(table, partition);
+        } else if (kind == KIND_SPARSE) {
+            ConcurrentIntFloatHashMap valueFunctionMap = new ConcurrentIntFloatHashMap();
+            for (long i = 0; i < entryCount; i++) {
+                int index = buffer.getInt();
+                valueFunctionMap.put(index, buffer.getFloat());
+            }
+            return new RLValueFunction(valueFunctionMap);
+        }
+        throw new IOException("Unknown value function kind " + kind + ": " + file);
+    }
+
+    /*
+    Private implementation.  Details.
+     */
+
+    private static File versionFile(File file, long version) {
+        return new File(file.getPath().substring(0, file.getPath().length() - EXTENSION.length()) + "." + version + EXTENSION);
+    }
+
+    /**
+     * @return the version of a file of the file name, 0 for the file name itself as written by older versions
+     */
+    private static long version(File file, File versionFile) {
+        if (versionFile.getName().equals(file.getName())) return 0;
+        String name = versionFile.getName();
+        String base = file.getName().substring(0, file.getName().length() - EXTENSION.length());
+        return Long.parseLong(name.substring(base.length() + 1, name.length() - EXTENSION.length()));
+    }
+
+    private static List<File> versions(File file) {
+        List<File> versionFiles = new ArrayList<>();
+        String name = file.getName();
+        if (!name.endsWith(EXTENSION)) throw new IllegalArgumentException("Not a value function file name: " + file);
+        String base = name.substring(0, name.length() - EXTENSION.length());
+        File directory = file.getAbsoluteFile().getParentFile();
+        File[] files = (directory == null) ? null : directory.listFiles();
+        if (files == null) return versionFiles;
+        for (File candidate : files) {
+            String candidateName = candidate.getName();
+            if (candidateName.equals(name)) {
+                versionFiles.add(candidate);
+            } else if (candidateName.startsWith(base + ".") && candidateName.endsWith(EXTENSION)) {
+                String version = candidateName.substring(base.length() + 1, candidateName.length() - EXTENSION.length());
+                if (!version.isEmpty() && version.chars().allMatch(Character::isDigit))
+                    versionFiles.add(candidate);
+            }
+        }
+        return versionFiles;
+    }
+
+    private static String indexFieldName(MDPDefinition definition, int i) {
+        int numStateFields = definition.stateDefinitionFields.length;
+        if (i < numStateFields) return definition.stateDefinitionFields[i];
+        return definition.actionDefinitionFields[i - numStateFields];
+    }
+
+    private static ByteBuffer buildHeader(MDPDefinition definition, int kind, long entryCount) {
+        byte[][] names = new byte[definition.indeces.length][];
+        int size = 4 + 4 + 8 + 4 + 4 + 8 + 4;
+        for (int i = 0; i < names.length; i++) {
+            names[i] = indexFieldName(definition, i).getBytes(StandardCharsets.UTF_8);
+            size += 4 + names[i].length + 4;
+        }
+        int dataOffset = (size + 7) & ~7;
+
+        ByteBuffer header = ByteBuffer.allocate(dataOffset).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC);
+        header.putInt(VERSION);
+        header.putLong(definition.layoutHash);
+        header.putInt(kind);
+        header.putInt(names.length);
+        for (int i = 0; i < names.length; i++) {
+            header.putInt(names[i].length);
+            header.put(names[i]);
+            header.putInt(definition.indeces[i]);
+        }
+        header.putLong(entryCount);
+        header.putInt(dataOffset);
+        header.position(0);
+        return header;
+    }
+
+    private static void writeDenseData(FileChannel channel, RLValueFunction valueFunction) throws IOException {
+        ByteBuffer chunk = ByteBuffer.allocateDirect(64 * 1024).order(ByteOrder.LITTLE_ENDIAN);
+        int size = valueFunction.size();
+        for (int i = 0; i < size; i++) {
+            if (!chunk.hasRemaining()) {
+                chunk.flip();
+                writeFully(channel, chunk);
+                chunk.clear();
+            }
+            chunk.putFloat(valueFunction.getEntry(i));
+        }
+        chunk.flip();
+        writeFully(channel, chunk);
+    }
+
+    private static void writeSparseData(FileChannel channel, ConcurrentIntFloatHashMap valueFunctionMap) throws IOException {
+        ByteBuffer chunk = ByteBuffer.allocateDirect(64 * 1024).order(ByteOrder.LITTLE_ENDIAN);
+        IOException[] writeException = new IOException[1];
+        valueFunctionMap.forEach((index, value) -> {
+            if (writeException[0] != null) return;
+            if (chunk.remaining() < 8) {
+                chunk.flip();
+                try {
+                    writeFully(channel, chunk);
+                } catch (IOException e) {
+                    writeException[0] = e;
+                    return;
+                }
+                chunk.clear();
+            }
+            chunk.putInt(index);
+            chunk.putFloat(value);
+        });
+        if (writeException[0] != null) throw writeException[0];
+        chunk.flip();
+        writeFully(channel, chunk);
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining())
+            channel.write(buffer);
+    }
+}
@@ -9,6 +9,7 @@ import net.sf.openrocket.simulation.exception.SimulationException;
 import net.sf.openrocket.simulation.extension.impl.initialconditions.InitialConditions;
 import net.sf.openrocket.simulation.extension.impl.visualize3d.AbstractSimulationListenerSupportsVisualize3DListener;
 import net.sf.openrocket.simulation.extension.impl.visualize3d.Visualize3DListener;
+import net.sf.openrocket.simulation.listeners.InterleavedSimulationListener;
 import net.sf.openrocket.simulation.listeners.SimulationListener;
 import net.sf.openrocket.util.Coordinate;
 
@@ -18,11 +19,16 @@ import net.sf.openrocket.simulation.extension.impl.rocketlander.StateActionTuple
 import net.sf.openrocket.util.MathUtil;
 import net.sf.openrocket.util.Quaternion;
 
+import java.io.IOException;
 import java.util.*;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import static net.sf.openrocket.simulation.extension.impl.initialconditions.InitialConditions.clearExtraStatusFlightData;
 
-public class RocketLanderListener extends AbstractSimulationListenerSupportsVisualize3DListener {
+public class RocketLanderListener extends AbstractSimulationListenerSupportsVisualize3DListener implements InterleavedSimulationListener {
+    private static final Logger log = LoggerFactory.getLogger(RocketLanderListener.class);
 
     private RLModelSingleton model = RLModelSingleton.getInstance();
     private LinkedHashMap<String, ArrayList<StateActionTuple>> episodeStateActions = new LinkedHashMap<>();
@@ -44,6 +50,9 @@ public class RocketLanderListener extends AbstractSimulationListenerSupportsVisu
     private double RLVectoringThrust;
 
     private boolean hasCompletedTerminalUpdate = false;
+    private long episode = -1;
+    private SplittableRandom episodeRandom = null;
+    private RLTrajectoryRecorder trajectoryRecorder = null;
 
     /** Used by the Visualize3DListener extension */
     public double getMaxMotorPower() { return 200.0; }
@@ -77,6 +86,8 @@ public class RocketLanderListener extends AbstractSimulationListenerSupportsVisu
 
     @Override
     public void startSimulation(SimulationStatus status) {
+        episodeRandom = RLEpisodeRandom.startEpisode();
+        episode = RLEpisodeRandom.currentEpisode();
         model.setupSimulationTypeBasedOnMDPDefinitions(status);
         episodeStateActions = model.initializeEpisodeStateActions();
         status.getSimulationConditions().setTimeStep(timeStep);
@@ -89,6 +100,23 @@ public class RocketLanderListener extends AbstractSimulationListenerSupportsVisu
         status.setLaunchRodCleared(true);
         // initialize the state and the action
         setupStateActionAndStore(status);
+
+        RLTrajectoryFile trajectoryFile = model.getTrajectoryFile();
+        if (trajectoryFile == null) {
+            trajectoryRecorder = null;
+        } else {
+            if ((trajectoryRecorder == null) || (trajectoryRecorder.getFile() != trajectoryFile))
+                trajectoryRecorder = new RLTrajectoryRecorder(trajectoryFile);
+            trajectoryRecorder.startEpisode();
+            recordTrajectoryStep(status);
+        }
+    }
+
+    @Override
+    public void resumeSimulation(SimulationStatus status) {
+        // the batch engine interleaves the episodes of a thread
+        if (episodeRandom != null)
+            RLEpisodeRandom.resumeEpisode(episode, episodeRandom);
     }
 
     @Override
@@ -163,13 +191,17 @@ public class RocketLanderListener extends AbstractSimulationListenerSupportsVisu
     public void postStep(SimulationStatus status) throws SimulationException {
         rocketLanderExtension.getInitialConditionsObject().stabilizeRocketBasedOnSimType(status);
         setupStateActionAndStore(status);
+        recordTrajectoryStep(status);
         storeUpdatedFlightConditions();
         if (model.isInFocusedTrainingMode())
             clearExtraStatusFlightData(status);
 
-        model.updateStepStateActionValueFunction(episodeStateActions, lastStepUpdateSizes);
-        for (String method: episodeStateActions.keySet()) {
-            lastStepUpdateSizes.put(method, episodeStateActions.get(method).size());
+        // a frozen policy only flies the trained controller
+        if (!model.isPolicyFrozen()) {
+            model.updateStepStateActionValueFunction(episodeStateActions, lastStepUpdateSizes);
+            for (String method: episodeStateActions.keySet()) {
+                lastStepUpdateSizes.put(method, episodeStateActions.get(method).size());
+            }
         }
 
         // terminationBooleans.simulationFailed()
@@ -190,18 +222,45 @@ public class RocketLanderListener extends AbstractSimulationListenerSupportsVisu
 
     @Override
     public void endSimulation(SimulationStatus status, SimulationException exception) {
-        if ((exception != null ) && exception.getMessage().equals("The simulation was interrupted.")) return;  // user cancelled the UI prompt
-        // this method is called at least twice if a SimulationException occurs - this is why the boolean was created
-        if (action != null) {
-            terminationBooleans = MDPDefinition.getTerminationValidity(model.generateCoupledStatesBasedOnLastActions(status, action));
-            if (!hasCompletedTerminalUpdate) {
-                model.updateTerminalStateActionValueFunction(episodeStateActions, terminationBooleans);
-                model.printStatusInformationOnSingleSimTermination(status);
-                hasCompletedTerminalUpdate = true;
+        try {
+            if ((exception != null ) && exception.getMessage().equals("The simulation was interrupted.")) return;  // user cancelled the UI prompt
+            // this method is called at least twice if a SimulationException occurs - this is why the boolean was created
+            if (action != null) {
+                terminationBooleans = MDPDefinition.getTerminationValidity(model.generateCoupledStatesBasedOnLastActions(status, action));
+                if (!hasCompletedTerminalUpdate) {
+                    model.updateTerminalStateActionValueFunction(episodeStateActions, terminationBooleans);
+                    finishTrajectory(terminationBooleans.totalSuccess());
+                    model.printStatusInformationOnSingleSimTermination(status);
+                    hasCompletedTerminalUpdate = true;
+                }
             }
+        } finally {
+            releaseEpisode();
         }
     }
 
+    /**
+     * Release what the methods keep for the state actions of the episode, e.g. the LambdaMethod eligibility traces.
+     * Called when the simulation ends, and by RLTrainingRunner for a simulation failing without an end.
+     */
+    public void releaseEpisode() {
+        model.releaseEpisode(episodeStateActions);
+    }
+
+
+    private void recordTrajectoryStep(SimulationStatus status) {
+        if ((trajectoryRecorder != null) && (state != null) && (action != null))
+            trajectoryRecorder.recordStep(status, state, action);
+    }
+
+    private void finishTrajectory(boolean success) {
+        if (trajectoryRecorder == null) return;
+        try {
+            trajectoryRecorder.finishEpisode(success);
+        } catch (IOException e) {
+            log.warn("Unable to write the trajectory to " + trajectoryRecorder.getFile().getFile(), e);
+        }
+    }
 
     private AccelerationData calculateAcceleration(SimulationStatus status, Double gimbalX, Double gimbalY, Double lateralThrustX, Double lateralThrustY) {
         // pre-define the variables for the Acceleration Data
@@ -63,9 +63,9 @@ public class StateActionTuple implements Serializable {
     }
 
     private double evaluateBestGuessAssignment(String field, StateActionClass primary, StateActionClass fallback) {
-        if (primary.valueMap.containsKey(field)) return primary.getDouble(field);
+        if (primary.has(field)) return primary.getDouble(field);
         else{
-            if (fallback.valueMap.containsKey(field)) return fallback.getDouble(field);
+            if (fallback.has(field)) return fallback.getDouble(field);
             else System.out.println("MAJOR ISSUE IN MISSING PROPERTY: " + field);
         }
         return -1;
@@ -99,25 +99,30 @@ public class StateActionTuple implements Serializable {
         return new StateActionTuple(state.deepcopy(), action.deepcopy());
     }
 
+    /**
+     * Values are stored by FieldSlotRegistry slot in a primitive array, with a bitset marking the slots that were set.
+     */
     public static class StateActionClass implements Serializable {
-        public HashMap<String, Integer> valueMap = new HashMap<>();
+        private int[] values = new int[FieldSlotRegistry.size()];
+        private long[] setSlots = new long[(values.length >> 6) + 1];
         public MDPDefinition definition;
         public String symmetry = null;
+        transient int modifications = 0;  // incremented on every change of the values
 
         protected void runMDPDefinitionExpressions() {
             runMDPDefinitionExpressions(false);
         }
         protected void runMDPDefinitionExpressions(boolean skipExpressions) {
             if (symmetry != null) {
-                for (Map.Entry<String, String> entry: definition.symmetryExpressions.get(symmetry).entrySet()) {
-                    setDouble(entry.getKey(), getDouble(entry.getValue()));
+                for (int[] assignment: definition.symmetrySlotAssignments.get(symmetry)) {
+                    setDouble(assignment[0], getDouble(assignment[1]));
                 }
             }
 
             if (skipExpressions) return;
-            if ((definition != null) && (definition._expressions != null)) {
-                for (Map.Entry<String, Expression> entry: definition._expressions.entrySet()) {
-                    setDouble(entry.getKey(), evaluateExpression(entry.getValue(), this));
+            if ((definition != null) && (definition.expressionSlots != null)) {
+                for (int i = 0; i < definition.expressionSlots.length; i++) {
+                    setDouble(definition.expressionSlots[i], evaluateExpression(definition.expressionList[i], this));
                 }
             }
         }
@@ -158,45 +163,84 @@ public class StateActionTuple implements Serializable {
             return result;
         }
 
+        public boolean has(int slot) {
+            if ((slot < 0) || (slot >= values.length)) return false;
+            return (setSlots[slot >> 6] & (1L << slot)) != 0;
+        }
+
+        public boolean has(String field) {
+            return has(FieldSlotRegistry.lookup(field));
+        }
+
+        public int get(int slot) {
+            if ((slot < 0) || (slot >= values.length)) return 0;
+            return values[slot];
+        }
+
         public int get(String field) {
-            Object result = valueMap.get(field);
-            if (result == null) return 0;
-            return (int)result;
+            return get(FieldSlotRegistry.lookup(field));
         }
 
         public static int get(StateActionClass object, String field) {
             return object.get(field);
         }
 
-        public double getDouble(String field) {
+        public double getDouble(int slot) {
             if (definition == null) {
-                return get(field) * 0.0000001f;
+                return get(slot) * 0.0000001f;
             } else {
-                return get(field) * definition.precisions.getOrDefault(field, 0.0000001f) + definition.rangeShifts.getOrDefault(field, 0.0f);
+                return get(slot) * definition.getPrecision(slot) + definition.getRangeShift(slot);
             }
         }
 
-        public StateActionClass set(String field, int value) {
-            valueMap.put(field, value);
+        public double getDouble(String field) {
+            return getDouble(FieldSlotRegistry.lookup(field));
+        }
+
+        public StateActionClass set(int slot, int value) {
+            if (slot >= values.length) growToRegistrySize();
+            values[slot] = value;
+            setSlots[slot >> 6] |= (1L << slot);
+            modifications++;
             return this;
         }
 
+        public StateActionClass set(String field, int value) {
+            return set(FieldSlotRegistry.slot(field), value);
+        }
+
         public static StateActionClass set(StateActionClass object, String field, int value){
-            object.valueMap.put(field, value);
-            return object;
+            return object.set(field, value);
         }
 
-        public StateActionClass setDouble(String field, double value) {
+        public StateActionClass setDouble(int slot, double value) {
             if (definition == null) {
                 float precision = 0.0000001f;
-                valueMap.put(field, group_by_precision(value, precision));
+                set(slot, group_by_precision(value, precision));
             } else {
-                float precision = definition.precisions.getOrDefault(field, 0.0000001f);
-                valueMap.put(field, group_by_precision(value - definition.rangeShifts.getOrDefault(field, 0.0f), precision));
+                float precision = definition.getPrecision(slot);
+                set(slot, group_by_precision(value - definition.getRangeShift(slot), precision));
             }
             return this;
         }
 
+        public StateActionClass setDouble(String field, double value) {
+            return setDouble(FieldSlotRegistry.slot(field), value);
+        }
+
+        boolean setDoubleIfChanged(int slot, double value) {
+            int oldValue = get(slot);
+            boolean wasSet = has(slot);
+            setDouble(slot, value);
+            return !wasSet || (get(slot) != oldValue);
+        }
+
+        private void growToRegistrySize() {
+            int size = FieldSlotRegistry.size();
+            values = Arrays.copyOf(values, size);
+            setSlots = Arrays.copyOf(setSlots, (size >> 6) + 1);
+        }
+
         protected String stringifyStateOrAction(){
             String simpleClassName = this.getClass().getSimpleName();
             StringBuilder stringBuilder = new StringBuilder();
@@ -223,12 +267,11 @@ public class StateActionTuple implements Serializable {
 
         public static void applyDeepcopy(StateActionClass fromObject, StateActionClass toObject, MDPDefinition definition) {
             toObject.definition = definition;
-            toObject.valueMap = new HashMap<>();
             if (fromObject.symmetry != null)
-                toObject.symmetry = fromObject.symmetry + "";
-            for (Map.Entry<String, Integer> entry: fromObject.valueMap.entrySet()) {
-                toObject.valueMap.put(entry.getKey() + "", entry.getValue() + 0);
-            }
+                toObject.symmetry = fromObject.symmetry;
+            toObject.values = fromObject.values.clone();
+            toObject.setSlots = fromObject.setSlots.clone();
+            toObject.modifications++;
             if (fromObject.definition == toObject.definition) {
                 toObject.runMDPDefinitionExpressions();
             } else {
@@ -239,30 +282,40 @@ public class StateActionTuple implements Serializable {
 
     // Required data structures.
 
-    public static class State extends StateActionClass {
-        public State(SimulationStatus status){
-            if (status == null) return;
-            constructorCode(status);
-        }
-
-        public State(SimulationStatus status, MDPDefinition definition) {
-            this.definition = definition;
-            if (status == null) return;
-            constructorCode(status);
-        }
-
-        private void constructorCode(SimulationStatus status) {
-            if (status == null) return;
-
+    /**
+     * The kinematic fields of a SimulationStatus, computed once per step.  The State of every definition of the
+     * hierarchy is a projection of them, quantized with the precisions of its definition.
+     */
+    public static class StateFeatures {
+        private static final int POSITION_X = FieldSlotRegistry.slot("positionX");
+        private static final int POSITION_Y = FieldSlotRegistry.slot("positionY");
+        private static final int POSITION_Z = FieldSlotRegistry.slot("positionZ");
+        private static final int VELOCITY_X = FieldSlotRegistry.slot("velocityX");
+        private static final int VELOCITY_Y = FieldSlotRegistry.slot("velocityY");
+        private static final int VELOCITY_Z = FieldSlotRegistry.slot("velocityZ");
+        private static final int ANGLE_X = FieldSlotRegistry.slot("angleX");
+        private static final int ANGLE_Y = FieldSlotRegistry.slot("angleY");
+        private static final int ANGLE_Z = FieldSlotRegistry.slot("angleZ");
+        private static final int ANGLE_VELOCITY_X = FieldSlotRegistry.slot("angleVelocityX");
+        private static final int ANGLE_VELOCITY_Y = FieldSlotRegistry.slot("angleVelocityY");
+        private static final int TIME = FieldSlotRegistry.slot("time");
+        private static final int[] SLOTS = new int[]{POSITION_X, POSITION_Y, POSITION_Z, VELOCITY_X, VELOCITY_Y, VELOCITY_Z,
+                ANGLE_X, ANGLE_Y, ANGLE_Z, ANGLE_VELOCITY_X, ANGLE_VELOCITY_Y, TIME};
+
+        private final double[] values = new double[SLOTS.length];
+
+        public StateFeatures(SimulationStatus status) {
             Coordinate rocketDirection = convertRocketStatusQuaternionToDirection(status);
+            Coordinate position = status.getRocketPosition();
+            Coordinate velocity = status.getRocketVelocity();
 
-            setDouble("positionX", status.getRocketPosition().x);
-            setDouble("positionY", status.getRocketPosition().y);
-            setDouble("positionZ", status.getRocketPosition().z);
+            values[0] = position.x;
+            values[1] = position.y;
+            values[2] = position.z;
 
-            setDouble("velocityX", status.getRocketVelocity().x);
-            setDouble("velocityY", status.getRocketVelocity().y);
-            setDouble("velocityZ", status.getRocketVelocity().z);
+            values[3] = velocity.x;
+            values[4] = velocity.y;
+            values[5] = velocity.z;
             //setVelocity(Math.signum(status.getRocketVelocity().z) * status.getRocketVelocity().length());
 
             // new angle approach
@@ -276,28 +329,91 @@ public class StateActionTuple implements Serializable {
             if (rocketDirection.z <= 0.0 || Math.abs(angleY) >= _45_deg) {
                 angleY = _45_deg * Math.signum(rocketDirection.y);
             }
-            setDouble("angleX", angleX);
-            setDouble("angleY", angleY);
+            values[6] = angleX;
+            values[7] = angleY;
             // logic obtained directly from the rocket zenith orientation in OpenRocket
-            setDouble("angleZ", Math.atan2(rocketDirection.z, MathUtil.hypot(rocketDirection.x, rocketDirection.y)));
+            values[8] = Math.atan2(rocketDirection.z, MathUtil.hypot(rocketDirection.x, rocketDirection.y));
 
             // original angle approach
             //setDouble("angleX", Math.acos(rocketDirection.x) * Math.signum(rocketDirection.y));
-            //setDouble("angleZ", Math.acos(rocketDirection.z));
+            //setDouble(ANGLE_Z, Math.acos(rocketDirection.z));
 
             // NOTE THAT THIS IS INTENTIONALLY FLIPPED!!!
-            setDouble("angleVelocityX", status.getRocketRotationVelocity().y);
-            setDouble("angleVelocityY", -status.getRocketRotationVelocity().x);
+            values[9] = status.getRocketRotationVelocity().y;
+            values[10] = -status.getRocketRotationVelocity().x;
 
-            setDouble("time", status.getSimulationTime());
+            values[11] = status.getSimulationTime();
+        }
 
+        void projectInto(State state) {
+            for (int i = 0; i < SLOTS.length; i++)
+                state.setDouble(SLOTS[i], values[i]);
+        }
+    }
+
+    public static class State extends StateActionClass {
+        public State(SimulationStatus status){
+            if (status == null) return;
+            new StateFeatures(status).projectInto(this);
+            runMDPDefinitionExpressions();
+        }
+
+        public State(SimulationStatus status, MDPDefinition definition) {
+            this.definition = definition;
+            if (status == null) return;
+            new StateFeatures(status).projectInto(this);
+            runMDPDefinitionExpressions();
+        }
+
+        /**
+         * The state of the definition for the symmetry axis (or null), projected from the features of the step.
+         */
+        public State(StateFeatures features, MDPDefinition definition, String symmetry) {
+            this.definition = definition;
+            this.symmetry = symmetry;
+            features.projectInto(this);
             runMDPDefinitionExpressions();
         }
 
+        // the index and the reward of the values and definition they were computed for, shared by the policy,
+        // the trajectory recorder and the learner of a step
+        private transient MDPDefinition indexDefinition = null;
+        private transient int indexModifications = -1;
+        private transient long index = 0;
+        private transient MDPDefinition rewardDefinition = null;
+        private transient int rewardModifications = -1;
+        private transient float reward = 0.0f;
+
+        /**
+         * @return the state index, as MDPDefinition.computeIndexState, computed once for the current values
+         */
+        public long getIndex() {
+            // the cell of an adaptive partition changes as the partition splits
+            if (definition.adaptiveDiscretization != null)
+                return MDPDefinition.computeIndexState(this);
+            if ((indexDefinition != definition) || (indexModifications != modifications)) {
+                index = MDPDefinition.computeIndexState(this);
+                indexDefinition = definition;
+                indexModifications = modifications;
+            }
+            return index;
+        }
+
+        /**
+         * @return the step reward of the definition, computed once for the current values
+         */
+        public float getReward() {
+            if ((rewardDefinition != definition) || (rewardModifications != modifications)) {
+                reward = definition._reward.evaluateFloat(this);
+                rewardDefinition = definition;
+                rewardModifications = modifications;
+            }
+            return reward;
+        }
 
         @Override
         public int hashCode() {
-            return MDPDefinition.computeIndexState(this);
+            return Long.hashCode(getIndex());
         }
 
         @Override
@@ -310,9 +426,8 @@ public class StateActionTuple implements Serializable {
                 return false;
             State other = (State) obj;
             boolean equivalent = true;
-            for (Object objectField : definition.stateDefinitionFields) {
-                String stateField = (String)objectField;
-                equivalent = equivalent && this.get(stateField) == other.get(stateField);
+            for (int slot : definition.stateDefinitionSlots) {
+                equivalent = equivalent && this.get(slot) == other.get(slot);
             }
             return equivalent;
         }
@@ -339,6 +454,13 @@ public class StateActionTuple implements Serializable {
             constructorCodeInts(values, definition);
         }
 
+        public Action(int[] slots, int[] values, MDPDefinition definition) {
+            this.definition = definition;
+            for (int i = 0; i < slots.length; i++)
+                set(slots[i], values[i]);
+            runMDPDefinitionExpressions();
+        }
+
         public Action(float thrust, float gimbalX, float gimbalY, float lateralThrustX, float lateralThrustY, MDPDefinition definition) {
             HashMap<String, Float> values = new HashMap<String, Float>() {{
                 put("thrust", thrust);
@@ -381,9 +503,8 @@ public class StateActionTuple implements Serializable {
                 return false;
             Action other = (Action) obj;
             boolean equivalent = true;
-            for (Object objectField : definition.actionDefinitionFields) {
-                String actionField = (String)objectField;
-                equivalent = equivalent && this.get(actionField) == other.get(actionField);
+            for (int slot : definition.actionDefinitionSlots) {
+                equivalent = equivalent && this.get(slot) == other.get(slot);
             }
             return equivalent;
         }
@@ -398,27 +519,33 @@ public class StateActionTuple implements Serializable {
         }
 
         public Action deepcopy(MDPDefinition definition) {
-            Action newAction = new Action(0, 0, 0, 0, 0, this.definition);
+            Action newAction = new Action();
             applyDeepcopy(this, newAction, definition);
             return newAction;
         }
 
-        public void applyDefinitionValuesToState(State state) {
-            HashSet<String> symmetryAxes = definition.symmetryAxesHashSet;
-
-            for (String actionField: definition.actionDefinitionFields) {
-                double actionFieldValue = getDouble(actionField);
-                if ((symmetryAxes != null) && symmetryAxes.contains(actionField)) {  // double setting the value for certainty
-                    state.setDouble(actionField + symmetry, actionFieldValue);
+        /**
+         * @return whether any value of the state changed
+         */
+        public boolean applyDefinitionValuesToState(State state) {
+            int[] symmetrySlots = (symmetry == null) ? null : definition.actionSymmetrySlots.get(symmetry);
+
+            boolean changed = false;
+            for (int i = 0; i < definition.actionDefinitionSlots.length; i++) {
+                int actionSlot = definition.actionDefinitionSlots[i];
+                double actionFieldValue = getDouble(actionSlot);
+                if ((symmetrySlots != null) && (symmetrySlots[i] != -1)) {  // double setting the value for certainty
+                    changed |= state.setDoubleIfChanged(symmetrySlots[i], actionFieldValue);
                 }
 
                 if (state.definition == definition) {
-                    state.setDouble(actionField, actionFieldValue);
+                    changed |= state.setDoubleIfChanged(actionSlot, actionFieldValue);
                 } else { // different definitions! DO NOT OVERRIDE THE VALUE unless not part of the actionDefinition
-                    if (!state.definition.actionDefinition.containsKey(actionField))
-                        state.setDouble(actionField, actionFieldValue);
+                    if (!state.definition.isActionSlot(actionSlot))
+                        changed |= state.setDoubleIfChanged(actionSlot, actionFieldValue);
                 }
             }
+            return changed;
         }
     }
 
@@ -30,11 +30,17 @@ public class ValueFunctionManager {
 
             if (valueFunction == null) {
                 int size = definition.indexProduct;
-                if (RLValueFunction.isReasonableTableSize(size)) {
+                if (definition.tileCoding != null) {
+                    System.out.println("Allocating tile coding weights: " + definition.tileCoding.getNumWeights());
+                    valueFunction = new RLValueFunction(definition.tileCoding);
+                } else if (definition.adaptiveDiscretization != null) {
+                    System.out.println("Allocating adaptive stateSpace: " + size);
+                    valueFunction = new RLValueFunction(definition.adaptiveDiscretization);
+                } else if (RLValueFunction.isReasonableTableSize(size)) {
                     System.out.println("Allocating stateSpace: " + size);
                     valueFunction = new RLValueFunction(new float[size]);
                 } else {
-                    valueFunction = new RLValueFunction(new HashMap<>());
+                    valueFunction = new RLValueFunction(new ConcurrentIntFloatHashMap());
                 }
             }
 
@@ -55,66 +61,28 @@ public class ValueFunctionManager {
 
     public float get(StateActionTuple stateActionTuple) {
         RLValueFunction valueFunction = stateActionTuple.state.definition.valueFunction;
-        int index = MDPDefinition.computeIndex(stateActionTuple);
-        valueFunction.lock(index);
-        float result = valueFunction.get(index);
-        valueFunction.unlock(index);
-        return result;
+        long index = MDPDefinition.computeIndex(stateActionTuple);
+        return valueFunction.get(index);
     }
 
     public float put(StateActionTuple stateActionTuple, float newValue) {
         RLValueFunction valueFunction = stateActionTuple.state.definition.valueFunction;
-        int index = MDPDefinition.computeIndex(stateActionTuple);
-        valueFunction.lock(index);
+        long index = MDPDefinition.computeIndex(stateActionTuple);
         valueFunction.put(index, newValue);
-        valueFunction.unlock(index);
         return newValue;
     }
 
-    public int getIndexAndLock(StateActionTuple stateActionTuple) {
-        int index = MDPDefinition.computeIndex(stateActionTuple);
-        stateActionTuple.state.definition.valueFunction.lock(index);
-        return index;
-    }
-
-    public void setValueAtIndexAndUnlock(StateActionTuple stateActionTuple, int index, float value) {
-        stateActionTuple.state.definition.valueFunction.put(index, value);
-        stateActionTuple.state.definition.valueFunction.unlock(index);
+    public float updateTowards(StateActionTuple stateActionTuple, float target, float alpha) {
+        RLValueFunction valueFunction = stateActionTuple.state.definition.valueFunction;
+        long index = MDPDefinition.computeIndex(stateActionTuple);
+        return valueFunction.updateTowards(index, target, alpha);
     }
 
-    public int[] getIndecesAndLockAll(ArrayList<StateActionTuple> SA, HashSet<Integer> lockedIndeces) {
-        // DEADLOCK IF SA indeces ARE NOT UNIQUE
-        int[] indeces = new int[SA.size()];
+    public long[] getIndeces(ArrayList<StateActionTuple> SA) {
+        long[] indeces = new long[SA.size()];
         for (int i = 0; i < SA.size(); i++) {
-            StateActionTuple stateActionTuple = SA.get(i);
-            indeces[i] = MDPDefinition.computeIndex(stateActionTuple);
-        }
-        // lock at last possible moment
-        RLValueFunction valueFunction = SA.get(0).state.definition.valueFunction;
-        valueFunction.lockMainLock();
-        for (int i = 0; i < SA.size(); i++) {
-            int index = indeces[i];
-            if (!lockedIndeces.contains(index)) {  // don't double lock
-                valueFunction.lock(index);
-                lockedIndeces.add(index);
-            }
+            indeces[i] = MDPDefinition.computeIndex(SA.get(i));
         }
-        valueFunction.unlockMainLock();
         return indeces;
     }
-
-    public void setValueAtIndecesAndUnlockAll(MDPDefinition definition, HashSet<Integer> unlockIndeces, int[] indeces, float[] values) {
-        RLValueFunction valueFunction = definition.valueFunction;
-        for (int i = 0; i < indeces.length; i++) {
-            valueFunction.put(indeces[i], values[i]);
-        }
-        // unlock on completion - MUST BE AFTER ALL UPDATES
-        for (int i = 0; i < indeces.length; i++) {
-            int index = indeces[i];
-            if (unlockIndeces.contains(index)) {
-                valueFunction.unlock(index);
-                unlockIndeces.remove(index);
-            }
-        }
-    }
 }
@@ -1,11 +1,14 @@
 package net.sf.openrocket.simulation.extension.impl.rocketlander.customexpressions;
 
+import net.sf.openrocket.simulation.extension.impl.rocketlander.FieldSlotRegistry;
 import net.sf.openrocket.simulation.extension.impl.rocketlander.StateActionTuple;
 
 class Constant extends Term {
     double value = Double.MAX_VALUE;
+    int slot = -1;
     public Constant(String identifier) {
         super(identifier);
+        this.slot = FieldSlotRegistry.slot(identifier);
     }
     public Constant(String identifier, double value) {
         super(identifier);
@@ -20,17 +23,17 @@ class Constant extends Term {
 
     public double evaluate(StateActionTuple.StateActionClass object) {
         if (value != Double.MAX_VALUE) return value;
-        if (sign == -1) return -object.getDouble(identifier);
-        else return object.getDouble(identifier);
+        if (sign == -1) return -object.getDouble(slot);
+        else return object.getDouble(slot);
     }
 
     public double evaluateBestGuess(StateActionTuple.StateActionClass primary, StateActionTuple.StateActionClass fallback) {
         if (value != Double.MAX_VALUE) return value;
 
         double value = 0;
-        if (primary.valueMap.containsKey(identifier)) value = primary.getDouble(identifier);
+        if (primary.has(slot)) value = primary.getDouble(slot);
         else {
-            if (fallback.valueMap.containsKey(identifier)) value = fallback.getDouble(identifier);
+            if (fallback.has(slot)) value = fallback.getDouble(slot);
             else System.out.println("MAJOR ISSUE IN MISSING PROPERTY: " + identifier);
         }
 
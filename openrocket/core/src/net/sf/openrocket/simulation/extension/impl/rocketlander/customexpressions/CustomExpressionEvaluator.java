@@ -59,9 +59,9 @@ public class CustomExpressionEvaluator {
 
     private double bestGuessTermFromString(String term, StateActionClass primary, StateActionClass fallback) {
         double value = 0;
-        if (primary.valueMap.containsKey(term)) value = primary.getDouble(term);
+        if (primary.has(term)) value = primary.getDouble(term);
         else {
-            if (fallback.valueMap.containsKey(term)) value = fallback.getDouble(term);
+            if (fallback.has(term)) value = fallback.getDouble(term);
             else System.out.println("MAJOR ISSUE IN MISSING PROPERTY: " + term);
         }
         return value;
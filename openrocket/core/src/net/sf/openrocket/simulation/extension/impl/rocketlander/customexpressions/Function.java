@@ -4,11 +4,51 @@ import net.sf.openrocket.simulation.extension.impl.rocketlander.StateActionTuple
 
 import java.util.ArrayList;
 
+/**
+ * A function node of an expression.  The operation is resolved to an opcode and the inputs to an array when the
+ * node is built, so evaluation is a switch over doubles without any allocation or string comparison.
+ */
 class Function extends Term {
+    private static final int ASSIGN = 0;
+    private static final int ADD = 1;
+    private static final int SUB = 2;
+    private static final int MULT = 3;
+    private static final int DIV = 4;
+    private static final int ABS = 5;
+    private static final int SIGNUM = 6;
+    private static final int SIN = 7;
+    private static final int ASIN = 8;
+    private static final int COS = 9;
+    private static final int ACOS = 10;
+    private static final int TAN = 11;
+    private static final int ATAN = 12;
+    private static final int ATAN2 = 13;
+    private static final int TODEG = 14;
+    private static final int AND = 15;
+    private static final int OR = 16;
+    private static final int NOT = 17;
+    private static final int LT = 18;
+    private static final int LE = 19;
+    private static final int GT = 20;
+    private static final int GE = 21;
+    private static final int POW = 22;
+    private static final int EXP = 23;
+    private static final int LOG = 24;
+    private static final int UNDEFINED = -1;
+
     ArrayList<Term> inputs;
+    private final Term[] inputArray;
+    private final int opcode;
+    private final double logOfBase;
+
     public Function(String identifier, ArrayList<Term> inputs) {
         super(identifier);
         this.inputs = inputs;
+        this.inputArray = inputs.toArray(new Term[inputs.size()]);
+        this.opcode = resolveOpcode(identifier);
+        this.logOfBase = (opcode == LOG) ? Math.log(Double.parseDouble(identifier.substring(3))) : 0.0;
+        if (opcode == UNDEFINED)
+            System.out.println("EQUATION NOT DEFINED IN STATE ACTION TUPLE CLASS: " + identifier);
     }
 
     @Override
@@ -39,63 +79,83 @@ class Function extends Term {
     }
 
     public double evaluate(StateActionTuple.StateActionClass object) {
-        ArrayList<Double> doubleInputs = new ArrayList<>();
-        for (Term input: inputs) {
-            doubleInputs.add(input.evaluate(object));
-        }
-        double result = mathematicalEvaluation(identifier, doubleInputs);
+        double a = (inputArray.length > 0) ? inputArray[0].evaluate(object) : 0.0;
+        double b = (inputArray.length > 1) ? inputArray[1].evaluate(object) : 0.0;
+        double result = mathematicalEvaluation(a, b);
         if (sign == -1) return -result;
         else return result;
     }
     public double evaluateBestGuess(StateActionTuple.StateActionClass primary, StateActionTuple.StateActionClass fallback) {
-        ArrayList<Double> doubleInputs = new ArrayList<>();
-        for (Term input: inputs) {
-            doubleInputs.add(input.evaluateBestGuess(primary, fallback));
-        }
-        double result = mathematicalEvaluation(identifier, doubleInputs);
+        double a = (inputArray.length > 0) ? inputArray[0].evaluateBestGuess(primary, fallback) : 0.0;
+        double b = (inputArray.length > 1) ? inputArray[1].evaluateBestGuess(primary, fallback) : 0.0;
+        double result = mathematicalEvaluation(a, b);
         if (sign == -1) return -result;
         else return result;
     }
 
+    private static int resolveOpcode(String method) {
+        if (method.equals("")) return ASSIGN;
+        else if (method.equals("Add")) return ADD;
+        else if (method.equals("Sub")) return SUB;
+        else if (method.equals("Mult")) return MULT;
+        else if (method.equals("Div")) return DIV;
+        else if (method.equals("Abs")) return ABS;
+        else if (method.equals("Signum")) return SIGNUM;
+        else if (method.equals("Sin")) return SIN;
+        else if (method.equals("Asin")) return ASIN;
+        else if (method.equals("Cos")) return COS;
+        else if (method.equals("Acos")) return ACOS;
+        else if (method.equals("Tan")) return TAN;
+        else if (method.equals("Atan")) return ATAN;
+        else if (method.equals("Atan2")) return ATAN2;
+        else if (method.equals("Todeg")) return TODEG;
+
+        else if (method.equals("And")) return AND;
+        else if (method.equals("Or")) return OR;
+        else if (method.equals("Not")) return NOT;
+
+        else if (method.equals("Lt")) return LT;
+        else if (method.equals("Le")) return LE;
+        else if (method.equals("Gt")) return GT;
+        else if (method.equals("Ge")) return GE;
+
+        else if (method.contains("Pow")) return POW;
+        else if (method.contains("Exp")) return EXP;
+        else if (method.contains("Log")) return LOG;
+        return UNDEFINED;
+    }
 
-
-
-
-
-    private static double mathematicalEvaluation(String method, ArrayList<Double> inputs) {
-        if (method.equals("")) return inputs.get(0);  // assignment
-        else if (method.equals("Add")) return inputs.get(0) + inputs.get(1);
-        else if (method.equals("Sub")) return inputs.get(0) - inputs.get(1);
-        else if (method.equals("Mult")) return inputs.get(0) * inputs.get(1);
-        else if (method.equals("Div")) return inputs.get(0) / inputs.get(1);
-        else if (method.equals("Abs")) return Math.abs(inputs.get(0));
-        else if (method.equals("Signum")) return Math.signum(inputs.get(0));
-        else if (method.equals("Sin")) return Math.sin(inputs.get(0));
-        else if (method.equals("Asin")) return Math.asin(inputs.get(0));
-        else if (method.equals("Cos")) return Math.cos(inputs.get(0));
-        else if (method.equals("Acos")) return Math.acos(inputs.get(0));
-        else if (method.equals("Tan")) return Math.tan(inputs.get(0));
-        else if (method.equals("Atan")) return Math.atan(inputs.get(0));
-        else if (method.equals("Atan2")) return Math.atan2(inputs.get(0), inputs.get(1));
-        else if (method.equals("Todeg")) return inputs.get(0) * (180.0f / Math.PI);
-
-        else if (method.equals("And")) return ((inputs.get(0) != 0) && (inputs.get(1) != 0)) ? 1 : 0;
-        else if (method.equals("Or")) return ((inputs.get(0) != 0) || (inputs.get(1) != 0)) ? 1 : 0;
-        else if (method.equals("Not")) return (inputs.get(0) != 0) ? 0 : 1;
-
-        else if (method.equals("Lt")) return (inputs.get(0) < inputs.get(1)) ? 1 : 0;
-        else if (method.equals("Le")) return (inputs.get(0) <= inputs.get(1)) ? 1 : 0;
-        else if (method.equals("Gt")) return (inputs.get(0) > inputs.get(1)) ? 1 : 0;
-        else if (method.equals("Ge")) return (inputs.get(0) >= inputs.get(1)) ? 1 : 0;
-
-        else if (method.contains("Pow")) return Math.pow(inputs.get(0), inputs.get(1));
-        else if (method.contains("Exp")) return Math.exp(inputs.get(0));
-        else if (method.contains("Log")) {
-            double logBase = Double.parseDouble(method.substring(3));
-            return Math.log(inputs.get(0)) / Math.log(logBase);
+    private double mathematicalEvaluation(double a, double b) {
+        switch (opcode) {
+            case ASSIGN: return a;
+            case ADD: return a + b;
+            case SUB: return a - b;
+            case MULT: return a * b;
+            case DIV: return a / b;
+            case ABS: return Math.abs(a);
+            case SIGNUM: return Math.signum(a);
+            case SIN: return Math.sin(a);
+            case ASIN: return Math.asin(a);
+            case COS: return Math.cos(a);
+            case ACOS: return Math.acos(a);
+            case TAN: return Math.tan(a);
+            case ATAN: return Math.atan(a);
+            case ATAN2: return Math.atan2(a, b);
+            case TODEG: return a * (180.0f / Math.PI);
+
+            case AND: return ((a != 0) && (b != 0)) ? 1 : 0;
+            case OR: return ((a != 0) || (b != 0)) ? 1 : 0;
+            case NOT: return (a != 0) ? 0 : 1;
+
+            case LT: return (a < b) ? 1 : 0;
+            case LE: return (a <= b) ? 1 : 0;
+            case GT: return (a > b) ? 1 : 0;
+            case GE: return (a >= b) ? 1 : 0;
+
+            case POW: return Math.pow(a, b);
+            case EXP: return Math.exp(a);
+            case LOG: return Math.log(a) / logOfBase;
         }
-
-        System.out.println("EQUATION NOT DEFINED IN STATE ACTION TUPLE CLASS: " + method);
         return -1.0;
     }
 }
@@ -16,6 +16,7 @@ public abstract class BaseMethodImplementation implements MethodInterface {
     float terminalDiscount = 0.999f;
     float alpha = 0.1f;
     float exploration = 0.05f;
+    float lambda = 0.9f;
 
     public float valueFunction(State state, Action action) { return valueFunction(new StateActionTuple(state, action)); }
     public float valueFunction(StateActionTuple stateActionTuple) {
@@ -35,6 +36,7 @@ public abstract class BaseMethodImplementation implements MethodInterface {
     public void setAlpha(float alpha) { this.alpha = alpha; }
     public void setExploration(float exploration) { this.exploration = exploration; }
     public float getExploration() { return exploration; }
+    public void setLambda(float lambda) { this.lambda = lambda; }
 
     public void updateStepCommon(
             ArrayList<StateActionTuple> SA,
@@ -47,6 +49,21 @@ public abstract class BaseMethodImplementation implements MethodInterface {
             Function<StateActionTuple.State, Float> reward
     ) {}
 
+    /**
+     * Release what the method keeps for the state actions of an episode whose simulation has ended, with or
+     * without a terminal update.
+     **/
+    public void releaseEpisode(ArrayList<StateActionTuple> SA) {}
+
+    /** Terminal reward of the last state, penalized when the episode did not end on the ground. **/
+    float terminalReturn(State lastState, Function<State, Float> terminalReward) {
+        double positionPenalty = 0;
+        double positionZ = Math.abs(lastState.getDouble("positionZ"));
+        if (positionZ > 0.5)
+            positionPenalty = 10000.0 * positionZ;
+        return terminalReward.apply(lastState) - (float)positionPenalty;
+    }
+
     /**
      * Code below here should NOT BE MODIFIED.  IT allowed for the explicit format of the functions that is present.
      * The implementation is common to all methods, and allows for drastic code reuse.
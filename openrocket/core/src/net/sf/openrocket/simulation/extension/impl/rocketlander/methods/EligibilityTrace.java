@@ -0,0 +1,74 @@
+package net.sf.openrocket.simulation.extension.impl.rocketlander.methods;
+
+import net.sf.openrocket.simulation.extension.impl.rocketlander.RLValueFunction;
+
+import java.util.Arrays;
+
+/**
+ * Eligibility traces of one episode, stored as parallel primitive arrays of the visited value function indeces.
+ *
+ * Traces are replacing: a visit sets the trace of its index to 1.  Every update decays the traces and drops the ones
+ * below MIN_TRACE, so the arrays only ever hold the last few visited indeces and an update costs O(trace length).
+ * Every index keeps the partition generation it was computed with, and is dropped once its cell has been split.
+ */
+class EligibilityTrace {
+    static final float MIN_TRACE = 0.01f;
+
+    private long[] indeces = new long[16];
+    private float[] traces = new float[16];
+    private int[] generations = new int[16];
+    private int size = 0;
+
+    /** number of transitions of the episode state actions already learned **/
+    int learnedTransitions = 0;
+
+    /**
+     * @param generation the partition generation read before the index was computed, see RLValueFunction.getGeneration
+     */
+    void visit(long index, int generation) {
+        for (int i = 0; i < size; i++) {
+            if (indeces[i] == index) {
+                traces[i] = 1.0f;
+                generations[i] = generation;
+                return;
+            }
+        }
+        if (size == indeces.length) {
+            indeces = Arrays.copyOf(indeces, size * 2);
+            traces = Arrays.copyOf(traces, size * 2);
+            generations = Arrays.copyOf(generations, size * 2);
+        }
+        indeces[size] = index;
+        traces[size] = 1.0f;
+        generations[size] = generation;
+        size++;
+    }
+
+    /**
+     * Add step * trace to the value of every traced index, then decay the traces.
+     */
+    void update(RLValueFunction valueFunction, float step, float decay) {
+        int kept = 0;
+        for (int i = 0; i < size; i++) {
+            // the cell was split since the visit, so the index may be the wrong half
+            if (valueFunction.isStale(indeces[i], generations[i])) continue;
+            valueFunction.add(indeces[i], step * traces[i]);
+            float trace = traces[i] * decay;
+            if (trace >= MIN_TRACE) {
+                indeces[kept] = indeces[i];
+                traces[kept] = trace;
+                generations[kept] = generations[i];
+                kept++;
+            }
+        }
+        size = kept;
+    }
+
+    void clear() {
+        size = 0;
+    }
+
+    int size() {
+        return size;
+    }
+}
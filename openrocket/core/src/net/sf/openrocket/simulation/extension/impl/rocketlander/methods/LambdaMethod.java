@@ -0,0 +1,114 @@
+package net.sf.openrocket.simulation.extension.impl.rocketlander.methods;
+
+import net.sf.openrocket.simulation.extension.impl.rocketlander.MDPDefinition;
+import net.sf.openrocket.simulation.extension.impl.rocketlander.RLReplayBuffer;
+import net.sf.openrocket.simulation.extension.impl.rocketlander.RLValueFunction;
+import net.sf.openrocket.simulation.extension.impl.rocketlander.StateActionTuple;
+import net.sf.openrocket.simulation.extension.impl.rocketlander.StateActionTuple.*;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.function.Function;
+
+/**
+ * Backward view TD(lambda): every transition moves all the recently visited state actions by their eligibility
+ * trace times the one-step TD error, so rewards reach the earlier steps of the episode without waiting for its end.
+ *
+ * A method instance is shared by all the simulations training its MDPDefinition, so the traces are kept per thread
+ * and per episode state action list.  A thread may interleave several episodes (BatchSimulationEngine), so the
+ * traces of an episode are kept until its simulation ends and RocketLanderListener releases them, whether or not
+ * the episode had a terminal update.  The state actions are stored on every simulation step, but a transition is
+ * only learned once the list has grown.  The terminal step backs up the same return as MonteCarlo.
+ *
+ * With a replay buffer the transitions are handed to the RLReplayLearner thread as one-step TD backups, like TD0.
+ */
+public abstract class LambdaMethod extends BaseMethodImplementation {
+    private final ThreadLocal<IdentityHashMap<ArrayList<StateActionTuple>, EligibilityTrace>> episodeTraces =
+            ThreadLocal.withInitial(IdentityHashMap::new);
+
+    /**
+     * Value of the next state in the TD target, given the value of the action taken in it.  The traces are cut when
+     * the action taken is worth less than that, e.g. after an exploratory action of an off-policy method.
+     */
+    abstract float nextValue(StateActionTuple next, float takenValue, RLValueFunction valueFunction);
+
+    public void updateStepCommon(ArrayList<StateActionTuple> SA, Function<State, Float> reward) {
+        if (SA == null) { return; }
+        if (SA.size() < 2) { return; }
+        EligibilityTrace trace = trace(SA);
+        while (trace.learnedTransitions + 1 < SA.size()) {
+            learnTransition(trace, SA.get(trace.learnedTransitions), SA.get(trace.learnedTransitions + 1), reward);
+            trace.learnedTransitions++;
+        }
+    }
+
+    public void updateTerminalCommon(
+            ArrayList<StateActionTuple> SA,
+            Function<State, Float> terminalReward,
+            Function<State, Float> reward
+    ) {
+        if (SA == null) { return; }
+        if (SA.size() == 0) { return; }
+        updateStepCommon(SA, reward);
+
+        StateActionTuple last = SA.get(SA.size() - 1);
+        RLValueFunction valueFunction = last.state.definition.valueFunction;
+        int generation = valueFunction.getGeneration();
+        long lastIndex = MDPDefinition.computeIndex(last);
+        float G = terminalReturn(last.state, terminalReward);
+
+        RLReplayBuffer replayBuffer = last.state.definition.replayBuffer;
+        if (replayBuffer != null) {
+            replayBuffer.add(lastIndex, G, -1, 0.0f, alpha, generation);  // learned by the RLReplayLearner thread
+        } else {
+            EligibilityTrace trace = trace(SA);
+            trace.visit(lastIndex, generation);
+            // no decay - the episode is over
+            trace.update(valueFunction, alpha * (G - valueFunction.get(lastIndex)), 0.0f);
+        }
+    }
+
+    @Override
+    public void releaseEpisode(ArrayList<StateActionTuple> SA) {
+        episodeTraces.get().remove(SA);
+    }
+
+    public float terminalReward(State lastState) { return 0.0f; }
+    public float reward(State state) { return 0.0f; }
+
+    /*
+    Private implementation.  Details.
+     */
+
+    EligibilityTrace trace(ArrayList<StateActionTuple> SA) {
+        return episodeTraces.get().computeIfAbsent(SA, key -> new EligibilityTrace());
+    }
+
+    /** Number of episode traces kept by the calling thread. **/
+    int traceCount() {
+        return episodeTraces.get().size();
+    }
+
+    private void learnTransition(EligibilityTrace trace, StateActionTuple old, StateActionTuple next, Function<State, Float> reward) {
+        float rewardValue = reward.apply(next.state);
+        RLValueFunction valueFunction = old.state.definition.valueFunction;
+        int generation = valueFunction.getGeneration();
+        long index = MDPDefinition.computeIndex(old);
+        long nextIndex = MDPDefinition.computeIndex(next);
+
+        RLReplayBuffer replayBuffer = old.state.definition.replayBuffer;
+        if (replayBuffer != null) {
+            // learned by the RLReplayLearner thread
+            replayBuffer.add(index, rewardValue, nextIndex, stepDiscount, alpha, generation);
+            return;
+        }
+
+        float takenValue = valueFunction.get(nextIndex);
+        float nextValue = nextValue(next, takenValue, valueFunction);
+        float delta = rewardValue + stepDiscount * nextValue - valueFunction.get(index);
+        trace.visit(index, generation);
+        trace.update(valueFunction, alpha * delta, stepDiscount * lambda);
+        if (takenValue < nextValue)
+            trace.clear();
+    }
+}
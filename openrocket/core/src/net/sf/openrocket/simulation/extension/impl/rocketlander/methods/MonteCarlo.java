@@ -3,6 +3,7 @@ package net.sf.openrocket.simulation.extension.impl.rocketlander.methods;
 import net.sf.openrocket.simulation.extension.impl.rocketlander.MDPDefinition;
 import net.sf.openrocket.simulation.extension.impl.rocketlander.StateActionTuple;
 import net.sf.openrocket.simulation.extension.impl.rocketlander.StateActionTuple.*;
+import net.sf.openrocket.simulation.extension.impl.rocketlander.RLReplayBuffer;
 import net.sf.openrocket.simulation.extension.impl.rocketlander.RLValueFunction;
 
 import java.util.ArrayList;
@@ -24,32 +25,25 @@ public class MonteCarlo extends BaseMethodImplementation {
         int lastTimeStep = SA.size() - 1;
         StateActionTuple lastStateActionTuple = SA.get(lastTimeStep);
 
-        double positionPenalty = 0;
-        double positionZ = Math.abs(lastStateActionTuple.state.getDouble("positionZ"));
-        if (positionZ > 0.5)
-            positionPenalty = 10000.0 * positionZ;
-        float G = terminalReward.apply(lastStateActionTuple.state) - (float)positionPenalty;
-
-        // thread-safe lock
-        HashSet<Integer> lockedIndeces = new HashSet<>();
-        int[] indeces = valueFunctionManager.getIndecesAndLockAll(SA, lockedIndeces);
+        float G = terminalReturn(lastStateActionTuple.state, terminalReward);
 
+        // only the latest visit of a repeated index is backed up
+        HashSet<Long> updatedIndeces = new HashSet<>();
         final RLValueFunction valueFunction = lastStateActionTuple.state.definition.valueFunction;
-        float[] values = new float[SA.size()];
+        int generation = valueFunction.getGeneration();
+        long[] indeces = valueFunctionManager.getIndeces(SA);
+
+        final RLReplayBuffer replayBuffer = lastStateActionTuple.state.definition.replayBuffer;
         for (int timeStep = lastTimeStep; timeStep >= 0; timeStep--) {
             StateActionTuple stateActionTuple = SA.get(timeStep);
-            float originalValue = valueFunction.get(indeces[timeStep]);
-            values[timeStep] = originalValue + alpha * (G - originalValue);
+            if (updatedIndeces.add(indeces[timeStep])) {
+                if (replayBuffer != null)
+                    replayBuffer.add(indeces[timeStep], G, -1, 0.0f, alpha, generation);  // learned by the RLReplayLearner thread
+                else if (!valueFunction.isStale(indeces[timeStep], generation))
+                    valueFunction.updateTowards(indeces[timeStep], G, alpha);
+            }
             G = (terminalDiscount * G) + reward.apply(stateActionTuple.state);
         }
-
-        // thread-safe unlock
-        valueFunctionManager.setValueAtIndecesAndUnlockAll(
-                lastStateActionTuple.state.definition,
-                lockedIndeces,
-                indeces,
-                values
-        );
     }
 
     public float terminalReward(State lastState) { return 0.0f; }
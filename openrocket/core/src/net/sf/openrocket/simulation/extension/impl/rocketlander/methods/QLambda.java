@@ -0,0 +1,33 @@
+package net.sf.openrocket.simulation.extension.impl.rocketlander.methods;
+
+import net.sf.openrocket.simulation.extension.impl.rocketlander.ActionEnumeration;
+import net.sf.openrocket.simulation.extension.impl.rocketlander.MDPDefinition;
+import net.sf.openrocket.simulation.extension.impl.rocketlander.RLValueFunction;
+import net.sf.openrocket.simulation.extension.impl.rocketlander.StateActionTuple;
+
+/**
+ * Watkins's Q(lambda): the TD target uses the best action of the next state, and the traces are cut whenever the
+ * action taken next is not greedy, since the later rewards no longer follow the greedy policy.
+ *
+ * The candidates of the next state are those of its ActionEnumeration, restricted to the child MDPs selected by the
+ * action taken.
+ */
+public class QLambda extends LambdaMethod {
+    public QLambda (MDPDefinition definition) {
+        this.definition = definition;
+    }
+
+    float nextValue(StateActionTuple next, float takenValue, RLValueFunction valueFunction) {
+        ActionEnumeration enumeration = ActionEnumeration.get(next.state.definition, next.state.symmetry);
+        String[] selectionFields = enumeration.getSelectionFields();
+        int[] selectedValues = new int[selectionFields.length];
+        for (int i = 0; i < selectionFields.length; i++)
+            selectedValues[i] = next.action.get(selectionFields[i]);
+
+        long stateIndex = next.state.getIndex();
+        float bestValue = takenValue;
+        for (int candidate : enumeration.getCandidates(selectedValues))
+            bestValue = Math.max(bestValue, valueFunction.get(stateIndex + enumeration.getActionIndex(candidate)));
+        return bestValue;
+    }
+}
@@ -0,0 +1,18 @@
+package net.sf.openrocket.simulation.extension.impl.rocketlander.methods;
+
+import net.sf.openrocket.simulation.extension.impl.rocketlander.MDPDefinition;
+import net.sf.openrocket.simulation.extension.impl.rocketlander.RLValueFunction;
+import net.sf.openrocket.simulation.extension.impl.rocketlander.StateActionTuple;
+
+/**
+ * On-policy SARSA(lambda): the TD target uses the value of the action actually taken next.
+ */
+public class SarsaLambda extends LambdaMethod {
+    public SarsaLambda (MDPDefinition definition) {
+        this.definition = definition;
+    }
+
+    float nextValue(StateActionTuple next, float takenValue, RLValueFunction valueFunction) {
+        return takenValue;
+    }
+}
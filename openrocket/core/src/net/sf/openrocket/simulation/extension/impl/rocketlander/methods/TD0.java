@@ -1,6 +1,7 @@
 package net.sf.openrocket.simulation.extension.impl.rocketlander.methods;
 
 import net.sf.openrocket.simulation.extension.impl.rocketlander.MDPDefinition;
+import net.sf.openrocket.simulation.extension.impl.rocketlander.RLReplayBuffer;
 import net.sf.openrocket.simulation.extension.impl.rocketlander.StateActionTuple;
 
 import java.util.ArrayList;
@@ -20,14 +21,19 @@ public class TD0 extends BaseMethodImplementation implements MethodInterface {
         StateActionTuple old = SA.get(SA.size() - 2);
         StateActionTuple current = SA.get(SA.size() - 1);
 
-        float currentValue = valueFunction(current);
         float rewardValue = reward.apply(current.state);
 
-        // thread safety
-        int index = valueFunctionManager.getIndexAndLock(old);
-        float oldValue = old.state.definition.valueFunction.get(index);
-        float newValue = oldValue +  alpha * (rewardValue + stepDiscount * currentValue - oldValue);
-        valueFunctionManager.setValueAtIndexAndUnlock(old, index, newValue);
+        RLReplayBuffer replayBuffer = old.state.definition.replayBuffer;
+        if (replayBuffer != null) {
+            // learned by the RLReplayLearner thread
+            int generation = old.state.definition.valueFunction.getGeneration();
+            replayBuffer.add(MDPDefinition.computeIndex(old), rewardValue, MDPDefinition.computeIndex(current), stepDiscount, alpha, generation);
+            return;
+        }
+
+        float currentValue = valueFunction(current);
+
+        valueFunctionManager.updateTowards(old, rewardValue + stepDiscount * currentValue, alpha);
     }
 
     public float terminalReward(StateActionTuple.State lastState) { return 0.0f; }
@@ -1,87 +1,83 @@
 package net.sf.openrocket.simulation.extension.impl.rrt;
 
-import net.sf.openrocket.simulation.FlightDataBranch;
-import net.sf.openrocket.simulation.FlightDataType;
 import net.sf.openrocket.simulation.SimulationStatus;
-import net.sf.openrocket.util.ArrayList;
-import net.sf.openrocket.util.Coordinate;
+import net.sf.openrocket.simulation.extension.impl.rocketlander.RLEpisodeRandom;
+
+import java.util.SplittableRandom;
 
 import static net.sf.openrocket.simulation.extension.impl.rrt.RRTBoundaries.strictlyWithinBoundary;
-import static net.sf.openrocket.simulation.extension.impl.initialconditions.InitialConditions.clearExtraStatusFlightData;
 
 public class RRT {
-    private RRTNode root = null;
-    private ArrayList<RRTNode> nodes = null;
-    private RRTNode target = null;
-    public RRTNode current = null;
-    private ArrayList<RRTNode> options = null;
+    // weights of the squared state differences in distance()
+    public static final double Z_WEIGHT = 5;
+    public static final double VELOCITY_Z_WEIGHT = 5;
+    public static final double DIRECTION_WEIGHT = 1000;
+    public static final double LATERAL_VELOCITY_WEIGHT = 2;
+    // z, vz, direction x, direction y, vx, vy
+    public static final int INDEX_DIMENSIONS = 6;
+
+    private final RRTTree tree;
+    private final RRTNodeStore root = new RRTNodeStore(1);
+    private final RRTNodeStore target = new RRTNodeStore(1);
+    public int current = -1;
+    private long currentGeneration = 0;
+    private final RRTNodeStore options = new RRTNodeStore(NUM_GOAL_TRIES + 1);
     private RRTBoundaries boundaries = new RRTBoundaries();
     private RRTBoundaries goal = new RRTBoundaries("goal", true);
     int counter = 0;
-    double globalMin = Double.MAX_VALUE;
-    public double globalMax;
-    public double originalGlobalMax;
-    RRTNode minNode;
     int tries=10;
-    int NUM_GOAL_TRIES = 100;
-    int RESTART_SIZE_THRESHOLD = 10000;
+    static final int NUM_GOAL_TRIES = 100;
     Action a;
-    public int numNodesExpanded = 0;
     private boolean isUsingLateralVelocityObjective = true;
+    private final SplittableRandom random;
 
     public void setIsUsingLateralVelocityObjective(boolean newValue) {
         isUsingLateralVelocityObjective = newValue;
         goal = new RRTBoundaries("goal", isUsingLateralVelocityObjective);
+        tree.setIsUsingLateralVelocityObjective(newValue);
     }
 
-    RRT(RRTNode rootIn){
-        root = rootIn;
-        nodes = new ArrayList<>();
-        options = new ArrayList<>();
-        SimulationStatus s = copy(root.status);
+    RRT(SimulationStatus rootStatus){
+        this(rootStatus, new RRTTree(), RLEpisodeRandom.current());
+    }
 
-        setOriginalGlobalMax(s);
+    /**
+     * Expand a tree that may be shared with other RRTs.  The root is only added if the tree is empty.
+     */
+    RRT(SimulationStatus rootStatus, RRTTree tree, SplittableRandom random){
+        this.tree = tree;
+        this.random = random;
+        root.add(rootStatus, -1, new Action(0,0,0, 0, 0));
+        target.add(rootStatus, -1, new Action(0,0,0, 0, 0));
 
-        target = new RRTNode(s,null);
-        nodes.add(root);
-        minNode = root;
+        setOriginalGlobalMax(rootStatus);
     }
 
+    public RRTTree getTree() { return tree; }
+
     public void setOriginalGlobalMax(SimulationStatus s) {
-        target = new RRTNode(s,null);
+        target.set(0, s);
         setGoalTarget();
 
-        double maxDist = distance(root, target);
-        originalGlobalMax = maxDist;
-        globalMax = maxDist;
-
-        target = new RRTNode(s,null);
-    }
+        double maxDist = tree.distance(root, 0, target, 0);
+        tree.initialize(root, maxDist);
 
-    public static SimulationStatus copy(SimulationStatus status){
-        //SimulationConditions sc = new SimulationConditions();
-        // SimulationStatus s = new SimulationStatus(status.getConfiguration().clone(), status.getSimulationConditions().clone());
-        SimulationStatus s = status.hackyCopy();
-        clearExtraStatusFlightData(s);
-        assignStatus(status,s);
-       // FlightConfiguration simulationConfig = simulationConditions.getRocket().getFlightConfiguration( this.fcid).clone();
-        //final String branchName = simulationConfig.getRocket().getTopmostStage().getName();
-        return s;
+        target.set(0, s);
     }
 
-    boolean checkGoal(RRTNode n){
-        boolean angleX = strictlyWithinBoundary(goal.ax, n.directionZ.x);
-        boolean angleY = strictlyWithinBoundary(goal.ay, n.directionZ.y);
-        boolean angleZ = strictlyWithinBoundary(goal.az, n.directionZ.z);
-        boolean velX = strictlyWithinBoundary(goal.vx, n.status.getRocketVelocity().x);
-        boolean velY = strictlyWithinBoundary(goal.vy, n.status.getRocketVelocity().y);
-        boolean velZ = strictlyWithinBoundary(goal.vz, n.status.getRocketVelocity().z);
-        boolean angleVelX = strictlyWithinBoundary(goal.avx, n.status.getRocketRotationVelocity().x);
-        boolean angleVelY =  strictlyWithinBoundary(goal.avy, n.status.getRocketRotationVelocity().y);
-        boolean angleVelZ =  strictlyWithinBoundary(goal.avz, n.status.getRocketRotationVelocity().z);
-        boolean posX =  strictlyWithinBoundary(goal.x, n.status.getRocketPosition().x);
-        boolean posY =  strictlyWithinBoundary(goal.y, n.status.getRocketPosition().y);
-        boolean posZ =  strictlyWithinBoundary(goal.z, n.status.getRocketPosition().z);
+    boolean checkGoal(RRTNodeStore store, int n){
+        boolean angleX = strictlyWithinBoundary(goal.ax, store.directionX[n]);
+        boolean angleY = strictlyWithinBoundary(goal.ay, store.directionY[n]);
+        boolean angleZ = strictlyWithinBoundary(goal.az, store.directionZ[n]);
+        boolean velX = strictlyWithinBoundary(goal.vx, store.velocityX[n]);
+        boolean velY = strictlyWithinBoundary(goal.vy, store.velocityY[n]);
+        boolean velZ = strictlyWithinBoundary(goal.vz, store.velocityZ[n]);
+        boolean angleVelX = strictlyWithinBoundary(goal.avx, store.rotationVelocityX[n]);
+        boolean angleVelY =  strictlyWithinBoundary(goal.avy, store.rotationVelocityY[n]);
+        boolean angleVelZ =  strictlyWithinBoundary(goal.avz, store.rotationVelocityZ[n]);
+        boolean posX =  strictlyWithinBoundary(goal.x, store.positionX[n]);
+        boolean posY =  strictlyWithinBoundary(goal.y, store.positionY[n]);
+        boolean posZ =  strictlyWithinBoundary(goal.z, store.positionZ[n]);
 
         boolean angleVerticalVelocityPositionGoal = angleX && angleY && velZ && posZ;
         if (isUsingLateralVelocityObjective)
@@ -90,68 +86,52 @@ public class RRT {
     }
 
     void setGoalTarget(){
-        Coordinate coord = target.status.getRocketPosition();
-        coord = coord.setX(getRandom(goal.x));
-        coord =coord.setY(getRandom(goal.y));
-        coord =coord.setZ(getRandom(goal.z));
-        target.status.setRocketPosition(coord);
-
-        coord = target.status.getRocketVelocity();
-        coord =coord.setX(getRandom(goal.vx));
-        coord =coord.setY(getRandom(goal.vy));
-        coord =coord.setZ(getRandom(goal.vz));
-        target.status.setRocketVelocity(coord);
-
-        coord = target.status.getRocketRotationVelocity();
-        coord =coord.setX(getRandom(goal.avx));
-        coord =coord.setY(getRandom(goal.avy));
-        coord =coord.setZ(getRandom(goal.avz));
-        target.status.setRocketRotationVelocity(coord);
-
-        coord = target.directionZ;
-        coord =coord.setX(getRandom(goal.ax));
-        coord =coord.setY(getRandom(goal.ay));
-        coord =coord.setZ(getRandom(goal.az));
-        target.directionZ = coord;
-
-        target.status.setSimulationTime(getMean(goal.t));
+        target.positionX[0] = getRandom(goal.x);
+        target.positionY[0] = getRandom(goal.y);
+        target.positionZ[0] = getRandom(goal.z);
+
+        target.velocityX[0] = getRandom(goal.vx);
+        target.velocityY[0] = getRandom(goal.vy);
+        target.velocityZ[0] = getRandom(goal.vz);
+
+        target.rotationVelocityX[0] = getRandom(goal.avx);
+        target.rotationVelocityY[0] = getRandom(goal.avy);
+        target.rotationVelocityZ[0] = getRandom(goal.avz);
+
+        target.directionX[0] = getRandom(goal.ax);
+        target.directionY[0] = getRandom(goal.ay);
+        target.directionZ[0] = getRandom(goal.az);
+
+        target.time[0] = getMean(goal.t);
     }
 
     void setRandomTarget(){
-        Coordinate coord = target.status.getRocketPosition();
-        coord = coord.setX(getRandom(boundaries.x)+0*minNode.status.getRocketPosition().x);
-        coord =coord.setY(getRandom(boundaries.y)+0*minNode.status.getRocketPosition().y);
-        coord = coord.setZ(getRandom(boundaries.z)+0*minNode.status.getRocketPosition().z);
-        target.status.setRocketPosition(coord);
-
-        coord = target.status.getRocketVelocity();
-        coord =coord.setX(getRandom(boundaries.vx));
-        coord =coord.setY(getRandom(boundaries.vy));
-        coord =coord.setZ(getRandom(boundaries.vz));
-        target.status.setRocketVelocity(coord);
-
-        coord = target.status.getRocketRotationVelocity();
-        coord =coord.setX(getRandom(boundaries.avx));
-        coord =coord.setY(getRandom(boundaries.avy));
-        coord =coord.setZ(getRandom(boundaries.avz));
-        target.status.setRocketRotationVelocity(coord);
-
-        coord = target.directionZ;
-        coord =coord.setX(getRandom(boundaries.ax));
-        coord =coord.setY(getRandom(boundaries.ay));
-        coord =coord.setZ(getRandom(boundaries.az));
-        target.directionZ = coord;
-        //target.status.setRocketPosition(coord);
-        target.status.setSimulationTime(getRandom(boundaries.t));
+        target.positionX[0] = getRandom(boundaries.x);
+        target.positionY[0] = getRandom(boundaries.y);
+        target.positionZ[0] = getRandom(boundaries.z);
+
+        target.velocityX[0] = getRandom(boundaries.vx);
+        target.velocityY[0] = getRandom(boundaries.vy);
+        target.velocityZ[0] = getRandom(boundaries.vz);
+
+        target.rotationVelocityX[0] = getRandom(boundaries.avx);
+        target.rotationVelocityY[0] = getRandom(boundaries.avy);
+        target.rotationVelocityZ[0] = getRandom(boundaries.avz);
+
+        target.directionX[0] = getRandom(boundaries.ax);
+        target.directionY[0] = getRandom(boundaries.ay);
+        target.directionZ[0] = getRandom(boundaries.az);
+
+        target.time[0] = getRandom(boundaries.t);
     }
 
     double getRandom(RRTBoundaries.Limits limits){
-        return limits.min + Math.random() * (limits.max - limits.min);
+        return limits.min + random.nextDouble() * (limits.max - limits.min);
     }
 
     double getRandomAction(RRTBoundaries.Limits limits){
         int range = (int) Math.round((limits.max - limits.min) / limits.increment + 0.5);
-        int incrementMultipler = (int) Math.round(Math.random() * range);
+        int incrementMultipler = (int) Math.round(random.nextDouble() * range);
         return limits.min + incrementMultipler * (limits.increment);
     }
 
@@ -159,57 +139,53 @@ public class RRT {
         return 0.5* (limits.max + limits.min);
     }
 
-    public static void assignStatus(SimulationStatus cur,SimulationStatus status){
-        status.setRocketPosition(cur.getRocketPosition());
-        status.setRocketVelocity(cur.getRocketVelocity());
-        status.setRocketOrientationQuaternion(cur.getRocketOrientationQuaternion());
-        status.setRocketRotationVelocity(cur.getRocketRotationVelocity());
-        status.setSimulationTime(cur.getSimulationTime());
-    }
-
     Action setStatus(SimulationStatus status){
-        if(counter == tries ){ //pick best
-            RRTNode n = getNearest(options, target);
-            if (n!=null)
-                addNode(n); // add the node which is closest to the target
-            if (nodes.size()>RESTART_SIZE_THRESHOLD){
-                RRTNode tmp = root;
-                nodes = new ArrayList<>();
-                nodes.add(tmp);
-                globalMin = 99999;
-                globalMax = originalGlobalMax;
+        if (tree.isGoalReached()) return null;
+        // the other RRTs expanding the tree may restart it at any time, so the current node is only valid while the
+        // tree is locked - from the generation check up to restoring its state
+        synchronized (tree) {
+            if ((current != -1) && (tree.getGeneration() != currentGeneration)) {
+                // the tree restarted while expanding - the options lost their parent
+                options.clear();
+                current = -1;
+                counter = 0;
             }
-          //  if (Math.random() < 0.5) {
-           //     Random random = new Random();
-            //    int d = Math.abs(random.nextInt()) % nodes.size();
-             //   nodes.remove(d);
-           // }
-            options = new ArrayList<>(); //reset list
-            current = null;
-            counter = 0;
-        }
-        if (current == null){ // need to  sample new point
-
-            if (Math.random()< 0.1){
-                tries = NUM_GOAL_TRIES;
-                setGoalTarget();
-                RRTNode tmp = getNearest(nodes, target);
-
-            } else {
-                tries = 50;
-                setRandomTarget();
+            if(counter == tries ){ //pick best
+                int n = getNearestOption();
+                if (n!=-1)
+                    tree.add(options, n, current, currentGeneration, target, 0, tries==NUM_GOAL_TRIES); // add the node which is closest to the target
+              //  if (Math.random() < 0.5) {
+               //     Random random = new Random();
+                //    int d = Math.abs(random.nextInt()) % nodes.size();
+                 //   nodes.remove(d);
+               // }
+                options.clear(); //reset list
+                current = -1;
+                counter = 0;
             }
-            current = getNearest(nodes, target);
-            if (checkGoal(current)){ return null; }
-        } else {
-            counter++;
-            if (status.getRocketPosition().z != 0.001) { //only add valid options
-                RRTNode n = new RRTNode(status, current);
-                n.action = a;
-                options.add(n);
+            if (current == -1){ // need to  sample new point
+
+                if (random.nextDouble()< 0.1){
+                    tries = NUM_GOAL_TRIES;
+                    setGoalTarget();
+                } else {
+                    tries = 50;
+                    setRandomTarget();
+                }
+                current = tree.nearest(target, 0, tries==NUM_GOAL_TRIES);
+                currentGeneration = tree.getGeneration();
+                if (checkGoal(tree.getNodes(), current)){
+                    tree.setGoalNode(current);
+                    return null;
+                }
+            } else {
+                counter++;
+                if (status.getRocketPosition().z != 0.001) { //only add valid options
+                    options.add(status, current, a);
+                }
             }
+            tree.getNodes().restore(current, status);
         }
-        assignStatus(current.status, status);
         a = generateRandomDiscreteAction();
         return a;
     }
@@ -220,7 +196,7 @@ public class RRT {
         double thrust = getRandomAction(boundaries.thrust);
         double lateralThrustX = 0;
         double lateralThrustY = 0;
-        if (isUsingLateralVelocityObjective && (Math.random() < 0.5)) {
+        if (isUsingLateralVelocityObjective && (random.nextDouble() < 0.5)) {
             gimbleX = 0; gimbleY = 0;
             lateralThrustX = getRandomAction(boundaries.lateralThrustX);
             lateralThrustY = getRandomAction(boundaries.lateralThrustY);
@@ -228,71 +204,23 @@ public class RRT {
         return new Action(gimbleX, gimbleY, thrust, lateralThrustX, lateralThrustY);
     }
 
-    void addNode(RRTNode node){
-        nodes.add(node);
-        numNodesExpanded++;
-    }
-
-    RRTNode getNearest(ArrayList<RRTNode> nodeList, RRTNode node){
+    /**
+     * Option nearest to the target.  The few options of an expansion are scanned.
+     */
+    int getNearestOption(){
         double min = Double.MAX_VALUE;
-        RRTNode ret = null;
-        for (RRTNode rrtNode : nodeList) {
-            double tmp = distance(node, rrtNode);
+        int ret = -1;
+        for (int option = 0; option < options.size(); option++) {
+            double tmp = tree.distance(target, 0, options, option);
             if (tmp < min) {
                 min = tmp;
-                ret = rrtNode;
-                if (min < globalMin && tries==NUM_GOAL_TRIES){
-                    globalMin = min;
-                    minNode = rrtNode;
-                    /*
-                    System.out.println(globalMin);
-                    System.out.println("Position: x: "+minNode.status.getRocketPosition().x+
-                            " y: "+minNode.status.getRocketPosition().y+
-                            " z: "+minNode.status.getRocketPosition().z);
-                    System.out.println("Velocity: x: "+minNode.status.getRocketVelocity().x+
-                            " y: "+minNode.status.getRocketVelocity().y+
-                            " z: "+minNode.status.getRocketVelocity().z);
-                    System.out.println("Angle: x: "+minNode.status.getRocketOrientationQuaternion().rotateZ().x+
-                            " y: "+minNode.status.getRocketOrientationQuaternion().rotateZ().y+
-                            " z: "+minNode.status.getRocketOrientationQuaternion().rotateZ().z);
-                     */
-                    System.out.println((1.0 - globalMin/globalMax) * 100 + "%");
-                }
-
+                ret = option;
             }
         }
       //  System.out.println(min);
         return ret;
     }
 
-    double distance(RRTNode n1,RRTNode n2){
-        Coordinate cord1 = n1.status.getRocketPosition();
-        if (n2==null || n2.status==null){
-            n2 = null;
-        }
-        Coordinate cord2 = n2.status.getRocketPosition();
-        double dx = cord1.x - cord2.x;
-        double dy = cord1.y - cord2.y;
-        double dz = cord1.z - cord2.z;
-        cord1 = n1.status.getRocketVelocity();
-        cord2 = n2.status.getRocketVelocity();
-        double dvx = cord1.x - cord2.x;
-        double dvy = cord1.y - cord2.y;
-        double dvz = cord1.z - cord2.z;
-        cord1 = n1.directionZ;
-        cord2 = n2.directionZ;
-        double dax = cord1.x - cord2.x;
-        double day = cord1.y - cord2.y;
-        double daz = cord1.z - cord2.z;
-        double dt = n1.status.getSimulationTime()-n2.status.getSimulationTime();
-
-        double baseDistance = 5*dz*dz + 5*dvz*dvz + dax*dax*1000 + day*day*1000;
-        if (isUsingLateralVelocityObjective) {
-            baseDistance += 2*dvx*dvx + 2*dvy*dvy;
-        }
-        return baseDistance;
-    }
-
     public static class Action{
         double thrust;
         double gimbleX;
@@ -5,7 +5,7 @@ public class RRTBoundaries {
 
     }
 
-    class Limits{
+    public class Limits{
         public double min;
         public double max;
         public double increment;
@@ -29,4 +29,14 @@ public class RRTExtension extends AbstractGenericInitialConditionsExtension {
 		config.put("UsingLateralObjective", usingLateralObjectiveDouble);
 		fireChangeEvent();
 	}
+
+	/** Planning threads.  More than one plans with an RRTParallelPlanner. **/
+	public int getWorkers() {
+		return config.getInt("Workers", 1);
+	}
+
+	public void setWorkers(int workers) {
+		config.put("Workers", workers);
+		fireChangeEvent();
+	}
 }
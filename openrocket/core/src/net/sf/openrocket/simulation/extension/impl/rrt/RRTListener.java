@@ -5,6 +5,7 @@ import net.sf.openrocket.aerodynamics.FlightConditions;
 import net.sf.openrocket.masscalc.RigidBody;
 import net.sf.openrocket.simulation.*;
 import net.sf.openrocket.simulation.exception.SimulationException;
+import net.sf.openrocket.simulation.extension.impl.rocketlander.RLEpisodeRandom;
 import net.sf.openrocket.simulation.extension.impl.visualize3d.AbstractSimulationListenerSupportsVisualize3DListener;
 import net.sf.openrocket.simulation.extension.impl.visualize3d.Visualize3DListener;
 import net.sf.openrocket.simulation.listeners.SimulationListener;
@@ -15,13 +16,14 @@ import net.sf.openrocket.util.MathUtil;
 import java.nio.ByteBuffer;
 import java.util.*;
 
+import static net.sf.openrocket.simulation.extension.impl.initialconditions.InitialConditions.clearExtraStatusFlightData;
 import static net.sf.openrocket.simulation.extension.impl.initialconditions.InitialConditions.printStatusInformation;
 
 public class RRTListener extends AbstractSimulationListenerSupportsVisualize3DListener {
     private RRTExtension rrtExtension;
-    private Random random;
     private static double timeStep = 0.1;  // RK4SimulationStepper.MIN_TIME_STEP --> 0.001
     private static double MAX_LATERAL_THRUST_POWER = 200;
+    private static int MAX_PLANNER_WORKER_FLIGHT_DATA = 1000;
     // thrust vectoring
     private FlightConditions RLVectoringFlightConditions = null;
     private AerodynamicForces RLVectoringAerodynamicForces = null;
@@ -31,8 +33,10 @@ public class RRTListener extends AbstractSimulationListenerSupportsVisualize3DLi
     // RRT
     private RRT rrt = null;
     private RRT.Action action = null;
-    // nodes = SimulationStatus status
-    ArrayList<SimulationStatus> ss;
+    // set when this listener is a worker of an RRTParallelPlanner
+    private RRTTree plannerTree = null;
+    // nodes of the found path and the actions taken from them
+    int[] pathNodes;
     ArrayList<RRT.Action> aa;
     int currentIndex = 0;
     boolean hasCompletedTerminalUpdate = false;
@@ -51,25 +55,44 @@ public class RRTListener extends AbstractSimulationListenerSupportsVisualize3DLi
     RRTListener(RRTExtension rrtExtension) {
         this.rrtExtension = rrtExtension;
         isUsingLateralVelocityObjective = rrtExtension.getUsingLateralObjective();
-        random = new Random();
+    }
+
+    /**
+     * Expand the shared tree of an RRTParallelPlanner instead of planning on its own.
+     */
+    void setPlannerTree(RRTTree plannerTree) {
+        this.plannerTree = plannerTree;
     }
 
     @Override
-    public void startSimulation(SimulationStatus status) {
+    public void startSimulation(SimulationStatus status) throws SimulationException {
+        startTimeMilliseconds = System.currentTimeMillis();
         hasCompletedTerminalUpdate = false;
+        RLEpisodeRandom.startEpisode();
         // initialize episode
         status.getSimulationConditions().setTimeStep(timeStep);
 
         rrtExtension.getInitialConditionsObject().applyInitialConditionsToStatus(status);
 
         status.setLaunchRodCleared(true);
-        RRTNode root = new RRTNode(status, null);
-        rrt = new RRT(root);
+        if (plannerTree != null) {
+            rrt = new RRT(status, plannerTree, plannerTree.nextExpansionRandom());
+        } else if (rrtExtension.getWorkers() > 1) {
+            // plan on worker threads, then replay the path found through this simulation
+            RRTParallelPlanner planner = new RRTParallelPlanner(status.getSimulationConditions().getSimulation(), rrtExtension.getWorkers());
+            try {
+                rrt = new RRT(status, planner.plan(RLEpisodeRandom.currentEpisode()), RLEpisodeRandom.current());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SimulationException("RRT planning was interrupted");
+            }
+            planner.printReport();
+        } else {
+            rrt = new RRT(status);
+        }
         rrt.setIsUsingLateralVelocityObjective(isUsingLateralVelocityObjective);
 
         disableVisualization(status);
-
-        startTimeMilliseconds = System.currentTimeMillis();
     }
 
     @Override
@@ -123,6 +146,9 @@ public class RRTListener extends AbstractSimulationListenerSupportsVisualize3DLi
     @Override
     public void postStep(SimulationStatus status) throws SimulationException {
         rrtExtension.getInitialConditionsObject().stabilizeRocketBasedOnSimType(status);
+        // planner workers never return their flight data, which would otherwise grow for the whole planning
+        if ((plannerTree != null) && (status.getFlightData().getLength() > MAX_PLANNER_WORKER_FLIGHT_DATA))
+            clearExtraStatusFlightData(status);
         if (action == null) {
             System.out.println("YAY!!");
             status.setRocketPosition(new Coordinate(0, 0, 0));
@@ -139,30 +165,49 @@ public class RRTListener extends AbstractSimulationListenerSupportsVisualize3DLi
     @Override
     public void endSimulation(SimulationStatus status, SimulationException exception) {
         if (hasCompletedTerminalUpdate) return;
+        hasCompletedTerminalUpdate = true;
+        try {
+            // the planner reports for its workers
+            if (plannerTree == null) reportPath(status);
+        } finally {
+            // the visualization was disabled during the search, so its stream is only closed after the replay
+            Visualize3DListener visualize3DListener = findVisualize3DListener(status);
+            if (visualize3DListener != null) visualize3DListener.closeClient();
+        }
+    }
 
-        printStatusInformation(rrt.current.status);
-        System.out.println("Number of nodes expanded: " + rrt.numNodesExpanded);
-        System.out.println("Required seconds: " + ((System.currentTimeMillis() - startTimeMilliseconds) / 1000.0) + "s");
-
-                hasCompletedTerminalUpdate = true;
-        RRTNode n;
-        if (action == null) {
-            n = rrt.current;
+    /**
+     * Print the path to the goal, or to the node closest to it, and replay it to the visualizer.
+     */
+    private void reportPath(SimulationStatus status) {
+        RRTTree tree = rrt.getTree();
+        RRTNodeStore nodes = tree.getNodes();
+        int n;
+        if (tree.isGoalReached()) {
+            n = tree.getGoalNode();
         } else {
-            n = rrt.minNode;
+            n = tree.getMinNode();
         }
-        ss = new ArrayList<>();
+        nodes.restore(n, status);
+        printStatusInformation(status);
+        System.out.println("Number of nodes expanded: " + tree.getNumNodesExpanded());
+        System.out.println("Required seconds: " + ((System.currentTimeMillis() - startTimeMilliseconds) / 1000.0) + "s");
+
+        int pathLength = 0;
+        for (int m = n; nodes.getParent(m) != -1; m = nodes.getParent(m)) pathLength++;
+        pathNodes = new int[pathLength];
         aa = new ArrayList<>();
-        while (n.parent != null) {
-            aa.add(n.action);
-            n = n.parent;
-            ss.add(n.status);
+        for (int i = 0; nodes.getParent(n) != -1; i++) {
+            aa.add(nodes.getAction(n));
+            n = nodes.getParent(n);
+            pathNodes[i] = n;
         }
 
         Visualize3DListener visualize3DListener = activateVisualize3DListener(status);
         if (visualize3DListener == null) return;
-        for (currentIndex = ss.size() - 1; currentIndex >= 0; currentIndex--) {
-            visualize3DListener.postStep(ss.get(currentIndex));
+        for (currentIndex = pathNodes.length - 1; currentIndex >= 0; currentIndex--) {
+            nodes.restore(pathNodes[currentIndex], status);
+            visualize3DListener.postStep(status);
         }
     }
 
@@ -0,0 +1,248 @@
+package net.sf.openrocket.simulation.extension.impl.rrt;
+
+import java.util.Arrays;
+
+/**
+ * Incremental kd-tree over the weighted state vectors of the RRT nodes, so finding the node nearest to a sampled
+ * target no longer scans the whole tree.
+ *
+ * Points are identified by the order they were added in (0, 1, 2, ...) and stored in one flat array.  Leaves hold up
+ * to BUCKET_SIZE points and are split at the median of the dimension with the largest spread when they overflow,
+ * so the tree stays balanced even though the RRT adds its nodes in a strongly correlated order.
+ * Distances are squared euclidean distances, which equal RRT.distance when the coordinates are pre-scaled by the
+ * square roots of its weights.
+ */
+public class RRTNearestNeighbourIndex {
+    private static final int BUCKET_SIZE = 16;
+    private static final int LEAF = -1;
+
+    private final int dimensions;
+    private double[] points;
+    private int size = 0;
+
+    // tree nodes; node 0 is the root
+    private int numTreeNodes = 0;
+    private int[] splitDimensions;
+    private double[] splitValues;
+    private int[] leftChildren;
+    private int[] rightChildren;
+    private int[][] buckets;
+    private int[] bucketSizes;
+
+    public RRTNearestNeighbourIndex(int dimensions) {
+        this.dimensions = dimensions;
+        this.points = new double[1024 * dimensions];
+        this.splitDimensions = new int[64];
+        this.splitValues = new double[64];
+        this.leftChildren = new int[64];
+        this.rightChildren = new int[64];
+        this.buckets = new int[64][];
+        this.bucketSizes = new int[64];
+        newLeaf();
+    }
+
+    public int getDimensions() { return dimensions; }
+    public int size() { return size; }
+
+    public void clear() {
+        size = 0;
+        numTreeNodes = 0;
+        newLeaf();
+    }
+
+    /**
+     * @return the id of the added point
+     */
+    public int add(double[] point) {
+        int id = size++;
+        if (points.length < size * dimensions)
+            points = Arrays.copyOf(points, 2 * points.length);
+        System.arraycopy(point, 0, points, id * dimensions, dimensions);
+
+        int node = 0;
+        while (splitDimensions[node] != LEAF)
+            node = (point[splitDimensions[node]] < splitValues[node]) ? leftChildren[node] : rightChildren[node];
+        addToBucket(node, id);
+        if (bucketSizes[node] > BUCKET_SIZE)
+            split(node);
+        return id;
+    }
+
+    public double getCoordinate(int id, int dimension) {
+        return points[id * dimensions + dimension];
+    }
+
+    /**
+     * @return the id of the point nearest to the query, or -1 if the index is empty
+     */
+    public int nearest(double[] query) {
+        Search search = new Search(query, 1, 0.0);
+        search.run();
+        return (search.count == 0) ? -1 : search.ids[0];
+    }
+
+    /**
+     * Find the k points nearest to the query, nearest first.  With an epsilon above 0 the search is approximate:
+     * every returned distance is at most (1 + epsilon)^2 times the true squared distance of the same rank.
+     *
+     * @return the number of points found, at most k
+     */
+    public int nearest(double[] query, int k, double epsilon, int[] ids, double[] distances) {
+        Search search = new Search(query, k, epsilon);
+        search.run();
+        System.arraycopy(search.ids, 0, ids, 0, search.count);
+        System.arraycopy(search.distances, 0, distances, 0, search.count);
+        return search.count;
+    }
+
+    public double squaredDistance(double[] query, int id) {
+        double distance = 0;
+        int offset = id * dimensions;
+        for (int d = 0; d < dimensions; d++) {
+            double difference = query[d] - points[offset + d];
+            distance += difference * difference;
+        }
+        return distance;
+    }
+
+    /*
+    Private implementation.  Details.
+     */
+
+    private int newLeaf() {
+        if (numTreeNodes == splitDimensions.length) {
+            int capacity = 2 * numTreeNodes;
+            splitDimensions = Arrays.copyOf(splitDimensions, capacity);
+            splitValues = Arrays.copyOf(splitValues, capacity);
+            leftChildren = Arrays.copyOf(leftChildren, capacity);
+            rightChildren = Arrays.copyOf(rightChildren, capacity);
+            buckets = Arrays.copyOf(buckets, capacity);
+            bucketSizes = Arrays.copyOf(bucketSizes, capacity);
+        }
+        int node = numTreeNodes++;
+        splitDimensions[node] = LEAF;
+        if (buckets[node] == null)
+            buckets[node] = new int[BUCKET_SIZE + 1];
+        bucketSizes[node] = 0;
+        return node;
+    }
+
+    private void addToBucket(int node, int id) {
+        if (bucketSizes[node] == buckets[node].length)
+            buckets[node] = Arrays.copyOf(buckets[node], 2 * buckets[node].length);
+        buckets[node][bucketSizes[node]++] = id;
+    }
+
+    private void split(int node) {
+        int[] bucket = buckets[node];
+        int count = bucketSizes[node];
+
+        int dimension = -1;
+        double largestSpread = 0;
+        double splitMin = 0, splitMax = 0;
+        for (int d = 0; d < dimensions; d++) {
+            double min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY;
+            for (int i = 0; i < count; i++) {
+                double value = points[bucket[i] * dimensions + d];
+                min = Math.min(min, value);
+                max = Math.max(max, value);
+            }
+            if (max - min > largestSpread) {
+                largestSpread = max - min;
+                dimension = d;
+                splitMin = min;
+                splitMax = max;
+            }
+        }
+        // identical points cannot be separated - the bucket keeps growing instead
+        if (dimension == -1) return;
+
+        double[] values = new double[count];
+        for (int i = 0; i < count; i++)
+            values[i] = points[bucket[i] * dimensions + dimension];
+        Arrays.sort(values);
+        double splitValue = values[count / 2];
+        // both sides must receive points: fall back to the middle of the range if the median is the minimum
+        if (splitValue <= splitMin) splitValue = 0.5 * (splitMin + splitMax);
+        if (splitValue <= splitMin) splitValue = splitMax;
+
+        int left = newLeaf();
+        int right = newLeaf();
+        for (int i = 0; i < count; i++) {
+            int id = bucket[i];
+            addToBucket((points[id * dimensions + dimension] < splitValue) ? left : right, id);
+        }
+        splitDimensions[node] = dimension;
+        splitValues[node] = splitValue;
+        leftChildren[node] = left;
+        rightChildren[node] = right;
+        // the array is recycled if this slot is ever reused after a clear
+        bucketSizes[node] = 0;
+    }
+
+    /**
+     * Best-first descent that tracks the distance from the query to the cell of the current node per dimension.
+     */
+    private class Search {
+        final double[] query;
+        final int k;
+        final double pruneFactor;
+        final int[] ids;
+        final double[] distances;
+        final double[] offsets;
+        int count = 0;
+
+        Search(double[] query, int k, double epsilon) {
+            this.query = query;
+            this.k = k;
+            this.pruneFactor = (1 + epsilon) * (1 + epsilon);
+            this.ids = new int[k];
+            this.distances = new double[k];
+            this.offsets = new double[dimensions];
+        }
+
+        void run() {
+            if (size > 0) search(0, 0.0);
+        }
+
+        private double worst() {
+            return (count < k) ? Double.POSITIVE_INFINITY : distances[count - 1];
+        }
+
+        private void search(int node, double cellDistance) {
+            int dimension = splitDimensions[node];
+            if (dimension == LEAF) {
+                int[] bucket = buckets[node];
+                for (int i = 0, n = bucketSizes[node]; i < n; i++) {
+                    int id = bucket[i];
+                    double distance = squaredDistance(query, id);
+                    if (distance < worst()) insert(id, distance);
+                }
+                return;
+            }
+            double difference = query[dimension] - splitValues[node];
+            int near = (difference < 0) ? leftChildren[node] : rightChildren[node];
+            int far = (difference < 0) ? rightChildren[node] : leftChildren[node];
+            search(near, cellDistance);
+
+            double oldOffset = offsets[dimension];
+            double farDistance = cellDistance - oldOffset * oldOffset + difference * difference;
+            if (farDistance * pruneFactor < worst()) {
+                offsets[dimension] = difference;
+                search(far, farDistance);
+                offsets[dimension] = oldOffset;
+            }
+        }
+
+        private void insert(int id, double distance) {
+            int i = (count < k) ? count++ : count - 1;
+            while ((i > 0) && (distances[i - 1] > distance)) {
+                ids[i] = ids[i - 1];
+                distances[i] = distances[i - 1];
+                i--;
+            }
+            ids[i] = id;
+            distances[i] = distance;
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package net.sf.openrocket.simulation.extension.impl.rrt;
+
+import net.sf.openrocket.document.Simulation;
+import net.sf.openrocket.simulation.BasicEventSimulationEngine;
+import net.sf.openrocket.simulation.SimulationConditions;
+import net.sf.openrocket.simulation.exception.SimulationException;
+import net.sf.openrocket.simulation.extension.SimulationExtension;
+import net.sf.openrocket.simulation.extension.impl.rocketlander.RLEpisodeRandom;
+import net.sf.openrocket.simulation.listeners.SimulationListener;
+
+import java.util.ArrayList;
+
+/**
+ * Plans with several RRTs that expand one shared RRTTree, each on its own worker thread.
+ *
+ * Every worker flies its own copy of the simulation, so it owns its SimulationStatus and RK4SimulationStepper, and
+ * only the RRT extensions of the simulation are applied.  All workers start from the initial conditions of the
+ * same episode, so they share the root, while their samples come from separate random streams.  Planning ends as
+ * soon as one worker reaches the goal; the path is then replayed by the caller, e.g. the RRTListener that started
+ * the planner.
+ */
+public class RRTParallelPlanner {
+    private final Simulation simulation;
+    private final int workers;
+    private RRTTree tree = null;
+    private long startTime;
+    private long endTime;
+
+    public RRTParallelPlanner(Simulation simulation, int workers) {
+        this.simulation = simulation;
+        this.workers = Math.max(1, workers);
+    }
+
+    public int getWorkers() { return workers; }
+    public RRTTree getTree() { return tree; }
+    public double getSeconds() { return (endTime - startTime) / 1e9; }
+
+    public double getNodesPerSecond() {
+        return tree.getNumNodesExpanded() / Math.max(getSeconds(), 1e-9);
+    }
+
+    /**
+     * Expand a new tree from the initial conditions of the episode until a worker reaches the goal, or until all
+     * workers failed.
+     */
+    public RRTTree plan(long episode) throws InterruptedException {
+        tree = new RRTTree();
+        tree.setExpansionRandom(RLEpisodeRandom.episodeRandom(episode).split());
+        startTime = System.nanoTime();
+
+        ArrayList<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < workers; i++) {
+            // each worker needs its own simulation - simulation options and extensions are not thread safe
+            Simulation workerSimulation = simulation.duplicateSimulation(simulation.getRocket());
+            Thread thread = new Thread(() -> expand(workerSimulation, episode), "RRTPlannerWorker-" + i);
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread: threads)
+            thread.join();
+
+        endTime = System.nanoTime();
+        return tree;
+    }
+
+    public void printReport() {
+        System.out.println(String.format("RRT planner: %d workers  nodes expanded: %d  nodes/s: %.1f  %s after %.2fs",
+                workers, tree.getNumNodesExpanded(), getNodesPerSecond(),
+                tree.isGoalReached() ? "goal reached" : "goal not reached", getSeconds()));
+    }
+
+    /*
+    Private implementation.  Details.
+     */
+
+    private void expand(Simulation workerSimulation, long episode) {
+        while (!tree.isGoalReached()) {
+            long nodesBefore = tree.getNumNodesExpanded();
+            RLEpisodeRandom.setNextEpisode(episode);
+            workerSimulation.getOptions().setRandomSeed(RLEpisodeRandom.simulationSeed(episode));
+            SimulationConditions conditions = workerSimulation.getOptions().toSimulationConditions();
+            conditions.setSimulation(workerSimulation);
+            try {
+                for (SimulationExtension extension: workerSimulation.getSimulationExtensions()) {
+                    if (extension instanceof RRTExtension)
+                        extension.initialize(conditions);
+                }
+                for (SimulationListener listener: conditions.getSimulationListenerList()) {
+                    if (listener instanceof RRTListener)
+                        ((RRTListener) listener).setPlannerTree(tree);
+                }
+                new BasicEventSimulationEngine().simulate(conditions);
+            } catch (SimulationException e) {
+                // reaching the goal also ends the simulation with an exception
+                if (tree.isGoalReached()) return;
+                System.out.println("RRT planner worker failed: " + e.getMessage());
+                return;
+            }
+            // a simulation that ended without growing the tree would only end the same way again
+            if (tree.getNumNodesExpanded() == nodesBefore) return;
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package net.sf.openrocket.simulation.extension.impl.rrt;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * The nodes an RRT has expanded, with their nearest neighbour index and the best node found so far.
+ *
+ * A tree is owned by one RRT, or shared by the RRTs of the workers of an RRTParallelPlanner.  All access goes through
+ * the tree monitor; an RRT holds it while it reads nodes it did not add itself.
+ * Restarting the tree invalidates the node indeces held by the RRTs, which they detect through the generation.
+ */
+public class RRTTree {
+    int RESTART_SIZE_THRESHOLD = 100000;
+
+    private RRTNodeStore nodes = new RRTNodeStore(1024);
+    private final RRTNearestNeighbourIndex index = new RRTNearestNeighbourIndex(RRT.INDEX_DIMENSIONS);
+    private int[] indexedNodes = new int[1024];  // node of every id of the index
+    private final double[] indexPoint = new double[RRT.INDEX_DIMENSIONS];
+    private volatile boolean isUsingLateralVelocityObjective = true;
+    private long generation = 0;
+
+    private double globalMin = Double.MAX_VALUE;
+    private double globalMax;
+    private double originalGlobalMax;
+    private int minNode = -1;
+    private volatile int goalNode = -1;
+    private long numNodesExpanded = 0;
+    private SplittableRandom expansionSeeds = null;
+
+    public synchronized RRTNodeStore getNodes() { return nodes; }
+    public synchronized int size() { return nodes.size(); }
+    public synchronized long getGeneration() { return generation; }
+    public synchronized int getMinNode() { return minNode; }
+    public synchronized long getNumNodesExpanded() { return numNodesExpanded; }
+    public boolean isUsingLateralVelocityObjective() { return isUsingLateralVelocityObjective; }
+
+    /**
+     * Add the root, unless the tree already has one.
+     */
+    public synchronized void initialize(RRTNodeStore root, double maxDistance) {
+        if (nodes.size() != 0) return;
+        indexNode(nodes.add(root, 0, -1));
+        minNode = 0;
+        originalGlobalMax = maxDistance;
+        globalMax = maxDistance;
+    }
+
+    public synchronized void setIsUsingLateralVelocityObjective(boolean newValue) {
+        if (isUsingLateralVelocityObjective == newValue) return;
+        isUsingLateralVelocityObjective = newValue;
+        // the lateral velocity weight changed
+        int numIndexed = index.size();
+        index.clear();
+        for (int id = 0; id < numIndexed; id++)
+            indexNode(indexedNodes[id]);
+    }
+
+    /**
+     * Node of the tree nearest to the target, through the index.
+     *
+     * @param trackMin whether the node may become the best node found so far
+     */
+    public synchronized int nearest(RRTNodeStore target, int targetNode, boolean trackMin) {
+        setIndexPoint(target, targetNode, indexPoint);
+        int id = index.nearest(indexPoint);
+        if (id == -1) return -1;
+        int nearest = indexedNodes[id];
+        if (trackMin) updateGlobalMin(distance(target, targetNode, nodes, nearest), nearest);
+        return nearest;
+    }
+
+    /**
+     * Add a child of the parent node, unless the tree restarted since the parent was read.
+     *
+     * @return the new node, or -1
+     */
+    public synchronized int add(RRTNodeStore from, int fromNode, int parent, long parentGeneration,
+                                RRTNodeStore target, int targetNode, boolean trackMin) {
+        if (parentGeneration != generation) return -1;
+        int node = nodes.add(from, fromNode, parent);
+        indexNode(node);
+        numNodesExpanded++;
+        if (trackMin) updateGlobalMin(distance(target, targetNode, nodes, node), node);
+        if (nodes.size() > RESTART_SIZE_THRESHOLD) {
+            // keep only the root for expansion, and the path to the best node for the result
+            RRTNodeStore restartedNodes = new RRTNodeStore(1024);
+            minNode = restartedNodes.addPath(nodes, minNode);
+            nodes = restartedNodes;
+            index.clear();
+            indexNode(0);
+            globalMin = 99999;
+            globalMax = originalGlobalMax;
+            generation++;
+        }
+        return node;
+    }
+
+    public boolean isGoalReached() { return goalNode != -1; }
+    public int getGoalNode() { return goalNode; }
+
+    /**
+     * Record the node as the goal, unless another RRT reached the goal first.
+     */
+    public synchronized void setGoalNode(int node) {
+        if (goalNode == -1) goalNode = node;
+    }
+
+    /**
+     * Set the generator the random streams of the RRTs that share the tree are split from.
+     */
+    public synchronized void setExpansionRandom(SplittableRandom expansionSeeds) {
+        this.expansionSeeds = expansionSeeds;
+    }
+
+    public synchronized SplittableRandom nextExpansionRandom() {
+        return expansionSeeds.split();
+    }
+
+    double distance(RRTNodeStore store1, int n1, RRTNodeStore store2, int n2){
+        double dz = store1.positionZ[n1] - store2.positionZ[n2];
+        double dvx = store1.velocityX[n1] - store2.velocityX[n2];
+        double dvy = store1.velocityY[n1] - store2.velocityY[n2];
+        double dvz = store1.velocityZ[n1] - store2.velocityZ[n2];
+        double dax = store1.directionX[n1] - store2.directionX[n2];
+        double day = store1.directionY[n1] - store2.directionY[n2];
+
+        double baseDistance = RRT.Z_WEIGHT*dz*dz + RRT.VELOCITY_Z_WEIGHT*dvz*dvz + dax*dax*RRT.DIRECTION_WEIGHT + day*day*RRT.DIRECTION_WEIGHT;
+        if (isUsingLateralVelocityObjective) {
+            baseDistance += RRT.LATERAL_VELOCITY_WEIGHT*dvx*dvx + RRT.LATERAL_VELOCITY_WEIGHT*dvy*dvy;
+        }
+        return baseDistance;
+    }
+
+    /*
+    Private implementation.  Details.
+     */
+
+    private void indexNode(int node) {
+        setIndexPoint(nodes, node, indexPoint);
+        int id = index.add(indexPoint);
+        if (id == indexedNodes.length)
+            indexedNodes = Arrays.copyOf(indexedNodes, 2 * indexedNodes.length);
+        indexedNodes[id] = node;
+    }
+
+    /**
+     * Scale the state of the node so that squared euclidean distances between the points equal distance().
+     */
+    private void setIndexPoint(RRTNodeStore store, int node, double[] point) {
+        double lateralVelocityScale = isUsingLateralVelocityObjective ? Math.sqrt(RRT.LATERAL_VELOCITY_WEIGHT) : 0.0;
+        point[0] = Math.sqrt(RRT.Z_WEIGHT) * store.positionZ[node];
+        point[1] = Math.sqrt(RRT.VELOCITY_Z_WEIGHT) * store.velocityZ[node];
+        point[2] = Math.sqrt(RRT.DIRECTION_WEIGHT) * store.directionX[node];
+        point[3] = Math.sqrt(RRT.DIRECTION_WEIGHT) * store.directionY[node];
+        point[4] = lateralVelocityScale * store.velocityX[node];
+        point[5] = lateralVelocityScale * store.velocityY[node];
+    }
+
+    private void updateGlobalMin(double min, int rrtNode) {
+        if (min < globalMin){
+            globalMin = min;
+            minNode = rrtNode;
+            System.out.println((1.0 - globalMin/globalMax) * 100 + "%");
+        }
+    }
+}
@@ -1,21 +1,70 @@
 package net.sf.openrocket.simulation.extension.impl.visualize3d;
 
-// A Java program for a Visualize3DClient
-import java.net.*;
-import java.io.*;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 
+/**
+ * Streams the frames of any number of concurrent simulations to the visualizer over one connection.
+ *
+ * A visualizer addressed as "address:port", such as the Blender viewer, reads the unframed stream of ROCKET_FIELDS
+ * floats, so it is sent the rocket frames of one simulation at a time; the others are dropped until that simulation
+ * ended.  A visualizer addressed as "address:port:framed", such as Visualize3DMultiplexer, gets the framed
+ * Visualize3DProtocol stream of every simulation.
+ *
+ * Every simulation gets its own id from startSimulation and numbers its frames.  Simulations only offer frames to a
+ * bounded lock-free queue and never wait on the network.  A daemon sender thread drains the queue in batches into one
+ * reusable direct buffer and writes it to a SocketChannel, describing every field set before its first frame.
+ * Frames are dropped when the queue is full or no visualizer is connected, and a sender that fell far behind skips
+ * to the newest frames rather than replaying stale ones.  A visualizer that is not running is retried every
+ * RECONNECT_MILLIS.  The connection is closed when the last simulation ended.
+ */
 public class Visualize3DClient {
-    // initialize socket and output streams
-    private Socket socket            = null;
-    private DataOutputStream out     = null;
-    private String connectionString = "10.0.0.226:8080"; // 10.22.0.180:8080  // "127.0.0.1:5000"
-    private int port;
-    private String address;
+    static final int QUEUE_FRAMES = 4096;
+    static final int BATCH_FRAMES = 256;
+    static final int COALESCE_FRAMES = QUEUE_FRAMES / 2;  // backlog beyond which old frames are skipped
+    static final int CONNECT_TIMEOUT_MILLIS = 1000;
+    static final long RECONNECT_MILLIS = 1000;
+    static final long IDLE_NANOS = 10000000;
+
+    private final Visualize3DFrameQueue queue = new Visualize3DFrameQueue(QUEUE_FRAMES, Visualize3DProtocol.MAX_FRAME_FLOATS);
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BATCH_FRAMES * Visualize3DProtocol.MAX_FRAME_BYTES);
+    private final List<String[]> fieldSets = new CopyOnWriteArrayList<>();
+    private int fieldSetsSent = 0;  // on the open connection
+    private int nextSimulation = 0;
+    private int activeSimulations = 0;
+    private volatile InetSocketAddress address;
+    private volatile boolean framed = false;
+    private InetSocketAddress connectedAddress = null;
+    private boolean connectedFramed = false;
+    private int rawSimulation = -1;  // simulation sent on an unframed connection, or -1
+    private final ByteBuffer record = ByteBuffer.allocate(Visualize3DProtocol.MAX_FRAME_BYTES);
+    private final Visualize3DProtocol.Reader reader = new Visualize3DProtocol.Reader();
+    private volatile SocketChannel channel = null;
+    private volatile boolean connecting = false;
+    private volatile long closeAfter = -1;  // queue position after which the channel is closed, or -1
+    private long nextConnectTime = 0;
+    private boolean reportedNotRunning = false;
+
+    private Thread sender = null;
+    private volatile boolean senderIdle = false;
+
+    private final AtomicLong rejectedFrames = new AtomicLong();
+    private volatile long sentFrames = 0;
+    private volatile long droppedFrames = 0;
+    private volatile long coalescedFrames = 0;
 
     private static volatile Visualize3DClient instance;
 
     private Visualize3DClient(){
-        setConnectionString(this.connectionString);
+        setConnectionString("127.0.0.1:8080");
+        fieldSets.add(Visualize3DProtocol.ROCKET_FIELDS);
     }
 
     public static Visualize3DClient getInstance() {
@@ -29,68 +78,237 @@ public class Visualize3DClient {
         return instance;
     }
 
-
+    /**
+     * Set the "address:port" of an unframed visualizer, or the "address:port:framed" of a framed one.  An open
+     * connection to another address or in the other format is closed and reopened.
+     */
     public void setConnectionString(String connectionString) {
-        this.connectionString = connectionString;
         String[] parts = connectionString.split(":");
-        this.address = parts[0];
-        this.port = Integer.parseInt(parts[1]);
+        this.framed = (parts.length > 2) && parts[2].equals("framed");
+        this.address = new InetSocketAddress(parts[0], Integer.parseInt(parts[1]));
     }
 
-    public boolean Connect(){
-        // establish a connection
-        try {
-            try { socket = new Socket(this.address, this.port); } catch (Exception e) {
-                System.out.println("Blender not running!");
-                System.out.println(e);
-                return false;
-            }
-
-            // sends output to the socket
-            out = new DataOutputStream(socket.getOutputStream());
-            return true;
-        } catch (Exception e) {
-            System.out.println(e);
-            return false;
+    /**
+     * Ask the sender to connect, without waiting for the connection.
+     *
+     * @return whether a connection is already open
+     */
+    public synchronized boolean Connect(){
+        closeAfter = -1;
+        connecting = true;
+        if (sender == null) {
+            sender = new Thread(this::send, "Visualize3DSender");
+            sender.setDaemon(true);
+            sender.start();
         }
+        wakeSender();
+        return Connected();
     }
 
-    boolean Connected(){ return this.socket != null; }
+    public boolean Connected(){ return this.channel != null; }
 
-    public void write(String data) {
-        try {
-            out.writeBytes(data);
-        } catch (IOException e){
-            e.printStackTrace();
+    /**
+     * The id of the field set with the names, which is described to the visualizer before its first frame.
+     * ROCKET_FIELD_SET is always registered.
+     */
+    public synchronized int registerFieldSet(String... names) {
+        for (int fieldSet = 0; fieldSet < fieldSets.size(); fieldSet++) {
+            if (Arrays.equals(fieldSets.get(fieldSet), names)) return fieldSet;
         }
+        if (names.length > Visualize3DProtocol.MAX_FRAME_FLOATS)
+            throw new IllegalArgumentException("A field set has at most " + Visualize3DProtocol.MAX_FRAME_FLOATS + " fields");
+        fieldSets.add(names.clone());
+        return fieldSets.size() - 1;
+    }
 
+    /**
+     * Connect if no other simulation is streaming, and return the id of a new simulation.
+     */
+    public synchronized int startSimulation() {
+        activeSimulations++;
+        Connect();
+        return nextSimulation++;
     }
 
-    public void write(byte[] b, int off, int len) {
-        try {
-            out.write(b, off, len);
-        } catch (IOException e){
-            e.printStackTrace();
+    /**
+     * Tell the visualizer the simulation ended, and close the connection once no simulation is streaming.
+     */
+    public synchronized void endSimulation(int simulation) {
+        if (!queue.offerEnd(simulation))
+            rejectedFrames.incrementAndGet();
+        if (activeSimulations > 0 && --activeSimulations == 0)
+            close();
+        else
+            wakeSender();
+    }
+
+    /**
+     * Queue frame number sequence of the simulation, the first count values of the field set.  Never blocks.
+     *
+     * @return false if the frame was dropped because the queue is full
+     */
+    public boolean offer(int simulation, int sequence, int fieldSet, float[] values, int count) {
+        if (!queue.offerFrame(simulation, sequence, fieldSet, values, count)) {
+            rejectedFrames.incrementAndGet();
+            return false;
         }
+        wakeSender();
+        return true;
     }
 
+    /**
+     * Close the connection once the records queued so far are sent, unless Connect is called again first.  Never blocks.
+     */
     public void close() {
-        try { out.close(); } catch (Exception e) {}
+        connecting = false;
+        closeAfter = queue.tail();
+        wakeSender();
     }
 
-    private void killAll() {
-        System.out.println("CALLED KILL ALL!");
+    public long getSentFrames() { return sentFrames; }
+    public long getDroppedFrames() { return rejectedFrames.get() + droppedFrames; }
+    public long getCoalescedFrames() { return coalescedFrames; }
+    public int getQueuedFrames() { return queue.size(); }
+
+    /*
+    Private implementation.  Details.
+     */
 
-        try { out.close(); } catch (Exception e) {}
-        //try { socket.shutdownInput(); } catch (Exception e) {}
-        //try { socket.shutdownOutput(); } catch (Exception e) {}
-        try { socket.close(); } catch (Exception e) {}
-        out = null;
-        socket = null;
+    private void wakeSender() {
+        if (senderIdle) LockSupport.unpark(sender);
     }
 
-    protected void finalize() throws Throwable {
-        killAll();
+    private void send() {
+        while (true) {
+            SocketChannel channel = this.channel;
+            if (channel != null && (!address.equals(connectedAddress) || framed != connectedFramed)) {
+                closeChannel();
+                channel = null;
+                nextConnectTime = 0;
+            }
+            if (channel == null && connecting && System.currentTimeMillis() >= nextConnectTime)
+                channel = openChannel();
+
+            int pending = queue.size();
+            if (pending == 0) {
+                long closePosition = closeAfter;
+                if (closePosition >= 0 && queue.head() >= closePosition) {
+                    closeAfter = -1;
+                    closeChannel();
+                    nextConnectTime = 0;
+                }
+                senderIdle = true;
+                if (queue.size() == 0) LockSupport.parkNanos(IDLE_NANOS);
+                senderIdle = false;
+                continue;
+            }
+
+            buffer.clear();
+            boolean raw = (channel != null) && !connectedFramed;
+            ByteBuffer records = (channel == null) ? null : raw ? record : buffer;
+            // a viewer that fell behind jumps to the newest frames instead of replaying stale ones, but gets every END
+            if (pending > COALESCE_FRAMES) {
+                int skipped = 0;
+                while (pending - skipped > BATCH_FRAMES && buffer.remaining() >= Visualize3DProtocol.END_BYTES) {
+                    int type = queue.poll(records, true);
+                    if (type == 0) break;
+                    if (type == Visualize3DProtocol.FRAME) coalescedFrames++;
+                    else if (raw) writeRaw();
+                    skipped++;
+                }
+            }
+            int frames = 0;
+            while (buffer.remaining() >= Visualize3DProtocol.MAX_FRAME_BYTES) {
+                int type = queue.poll(records, false);
+                if (type == 0) break;
+                if (raw ? writeRaw() : type == Visualize3DProtocol.FRAME) frames++;
+                else if (raw && type == Visualize3DProtocol.FRAME) droppedFrames++;
+            }
+            if (channel == null) {
+                droppedFrames += frames;
+                continue;
+            }
+            buffer.flip();
+            try {
+                if (!raw) writeFieldSets(channel);
+                while (buffer.hasRemaining())
+                    channel.write(buffer);
+                sentFrames += frames;
+            } catch (IOException e) {
+                System.out.println("Visualizer connection lost: " + e);
+                droppedFrames += frames;
+                closeChannel();
+                nextConnectTime = System.currentTimeMillis() + RECONNECT_MILLIS;
+            }
+        }
     }
 
+    private SocketChannel openChannel() {
+        InetSocketAddress address = this.address;
+        SocketChannel channel = null;
+        try {
+            channel = SocketChannel.open();
+            channel.socket().setTcpNoDelay(true);
+            channel.socket().connect(address, CONNECT_TIMEOUT_MILLIS);
+        } catch (IOException e) {
+            if (!reportedNotRunning) {
+                System.out.println("Blender not running!");
+                System.out.println(e);
+                reportedNotRunning = true;
+            }
+            try { if (channel != null) channel.close(); } catch (IOException closeException) {}
+            nextConnectTime = System.currentTimeMillis() + RECONNECT_MILLIS;
+            return null;
+        }
+        reportedNotRunning = false;
+        fieldSetsSent = 0;
+        rawSimulation = -1;
+        connectedFramed = framed;
+        connectedAddress = address;
+        this.channel = channel;
+        return channel;
+    }
+
+    /**
+     * Describe the field sets registered since the last call on the connection.
+     */
+    private void writeFieldSets(SocketChannel channel) throws IOException {
+        while (fieldSetsSent < fieldSets.size()) {
+            String[] names = fieldSets.get(fieldSetsSent);
+            ByteBuffer description = ByteBuffer.allocate(Visualize3DProtocol.fieldSetBytes(names));
+            Visualize3DProtocol.putFieldSet(description, fieldSetsSent, names);
+            description.flip();
+            while (description.hasRemaining())
+                channel.write(description);
+            fieldSetsSent++;
+        }
+    }
+
+    /**
+     * Translate the record polled into the scratch record to the unframed stream: the floats of the rocket frames
+     * of the simulation followed, which is the first to send one after the last ended.
+     *
+     * @return whether a frame was written into the buffer
+     */
+    private boolean writeRaw() {
+        record.flip();
+        byte type = reader.next(record);
+        record.clear();
+        if (type == Visualize3DProtocol.END) {
+            if (reader.simulation == rawSimulation) rawSimulation = -1;
+            return false;
+        }
+        if (type != Visualize3DProtocol.FRAME || reader.fieldSet != Visualize3DProtocol.ROCKET_FIELD_SET) return false;
+        if (rawSimulation == -1) rawSimulation = reader.simulation;
+        if (reader.simulation != rawSimulation) return false;
+        for (int i = 0; i < reader.count; i++)
+            buffer.putFloat(reader.values[i]);
+        return true;
+    }
+
+    private void closeChannel() {
+        try { if (channel != null) channel.close(); } catch (IOException e) {}
+        channel = null;
+        connectedAddress = null;
+    }
 }
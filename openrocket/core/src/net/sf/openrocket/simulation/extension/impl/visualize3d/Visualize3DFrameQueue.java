@@ -0,0 +1,126 @@
+package net.sf.openrocket.simulation.extension.impl.visualize3d;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bounded lock-free queue of Visualize3DProtocol records, for any number of producers and a single consumer.
+ *
+ * A slot holds a FRAME of up to maxFloats floats, or an END, in preallocated arrays, so offering and polling allocate
+ * nothing.  Every slot carries a sequence number telling whether it is free for the producer at a position or filled
+ * for the consumer.  A producer that finds the queue full does not wait: the record is refused and the caller decides
+ * what to drop.  Frames leave some slots free, so that the END of a simulation gets through a queue full of frames.
+ */
+class Visualize3DFrameQueue {
+    private static final int HEADER_INTS = 5;  // type, simulation, sequence, field set, count
+    private static final int END_SLOTS = 64;
+
+    private final int maxFloats;
+    private final int mask;
+    private final int[] headers;
+    private final float[] frames;
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail = new AtomicLong();
+    private volatile long head = 0;  // only written by the consumer
+
+    Visualize3DFrameQueue(int capacity, int maxFloats) {
+        int slots = 2 * END_SLOTS;
+        while (slots < capacity) slots <<= 1;
+        this.maxFloats = maxFloats;
+        this.mask = slots - 1;
+        this.headers = new int[slots * HEADER_INTS];
+        this.frames = new float[slots * maxFloats];
+        this.sequences = new AtomicLongArray(slots);
+        for (int slot = 0; slot < slots; slot++)
+            sequences.set(slot, slot);
+    }
+
+    int capacity() { return mask + 1; }
+
+    /** Records offered and not yet polled. */
+    int size() { return (int) Math.max(0, tail.get() - head); }
+
+    /** Position of the next record to be offered; every record offered before it is polled once head() passes it. */
+    long tail() { return tail.get(); }
+    long head() { return head; }
+
+    /**
+     * Queue a frame of the first count floats of the values.
+     *
+     * @return false if the queue is full
+     */
+    boolean offerFrame(int simulation, int sequence, int fieldSet, float[] values, int count) {
+        int slot = claim(mask + 1 - END_SLOTS);
+        if (slot == -1) return false;
+        System.arraycopy(values, 0, frames, slot * maxFloats, count);
+        publish(slot, Visualize3DProtocol.FRAME, simulation, sequence, fieldSet, count);
+        return true;
+    }
+
+    /**
+     * @return false if the queue is full
+     */
+    boolean offerEnd(int simulation) {
+        int slot = claim(mask + 1);
+        if (slot == -1) return false;
+        publish(slot, Visualize3DProtocol.END, simulation, 0, 0, 0);
+        return true;
+    }
+
+    /**
+     * Remove the oldest record and write it into the buffer.  A null buffer discards any record, skipFrames only
+     * frames; an END is always written into a buffer.
+     *
+     * @return the type of the record, or 0 if no record is ready
+     */
+    int poll(ByteBuffer buffer, boolean skipFrames) {
+        long position = head;
+        int slot = (int) position & mask;
+        if (sequences.get(slot) != position + 1) return 0;
+        int header = slot * HEADER_INTS;
+        int type = headers[header];
+        if (buffer != null) {
+            if (type == Visualize3DProtocol.END)
+                Visualize3DProtocol.putEnd(buffer, headers[header + 1]);
+            else if (!skipFrames)
+                Visualize3DProtocol.putFrame(buffer, headers[header + 1], headers[header + 2], headers[header + 3],
+                        frames, slot * maxFloats, headers[header + 4]);
+        }
+        sequences.lazySet(slot, position + mask + 1);
+        head = position + 1;
+        return type;
+    }
+
+    /*
+    Private implementation.  Details.
+     */
+
+    /**
+     * Claim the slot of the next position, if fewer than limit records are queued.
+     */
+    private int claim(int limit) {
+        while (true) {
+            long position = tail.get();
+            if (position - head >= limit) return -1;
+            int slot = (int) position & mask;
+            long difference = sequences.get(slot) - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) return slot;
+            } else if (difference < 0) {
+                return -1;  // the consumer has not freed the slot yet
+            }
+        }
+    }
+
+    private void publish(int slot, int type, int simulation, int sequence, int fieldSet, int count) {
+        int header = slot * HEADER_INTS;
+        headers[header] = type;
+        headers[header + 1] = simulation;
+        headers[header + 2] = sequence;
+        headers[header + 3] = fieldSet;
+        headers[header + 4] = count;
+        // the sequence of the slot still holds the position it was claimed at
+        sequences.lazySet(slot, sequences.get(slot) + 1);
+    }
+}
@@ -3,14 +3,19 @@ package net.sf.openrocket.simulation.extension.impl.visualize3d;
 import net.sf.openrocket.simulation.SimulationStatus;
 import net.sf.openrocket.simulation.exception.SimulationException;
 import net.sf.openrocket.simulation.listeners.AbstractSimulationListener;
+import net.sf.openrocket.util.Coordinate;
+import net.sf.openrocket.util.Quaternion;
 
-import java.nio.ByteBuffer;
+import java.util.concurrent.locks.LockSupport;
 
 public class Visualize3DListener extends AbstractSimulationListener {
 	AbstractSimulationListenerSupportsVisualize3DListener listener = null;
 	Visualize3DExtension visualize3DExtension;
 	Visualize3DClient client = Visualize3DClient.getInstance();
-	long curTime;
+	long curTime;  // System.nanoTime() the last frame was due, or 0
+	private final float[] frame = new float[Visualize3DProtocol.ROCKET_FIELDS.length];
+	private int simulation = -1;  // id on the client stream while the simulation runs
+	private int sequence;
 	private boolean visualizeDuringPostStep = true;
 
 	Visualize3DListener(Visualize3DExtension visualize3DExtension) {
@@ -20,7 +25,9 @@ public class Visualize3DListener extends AbstractSimulationListener {
 	@Override
 	public void startSimulation(SimulationStatus status) {
 		client.setConnectionString(visualize3DExtension.getVisualize3DIP());
-		client.Connect();
+		simulation = client.startSimulation();
+		sequence = 0;
+		curTime = 0;
 	}
 
 	public void setListener(AbstractSimulationListenerSupportsVisualize3DListener listener) {
@@ -29,87 +36,82 @@ public class Visualize3DListener extends AbstractSimulationListener {
 
 	@Override
 	public void postStep(SimulationStatus status) {
-		if (visualizeDuringPostStep) {
-			if (!client.Connected()) {
-				client.Connect();
-			} else {
-				byte[] bytes = serialize_single_timeStep(status);
-				client.write(bytes, 0, bytes.length);
-			}
+		// a listener replaying the flight after it ended streams nothing once the simulation is closed
+		if (visualizeDuringPostStep && simulation != -1) {
+			serialize_single_timeStep(status, frame);
+			client.offer(simulation, sequence++, Visualize3DProtocol.ROCKET_FIELD_SET, frame, frame.length);
 			waitdt(status);
 		}
 	}
 
 	@Override
 	public void endSimulation(SimulationStatus status, SimulationException exception) {
+		// a listener that disabled the visualization may still replay the flight, and then closes the client itself
 		if (visualizeDuringPostStep)
 			closeClient();
 	}
 
 	public void closeClient() {
-		client.close();
+		if (simulation == -1) return;
+		client.endSimulation(simulation);
+		simulation = -1;
 	}
 
 	public void setVisualizeDuringPostStep(boolean visualize) {
 		this.visualizeDuringPostStep = visualize;
 	}
 
+	/**
+	 * Pace the simulation to the time rate by sleeping until the frame is due.  A simulation that falls behind is not
+	 * made to catch up, and a rate that is not positive disables the pacing.
+	 */
 	private void waitdt(SimulationStatus status){
-		int timeStep;
-		double val = 1000 * status.getPreviousTimeStep() / visualize3DExtension.getVisualize3DTimeRate();
-		timeStep = (int) Math.floor(val);
-		long realTimeStep = (System.currentTimeMillis() - curTime);
-
-		// NOTE: intentional busy wait - required for certain uses of the visualizer (e.g. not in parallel with simulator)
-		while (realTimeStep < timeStep)
-			realTimeStep = (System.currentTimeMillis() - curTime);
-
-		curTime = System.currentTimeMillis();
-	}
-
-	private static int arrayAdd(byte[] bytes, double value, int offset) {
-		byte[] floatBytes = getFloatBytes(value);
-		int length = 4;
-		System.arraycopy(floatBytes, 0, bytes, offset, length);
-		return offset + length;
-	}
-
-	private static byte[] getFloatBytes(double value) {
-		byte[] floatByte = new byte[4];
-		ByteBuffer.wrap(floatByte).putFloat((float) value);
-		return floatByte;
+		double rate = visualize3DExtension.getVisualize3DTimeRate();
+		if (!(rate > 0)) return;
+		long timeStep = (long) (1e9 * status.getPreviousTimeStep() / rate);
+		long now = System.nanoTime();
+		long deadline = curTime + timeStep;
+
+		// NOTE: intentional wait - required for certain uses of the visualizer (e.g. not in parallel with simulator)
+		if (curTime == 0 || now >= deadline) {
+			curTime = now;
+			return;
+		}
+		while (now < deadline) {
+			LockSupport.parkNanos(deadline - now);
+			now = System.nanoTime();
+		}
+		curTime = deadline;
 	}
 
-	private byte[] serialize_single_timeStep(SimulationStatus status) {
-		byte[] bytes = new byte[4*12];  // 12 is the number of floats that will be inputted
-		int offset = 0;
-		offset = arrayAdd(bytes, status.getRocketPosition().x, offset);
-		offset = arrayAdd(bytes, status.getRocketPosition().y, offset);
-		offset = arrayAdd(bytes, status.getRocketPosition().z, offset);
-		offset = arrayAdd(bytes, status.getRocketOrientationQuaternion().getW(), offset);
-		offset = arrayAdd(bytes, status.getRocketOrientationQuaternion().getX(), offset);
-		offset = arrayAdd(bytes, status.getRocketOrientationQuaternion().getY(), offset);
-		offset = arrayAdd(bytes, status.getRocketOrientationQuaternion().getZ(), offset);
-		// thrust doesn't always work
-		double actualMotorThrust = 0.0;
-		try {
-			actualMotorThrust = status.getActiveMotors().iterator().next().getThrust(status.getSimulationTime());
-		} catch (Exception e) {}
+	private void serialize_single_timeStep(SimulationStatus status, float[] frame) {
+		Coordinate position = status.getRocketPosition();
+		Quaternion orientation = status.getRocketOrientationQuaternion();
+		frame[0] = (float) position.x;
+		frame[1] = (float) position.y;
+		frame[2] = (float) position.z;
+		frame[3] = (float) orientation.getW();
+		frame[4] = (float) orientation.getX();
+		frame[5] = (float) orientation.getY();
+		frame[6] = (float) orientation.getZ();
 		// thurst and gimbal angles not yet present in the simulationStatus
 		if (listener != null) {
-			offset = arrayAdd(bytes, listener.getMaxMotorPower() * listener.getLastThrust(), offset);
-			offset = arrayAdd(bytes, listener.getLastGimbalX(), offset);
-			offset = arrayAdd(bytes, listener.getLastGimbalY(), offset);
-			offset = arrayAdd(bytes, listener.getLastLateralThrustX(), offset);
-			offset = arrayAdd(bytes, listener.getLastLateralThrustY(), offset);
+			frame[7] = (float) (listener.getMaxMotorPower() * listener.getLastThrust());
+			frame[8] = (float) listener.getLastGimbalX();
+			frame[9] = (float) listener.getLastGimbalY();
+			frame[10] = (float) listener.getLastLateralThrustX();
+			frame[11] = (float) listener.getLastLateralThrustY();
 		} else {
-			offset = arrayAdd(bytes, actualMotorThrust, offset);
-			offset = arrayAdd(bytes, 0.0, offset);
-			offset = arrayAdd(bytes, 0.0, offset);
-			offset = arrayAdd(bytes, 0.0, offset);
-			offset = arrayAdd(bytes, 0.0, offset);
+			// thrust doesn't always work
+			double actualMotorThrust = 0.0;
+			try {
+				actualMotorThrust = status.getActiveMotors().iterator().next().getThrust(status.getSimulationTime());
+			} catch (Exception e) {}
+			frame[7] = (float) actualMotorThrust;
+			frame[8] = 0.0f;
+			frame[9] = 0.0f;
+			frame[10] = 0.0f;
+			frame[11] = 0.0f;
 		}
-		return bytes;
 	}
 }
-
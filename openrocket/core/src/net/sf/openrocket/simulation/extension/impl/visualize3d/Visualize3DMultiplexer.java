@@ -0,0 +1,322 @@
+package net.sf.openrocket.simulation.extension.impl.visualize3d;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Relays the Visualize3DProtocol streams of any number of OpenRocket processes to any number of viewers, so that one
+ * viewer can follow the concurrent episodes of a parallel training sweep live.
+ *
+ * Simulations connect to the simulation port as if it were a framed viewer (set Visualize3DIP to
+ * "address:port:framed"), and viewers connect to the viewer port.  At most the given number of simulations are relayed at a time, sampled from every n-th
+ * simulation that starts; frames of the others are read and discarded.  Relayed simulations get ids unique across
+ * processes, and field sets are renumbered alike.  The sources are never slowed down: a viewer that does not keep up
+ * loses frames, which it can tell from the sequence numbers.
+ * With "raw" a viewer instead gets the unframed ROCKET_FIELDS floats of one simulation at a time, the stream the
+ * Blender viewer reads.
+ *
+ * Usage: Visualize3DMultiplexer [simulation port] [viewer port] [simulations followed] [sample every n-th] [raw]
+ */
+public class Visualize3DMultiplexer {
+    static final long IDLE_SIMULATION_MILLIS = 5000;  // a simulation without frames for this long is dropped
+    static final long REPORT_MILLIS = 5000;
+    static final int SOURCE_BUFFER_BYTES = 64 * 1024;
+    static final int VIEWER_BUFFER_BYTES = 256 * 1024;
+
+    private final int followedLimit;
+    private final int sampleEvery;
+    private final boolean raw;
+    private final Selector selector;
+    private final ServerSocketChannel sourceServer;
+    private final ServerSocketChannel viewerServer;
+
+    private final List<Source> sources = new ArrayList<>();
+    private final List<Viewer> viewers = new ArrayList<>();
+    private final List<String[]> fieldSets = new ArrayList<>();
+    private final ByteBuffer discard = ByteBuffer.allocate(1024);
+    private long simulationsStarted = 0;
+    private int followed = 0;
+    private int nextSimulation = 0;
+
+    private long framesIn = 0;
+    private long framesRelayed = 0;
+    private long framesDropped = 0;
+
+    private static class Source {
+        final SocketChannel channel;
+        final ByteBuffer in = ByteBuffer.allocate(SOURCE_BUFFER_BYTES);
+        final Visualize3DProtocol.Reader reader = new Visualize3DProtocol.Reader();
+        final HashMap<Integer, Integer> fieldSets = new HashMap<>();  // id on the source to relayed id
+        final HashMap<Integer, Simulation> simulations = new HashMap<>();
+        Source(SocketChannel channel) { this.channel = channel; }
+    }
+
+    private static class Simulation {
+        final int id;  // relayed id, or -1 if the simulation is not followed
+        long lastFrameTime;
+        Simulation(int id, long time) { this.id = id; this.lastFrameTime = time; }
+    }
+
+    private static class Viewer {
+        final SocketChannel channel;
+        final ByteBuffer out = ByteBuffer.allocate(VIEWER_BUFFER_BYTES);
+        final BitSet describedFieldSets = new BitSet();
+        Viewer(SocketChannel channel) { this.channel = channel; }
+    }
+
+    public Visualize3DMultiplexer(int sourcePort, int viewerPort, int followedLimit, int sampleEvery, boolean raw)
+            throws IOException {
+        this.followedLimit = raw ? 1 : Math.max(1, followedLimit);
+        this.sampleEvery = Math.max(1, sampleEvery);
+        this.raw = raw;
+        this.selector = Selector.open();
+        this.sourceServer = listen(sourcePort);
+        this.viewerServer = listen(viewerPort);
+    }
+
+    public int getSourcePort() { return sourceServer.socket().getLocalPort(); }
+    public int getViewerPort() { return viewerServer.socket().getLocalPort(); }
+
+    public static void main(String[] args) throws IOException {
+        int sourcePort = (args.length > 0) ? Integer.parseInt(args[0]) : 8080;
+        int viewerPort = (args.length > 1) ? Integer.parseInt(args[1]) : 8081;
+        int followedLimit = (args.length > 2) ? Integer.parseInt(args[2]) : Integer.MAX_VALUE;
+        int sampleEvery = (args.length > 3) ? Integer.parseInt(args[3]) : 1;
+        boolean raw = (args.length > 4) && args[4].equals("raw");
+
+        Visualize3DMultiplexer multiplexer = new Visualize3DMultiplexer(sourcePort, viewerPort, followedLimit, sampleEvery, raw);
+        System.out.println("Visualize3DMultiplexer: simulations on port " + multiplexer.getSourcePort() +
+                ", " + (raw ? "raw " : "") + "viewers on port " + multiplexer.getViewerPort());
+        multiplexer.run();
+    }
+
+    /**
+     * Relay until the thread is interrupted.
+     */
+    public void run() throws IOException {
+        long lastReport = System.currentTimeMillis();
+        long lastFramesIn = 0, lastFramesRelayed = 0;
+        while (!Thread.currentThread().isInterrupted()) {
+            selector.select(1000);
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+                if (!key.isValid()) continue;
+                if (key.attachment() == sourceServer) {
+                    SocketChannel channel = accept(sourceServer);
+                    if (channel != null) {
+                        Source source = new Source(channel);
+                        sources.add(source);
+                        channel.register(selector, SelectionKey.OP_READ, source);
+                    }
+                } else if (key.attachment() == viewerServer) {
+                    SocketChannel channel = accept(viewerServer);
+                    if (channel != null) {
+                        Viewer viewer = new Viewer(channel);
+                        viewers.add(viewer);
+                        channel.register(selector, SelectionKey.OP_READ, viewer);
+                    }
+                } else if (key.attachment() instanceof Source) {
+                    readSource((Source) key.attachment());
+                } else if (key.attachment() instanceof Viewer) {
+                    Viewer viewer = (Viewer) key.attachment();
+                    if (key.isReadable()) readViewer(viewer);
+                }
+            }
+            for (int i = viewers.size() - 1; i >= 0; i--)
+                flush(viewers.get(i));
+
+            long now = System.currentTimeMillis();
+            if (now - lastReport >= REPORT_MILLIS) {
+                expireIdleSimulations(now);
+                double seconds = (now - lastReport) / 1000.0;
+                System.out.println(String.format("Visualize3DMultiplexer: sources: %d  viewers: %d  followed: %d of %d started  " +
+                                "frames in: %.0f/s  relayed: %.0f/s  dropped: %d",
+                        sources.size(), viewers.size(), followed, simulationsStarted,
+                        (framesIn - lastFramesIn) / seconds, (framesRelayed - lastFramesRelayed) / seconds, framesDropped));
+                lastReport = now;
+                lastFramesIn = framesIn;
+                lastFramesRelayed = framesRelayed;
+            }
+        }
+    }
+
+    /*
+    Private implementation.  Details.
+     */
+
+    private ServerSocketChannel listen(int port) throws IOException {
+        ServerSocketChannel server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress(port));
+        server.configureBlocking(false);
+        server.register(selector, SelectionKey.OP_ACCEPT, server);
+        return server;
+    }
+
+    private SocketChannel accept(ServerSocketChannel server) throws IOException {
+        SocketChannel channel = server.accept();
+        if (channel == null) return null;
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true);
+        return channel;
+    }
+
+    private void readSource(Source source) {
+        try {
+            int read = source.channel.read(source.in);
+            source.in.flip();
+            byte type;
+            while ((type = source.reader.next(source.in)) != 0)
+                relay(source, type);
+            source.in.compact();
+            if (read == -1) {
+                closeSource(source);
+            } else if (!source.in.hasRemaining()) {
+                throw new IllegalStateException("Record larger than " + SOURCE_BUFFER_BYTES + " bytes");
+            }
+        } catch (IOException | IllegalStateException e) {
+            System.out.println("Visualize3DMultiplexer: source closed: " + e);
+            closeSource(source);
+        }
+    }
+
+    private void relay(Source source, byte type) {
+        Visualize3DProtocol.Reader reader = source.reader;
+        long now = System.currentTimeMillis();
+        if (type == Visualize3DProtocol.FIELD_SET) {
+            source.fieldSets.put(reader.fieldSet, relayedFieldSet(reader.names));
+        } else if (type == Visualize3DProtocol.FRAME) {
+            framesIn++;
+            Simulation simulation = source.simulations.get(reader.simulation);
+            if (simulation == null) {
+                simulation = new Simulation(sample() ? nextSimulation++ : -1, now);
+                source.simulations.put(reader.simulation, simulation);
+            }
+            simulation.lastFrameTime = now;
+            Integer fieldSet = source.fieldSets.get(reader.fieldSet);
+            if (simulation.id == -1 || fieldSet == null) return;
+            for (Viewer viewer : viewers)
+                writeFrame(viewer, simulation.id, fieldSet, reader);
+        } else if (type == Visualize3DProtocol.END) {
+            Simulation simulation = source.simulations.remove(reader.simulation);
+            if (simulation != null) end(simulation);
+        }
+    }
+
+    /**
+     * Decide whether a simulation that just started is followed.
+     */
+    private boolean sample() {
+        simulationsStarted++;
+        if ((simulationsStarted - 1) % sampleEvery != 0 || followed >= followedLimit) return false;
+        followed++;
+        return true;
+    }
+
+    private void end(Simulation simulation) {
+        if (simulation.id == -1) return;
+        followed--;
+        if (raw) return;
+        for (Viewer viewer : viewers) {
+            if (viewer.out.remaining() < Visualize3DProtocol.END_BYTES) continue;
+            Visualize3DProtocol.putEnd(viewer.out, simulation.id);
+        }
+    }
+
+    private int relayedFieldSet(String[] names) {
+        for (int fieldSet = 0; fieldSet < fieldSets.size(); fieldSet++) {
+            if (Arrays.equals(fieldSets.get(fieldSet), names)) return fieldSet;
+        }
+        fieldSets.add(names);
+        return fieldSets.size() - 1;
+    }
+
+    private void writeFrame(Viewer viewer, int simulation, int fieldSet, Visualize3DProtocol.Reader reader) {
+        ByteBuffer out = viewer.out;
+        if (raw) {
+            // the unframed stream only has room for the floats of ROCKET_FIELDS
+            if (!Arrays.equals(fieldSets.get(fieldSet), Visualize3DProtocol.ROCKET_FIELDS)) return;
+            if (out.remaining() < 4 * reader.count) {
+                framesDropped++;
+                return;
+            }
+            for (int i = 0; i < reader.count; i++)
+                out.putFloat(reader.values[i]);
+            framesRelayed++;
+            return;
+        }
+        boolean described = viewer.describedFieldSets.get(fieldSet);
+        int bytes = Visualize3DProtocol.FRAME_HEADER_BYTES + 4 * reader.count +
+                (described ? 0 : Visualize3DProtocol.fieldSetBytes(fieldSets.get(fieldSet)));
+        if (out.remaining() < bytes) {
+            framesDropped++;
+            return;
+        }
+        if (!described) {
+            Visualize3DProtocol.putFieldSet(out, fieldSet, fieldSets.get(fieldSet));
+            viewer.describedFieldSets.set(fieldSet);
+        }
+        Visualize3DProtocol.putFrame(out, simulation, reader.sequence, fieldSet, reader.values, 0, reader.count);
+        framesRelayed++;
+    }
+
+    private void flush(Viewer viewer) {
+        SelectionKey key = viewer.channel.keyFor(selector);
+        try {
+            viewer.out.flip();
+            viewer.channel.write(viewer.out);
+            viewer.out.compact();
+            // wait for the viewer to accept the rest, and otherwise only for it to disconnect
+            if (key != null && key.isValid())
+                key.interestOps(viewer.out.position() > 0 ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+        } catch (IOException e) {
+            closeViewer(viewer);
+        }
+    }
+
+    private void readViewer(Viewer viewer) {
+        try {
+            discard.clear();
+            if (viewer.channel.read(discard) == -1) closeViewer(viewer);
+        } catch (IOException e) {
+            closeViewer(viewer);
+        }
+    }
+
+    private void expireIdleSimulations(long now) {
+        for (Source source : sources) {
+            Iterator<Simulation> simulations = source.simulations.values().iterator();
+            while (simulations.hasNext()) {
+                Simulation simulation = simulations.next();
+                if (now - simulation.lastFrameTime < IDLE_SIMULATION_MILLIS) continue;
+                simulations.remove();
+                end(simulation);
+            }
+        }
+    }
+
+    private void closeSource(Source source) {
+        for (Simulation simulation : source.simulations.values())
+            end(simulation);
+        source.simulations.clear();
+        sources.remove(source);
+        try { source.channel.close(); } catch (IOException e) {}
+    }
+
+    private void closeViewer(Viewer viewer) {
+        viewers.remove(viewer);
+        try { viewer.channel.close(); } catch (IOException e) {}
+    }
+}
@@ -0,0 +1,128 @@
+package net.sf.openrocket.simulation.extension.impl.visualize3d;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Framed wire protocol of the Visualize3D stream, so that the frames of many simulations can share one connection.
+ *
+ * A stream is a sequence of big-endian records, each starting with its type byte:
+ * <pre>
+ *   FIELD_SET  short fieldSet, short count, count x (short length, UTF-8 name)   names of the floats of a frame
+ *   FRAME      int simulation, int sequence, short fieldSet, short count, count x float   one time step
+ *   END        int simulation   the simulation ended
+ * </pre>
+ * A field set is described on a connection before its first frame.  Simulation ids are unique per connection, and
+ * the sequence numbers of a simulation count its frames from 0, so a viewer can tell where frames were dropped.
+ * ROCKET_FIELDS are the 12 floats the unframed stream carried; Visualize3DMultiplexer still feeds that stream to a
+ * viewer following a single simulation.
+ */
+public class Visualize3DProtocol {
+    public static final byte FIELD_SET = 1;
+    public static final byte FRAME = 2;
+    public static final byte END = 3;
+
+    public static final int ROCKET_FIELD_SET = 0;
+    public static final String[] ROCKET_FIELDS = new String[]{
+            "x", "y", "z", "qw", "qx", "qy", "qz", "thrust", "gimbalX", "gimbalY", "lateralThrustX", "lateralThrustY"
+    };
+
+    public static final int MAX_FRAME_FLOATS = 32;
+    public static final int FRAME_HEADER_BYTES = 1 + 4 + 4 + 2 + 2;
+    public static final int MAX_FRAME_BYTES = FRAME_HEADER_BYTES + 4 * MAX_FRAME_FLOATS;
+    public static final int END_BYTES = 1 + 4;
+
+    public static int fieldSetBytes(String[] names) {
+        int bytes = 1 + 2 + 2;
+        for (String name : names)
+            bytes += 2 + name.getBytes(StandardCharsets.UTF_8).length;
+        return bytes;
+    }
+
+    public static void putFieldSet(ByteBuffer buffer, int fieldSet, String[] names) {
+        buffer.put(FIELD_SET);
+        buffer.putShort((short) fieldSet);
+        buffer.putShort((short) names.length);
+        for (String name : names) {
+            byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+            buffer.putShort((short) bytes.length);
+            buffer.put(bytes);
+        }
+    }
+
+    public static void putFrame(ByteBuffer buffer, int simulation, int sequence, int fieldSet,
+                                float[] values, int offset, int count) {
+        buffer.put(FRAME);
+        buffer.putInt(simulation);
+        buffer.putInt(sequence);
+        buffer.putShort((short) fieldSet);
+        buffer.putShort((short) count);
+        for (int i = offset, end = offset + count; i < end; i++)
+            buffer.putFloat(values[i]);
+    }
+
+    public static void putEnd(ByteBuffer buffer, int simulation) {
+        buffer.put(END);
+        buffer.putInt(simulation);
+    }
+
+    /**
+     * Parses a stream whose records may arrive split across reads.  The fields of the last record read are public.
+     */
+    public static class Reader {
+        public int simulation;
+        public int sequence;
+        public int fieldSet;
+        public int count;
+        public final float[] values = new float[MAX_FRAME_FLOATS];
+        public String[] names;
+
+        /**
+         * Read the next record if the buffer, in read mode, holds all of it.
+         *
+         * @return the type of the record, or 0 if the record is incomplete and the buffer was left as it was
+         * @throws IllegalStateException if the stream is not in this protocol
+         */
+        public byte next(ByteBuffer buffer) {
+            int start = buffer.position();
+            try {
+                if (!buffer.hasRemaining()) return 0;
+                byte type = buffer.get();
+                switch (type) {
+                    case FIELD_SET:
+                        fieldSet = buffer.getShort();
+                        String[] fieldNames = new String[buffer.getShort()];
+                        for (int i = 0; i < fieldNames.length; i++) {
+                            byte[] bytes = new byte[buffer.getShort()];
+                            buffer.get(bytes);
+                            fieldNames[i] = new String(bytes, StandardCharsets.UTF_8);
+                        }
+                        names = fieldNames;
+                        return type;
+                    case FRAME:
+                        if (buffer.remaining() < FRAME_HEADER_BYTES - 1) throw new BufferUnderflowException();
+                        int frameCount = buffer.getShort(buffer.position() + 10);
+                        if (frameCount < 0 || frameCount > MAX_FRAME_FLOATS)
+                            throw new IllegalStateException("Frame of " + frameCount + " floats");
+                        if (buffer.remaining() < FRAME_HEADER_BYTES - 1 + 4 * frameCount) throw new BufferUnderflowException();
+                        simulation = buffer.getInt();
+                        sequence = buffer.getInt();
+                        fieldSet = buffer.getShort();
+                        count = buffer.getShort();
+                        for (int i = 0; i < count; i++)
+                            values[i] = buffer.getFloat();
+                        return type;
+                    case END:
+                        simulation = buffer.getInt();
+                        return type;
+                    default:
+                        throw new IllegalStateException("Unknown Visualize3D record type " + type);
+                }
+            } catch (BufferUnderflowException e) {
+                buffer.position(start);
+                return 0;
+            }
+        }
+    }
+}
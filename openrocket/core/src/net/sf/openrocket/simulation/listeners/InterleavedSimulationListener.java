@@ -0,0 +1,20 @@
+package net.sf.openrocket.simulation.listeners;
+
+import net.sf.openrocket.simulation.SimulationStatus;
+
+/**
+ * A listener of simulations that may be interleaved with other simulations on the same thread, as the
+ * BatchSimulationEngine does with the simulations of a batch.  Listeners that keep state of their simulation
+ * per thread restore it when the simulation is resumed.
+ */
+public interface InterleavedSimulationListener extends SimulationListener {
+	
+	/**
+	 * Called before the other listener methods of a simulation whenever the thread switches to it from another
+	 * simulation.  Not called before startSimulation.
+	 * 
+	 * @param status	the simulation status
+	 */
+	public void resumeSimulation(SimulationStatus status);
+	
+}
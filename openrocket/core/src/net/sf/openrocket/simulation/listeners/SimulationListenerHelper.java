@@ -67,6 +67,18 @@ public class SimulationListenerHelper {
 	
 
 
+	/**
+	 * Fire resumeSimulation event to the InterleavedSimulationListeners.
+	 */
+	public static void fireResumeSimulation(SimulationStatus status) {
+		for (SimulationListener l : status.getSimulationConditions().getSimulationListenerList()) {
+			if (l instanceof InterleavedSimulationListener) {
+				((InterleavedSimulationListener) l).resumeSimulation(status);
+			}
+		}
+	}
+	
+	
 	/**
 	 * Fire preStep event.
 	 * 
@@ -0,0 +1,134 @@
+package net.sf.openrocket.aerodynamics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import net.sf.openrocket.rocketcomponent.FinSet;
+import net.sf.openrocket.rocketcomponent.FlightConfiguration;
+import net.sf.openrocket.rocketcomponent.Rocket;
+import net.sf.openrocket.rocketcomponent.RocketComponent;
+import net.sf.openrocket.util.BaseTestCase.BaseTestCase;
+import net.sf.openrocket.util.Coordinate;
+import net.sf.openrocket.util.TestRockets;
+
+import org.junit.Test;
+
+public class TabulatedBarrowmanCalculatorTest extends BaseTestCase {
+
+	@Test
+	public void testForcesMatchBarrowman() {
+		Rocket rocket = TestRockets.makeEstesAlphaIII();
+		assertForcesMatch(rocket.getSelectedConfiguration(), new TabulatedBarrowmanCalculator(), 1.5);
+	}
+
+	@Test
+	public void testForcesAboveMaxMach() {
+		FlightConfiguration configuration = TestRockets.makeEstesAlphaIII().getSelectedConfiguration();
+		TabulatedBarrowmanCalculator calculator = new TabulatedBarrowmanCalculator(0.5);
+		BarrowmanCalculator exact = new BarrowmanCalculator();
+
+		FlightConditions conditions = makeConditions(configuration, new Random(1), 1.5);
+		conditions.setMach(0.8);
+		AerodynamicForces tabulated = calculator.getAerodynamicForces(configuration, conditions, null);
+		AerodynamicForces expected = exact.getAerodynamicForces(configuration, conditions, null);
+		assertEquals(expected.getCN(), tabulated.getCN(), 0);
+		assertEquals(expected.getCm(), tabulated.getCm(), 0);
+		assertEquals(expected.getCaxial(), tabulated.getCaxial(), 0);
+		assertEquals(expected.getCroll(), tabulated.getCroll(), 0);
+	}
+
+	@Test
+	public void testTablesFollowRocketChanges() {
+		Rocket rocket = TestRockets.makeEstesAlphaIII();
+		FlightConfiguration configuration = rocket.getSelectedConfiguration();
+		TabulatedBarrowmanCalculator calculator = new TabulatedBarrowmanCalculator(0.3);
+		assertForcesMatch(configuration, calculator, 0.3);
+
+		// two fins, whose forces depend on the direction of the airflow
+		for (RocketComponent c : rocket) {
+			if (c instanceof FinSet)
+				((FinSet) c).setFinCount(2);
+		}
+		assertForcesMatch(configuration, calculator, 0.3);
+	}
+
+	@Test
+	public void testTablesFollowActiveStages() {
+		FlightConfiguration configuration = TestRockets.makeBeta().getSelectedConfiguration();
+		TabulatedBarrowmanCalculator calculator = new TabulatedBarrowmanCalculator(0.3);
+		configuration.setAllStages();
+		assertForcesMatch(configuration, calculator, 0.3);
+
+		// the sustainer after the booster separates
+		configuration.clearStage(1);
+		assertForcesMatch(configuration, calculator, 0.3);
+	}
+
+	@Test
+	public void testNewInstance() {
+		FlightConfiguration configuration = TestRockets.makeEstesAlphaIII().getSelectedConfiguration();
+		TabulatedBarrowmanCalculator calculator = new TabulatedBarrowmanCalculator(1.0);
+		TabulatedBarrowmanCalculator other = calculator.newInstance();
+		assertNotSame(calculator, other);
+		assertEquals(1.0, other.getMaxMach(), 0);
+
+		FlightConditions conditions = makeConditions(configuration, new Random(2), 1.0);
+		AerodynamicForces first = calculator.getAerodynamicForces(configuration, conditions, null);
+		AerodynamicForces second = other.getAerodynamicForces(configuration, conditions, null);
+		assertEquals(first.getCN(), second.getCN(), 0);
+		assertEquals(first.getCaxial(), second.getCaxial(), 0);
+	}
+
+
+	/**
+	 * Compare the interpolated forces with the exact ones at random flight conditions, relative to the
+	 * magnitude of each coefficient over all the conditions.
+	 */
+	private static void assertForcesMatch(FlightConfiguration configuration, TabulatedBarrowmanCalculator calculator,
+			double maxMach) {
+		BarrowmanCalculator exact = new BarrowmanCalculator();
+		Random random = new Random(0);
+		int count = 500;
+		double[][] expected = new double[count][];
+		double[][] tabulated = new double[count][];
+		double[] scale = new double[6];
+		for (int i = 0; i < count; i++) {
+			FlightConditions conditions = makeConditions(configuration, random, maxMach);
+			WarningSet warnings = new WarningSet();
+			WarningSet exactWarnings = new WarningSet();
+			expected[i] = values(exact.getAerodynamicForces(configuration, conditions, exactWarnings));
+			tabulated[i] = values(calculator.getAerodynamicForces(configuration, conditions, warnings));
+			assertEquals(exactWarnings, warnings);
+			for (int v = 0; v < scale.length; v++) {
+				scale[v] = Math.max(scale[v], Math.abs(expected[i][v]));
+			}
+		}
+		for (int i = 0; i < count; i++) {
+			for (int v = 0; v < scale.length; v++) {
+				assertEquals("value " + v + " of sample " + i, expected[i][v], tabulated[i][v], 0.01 * scale[v]);
+			}
+		}
+		assertTrue(scale[0] > 0);
+	}
+
+	private static double[] values(AerodynamicForces forces) {
+		return new double[] { forces.getCN(), forces.getCm(), forces.getCside(), forces.getCyaw(),
+				forces.getCaxial(), forces.getCroll() };
+	}
+
+	private static FlightConditions makeConditions(FlightConfiguration configuration, Random random, double maxMach) {
+		FlightConditions conditions = new FlightConditions(configuration);
+		conditions.setMach(0.05 + random.nextDouble() * (maxMach - 0.05));
+		// mostly small angles of attack, as in flight
+		conditions.setAOA(random.nextBoolean() ? random.nextDouble() * 0.3 : random.nextDouble() * Math.PI);
+		conditions.setTheta((random.nextDouble() * 2 - 1) * Math.PI);
+		conditions.setRollRate((random.nextDouble() * 2 - 1) * 50);
+		conditions.setPitchRate((random.nextDouble() * 2 - 1) * 2);
+		conditions.setYawRate((random.nextDouble() * 2 - 1) * 2);
+		conditions.setPitchCenter(new Coordinate(0.1 + random.nextDouble() * 0.1, 0, 0));
+		return conditions;
+	}
+}
@@ -1,9 +1,15 @@
 package net.sf.openrocket.masscalc;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import org.junit.Test;
 
+import net.sf.openrocket.motor.Motor;
+import net.sf.openrocket.rocketcomponent.AxialStage;
+import net.sf.openrocket.rocketcomponent.FlightConfiguration;
 import net.sf.openrocket.rocketcomponent.Rocket;
 import net.sf.openrocket.util.TestRockets;
 import net.sf.openrocket.util.BaseTestCase.BaseTestCase;
@@ -20,6 +26,64 @@ public class MassCacheTest extends BaseTestCase {
 		// .... soooo we have this waste of space. -DMW
 		assertTrue( true );
 	}
+	
+	@Test
+	public void testStructure() {
+		Rocket rocket = TestRockets.makeBeta();
+		FlightConfiguration config = rocket.getSelectedConfiguration();
+		config.setAllStages();
+		MassCache cache = new MassCache();
+		
+		RigidBody structure = cache.getStructure( config );
+		assertEquals( MassCalculator.calculateStructure( config ).cm, structure.cm );
+		assertSame( structure, cache.getStructure( config ));
+		
+		// stage separation does not change the configuration's modID
+		config.clearStage( 1 );
+		RigidBody sustainer = cache.getStructure( config );
+		assertEquals( MassCalculator.calculateStructure( config ).cm, sustainer.cm );
+		assertTrue( sustainer.getMass() < structure.getMass() );
+		
+		AxialStage stage = (AxialStage) rocket.getChild(0);
+		stage.setMassOverridden( true );
+		stage.setOverrideMass( 1.0 );
+		RigidBody overridden = cache.getStructure( config );
+		assertNotSame( sustainer, overridden );
+		assertEquals( MassCalculator.calculateStructure( config ).cm, overridden.cm );
+	}
+	
+	@Test
+	public void testMotorsOfAlphaIII() {
+		Rocket rocket = TestRockets.makeEstesAlphaIII();
+		assertMotorsMatch( rocket.getFlightConfigurationByIndex( 1, false ));
+	}
+	
+	@Test
+	public void testMotorsOfFalcon9Heavy() {
+		// a core motor and clustered booster motors
+		Rocket rocket = TestRockets.makeFalcon9Heavy();
+		FlightConfiguration config = rocket.getSelectedConfiguration();
+		config.setAllStages();
+		assertMotorsMatch( config );
+	}
+	
+	private static void assertMotorsMatch( FlightConfiguration config ) {
+		MassCache cache = new MassCache();
+		for( double time = 0; time < 5; time += 0.003 ){
+			RigidBody expected = MassCalculator.calculate( MassCalculation.Type.MOTOR, config, time );
+			RigidBody actual = cache.getMotor( config, time );
+			final double tolerance = 1e-12 * (1 + expected.getMass());
+			assertEquals( expected.cm.weight, actual.cm.weight, tolerance );
+			assertEquals( expected.cm.x, actual.cm.x, tolerance );
+			assertEquals( expected.cm.y, actual.cm.y, tolerance );
+			assertEquals( expected.cm.z, actual.cm.z, tolerance );
+			assertEquals( expected.getRotationalInertia(), actual.getRotationalInertia(), tolerance );
+			assertEquals( expected.getLongitudinalInertia(), actual.getLongitudinalInertia(), tolerance );
+		}
+		RigidBody burnout = MassCalculator.calculate( MassCalculation.Type.MOTOR, config, Motor.PSEUDO_TIME_BURNOUT );
+		assertEquals( burnout.cm.weight, cache.getMotor( config, Motor.PSEUDO_TIME_BURNOUT ).cm.weight, 1e-12 );
+		assertTrue( burnout.getMass() > 0 );
+	}
 //		
 //		FlightConfiguration config = rocket.getEmptyConfiguration();
 //		MassCalculator mc = new MassCalculator();
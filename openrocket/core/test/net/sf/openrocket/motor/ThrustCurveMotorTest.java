@@ -104,6 +104,18 @@ public class ThrustCurveMotorTest {
 		assertEquals( 0.015285, actMass0p206,  0.001 );
 	}
 	
+	@Test
+	public void testCenterOfMass(){
+		final ThrustCurveMotor mtr = motorEstesA8_3;
+		
+		for( double motorTime = 0; motorTime < 1; motorTime += 0.0025 ){
+			final Coordinate cm = mtr.getCenterOfMass( motorTime );
+			assertEquals( mtr.getTotalMass( motorTime ), cm.weight, 0 );
+			assertEquals( mtr.getCMx( motorTime ), cm.x, 0 );
+		}
+		assertEquals( mtr.getBurnoutMass(), mtr.getCenterOfMass( Motor.PSEUDO_TIME_BURNOUT ).weight, 0 );
+	}
+	
 	private class TestPair extends Pair<Double,Double>{
 		private TestPair(){ super( 0., 0.);}
 		
@@ -0,0 +1,225 @@
+package net.sf.openrocket.simulation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import net.sf.openrocket.aerodynamics.AerodynamicCalculator;
+import net.sf.openrocket.aerodynamics.AerodynamicForces;
+import net.sf.openrocket.aerodynamics.BarrowmanCalculator;
+import net.sf.openrocket.aerodynamics.FlightConditions;
+import net.sf.openrocket.aerodynamics.WarningSet;
+import net.sf.openrocket.document.Simulation;
+import net.sf.openrocket.rocketcomponent.FlightConfiguration;
+import net.sf.openrocket.rocketcomponent.Rocket;
+import net.sf.openrocket.simulation.exception.SimulationException;
+import net.sf.openrocket.simulation.listeners.AbstractSimulationListener;
+import net.sf.openrocket.util.BaseTestCase.BaseTestCase;
+import net.sf.openrocket.util.TestRockets;
+
+import org.junit.Test;
+
+public class BatchSimulationEngineTest extends BaseTestCase {
+
+	@Test
+	public void testBatchFlightsAreIndependent() throws SimulationException {
+		Simulation simulation = makeSimulation();
+
+		List<SimulationConditions> batch = new ArrayList<SimulationConditions>();
+		for (int i = 0; i < 3; i++) {
+			batch.add(makeConditions(simulation, i));
+		}
+		FlightData[] together = new BatchSimulationEngine().simulate(batch);
+		assertEquals(3, together.length);
+
+		for (int i = 0; i < 3; i++) {
+			FlightData alone = new BatchSimulationEngine().simulate(
+					Collections.singletonList(makeConditions(simulation, i)))[0];
+			assertBitwiseEquals(alone.getBranch(0).get(FlightDataType.TYPE_ALTITUDE),
+					together[i].getBranch(0).get(FlightDataType.TYPE_ALTITUDE));
+			assertBitwiseEquals(alone.getBranch(0).get(FlightDataType.TYPE_POSITION_X),
+					together[i].getBranch(0).get(FlightDataType.TYPE_POSITION_X));
+		}
+	}
+
+	@Test
+	public void testFlightOfBasicEngine() throws SimulationException {
+		Simulation simulation = makeSimulation();
+
+		FlightDataBranch basic = new BasicEventSimulationEngine().simulate(makeConditions(simulation, 0)).getBranch(0);
+		FlightDataBranch batch = new BatchSimulationEngine().simulate(
+				Collections.singletonList(makeConditions(simulation, 0)))[0].getBranch(0);
+
+		// the same flight until the parachute deploys
+		double deployment = Double.NaN;
+		for (FlightEvent event : basic.getEvents()) {
+			if (event.getType() == FlightEvent.Type.RECOVERY_DEVICE_DEPLOYMENT)
+				deployment = event.getTime();
+		}
+		assertTrue(deployment > 4);
+		int points = 0;
+		while (basic.get(FlightDataType.TYPE_TIME).get(points) < deployment) {
+			points++;
+		}
+		assertTrue(batch.getLength() > points);
+		for (FlightDataType type : new FlightDataType[] { FlightDataType.TYPE_TIME, FlightDataType.TYPE_ALTITUDE,
+				FlightDataType.TYPE_POSITION_X, FlightDataType.TYPE_VELOCITY_Z, FlightDataType.TYPE_AOA }) {
+			assertBitwiseEquals(basic.get(type).subList(0, points), batch.get(type).subList(0, points));
+		}
+
+		boolean groundHit = false;
+		for (FlightEvent event : batch.getEvents()) {
+			assertTrue(event.getType() != FlightEvent.Type.RECOVERY_DEVICE_DEPLOYMENT);
+			groundHit |= (event.getType() == FlightEvent.Type.GROUND_HIT);
+		}
+		assertTrue(groundHit);
+	}
+
+	@Test
+	public void testAbortedFlightIsMaskedOut() throws SimulationException {
+		Simulation simulation = makeSimulation();
+
+		List<SimulationConditions> batch = new ArrayList<SimulationConditions>();
+		for (int i = 0; i < 3; i++) {
+			batch.add(makeConditions(simulation, 0));
+		}
+		batch.get(1).getSimulationListenerList().add(new AbstractSimulationListener() {
+			@Override
+			public void postStep(SimulationStatus status) throws SimulationException {
+				if (status.getSimulationTime() > 1.0)
+					throw new SimulationException("aborted");
+			}
+		});
+		FlightData[] data = new BatchSimulationEngine().simulate(batch);
+
+		assertTrue(hasEvent(data[1], FlightEvent.Type.EXCEPTION));
+		assertFalse(hasEvent(data[1], FlightEvent.Type.GROUND_HIT));
+		assertTrue(data[1].getBranch(0).getLast(FlightDataType.TYPE_TIME) < 1.1);
+		for (int i : new int[] { 0, 2 }) {
+			assertFalse(hasEvent(data[i], FlightEvent.Type.EXCEPTION));
+			assertTrue(hasEvent(data[i], FlightEvent.Type.GROUND_HIT));
+		}
+		assertBitwiseEquals(data[0].getBranch(0).get(FlightDataType.TYPE_ALTITUDE),
+				data[2].getBranch(0).get(FlightDataType.TYPE_ALTITUDE));
+	}
+
+	@Test
+	public void testFailingFlightIsMaskedOut() throws SimulationException {
+		Simulation simulation = makeSimulation();
+
+		final int[] ends = new int[3];
+		List<SimulationConditions> batch = new ArrayList<SimulationConditions>();
+		for (int i = 0; i < 3; i++) {
+			final int flight = i;
+			SimulationConditions conditions = makeConditions(simulation, 0);
+			conditions.getSimulationListenerList().add(new AbstractSimulationListener() {
+				@Override
+				public void postStep(SimulationStatus status) throws SimulationException {
+					if (flight == 1 && status.getSimulationTime() > 1.0)
+						throw new IllegalStateException("failed");
+				}
+
+				@Override
+				public void endSimulation(SimulationStatus status, SimulationException exception) {
+					ends[flight]++;
+				}
+			});
+			batch.add(conditions);
+		}
+		FlightData[] data = new BatchSimulationEngine().simulate(batch);
+
+		// like an aborted flight, and the listeners of every flight see its end
+		assertTrue(hasEvent(data[1], FlightEvent.Type.EXCEPTION));
+		assertTrue(data[1].getBranch(0).getLast(FlightDataType.TYPE_TIME) < 1.1);
+		for (int i : new int[] { 0, 2 }) {
+			assertFalse(hasEvent(data[i], FlightEvent.Type.EXCEPTION));
+			assertTrue(hasEvent(data[i], FlightEvent.Type.GROUND_HIT));
+		}
+		assertEquals(1, ends[0]);
+		assertEquals(2, ends[1]);
+		assertEquals(1, ends[2]);
+	}
+
+	@Test
+	public void testFlightsKeepTheirCalculators() throws SimulationException {
+		Simulation simulation = makeSimulation();
+
+		final int[] calls = new int[3];
+		List<SimulationConditions> batch = new ArrayList<SimulationConditions>();
+		List<AerodynamicCalculator> calculators = new ArrayList<AerodynamicCalculator>();
+		for (int i = 0; i < 3; i++) {
+			final int flight = i;
+			SimulationConditions conditions = makeConditions(simulation, 0);
+			conditions.setAerodynamicCalculator(new BarrowmanCalculator() {
+				@Override
+				public AerodynamicForces getAerodynamicForces(FlightConfiguration configuration,
+						FlightConditions conditions, WarningSet warnings) {
+					calls[flight]++;
+					return super.getAerodynamicForces(configuration, conditions, warnings);
+				}
+			});
+			batch.add(conditions);
+			calculators.add(conditions.getAerodynamicCalculator());
+		}
+		new BatchSimulationEngine().simulate(batch);
+
+		// every flight asks the calculator of its own conditions, which are left as they are
+		for (int i = 0; i < 3; i++) {
+			assertSame(calculators.get(i), batch.get(i).getAerodynamicCalculator());
+			assertTrue(calls[i] > 0);
+		}
+		assertEquals(calls[0], calls[1]);
+		assertEquals(calls[0], calls[2]);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testDifferentRockets() throws SimulationException {
+		List<SimulationConditions> batch = new ArrayList<SimulationConditions>();
+		batch.add(makeConditions(makeSimulation(), 0));
+		batch.add(makeConditions(makeSimulation(), 0));
+		new BatchSimulationEngine().simulate(batch);
+	}
+
+	private static Simulation makeSimulation() {
+		Rocket rocket = TestRockets.makeEstesAlphaIII();
+		Simulation simulation = new Simulation(rocket);
+		// the B4-3 configuration
+		simulation.setFlightConfigurationId(rocket.getFlightConfigurationByIndex(1, false).getId());
+		
+		// the preferences of the tests are all zero
+		SimulationOptions options = simulation.getOptions();
+		options.setISAAtmosphere(true);
+		options.setLaunchRodLength(1);
+		options.setWindSpeedAverage(2);
+		options.setWindTurbulenceIntensity(0.1);
+		options.setTimeStep(RK4SimulationStepper.RECOMMENDED_TIME_STEP);
+		return simulation;
+	}
+
+	private static SimulationConditions makeConditions(Simulation simulation, int seed) {
+		simulation.getOptions().setRandomSeed(seed);
+		SimulationConditions conditions = simulation.getOptions().toSimulationConditions();
+		conditions.setSimulation(simulation);
+		return conditions;
+	}
+
+	private static boolean hasEvent(FlightData data, FlightEvent.Type type) {
+		for (FlightEvent event : data.getBranch(0).getEvents()) {
+			if (event.getType() == type)
+				return true;
+		}
+		return false;
+	}
+
+	private static void assertBitwiseEquals(List<Double> expected, List<Double> actual) {
+		assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			assertEquals(Double.doubleToLongBits(expected.get(i)), Double.doubleToLongBits(actual.get(i)));
+		}
+	}
+}
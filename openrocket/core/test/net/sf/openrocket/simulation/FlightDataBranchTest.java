@@ -0,0 +1,100 @@
+package net.sf.openrocket.simulation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.List;
+
+import net.sf.openrocket.util.BaseTestCase.BaseTestCase;
+
+import org.junit.Test;
+
+public class FlightDataBranchTest extends BaseTestCase {
+
+	@Test
+	public void testPointsAndValues() {
+		FlightDataBranch branch = new FlightDataBranch("test", FlightDataType.TYPE_TIME, FlightDataType.TYPE_ALTITUDE);
+		assertEquals(0, branch.getLength());
+		assertTrue(Double.isNaN(branch.getLast(FlightDataType.TYPE_TIME)));
+
+		for (int i = 0; i < 1000; i++) {
+			branch.addPoint();
+			branch.setValue(FlightDataType.TYPE_TIME, i * 0.01);
+			if (i % 2 == 0) {
+				branch.setValue(FlightDataType.TYPE_ALTITUDE, 500 - (i - 400) * (i - 400) / 100.0);
+			}
+		}
+
+		assertEquals(1000, branch.getLength());
+		assertEquals(999 * 0.01, branch.getLast(FlightDataType.TYPE_TIME), 0);
+		assertEquals(0.0, branch.getMinimum(FlightDataType.TYPE_TIME), 0);
+		assertEquals(500.0, branch.getMaximum(FlightDataType.TYPE_ALTITUDE), 0);
+		assertEquals(500 - 598 * 598 / 100.0, branch.getMinimum(FlightDataType.TYPE_ALTITUDE), 0);
+
+		List<Double> altitude = branch.get(FlightDataType.TYPE_ALTITUDE);
+		assertEquals(1000, altitude.size());
+		assertEquals(500 - 400 * 400 / 100.0, altitude.get(0), 0);
+		assertTrue(Double.isNaN(altitude.get(1)));
+		assertTrue(Double.isNaN(branch.getLast(FlightDataType.TYPE_ALTITUDE)));
+
+		assertNull(branch.get(FlightDataType.TYPE_VELOCITY_Z));
+		assertTrue(Double.isNaN(branch.getMinimum(FlightDataType.TYPE_VELOCITY_Z)));
+	}
+
+	@Test
+	public void testTypeAddedLater() {
+		FlightDataBranch branch = new FlightDataBranch("test", FlightDataType.TYPE_TIME);
+		for (int i = 0; i < 100; i++) {
+			branch.addPoint();
+			branch.setValue(FlightDataType.TYPE_TIME, i);
+		}
+		branch.setValue(FlightDataType.TYPE_MACH_NUMBER, 0.5);
+		branch.addPoint();
+		branch.setValue(FlightDataType.TYPE_MACH_NUMBER, 0.25);
+
+		List<Double> mach = branch.get(FlightDataType.TYPE_MACH_NUMBER);
+		assertEquals(101, mach.size());
+		assertTrue(Double.isNaN(mach.get(98)));
+		assertEquals(0.5, mach.get(99), 0);
+		assertEquals(0.25, mach.get(100), 0);
+		assertEquals(0.25, branch.getMinimum(FlightDataType.TYPE_MACH_NUMBER), 0);
+		assertTrue(Double.isNaN(branch.getLast(FlightDataType.TYPE_TIME)));
+
+		assertEquals(2, branch.getTypes().length);
+	}
+
+	@Test
+	public void testReadOnlyView() {
+		FlightDataBranch branch = new FlightDataBranch("test", FlightDataType.TYPE_TIME);
+		branch.addPoint();
+		branch.setValue(FlightDataType.TYPE_TIME, 1.0);
+
+		List<Double> time = branch.get(FlightDataType.TYPE_TIME);
+		try {
+			time.set(0, 2.0);
+			fail();
+		} catch (UnsupportedOperationException e) {
+			// Success
+		}
+
+		// the view keeps its points when the branch grows
+		for (int i = 0; i < 200; i++) {
+			branch.addPoint();
+			branch.setValue(FlightDataType.TYPE_TIME, 2.0);
+		}
+		assertEquals(1, time.size());
+		assertEquals(1.0, time.get(0), 0);
+	}
+
+	@Test
+	public void testDuplicateType() {
+		try {
+			new FlightDataBranch("test", FlightDataType.TYPE_TIME, FlightDataType.TYPE_TIME);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// Success
+		}
+	}
+}
@@ -0,0 +1,73 @@
+package net.sf.openrocket.simulation;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import net.sf.openrocket.util.Coordinate;
+import net.sf.openrocket.util.Quaternion;
+
+import org.junit.Test;
+
+public class RK4SimulationStepperTest {
+
+	private final Random random = new Random(0x5EED);
+
+	@Test
+	public void testScaledAddition() {
+		RK4SimulationStepper.MutableVector vector = new RK4SimulationStepper.MutableVector();
+		for (int i = 0; i < 1000; i++) {
+			Coordinate base = randomCoordinate();
+			Coordinate k = randomCoordinate();
+			double h = random.nextDouble() * 0.1;
+
+			assertBitwiseEquals(base.add(k.multiply(h)), vector.setScaled(k, h).addTo(base));
+		}
+	}
+
+	@Test
+	public void testRK4Sum() {
+		RK4SimulationStepper.MutableVector vector = new RK4SimulationStepper.MutableVector();
+		for (int i = 0; i < 1000; i++) {
+			Coordinate base = randomCoordinate();
+			Coordinate k1 = randomCoordinate();
+			Coordinate k2 = randomCoordinate();
+			Coordinate k3 = randomCoordinate();
+			Coordinate k4 = randomCoordinate();
+			double h = random.nextDouble() * 0.1;
+
+			Coordinate delta = k2.add(k3).multiply(2).add(k1).add(k4).multiply(h / 6);
+			assertBitwiseEquals(base.add(delta), vector.setRK4Sum(k1, k2, k3, k4, h).addTo(base));
+		}
+	}
+
+	@Test
+	public void testRotation() {
+		RK4SimulationStepper.MutableVector vector = new RK4SimulationStepper.MutableVector();
+		for (int i = 0; i < 1000; i++) {
+			Quaternion orientation = Quaternion.rotation(randomCoordinate());
+			Coordinate rotationVelocity = randomCoordinate();
+			// also below the limit of a rotation
+			double h = (i % 10 == 0) ? 1e-9 : random.nextDouble() * 0.1;
+
+			Quaternion expected = orientation.multiplyLeft(Quaternion.rotation(rotationVelocity.multiply(h)));
+			Quaternion actual = vector.setScaled(rotationVelocity, h).rotate(orientation);
+			assertEquals(Double.doubleToLongBits(expected.getW()), Double.doubleToLongBits(actual.getW()));
+			assertEquals(Double.doubleToLongBits(expected.getX()), Double.doubleToLongBits(actual.getX()));
+			assertEquals(Double.doubleToLongBits(expected.getY()), Double.doubleToLongBits(actual.getY()));
+			assertEquals(Double.doubleToLongBits(expected.getZ()), Double.doubleToLongBits(actual.getZ()));
+		}
+	}
+
+	private Coordinate randomCoordinate() {
+		return new Coordinate(random.nextGaussian() * 10, random.nextGaussian() * 10, random.nextGaussian() * 10,
+				random.nextDouble());
+	}
+
+	private static void assertBitwiseEquals(Coordinate expected, Coordinate actual) {
+		assertEquals(Double.doubleToLongBits(expected.x), Double.doubleToLongBits(actual.x));
+		assertEquals(Double.doubleToLongBits(expected.y), Double.doubleToLongBits(actual.y));
+		assertEquals(Double.doubleToLongBits(expected.z), Double.doubleToLongBits(actual.z));
+		assertEquals(Double.doubleToLongBits(expected.weight), Double.doubleToLongBits(actual.weight));
+	}
+}
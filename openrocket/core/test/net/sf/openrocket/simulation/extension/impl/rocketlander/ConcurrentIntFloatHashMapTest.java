@@ -0,0 +1,149 @@
+package net.sf.openrocket.simulation.extension.impl.rocketlander;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+public class ConcurrentIntFloatHashMapTest {
+	
+	@Test
+	public void testGrowth() {
+		ConcurrentIntFloatHashMap map = new ConcurrentIntFloatHashMap();
+		// far more than the initial capacity of every segment, so each of them is rehashed several times
+		int count = 100000;
+		for (int i = 0; i < count; i++) {
+			map.put(i, i * 0.25f);
+		}
+		assertEquals(count, map.size());
+		for (int i = 0; i < count; i++) {
+			assertTrue(map.containsKey(i));
+			assertEquals(i * 0.25f, map.get(i), 0);
+		}
+		assertFalse(map.containsKey(count));
+		assertEquals(0.0f, map.get(count), 0);
+		
+		// overwriting does not add entries
+		for (int i = 0; i < count; i += 2) {
+			map.put(i, -1);
+		}
+		assertEquals(count, map.size());
+		assertEquals(-1, map.get(0), 0);
+		assertEquals(0.25f, map.get(1), 0);
+	}
+	
+	@Test
+	public void testUpdates() {
+		ConcurrentIntFloatHashMap map = new ConcurrentIntFloatHashMap();
+		assertEquals(5.0f, map.updateTowards(7, 10, 0.5f), 0);
+		assertEquals(7.5f, map.updateTowards(7, 10, 0.5f), 0);
+		assertEquals(1.5f, map.add(8, 1.5f), 0);
+		assertEquals(9.0f, map.add(7, 1.5f), 0);
+		assertEquals(2, map.size());
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testNegativeKey() {
+		new ConcurrentIntFloatHashMap().put(-1, 1);
+	}
+	
+	@Test
+	public void testConcurrentUpdates() throws InterruptedException {
+		final ConcurrentIntFloatHashMap map = new ConcurrentIntFloatHashMap();
+		final int threads = 8;
+		final int keys = 20000;
+		final CountDownLatch start = new CountDownLatch(1);
+		final List<Throwable> failures = new ArrayList<Throwable>();
+		List<Thread> workers = new ArrayList<Thread>();
+		for (int t = 0; t < threads; t++) {
+			final int thread = t;
+			Thread worker = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						start.await();
+						for (int key = 0; key < keys; key++) {
+							// shared keys are counted by every thread, while the segments grow
+							map.add(key, 1.0f);
+							// own keys are written by one thread only
+							map.put(keys * (thread + 1) + key, thread);
+							// all threads pull the same keys towards the same target
+							map.updateTowards(keys * (threads + 1) + (key % 100), 1.0f, 0.5f);
+						}
+					} catch (Throwable e) {
+						synchronized (failures) {
+							failures.add(e);
+						}
+					}
+				}
+			});
+			workers.add(worker);
+			worker.start();
+		}
+		start.countDown();
+		for (Thread worker : workers) {
+			worker.join();
+		}
+		assertTrue(failures.toString(), failures.isEmpty());
+		
+		assertEquals(keys * (threads + 1) + 100, map.size());
+		for (int key = 0; key < keys; key++) {
+			assertEquals(threads, map.get(key), 0);
+			for (int t = 0; t < threads; t++) {
+				assertEquals(t, map.get(keys * (t + 1) + key), 0);
+			}
+		}
+		for (int key = 0; key < 100; key++) {
+			assertEquals(1.0f, map.get(keys * (threads + 1) + key), 1e-6);
+		}
+	}
+	
+	@Test
+	public void testCopy() {
+		ConcurrentIntFloatHashMap map = new ConcurrentIntFloatHashMap();
+		for (int i = 0; i < 1000; i++) {
+			map.put(i * 3, i);
+		}
+		ConcurrentIntFloatHashMap copy = map.copy();
+		assertEquals(map.size(), copy.size());
+		for (int i = 0; i < 1000; i++) {
+			assertEquals(i, copy.get(i * 3), 0);
+		}
+		
+		// the copy is independent of the original
+		copy.put(0, 42);
+		copy.put(1, 42);
+		map.add(3, 10);
+		assertEquals(0, map.get(0), 0);
+		assertFalse(map.containsKey(1));
+		assertEquals(1, copy.get(3), 0);
+		assertEquals(1001, copy.size());
+	}
+	
+	@Test
+	public void testSerialization() throws Exception {
+		ConcurrentIntFloatHashMap map = new ConcurrentIntFloatHashMap();
+		for (int i = 0; i < 1000; i++) {
+			map.put(i * 7, -i);
+		}
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(map);
+		out.close();
+		ConcurrentIntFloatHashMap read = (ConcurrentIntFloatHashMap) new ObjectInputStream(
+				new ByteArrayInputStream(bytes.toByteArray())).readObject();
+		assertEquals(1000, read.size());
+		for (int i = 0; i < 1000; i++) {
+			assertEquals(-i, read.get(i * 7), 0);
+		}
+	}
+}
@@ -0,0 +1,190 @@
+package net.sf.openrocket.simulation.extension.impl.rocketlander;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class RLReplayBufferTest {
+	
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	@Test
+	public void testLearnInOrder() {
+		MDPDefinition definition = definition();
+		RLReplayBuffer buffer = new RLReplayBuffer(definition, 1000);
+		RLReplayBuffer.Batch batch = new RLReplayBuffer.Batch(256);
+		
+		// with alpha 1 each record replaces the value, so the last one added wins
+		for (int i = 1; i <= 100; i++) {
+			buffer.add(5, i, -1, 0, 1);
+		}
+		buffer.add(6, 2, 5, 0.5f, 1);
+		assertEquals(0, buffer.size());
+		assertEquals(101, buffer.learnNew(256, batch));
+		assertEquals(0, buffer.learnNew(256, batch));
+		assertEquals(101, buffer.size());
+		assertEquals(100, definition.valueFunction.get(5), 0);
+		assertEquals(2 + 0.5f * 100, definition.valueFunction.get(6), 0);
+		
+		assertEquals(50, buffer.replay(new SplittableRandom(1), 50, batch));
+	}
+	
+	@Test
+	public void testFullQueueDrops() {
+		MDPDefinition definition = definition();
+		RLReplayBuffer buffer = new RLReplayBuffer(definition, 64);
+		RLReplayBuffer.Batch batch = new RLReplayBuffer.Batch(256);
+		for (int i = 0; i < 100; i++) {
+			buffer.add(i, i, -1, 0, 1);
+		}
+		assertEquals(36, buffer.getDropped());
+		assertEquals(64, buffer.learnNew(256, batch));
+		assertEquals(63, definition.valueFunction.get(63), 0);
+		assertEquals(0, definition.valueFunction.get(64), 0);
+		
+		// the drained queue takes records again
+		buffer.add(70, 1, -1, 0, 1);
+		assertEquals(1, buffer.learnNew(256, batch));
+		assertEquals(64, buffer.size());
+	}
+	
+	@Test
+	public void testAddDoesNotWaitForLearner() throws InterruptedException {
+		final RLReplayBuffer buffer = new RLReplayBuffer(definition(), 1000);
+		final CountDownLatch added = new CountDownLatch(1);
+		// the learner and the checkpoints hold the monitor of the buffer
+		synchronized (buffer) {
+			new Thread(new Runnable() {
+				@Override
+				public void run() {
+					buffer.add(1, 1, -1, 0, 1);
+					added.countDown();
+				}
+			}).start();
+			assertTrue(added.await(10, TimeUnit.SECONDS));
+		}
+	}
+	
+	@Test
+	public void testConcurrentProducers() throws InterruptedException {
+		final MDPDefinition definition = definition();
+		final RLReplayBuffer buffer = new RLReplayBuffer(definition, 1 << 20);
+		final int producers = 4;
+		final int records = 20000;
+		final CountDownLatch start = new CountDownLatch(1);
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int p = 0; p < producers; p++) {
+			final int producer = p;
+			Thread thread = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						start.await();
+					} catch (InterruptedException e) {
+						return;
+					}
+					// each producer counts up its own entry
+					for (int i = 1; i <= records; i++) {
+						buffer.add(producer, i, -1, 0, 1);
+					}
+				}
+			});
+			threads.add(thread);
+			thread.start();
+		}
+		
+		RLReplayBuffer.Batch batch = new RLReplayBuffer.Batch(256);
+		long learned = 0;
+		start.countDown();
+		boolean producing = true;
+		while (producing) {
+			producing = false;
+			for (Thread thread : threads) {
+				producing |= thread.isAlive();
+			}
+			learned += buffer.learnNew(256, batch);
+		}
+		int count;
+		while ((count = buffer.learnNew(256, batch)) != 0) {
+			learned += count;
+		}
+		
+		assertEquals((long) producers * records, learned + buffer.getDropped());
+		if (buffer.getDropped() == 0) {
+			// the records of a producer are learned in the order it added them
+			for (int p = 0; p < producers; p++) {
+				assertEquals(records, definition.valueFunction.get(p), 0);
+			}
+		}
+	}
+	
+	@Test
+	public void testWriteRead() throws Exception {
+		MDPDefinition definition = definition();
+		RLReplayBuffer buffer = new RLReplayBuffer(definition, 100);
+		RLReplayBuffer.Batch batch = new RLReplayBuffer.Batch(256);
+		for (int i = 0; i < 50; i++) {
+			buffer.add(i, i, i + 1, 0.5f, 0.1f);
+		}
+		buffer.learnNew(256, batch);
+		File file = folder.newFile("replay" + RLReplayBuffer.EXTENSION);
+		buffer.write(file);
+		
+		RLReplayBuffer read = new RLReplayBuffer(definition, 100);
+		assertEquals(50, read.read(file));
+		assertEquals(50, read.size());
+		// stored records are only replayed, not learned in order again
+		assertEquals(0, read.learnNew(256, batch));
+		assertEquals(20, read.replay(new SplittableRandom(1), 20, batch));
+	}
+	
+	@Test
+	public void testSplitCellDropsRecords() {
+		MDPDefinition definition = RLStatePartitionTest.adaptiveDefinition(4);
+		RLValueFunction valueFunction = definition.valueFunction;
+		int stride = definition.temporaryIndexProductForAction;
+		RLReplayBuffer buffer = new RLReplayBuffer(definition, 100);
+		RLReplayBuffer.Batch batch = new RLReplayBuffer.Batch(256);
+	
+		int generation = valueFunction.getGeneration();
+		buffer.add(2 * stride, 5, -1, 0, 1, generation);
+		buffer.add(0, 6, 3 * stride, 0.5f, 1, generation);
+		buffer.add(1 * stride, 7, -1, 0, 1, generation);
+		RLStatePartitionTest.split(definition, 2);
+		RLStatePartitionTest.split(definition, 3);
+		float value = valueFunction.get(2 * stride);
+	
+		// records of the split cells - as index or next index - are neither learned nor replayed
+		assertEquals(3, buffer.learnNew(256, batch));
+		assertEquals(2, buffer.getStale());
+		assertEquals(value, valueFunction.get(2 * stride), 0);
+		assertEquals(0, valueFunction.get(0), 0);
+		assertEquals(7, valueFunction.get(1 * stride), 0);
+		buffer.replay(new SplittableRandom(1), 50, batch);
+		for (int i = 0; i < batch.size; i++)
+			assertEquals(1 * stride, batch.indeces[i]);
+	
+		// records computed with the current generation are learned
+		buffer.add(2 * stride, 5, -1, 0, 1, valueFunction.getGeneration());
+		buffer.learnNew(256, batch);
+		assertEquals(2, buffer.getStale());
+		assertEquals(5, valueFunction.get(2 * stride), 0);
+	}
+	
+	private static MDPDefinition definition() {
+		MDPDefinition definition = MDPDefinition.getDefaultLanderDefinition();
+		definition.setValueFunction(new RLValueFunction(new float[definition.indexProduct]));
+		return definition;
+	}
+}
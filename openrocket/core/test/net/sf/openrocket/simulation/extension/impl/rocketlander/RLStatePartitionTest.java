@@ -0,0 +1,177 @@
+package net.sf.openrocket.simulation.extension.impl.rocketlander;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+
+import net.sf.openrocket.simulation.extension.impl.rocketlander.StateActionTuple.State;
+
+import org.junit.Test;
+
+public class RLStatePartitionTest {
+	
+	private static final int SPLIT_VISITS = 100;
+	
+	@Test
+	public void testInitialCells() {
+		MDPDefinition definition = adaptiveDefinition(8);
+		RLStatePartition partition = definition.valueFunction.getPartition();
+		assertEquals(8, partition.getNumCells());
+	
+		// every cell holds some state of the grid
+		boolean[] used = new boolean[8];
+		for (State state : grid(definition)) {
+			int cell = partition.cell(state);
+			assertTrue(cell >= 0 && cell < 8);
+			used[cell] = true;
+		}
+		for (boolean cellUsed : used)
+			assertTrue(cellUsed);
+	}
+	
+	@Test
+	public void testSplitMovesUpperHalfToNewCell() {
+		MDPDefinition definition = adaptiveDefinition(4);
+		RLValueFunction valueFunction = definition.valueFunction;
+		RLStatePartition partition = valueFunction.getPartition();
+		int stride = definition.temporaryIndexProductForAction;
+		List<State> states = grid(definition);
+		int[] before = cells(partition, states);
+		for (int action = 0; action < stride; action++)
+			valueFunction.put(2 * stride + action, action + 1);
+	
+		int generation = partition.getGeneration();
+		split(definition, 2);
+		assertEquals(5, partition.getNumCells());
+		assertEquals(generation + 1, partition.getGeneration());
+	
+		// only states of the split cell move, and only to the new cell
+		int[] after = cells(partition, states);
+		int moved = 0;
+		for (int i = 0; i < states.size(); i++) {
+			if (after[i] != before[i]) {
+				assertEquals(2, before[i]);
+				assertEquals(4, after[i]);
+				moved++;
+			}
+		}
+		assertTrue(moved > 0);
+	
+		// the new cell starts from the values of the old one
+		for (int action = 0; action < stride; action++)
+			assertEquals(action + 1, valueFunction.get(4 * stride + action), 0);
+	
+		// indeces of the split cells computed before the split are stale, the others are not
+		assertTrue(partition.isStale(2 * stride, generation));
+		assertTrue(partition.isStale(4 * stride + 1, generation));
+		assertFalse(partition.isStale(1 * stride, generation));
+		assertFalse(partition.isStale(2 * stride, generation + 1));
+	}
+	
+	@Test
+	public void testByteBufferRoundTrip() {
+		MDPDefinition definition = adaptiveDefinition(4);
+		RLValueFunction valueFunction = definition.valueFunction;
+		RLStatePartition partition = valueFunction.getPartition();
+		for (int cell = 0; cell < 6; cell++)
+			split(definition, cell % 3);
+		assertEquals(10, partition.getNumCells());
+	
+		ByteBuffer buffer = partition.toByteBuffer();
+		byte[] bytes = new byte[buffer.remaining()];
+		buffer.duplicate().get(bytes);
+		RLStatePartition read = RLStatePartition.fromByteBuffer(definition.adaptiveDiscretization, buffer);
+		assertNotNull(read);
+		assertEquals(partition.getNumCells(), read.getNumCells());
+	
+		ByteBuffer readBuffer = read.toByteBuffer();
+		byte[] readBytes = new byte[readBuffer.remaining()];
+		readBuffer.get(readBytes);
+		assertArrayEquals(bytes, readBytes);
+		List<State> states = grid(definition);
+		assertArrayEquals(cells(partition, states), cells(read, states));
+	}
+	
+	@Test
+	public void testByteBufferOfOtherDiscretization() {
+		MDPDefinition definition = adaptiveDefinition(8);
+		ByteBuffer buffer = definition.valueFunction.getPartition().toByteBuffer();
+	
+		RLAdaptiveDiscretization smaller = new RLAdaptiveDiscretization();
+		smaller.maxCells = 4;
+		smaller.initialCells = 1;
+		MDPDefinition other = MDPDefinition.getDefaultLanderDefinition();
+		smaller.initialize(other);
+		assertNull(RLStatePartition.fromByteBuffer(smaller, buffer));
+	
+		ByteBuffer inconsistent = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+		inconsistent.putInt(5).putInt(2).flip();
+		assertNull(RLStatePartition.fromByteBuffer(definition.adaptiveDiscretization, inconsistent));
+	}
+	
+	@Test(expected = IllegalStateException.class)
+	public void testIndexWithoutValueFunction() {
+		MDPDefinition definition = adaptiveDefinition(8);
+		definition.setValueFunction(null);
+		MDPDefinition.computeIndexState(grid(definition).get(0));
+	}
+	
+	static MDPDefinition adaptiveDefinition(int initialCells) {
+		MDPDefinition definition = MDPDefinition.getDefaultLanderDefinition();
+		definition.adaptiveDiscretization = new RLAdaptiveDiscretization();
+		definition.adaptiveDiscretization.maxCells = 64;
+		definition.adaptiveDiscretization.initialCells = initialCells;
+		definition.adaptiveDiscretization.splitVisits = SPLIT_VISITS;
+		definition.postConstructor();
+		definition.setValueFunction(new RLValueFunction(definition.adaptiveDiscretization));
+		return definition;
+	}
+	
+	/**
+	 * Split the cell by accounting the updates that make it due.
+	 */
+	static void split(MDPDefinition definition, int cell) {
+		RLValueFunction valueFunction = definition.valueFunction;
+		RLStatePartition partition = valueFunction.getPartition();
+		int cells = partition.getNumCells();
+		for (int i = 0; i < SPLIT_VISITS; i++)
+			partition.recordUpdate(valueFunction, cell * definition.temporaryIndexProductForAction, 1.0f);
+		assertEquals(cells + 1, partition.getNumCells());
+	}
+	
+	private static List<State> grid(MDPDefinition definition) {
+		int[] slots = definition.stateDefinitionSlots;
+		List<State> states = new ArrayList<State>();
+		int[] values = new int[slots.length];
+		for (int i = 0; i < slots.length; i++)
+			values[i] = definition.stateDefinitionIntegers[i][0];
+		while (true) {
+			State state = new State(null, definition);
+			for (int i = 0; i < slots.length; i++)
+				state.set(slots[i], values[i]);
+			states.add(state);
+			int field = 0;
+			while ((field < slots.length) && (++values[field] > definition.stateDefinitionIntegers[field][1])) {
+				values[field] = definition.stateDefinitionIntegers[field][0];
+				field++;
+			}
+			if (field == slots.length)
+				return states;
+		}
+	}
+	
+	private static int[] cells(RLStatePartition partition, List<State> states) {
+		int[] cells = new int[states.size()];
+		for (int i = 0; i < cells.length; i++)
+			cells[i] = partition.cell(states.get(i));
+		return cells;
+	}
+}
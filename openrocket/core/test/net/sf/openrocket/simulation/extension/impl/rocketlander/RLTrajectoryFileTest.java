@@ -0,0 +1,139 @@
+package net.sf.openrocket.simulation.extension.impl.rocketlander;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashMap;
+
+import net.sf.openrocket.simulation.SimulationStatus;
+import net.sf.openrocket.simulation.extension.impl.rocketlander.StateActionTuple.Action;
+import net.sf.openrocket.simulation.extension.impl.rocketlander.StateActionTuple.CoupledActions;
+import net.sf.openrocket.simulation.extension.impl.rocketlander.StateActionTuple.CoupledStates;
+import net.sf.openrocket.simulation.extension.impl.rocketlander.StateActionTuple.State;
+import net.sf.openrocket.util.Coordinate;
+import net.sf.openrocket.util.Quaternion;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class RLTrajectoryFileTest {
+	
+	private static final int STEPS = 600;  // more than the initial capacity of the recorder
+	
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	@Test
+	public void testRoundTrip() throws IOException {
+		MDPDefinition definition = MDPDefinition.getDefaultLanderDefinition();
+		File file = writeEpisodes(definition, 3);
+		
+		RLTrajectoryFile.Reader reader = new RLTrajectoryFile.Reader(file);
+		assertArrayEquals(RLTrajectoryFile.COLUMNS, reader.getColumns());
+		for (int e = 0; e < 3; e++) {
+			RLTrajectoryFile.Episode episode = reader.next();
+			assertEquals(e % 2 == 0, episode.success);
+			assertEquals(STEPS - e, episode.steps);
+			assertEquals(1, episode.trackNames.length);
+			assertEquals(0, episode.getTrack("defaultLander"));
+			assertEquals(-1, episode.getTrack("stabilizer"));
+			
+			double[] time = episode.getColumn("time");
+			double[] positionZ = episode.getColumn("positionZ");
+			double[] thrust = episode.getColumn("thrust");
+			for (int step = 0; step < episode.steps; step++) {
+				SimulationStatus status = status(step);
+				State state = new State(status, definition);
+				Action action = action(definition, step);
+				assertEquals(status.getSimulationTime(), time[step], 0);
+				assertEquals(status.getRocketPosition().z, positionZ[step], 0);
+				assertEquals(action.getDouble("thrust"), thrust[step], 0);
+				assertEquals(MDPDefinition.computeIndexState(state), episode.stateIndeces[0][step]);
+				assertEquals(MDPDefinition.computeIndexAction(action), episode.actionIndeces[0][step]);
+				assertEquals(definition._reward.evaluateFloat(state), episode.rewards[0][step], 0);
+			}
+		}
+		assertNull(reader.next());
+	}
+	
+	@Test
+	public void testTruncatedTail() throws IOException {
+		MDPDefinition definition = MDPDefinition.getDefaultLanderDefinition();
+		byte[] bytes = Files.readAllBytes(writeEpisodes(definition, 3).toPath());
+		
+		// a session that was not closed cleanly ends in a partially written episode
+		RLTrajectoryFile.Reader reader = new RLTrajectoryFile.Reader(copy(bytes, bytes.length - 10));
+		assertEquals(STEPS, reader.next().steps);
+		assertEquals(STEPS - 1, reader.next().steps);
+		assertNull(reader.next());
+		assertNull(reader.next());
+		
+		// or even in a partial episode header
+		reader = new RLTrajectoryFile.Reader(copy(bytes, firstEpisodeEnd(bytes) + 6));
+		assertEquals(STEPS, reader.next().steps);
+		assertNull(reader.next());
+	}
+	
+	@Test(expected = IOException.class)
+	public void testNotATrajectoryFile() throws IOException {
+		File file = folder.newFile("other" + RLTrajectoryFile.EXTENSION);
+		Files.write(file.toPath(), new byte[64]);
+		new RLTrajectoryFile.Reader(file);
+	}
+	
+	private File writeEpisodes(MDPDefinition definition, int episodes) throws IOException {
+		RLTrajectoryFile file = RLTrajectoryFile.createSession(folder.getRoot());
+		RLTrajectoryRecorder recorder = new RLTrajectoryRecorder(file);
+		for (int e = 0; e < episodes; e++) {
+			recorder.startEpisode();
+			for (int step = 0; step < STEPS - e; step++) {
+				SimulationStatus status = status(step);
+				recorder.recordStep(status, new CoupledStates(new State(status, definition)),
+						new CoupledActions(action(definition, step)));
+			}
+			recorder.finishEpisode(e % 2 == 0);
+		}
+		file.close();
+		assertEquals(episodes, file.getEpisodes());
+		return file.getFile();
+	}
+	
+	private static SimulationStatus status(int step) {
+		SimulationStatus status = new SimulationStatus();
+		status.setSimulationTime(step * 0.01);
+		status.setRocketPosition(new Coordinate(0.1 * step, -0.05 * step, 40 - 0.06 * step));
+		status.setRocketVelocity(new Coordinate(1, -0.5, -10 + 0.01 * step));
+		status.setRocketOrientationQuaternion(Quaternion.rotation(new Coordinate(0.001 * step, 0.002 * step, 0)));
+		status.setRocketRotationVelocity(new Coordinate(0.1, 0.2, 0));
+		return status;
+	}
+	
+	private static Action action(MDPDefinition definition, int step) {
+		HashMap<String, Integer> values = new HashMap<String, Integer>();
+		values.put("thrust", step % 4);
+		return new Action(values, definition);
+	}
+	
+	private static int firstEpisodeEnd(byte[] bytes) {
+		ByteBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+		int position = 4 + 4 + 4;
+		for (String column : RLTrajectoryFile.COLUMNS) {
+			position += 4 + column.length();
+		}
+		return position + 8 + buffer.getInt(position + 4);
+	}
+	
+	private File copy(byte[] bytes, int length) throws IOException {
+		File file = folder.newFile("truncated" + length + RLTrajectoryFile.EXTENSION);
+		Files.write(file.toPath(), Arrays.copyOf(bytes, length));
+		return file;
+	}
+}
@@ -0,0 +1,102 @@
+package net.sf.openrocket.simulation.extension.impl.rocketlander;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class RLValueFunctionFileTest {
+	
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	@Test
+	public void testDenseRoundTrip() throws IOException {
+		MDPDefinition definition = MDPDefinition.getDefaultLanderDefinition();
+		float[] values = new float[definition.indexProduct];
+		for (int i = 0; i < values.length; i += 7) {
+			values[i] = i * 0.5f - 100;
+		}
+		File file = valueFunctionFile();
+		RLValueFunctionFile.write(definition, new RLValueFunction(values), file);
+		
+		RLValueFunction read = RLValueFunctionFile.read(definition, file);
+		assertTrue(read.isTable);
+		assertTrue(read.isReadOnly());
+		assertEquals(values.length, read.size());
+		for (int i = 0; i < values.length; i++) {
+			assertEquals(values[i], read.get(i), 0);
+		}
+	}
+	
+	@Test
+	public void testSparseRoundTrip() throws IOException {
+		MDPDefinition definition = MDPDefinition.getDefaultLanderDefinition();
+		ConcurrentIntFloatHashMap map = new ConcurrentIntFloatHashMap();
+		for (int i = 0; i < 1000; i++) {
+			map.put(i * 31, -i);
+		}
+		File file = valueFunctionFile();
+		RLValueFunctionFile.write(definition, new RLValueFunction(map), file);
+		
+		RLValueFunction read = RLValueFunctionFile.read(definition, file);
+		assertFalse(read.isTable);
+		assertEquals(1000, read.size());
+		for (int i = 0; i < 1000; i++) {
+			assertEquals(-i, read.get(i * 31), 0);
+		}
+	}
+	
+	@Test
+	public void testWriteWhileMapped() throws IOException {
+		MDPDefinition definition = MDPDefinition.getDefaultLanderDefinition();
+		File file = valueFunctionFile();
+		RLValueFunctionFile.write(definition, new RLValueFunction(new float[definition.indexProduct]), file);
+		
+		// train the mapped value function further and checkpoint it to the file it was read from
+		RLValueFunction mapped = RLValueFunctionFile.read(definition, file);
+		File firstVersion = RLValueFunctionFile.latestVersion(file);
+		mapped.add(3, 1.5f);
+		RLValueFunctionFile.write(definition, mapped, file);
+		
+		File secondVersion = RLValueFunctionFile.latestVersion(file);
+		assertFalse(firstVersion.equals(secondVersion));
+		assertEquals(1.5f, RLValueFunctionFile.read(definition, file).get(3), 0);
+		assertEquals(1.5f, mapped.get(3), 0);
+	}
+	
+	@Test
+	public void testLayoutMismatch() throws IOException {
+		MDPDefinition definition = MDPDefinition.getDefaultLanderDefinition();
+		File file = valueFunctionFile();
+		RLValueFunctionFile.write(definition, new RLValueFunction(new float[definition.indexProduct]), file);
+		
+		// the same number of angle slots over a different range
+		MDPDefinition shifted = MDPDefinition.getDefaultLanderDefinition();
+		shifted.stateDefinition.put("angle", new float[] { -40, 30, 5 });
+		shifted.postConstructor();
+		assertEquals(definition.indexProduct, shifted.indexProduct);
+		assertTrue(definition.layoutHash != shifted.layoutHash);
+		
+		assertNull(RLValueFunctionFile.read(shifted, file));
+	}
+	
+	@Test(expected = IOException.class)
+	public void testNotAValueFunction() throws IOException {
+		File file = valueFunctionFile();
+		Files.write(file.toPath(), new byte[64]);
+		RLValueFunctionFile.read(MDPDefinition.getDefaultLanderDefinition(), file);
+	}
+	
+	private File valueFunctionFile() {
+		return new File(folder.getRoot(), "actionValuetest" + RLValueFunctionFile.EXTENSION);
+	}
+}
@@ -0,0 +1,151 @@
+package net.sf.openrocket.simulation.extension.impl.rocketlander;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+public class RLValueFunctionTest {
+	
+	private static final int THREADS = 8;
+	private static final int UPDATES = 20000;
+	private static final int SIZE = 16;
+	
+	private interface Update {
+		void run(RLValueFunction valueFunction, int thread, int i);
+	}
+	
+	@Test
+	public void testConcurrentAddToTable() throws InterruptedException {
+		RLValueFunction valueFunction = new RLValueFunction(new float[SIZE]);
+		runConcurrently(valueFunction, new Update() {
+			@Override
+			public void run(RLValueFunction valueFunction, int thread, int i) {
+				valueFunction.add(i % SIZE, 1.0f);
+			}
+		});
+		for (int i = 0; i < SIZE; i++) {
+			assertEquals(THREADS * UPDATES / SIZE, valueFunction.get(i), 0);
+		}
+	}
+	
+	@Test
+	public void testConcurrentAddToMap() throws InterruptedException {
+		RLValueFunction valueFunction = new RLValueFunction(new ConcurrentIntFloatHashMap());
+		runConcurrently(valueFunction, new Update() {
+			@Override
+			public void run(RLValueFunction valueFunction, int thread, int i) {
+				// spread over many keys, so the map grows while it is updated
+				valueFunction.add((i * 7919) % 4096, 1.0f);
+			}
+		});
+		float total = 0;
+		for (int i = 0; i < 4096; i++) {
+			total += valueFunction.get(i);
+		}
+		assertEquals(THREADS * UPDATES, total, 0);
+	}
+	
+	@Test
+	public void testConcurrentAddToMappedTable() throws InterruptedException {
+		float[] values = new float[SIZE];
+		for (int i = 0; i < SIZE; i++) {
+			values[i] = i;
+		}
+		RLValueFunction valueFunction = new RLValueFunction(FloatBuffer.wrap(values).asReadOnlyBuffer());
+		assertTrue(valueFunction.isReadOnly());
+		
+		// every thread races to make the writable copy of the mapped table
+		runConcurrently(valueFunction, new Update() {
+			@Override
+			public void run(RLValueFunction valueFunction, int thread, int i) {
+				valueFunction.add(i % SIZE, 1.0f);
+			}
+		});
+		assertFalse(valueFunction.isReadOnly());
+		for (int i = 0; i < SIZE; i++) {
+			assertEquals(i + THREADS * UPDATES / SIZE, valueFunction.get(i), 0);
+		}
+	}
+	
+	@Test
+	public void testConcurrentUpdateTowards() throws InterruptedException {
+		RLValueFunction valueFunction = new RLValueFunction(new float[SIZE]);
+		runConcurrently(valueFunction, new Update() {
+			@Override
+			public void run(RLValueFunction valueFunction, int thread, int i) {
+				// each entry is pulled by every thread towards the same target
+				int index = i % SIZE;
+				valueFunction.updateTowards(index, index + 1, 0.1f);
+			}
+		});
+		for (int i = 0; i < SIZE; i++) {
+			assertEquals(i + 1, valueFunction.get(i), 1e-4);
+		}
+	}
+	
+	@Test
+	public void testTileCodingBeyondInt() {
+		MDPDefinition definition = MDPDefinition.getDefaultLanderDefinition();
+		definition.stateDefinition.put("angle", new float[] { -35, 35, 0.001f });
+		definition.stateDefinition.put("log2PositionZ", new float[] { 0, 5.6f, 0.0001f });
+		definition.tileCoding = new RLTileCoding();
+		definition.postConstructor();
+		long indexSpace = definition.indexStrides[0] * definition.indeces[0];
+		assertTrue(indexSpace > 1L << 33);
+		
+		RLTileCoding tileCoding = definition.tileCoding;
+		RLValueFunction valueFunction = new RLValueFunction(tileCoding);
+		long index = indexSpace - 1;
+		long[] weights = new long[tileCoding.getNumTilings()];
+		tileCoding.weightIndeces(index, weights);
+		for (int tiling = 0; tiling < weights.length; tiling++) {
+			assertEquals(tileCoding.weightIndex(index, tiling), weights[tiling]);
+		}
+		
+		assertEquals(10, valueFunction.updateTowards(index, 10, 1.0f), 1e-4);
+		assertEquals(10, valueFunction.get(index), 1e-4);
+		// the neighbouring angle cell shares most of the tiles, the index an int would alias it with none
+		float neighbour = valueFunction.get(index - definition.indexStrides[0]);
+		assertTrue(neighbour > 0 && neighbour < 10);
+		assertEquals(0, valueFunction.get(index - (1L << 32)), 1e-4);
+	}
+	
+	private static void runConcurrently(final RLValueFunction valueFunction, final Update update)
+			throws InterruptedException {
+		final CountDownLatch start = new CountDownLatch(1);
+		final List<Throwable> failures = new ArrayList<Throwable>();
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int t = 0; t < THREADS; t++) {
+			final int thread = t;
+			Thread worker = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						start.await();
+						for (int i = 0; i < UPDATES; i++) {
+							update.run(valueFunction, thread, i);
+						}
+					} catch (Throwable e) {
+						synchronized (failures) {
+							failures.add(e);
+						}
+					}
+				}
+			});
+			threads.add(worker);
+			worker.start();
+		}
+		start.countDown();
+		for (Thread worker : threads) {
+			worker.join();
+		}
+		assertTrue(failures.toString(), failures.isEmpty());
+	}
+}
@@ -0,0 +1,62 @@
+package net.sf.openrocket.simulation.extension.impl.rocketlander.methods;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import net.sf.openrocket.simulation.extension.impl.rocketlander.MDPDefinition;
+import net.sf.openrocket.simulation.extension.impl.rocketlander.StateActionTuple;
+
+import org.junit.Test;
+
+public class LambdaMethodTest {
+	
+	@Test
+	public void testLiveEpisodesKeepTheirTraces() {
+		LambdaMethod method = new QLambda(MDPDefinition.getDefaultLanderDefinition());
+		// many episodes flying at once, stepped in turn as by the BatchSimulationEngine
+		List<ArrayList<StateActionTuple>> episodes = newEpisodes(10000);
+		List<EligibilityTrace> traces = new ArrayList<EligibilityTrace>();
+		for (ArrayList<StateActionTuple> episode : episodes) {
+			traces.add(method.trace(episode));
+		}
+		for (int step = 0; step < 3; step++) {
+			for (int i = 0; i < episodes.size(); i++) {
+				assertSame(traces.get(i), method.trace(episodes.get(i)));
+			}
+		}
+		assertEquals(episodes.size(), method.traceCount());
+	}
+	
+	@Test
+	public void testEndedEpisodesReleaseTheirTraces() {
+		LambdaMethod method = new QLambda(MDPDefinition.getDefaultLanderDefinition());
+		List<ArrayList<StateActionTuple>> episodes = newEpisodes(3);
+		List<EligibilityTrace> traces = new ArrayList<EligibilityTrace>();
+		for (ArrayList<StateActionTuple> episode : episodes) {
+			traces.add(method.trace(episode));
+		}
+		
+		// an episode that failed without a terminal update is released all the same, and only it
+		method.releaseEpisode(episodes.get(1));
+		assertEquals(2, method.traceCount());
+		assertSame(traces.get(0), method.trace(episodes.get(0)));
+		assertSame(traces.get(2), method.trace(episodes.get(2)));
+		
+		// releasing twice, as when a simulation ends after its failure was handled, changes nothing
+		method.releaseEpisode(episodes.get(1));
+		method.releaseEpisode(episodes.get(0));
+		method.releaseEpisode(episodes.get(2));
+		assertEquals(0, method.traceCount());
+	}
+	
+	private static List<ArrayList<StateActionTuple>> newEpisodes(int count) {
+		List<ArrayList<StateActionTuple>> episodes = new ArrayList<ArrayList<StateActionTuple>>();
+		for (int i = 0; i < count; i++) {
+			episodes.add(new ArrayList<StateActionTuple>());
+		}
+		return episodes;
+	}
+}
@@ -0,0 +1,129 @@
+package net.sf.openrocket.simulation.extension.impl.rrt;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+import org.junit.Test;
+
+public class RRTNearestNeighbourIndexTest {
+	
+	private static final int DIMENSIONS = 6;
+	
+	@Test
+	public void testEmpty() {
+		RRTNearestNeighbourIndex index = new RRTNearestNeighbourIndex(DIMENSIONS);
+		assertEquals(-1, index.nearest(new double[DIMENSIONS]));
+		assertEquals(0, index.nearest(new double[DIMENSIONS], 5, 0.0, new int[5], new double[5]));
+	}
+	
+	@Test
+	public void testNearestWhileGrowing() {
+		SplittableRandom random = new SplittableRandom(1);
+		RRTNearestNeighbourIndex index = new RRTNearestNeighbourIndex(DIMENSIONS);
+		double[][] points = new double[3000][];
+		double[] query = new double[DIMENSIONS];
+		for (int i = 0; i < points.length; i++) {
+			// grow like the RRT, by small steps from earlier points, so the buckets are split again and again
+			points[i] = (i == 0) ? new double[DIMENSIONS] : step(random, points[random.nextInt(i)]);
+			assertEquals(i, index.add(points[i]));
+			
+			if (i % 7 == 0) {
+				randomPoint(random, query);
+				int nearest = index.nearest(query);
+				assertEquals(linearScan(points, i + 1, query)[0], index.squaredDistance(query, nearest), 0);
+			}
+		}
+		assertEquals(points.length, index.size());
+		for (int i = 0; i < points.length; i++) {
+			assertEquals(points[i][DIMENSIONS - 1], index.getCoordinate(i, DIMENSIONS - 1), 0);
+		}
+	}
+	
+	@Test
+	public void testKNearest() {
+		SplittableRandom random = new SplittableRandom(2);
+		RRTNearestNeighbourIndex index = new RRTNearestNeighbourIndex(DIMENSIONS);
+		double[][] points = new double[2000][];
+		for (int i = 0; i < points.length; i++) {
+			points[i] = new double[DIMENSIONS];
+			randomPoint(random, points[i]);
+			// duplicates end up in the same bucket
+			if (i % 10 == 0 && i > 0)
+				points[i] = points[i - 1].clone();
+			index.add(points[i]);
+		}
+		
+		int k = 20;
+		int[] ids = new int[k];
+		double[] distances = new double[k];
+		double[] query = new double[DIMENSIONS];
+		for (int q = 0; q < 100; q++) {
+			randomPoint(random, query);
+			double[] expected = linearScan(points, points.length, query);
+			
+			assertEquals(k, index.nearest(query, k, 0.0, ids, distances));
+			for (int i = 0; i < k; i++) {
+				assertEquals(expected[i], distances[i], 0);
+				assertEquals(distances[i], index.squaredDistance(query, ids[i]), 0);
+			}
+			
+			// every approximate distance is within (1 + epsilon)^2 of the exact one of the same rank
+			double epsilon = 0.5;
+			assertEquals(k, index.nearest(query, k, epsilon, ids, distances));
+			for (int i = 0; i < k; i++) {
+				assertTrue(distances[i] <= (1 + epsilon) * (1 + epsilon) * expected[i] + 1e-12);
+				assertTrue(i == 0 || distances[i - 1] <= distances[i]);
+			}
+		}
+	}
+	
+	@Test
+	public void testFewerThanK() {
+		RRTNearestNeighbourIndex index = new RRTNearestNeighbourIndex(DIMENSIONS);
+		index.add(new double[] { 1, 0, 0, 0, 0, 0 });
+		index.add(new double[] { 0, 0, 0, 0, 0, 3 });
+		int[] ids = new int[5];
+		double[] distances = new double[5];
+		assertEquals(2, index.nearest(new double[DIMENSIONS], 5, 0.0, ids, distances));
+		assertEquals(0, ids[0]);
+		assertEquals(1, distances[0], 0);
+		assertEquals(1, ids[1]);
+		assertEquals(9, distances[1], 0);
+		
+		index.clear();
+		assertEquals(0, index.size());
+		assertEquals(-1, index.nearest(new double[DIMENSIONS]));
+	}
+	
+	/**
+	 * @return the sorted squared distances of the first count points to the query
+	 */
+	private static double[] linearScan(double[][] points, int count, double[] query) {
+		double[] distances = new double[count];
+		for (int i = 0; i < count; i++) {
+			for (int d = 0; d < DIMENSIONS; d++) {
+				double difference = query[d] - points[i][d];
+				distances[i] += difference * difference;
+			}
+		}
+		Arrays.sort(distances);
+		return distances;
+	}
+	
+	private static double[] step(SplittableRandom random, double[] from) {
+		double[] point = from.clone();
+		for (int d = 0; d < DIMENSIONS; d++) {
+			point[d] += 0.1 * (random.nextDouble() - 0.5);
+		}
+		return point;
+	}
+	
+	private static void randomPoint(SplittableRandom random, double[] point) {
+		for (int d = 0; d < DIMENSIONS; d++) {
+			point[d] = 2 * random.nextDouble() - 1;
+		}
+	}
+}
@@ -0,0 +1,154 @@
+package net.sf.openrocket.simulation.extension.impl.visualize3d;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class Visualize3DFrameQueueTest {
+	
+	private static final int FLOATS = Visualize3DProtocol.ROCKET_FIELDS.length;
+	
+	@Test
+	public void testFullQueueDropsFrames() {
+		Visualize3DFrameQueue queue = new Visualize3DFrameQueue(256, FLOATS);
+		assertEquals(256, queue.capacity());
+		float[] values = new float[FLOATS];
+		
+		// frames leave the last 64 slots to the ENDs
+		int offered = 0;
+		while (queue.offerFrame(1, offered, Visualize3DProtocol.ROCKET_FIELD_SET, values, FLOATS))
+			offered++;
+		assertEquals(256 - 64, offered);
+		assertEquals(offered, queue.size());
+		assertFalse(queue.offerFrame(1, offered, Visualize3DProtocol.ROCKET_FIELD_SET, values, FLOATS));
+		
+		// a polled frame frees a slot for the next one
+		assertEquals(Visualize3DProtocol.FRAME, queue.poll(null, false));
+		assertTrue(queue.offerFrame(1, offered, Visualize3DProtocol.ROCKET_FIELD_SET, values, FLOATS));
+		assertEquals(offered, queue.size());
+	}
+	
+	@Test
+	public void testEndsGetThroughFullQueue() {
+		Visualize3DFrameQueue queue = new Visualize3DFrameQueue(128, FLOATS);
+		float[] values = new float[FLOATS];
+		int frames = 0;
+		while (queue.offerFrame(1, frames, Visualize3DProtocol.ROCKET_FIELD_SET, values, FLOATS))
+			frames++;
+		
+		int ends = 0;
+		while (queue.offerEnd(ends))
+			ends++;
+		assertEquals(64, ends);
+		assertEquals(queue.capacity(), queue.size());
+		
+		ByteBuffer buffer = ByteBuffer.allocate(Visualize3DProtocol.MAX_FRAME_BYTES);
+		for (int i = 0; i < frames; i++) {
+			assertEquals(Visualize3DProtocol.FRAME, queue.poll(buffer, true));
+		}
+		// skipped frames are not written, an END always is
+		assertEquals(0, buffer.position());
+		for (int i = 0; i < ends; i++) {
+			buffer.clear();
+			assertEquals(Visualize3DProtocol.END, queue.poll(buffer, true));
+			buffer.flip();
+			assertEquals(Visualize3DProtocol.END, buffer.get());
+			assertEquals(i, buffer.getInt());
+		}
+		assertEquals(0, queue.poll(buffer, false));
+		assertEquals(0, queue.size());
+	}
+	
+	@Test
+	public void testPollWritesFrames() {
+		Visualize3DFrameQueue queue = new Visualize3DFrameQueue(128, FLOATS);
+		float[] values = new float[FLOATS];
+		for (int i = 0; i < FLOATS; i++)
+			values[i] = i * 0.5f;
+		assertTrue(queue.offerFrame(7, 3, Visualize3DProtocol.ROCKET_FIELD_SET, values, FLOATS));
+		assertTrue(queue.offerEnd(7));
+		
+		ByteBuffer buffer = ByteBuffer.allocate(2 * Visualize3DProtocol.MAX_FRAME_BYTES);
+		assertEquals(Visualize3DProtocol.FRAME, queue.poll(buffer, false));
+		assertEquals(Visualize3DProtocol.END, queue.poll(buffer, false));
+		buffer.flip();
+		
+		Visualize3DProtocol.Reader reader = new Visualize3DProtocol.Reader();
+		assertEquals(Visualize3DProtocol.FRAME, reader.next(buffer));
+		assertEquals(7, reader.simulation);
+		assertEquals(3, reader.sequence);
+		assertEquals(FLOATS, reader.count);
+		for (int i = 0; i < FLOATS; i++)
+			assertEquals(values[i], reader.values[i], 0);
+		assertEquals(Visualize3DProtocol.END, reader.next(buffer));
+		assertEquals(7, reader.simulation);
+		assertEquals(0, reader.next(buffer));
+	}
+	
+	@Test
+	public void testConcurrentProducersKeepOrder() throws InterruptedException {
+		final Visualize3DFrameQueue queue = new Visualize3DFrameQueue(256, FLOATS);
+		final int producers = 4;
+		final int frames = 20000;
+		
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int p = 0; p < producers; p++) {
+			final int simulation = p;
+			Thread thread = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					float[] values = new float[FLOATS];
+					for (int sequence = 0; sequence < frames; sequence++) {
+						values[0] = sequence;
+						while (!queue.offerFrame(simulation, sequence, Visualize3DProtocol.ROCKET_FIELD_SET, values, FLOATS))
+							Thread.yield();
+					}
+					while (!queue.offerEnd(simulation))
+						Thread.yield();
+				}
+			});
+			threads.add(thread);
+			thread.start();
+		}
+		
+		// each simulation's frames arrive in the order offered
+		int[] last = new int[producers];
+		int[] received = new int[producers];
+		Arrays.fill(last, -1);
+		ByteBuffer buffer = ByteBuffer.allocate(Visualize3DProtocol.MAX_FRAME_BYTES);
+		Visualize3DProtocol.Reader reader = new Visualize3DProtocol.Reader();
+		int ended = 0;
+		while (ended < producers) {
+			buffer.clear();
+			int type = queue.poll(buffer, false);
+			if (type == 0) {
+				Thread.yield();
+				continue;
+			}
+			buffer.flip();
+			assertEquals(type, reader.next(buffer));
+			if (type == Visualize3DProtocol.END) {
+				ended++;
+				continue;
+			}
+			assertEquals(last[reader.simulation] + 1, reader.sequence);
+			assertEquals(reader.sequence, reader.values[0], 0);
+			last[reader.simulation] = reader.sequence;
+			received[reader.simulation]++;
+		}
+		for (Thread thread : threads)
+			thread.join();
+		
+		for (int p = 0; p < producers; p++)
+			assertEquals(frames, received[p]);
+		assertEquals(0, queue.size());
+		assertEquals(queue.tail(), queue.head());
+	}
+}
@@ -1,7 +1,9 @@
 package net.sf.openrocket.simulation.extension.impl;
 
 import net.sf.openrocket.document.Simulation;
+import net.sf.openrocket.gui.SpinnerEditor;
 import net.sf.openrocket.gui.adaptors.BooleanModel;
+import net.sf.openrocket.gui.adaptors.IntegerModel;
 import net.sf.openrocket.plugin.Plugin;
 import net.sf.openrocket.simulation.extension.impl.rrt.RRTExtension;
 
@@ -21,6 +23,12 @@ public class RRTExtensionConfigurator extends GenericInitialConditionsConfigurat
 		m.setValue(extension.getUsingLateralObjective());
 		panel.add(new JCheckBox(m), "w 100lp!, wrap");
 
+		panel.add(new JLabel("Workers"));
+		IntegerModel workers = new IntegerModel(extension, "Workers", 1, 64);
+		JSpinner spin = new JSpinner(workers.getSpinnerModel());
+		spin.setEditor(new SpinnerEditor(spin));
+		panel.add(spin, "w 100lp, wrap");
+
 		super.addInitialConditionsToComponent(extension, simulation, panel);
 		return panel;
 	}
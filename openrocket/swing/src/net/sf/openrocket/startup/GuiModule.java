@@ -69,4 +69,13 @@ public class GuiModule extends AbstractModule {
 		motorLoader.startLoading();
 	}
 	
+	/**
+	 * Block until the databases have been loaded.  Used by headless tools, where the blocking
+	 * providers cannot display their loading dialog.
+	 */
+	public void blockUntilLoaded() {
+		presetLoader.blockUntilLoaded();
+		motorLoader.blockUntilLoaded();
+	}
+	
 }
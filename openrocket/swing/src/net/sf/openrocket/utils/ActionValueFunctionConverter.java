@@ -0,0 +1,76 @@
+package net.sf.openrocket.utils;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Locale;
+
+import net.sf.openrocket.document.Definition;
+import net.sf.openrocket.document.OpenRocketDocument;
+import net.sf.openrocket.file.GeneralRocketLoader;
+import net.sf.openrocket.file.RocketLoadException;
+import net.sf.openrocket.simulation.extension.impl.rocketlander.MDPDefinition;
+import net.sf.openrocket.plugin.PluginModule;
+import net.sf.openrocket.simulation.extension.impl.rocketlander.RLObjectFileStore;
+import net.sf.openrocket.startup.Application;
+import net.sf.openrocket.startup.GuiModule;
+
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+
+/**
+ * Utility that converts Java-serialized RocketLander value functions (actionValue*.txt) into the
+ * binary value function format.  The MDP definitions are read from the ORK file the models were trained with,
+ * since the serialized files do not record them.
+ *
+ * Usage:
+ *   java -cp OpenRocket.jar net.sf.openrocket.utils.ActionValueFunctionConverter <file.ork> [directories...]
+ *
+ * Every definition of the document is converted in each directory (default: the working directory) that contains
+ * a matching actionValue<name>.txt file.  The legacy files are left in place.
+ */
+public class ActionValueFunctionConverter {
+
+	public static void main(String[] args) {
+		if (args.length < 1) {
+			System.err.println("Usage: ActionValueFunctionConverter <file.ork> [directories...]");
+			return;
+		}
+
+		setup();
+
+		OpenRocketDocument document;
+		try {
+			document = new GeneralRocketLoader(new File(args[0])).load();
+		} catch (RocketLoadException e) {
+			System.err.println("ERROR: Error loading '" + args[0] + "': " + e.getMessage());
+			return;
+		}
+
+		String[] directories = (args.length > 1) ? Arrays.copyOfRange(args, 1, args.length) : new String[] { "." };
+		for (String directory : directories) {
+			for (Definition documentDefinition : document.definitions) {
+				MDPDefinition definition = MDPDefinition.buildFromJsonString(documentDefinition.getData());
+				File legacyFile = new File(directory, RLObjectFileStore.legacyFileName(definition.name));
+				if (!legacyFile.isFile())
+					continue;
+
+				File binaryFile = new File(directory, RLObjectFileStore.binaryFileName(definition.name));
+				System.out.println("Converting " + legacyFile + " -> " + binaryFile + "...");
+				if (!RLObjectFileStore.getInstance().convertLegacyActionValueFunction(definition, legacyFile, binaryFile)) {
+					System.err.println("ERROR: '" + legacyFile + "' does not match definition " + definition.name + ", skipping.");
+				}
+			}
+		}
+	}
+
+	private static void setup() {
+		Locale.setDefault(Locale.US);
+
+		// loading an ORK file resolves its motors, so the motor database must be available
+		GuiModule guiModule = new GuiModule();
+		Injector injector = Guice.createInjector(guiModule, new PluginModule());
+		Application.setInjector(injector);
+		guiModule.startLoader();
+		guiModule.blockUntilLoaded();
+	}
+}
@@ -0,0 +1,117 @@
+package net.sf.openrocket.utils;
+
+import java.io.File;
+import java.util.Locale;
+
+import net.sf.openrocket.aerodynamics.TabulatedBarrowmanCalculator;
+import net.sf.openrocket.document.OpenRocketDocument;
+import net.sf.openrocket.document.Simulation;
+import net.sf.openrocket.file.GeneralRocketLoader;
+import net.sf.openrocket.file.RocketLoadException;
+import net.sf.openrocket.plugin.PluginModule;
+import net.sf.openrocket.simulation.BasicEventSimulationEngine;
+import net.sf.openrocket.simulation.FlightData;
+import net.sf.openrocket.simulation.FlightDataBranch;
+import net.sf.openrocket.simulation.FlightDataType;
+import net.sf.openrocket.simulation.SimulationConditions;
+import net.sf.openrocket.simulation.exception.SimulationException;
+import net.sf.openrocket.startup.Application;
+import net.sf.openrocket.startup.GuiModule;
+
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+
+/**
+ * Measures the time per simulation with the TabulatedBarrowmanCalculator against the BarrowmanCalculator,
+ * and how far the flights of the two calculators are apart.
+ *
+ * Usage:
+ *   java -cp OpenRocket.jar net.sf.openrocket.utils.AerodynamicTableBenchmark <file.ork> [simulations]
+ *
+ * Every simulation of the document is flown simulations times (default 100) per round and calculator, without
+ * its simulation extensions and with the random seed of the flight.  The first of the four rounds is warm up.
+ * The tables are computed during the first tabulated flight of a round, whose extra time is reported separately.
+ * The deviations are the largest differences of the apogee and of the maximum velocity over the flights.
+ */
+public class AerodynamicTableBenchmark {
+
+	public static void main(String[] args) {
+		if (args.length < 1) {
+			System.err.println("Usage: AerodynamicTableBenchmark <file.ork> [simulations]");
+			return;
+		}
+		int simulations = (args.length > 1) ? Integer.parseInt(args[1]) : 100;
+
+		setup();
+
+		OpenRocketDocument document;
+		try {
+			document = new GeneralRocketLoader(new File(args[0])).load();
+		} catch (RocketLoadException e) {
+			System.err.println("ERROR: Error loading '" + args[0] + "': " + e.getMessage());
+			return;
+		}
+
+		for (Simulation simulation : document.getSimulations()) {
+			try {
+				for (int round = 0; round < 4; round++) {
+					double[] apogee = new double[simulations];
+					double[] maxVelocity = new double[simulations];
+					long start = System.nanoTime();
+					for (int i = 0; i < simulations; i++) {
+						FlightDataBranch branch = new BasicEventSimulationEngine().simulate(conditions(simulation, i)).getBranch(0);
+						apogee[i] = branch.getMaximum(FlightDataType.TYPE_ALTITUDE);
+						maxVelocity[i] = branch.getMaximum(FlightDataType.TYPE_VELOCITY_TOTAL);
+					}
+					long exactTime = System.nanoTime() - start;
+
+					TabulatedBarrowmanCalculator calculator = new TabulatedBarrowmanCalculator();
+					double apogeeDeviation = 0, velocityDeviation = 0;
+					long firstTime = 0;
+					start = System.nanoTime();
+					for (int i = 0; i < simulations; i++) {
+						SimulationConditions conditions = conditions(simulation, i);
+						conditions.setAerodynamicCalculator(calculator);
+						FlightData data = new BasicEventSimulationEngine().simulate(conditions);
+						if (i == 0)
+							firstTime = System.nanoTime() - start;
+						FlightDataBranch branch = data.getBranch(0);
+						apogeeDeviation = Math.max(apogeeDeviation,
+								Math.abs(branch.getMaximum(FlightDataType.TYPE_ALTITUDE) - apogee[i]));
+						velocityDeviation = Math.max(velocityDeviation,
+								Math.abs(branch.getMaximum(FlightDataType.TYPE_VELOCITY_TOTAL) - maxVelocity[i]));
+					}
+					long tabulatedTime = System.nanoTime() - start;
+
+					if (round == 0) continue;
+					double exactMs = exactTime / 1e6 / simulations;
+					double tabulatedMs = (tabulatedTime - firstTime) / 1e6 / Math.max(simulations - 1, 1);
+					System.out.printf("%s: exact %7.2f ms/simulation  tabulated %7.2f ms/simulation  speedup %5.2f  " +
+							"tables %7.1f ms  apogee deviation %6.3f m  max velocity deviation %6.3f m/s%n",
+							simulation.getName(), exactMs, tabulatedMs, exactMs / tabulatedMs,
+							firstTime / 1e6 - tabulatedMs, apogeeDeviation, velocityDeviation);
+				}
+			} catch (SimulationException e) {
+				System.err.println("ERROR: Simulation '" + simulation.getName() + "' failed: " + e.getMessage());
+			}
+		}
+	}
+
+	private static SimulationConditions conditions(Simulation simulation, int flight) {
+		simulation.getOptions().setRandomSeed(flight);
+		SimulationConditions conditions = simulation.getOptions().toSimulationConditions();
+		conditions.setSimulation(simulation);
+		return conditions;
+	}
+
+	private static void setup() {
+		Locale.setDefault(Locale.US);
+
+		// loading an ORK file resolves its motors, so the motor database must be available
+		GuiModule guiModule = new GuiModule();
+		Injector injector = Guice.createInjector(guiModule, new PluginModule());
+		Application.setInjector(injector);
+		guiModule.startLoader();
+		guiModule.blockUntilLoaded();
+	}
+}
@@ -0,0 +1,130 @@
+package net.sf.openrocket.utils;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import net.sf.openrocket.document.OpenRocketDocument;
+import net.sf.openrocket.document.Simulation;
+import net.sf.openrocket.file.GeneralRocketLoader;
+import net.sf.openrocket.file.RocketLoadException;
+import net.sf.openrocket.plugin.PluginModule;
+import net.sf.openrocket.simulation.BasicEventSimulationEngine;
+import net.sf.openrocket.simulation.BatchSimulationEngine;
+import net.sf.openrocket.simulation.FlightData;
+import net.sf.openrocket.simulation.SimulationConditions;
+import net.sf.openrocket.simulation.exception.SimulationException;
+import net.sf.openrocket.startup.Application;
+import net.sf.openrocket.startup.GuiModule;
+
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+
+/**
+ * Measures the throughput of the BatchSimulationEngine against flying the same trajectories one by one on the
+ * BasicEventSimulationEngine, in trajectories per second and in steps per second.
+ *
+ * Usage:
+ *   java -cp OpenRocket.jar net.sf.openrocket.utils.BatchSimulationBenchmark <file.ork> [trajectories] [batch size]
+ *
+ * Every simulation of the document is flown trajectories times (default 200) per round and engine, in batches of
+ * batch size (default 50) on the batch engine, without its simulation extensions and with the random seed of the
+ * trajectory.  The first of the four rounds is warm up.
+ *
+ * The batch engine does not deploy recovery devices, so its trajectories of a rocket with a parachute fall faster
+ * and take fewer steps than those of the basic engine.  The steps per second compare the engines in that case.
+ */
+public class BatchSimulationBenchmark {
+
+	private static final com.sun.management.ThreadMXBean threadBean =
+			(com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+	public static void main(String[] args) {
+		if (args.length < 1) {
+			System.err.println("Usage: BatchSimulationBenchmark <file.ork> [trajectories] [batch size]");
+			return;
+		}
+		int trajectories = (args.length > 1) ? Integer.parseInt(args[1]) : 200;
+		int batchSize = (args.length > 2) ? Integer.parseInt(args[2]) : 50;
+
+		setup();
+
+		OpenRocketDocument document;
+		try {
+			document = new GeneralRocketLoader(new File(args[0])).load();
+		} catch (RocketLoadException e) {
+			System.err.println("ERROR: Error loading '" + args[0] + "': " + e.getMessage());
+			return;
+		}
+
+		for (Simulation simulation : document.getSimulations()) {
+			try {
+				for (int round = 0; round < 4; round++) {
+					long allocatedAt = threadBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+					long start = System.nanoTime();
+					long steps = 0;
+					for (int trajectory = 0; trajectory < trajectories; trajectory++) {
+						steps += steps(new BasicEventSimulationEngine().simulate(conditions(simulation, trajectory)));
+					}
+					long basicTime = System.nanoTime() - start;
+					long basicBytes = threadBean.getThreadAllocatedBytes(Thread.currentThread().getId()) - allocatedAt;
+					long basicSteps = steps;
+
+					allocatedAt = threadBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+					start = System.nanoTime();
+					steps = 0;
+					for (int first = 0; first < trajectories; first += batchSize) {
+						List<SimulationConditions> batch = new ArrayList<SimulationConditions>();
+						for (int trajectory = first; trajectory < Math.min(first + batchSize, trajectories); trajectory++) {
+							batch.add(conditions(simulation, trajectory));
+						}
+						for (FlightData data : new BatchSimulationEngine().simulate(batch)) {
+							steps += steps(data);
+						}
+					}
+					long batchTime = System.nanoTime() - start;
+					long batchBytes = threadBean.getThreadAllocatedBytes(Thread.currentThread().getId()) - allocatedAt;
+
+					if (round == 0) continue;
+					System.out.printf("%s: basic %8.1f trajectories/s %10.0f steps/s %10.0f bytes/trajectory  " +
+							"batch %8.1f trajectories/s %10.0f steps/s %10.0f bytes/trajectory%n",
+							simulation.getName(),
+							trajectories / (basicTime / 1e9), basicSteps / (basicTime / 1e9), basicBytes / (double) trajectories,
+							trajectories / (batchTime / 1e9), steps / (batchTime / 1e9), batchBytes / (double) trajectories);
+				}
+			} catch (SimulationException e) {
+				System.err.println("ERROR: Simulation '" + simulation.getName() + "' failed: " + e.getMessage());
+			} catch (IllegalArgumentException e) {
+				System.err.println("ERROR: Simulation '" + simulation.getName() + "' cannot be batched: " + e.getMessage());
+			}
+		}
+	}
+
+	private static SimulationConditions conditions(Simulation simulation, int trajectory) {
+		simulation.getOptions().setRandomSeed(trajectory);
+		SimulationConditions conditions = simulation.getOptions().toSimulationConditions();
+		conditions.setSimulation(simulation);
+		return conditions;
+	}
+
+	private static int steps(FlightData data) {
+		int steps = 0;
+		for (int i = 0; i < data.getBranchCount(); i++) {
+			steps += data.getBranch(i).getLength();
+		}
+		return steps;
+	}
+
+	private static void setup() {
+		Locale.setDefault(Locale.US);
+
+		// loading an ORK file resolves its motors, so the motor database must be available
+		GuiModule guiModule = new GuiModule();
+		Injector injector = Guice.createInjector(guiModule, new PluginModule());
+		Application.setInjector(injector);
+		guiModule.startLoader();
+		guiModule.blockUntilLoaded();
+	}
+}
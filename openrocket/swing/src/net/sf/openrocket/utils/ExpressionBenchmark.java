@@ -0,0 +1,130 @@
+package net.sf.openrocket.utils;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+import net.sf.openrocket.document.Definition;
+import net.sf.openrocket.document.OpenRocketDocument;
+import net.sf.openrocket.file.GeneralRocketLoader;
+import net.sf.openrocket.file.RocketLoadException;
+import net.sf.openrocket.plugin.PluginModule;
+import net.sf.openrocket.simulation.extension.impl.rocketlander.FieldSlotRegistry;
+import net.sf.openrocket.simulation.extension.impl.rocketlander.MDPDefinition;
+import net.sf.openrocket.simulation.extension.impl.rocketlander.StateActionTuple.State;
+import net.sf.openrocket.simulation.extension.impl.rocketlander.customexpressions.CustomExpressionEvaluator;
+import net.sf.openrocket.simulation.extension.impl.rocketlander.customexpressions.Expression;
+import net.sf.openrocket.startup.Application;
+import net.sf.openrocket.startup.GuiModule;
+
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+
+/**
+ * Measures the evaluation cost of the RocketLander expressions (reward, terminal reward, expressions and MDP
+ * selection expressions) of the MDP definitions stored in an ORK file.
+ *
+ * Usage:
+ *   java -cp OpenRocket.jar net.sf.openrocket.utils.ExpressionBenchmark <file.ork> [definition name prefix] [evaluations]
+ *
+ * The prefix defaults to "hierarchical", the definitions shipped with RL.ork.
+ */
+public class ExpressionBenchmark {
+
+	private static final int NUM_STATES = 1024;
+
+	public static void main(String[] args) {
+		if (args.length < 1) {
+			System.err.println("Usage: ExpressionBenchmark <file.ork> [definition name prefix] [evaluations]");
+			return;
+		}
+		String prefix = (args.length > 1) ? args[1] : "hierarchical";
+		int evaluations = (args.length > 2) ? Integer.parseInt(args[2]) : 20 * 1000 * 1000;
+
+		setup();
+
+		OpenRocketDocument document;
+		try {
+			document = new GeneralRocketLoader(new File(args[0])).load();
+		} catch (RocketLoadException e) {
+			System.err.println("ERROR: Error loading '" + args[0] + "': " + e.getMessage());
+			return;
+		}
+
+		ArrayList<MDPDefinition> definitions = new ArrayList<>();
+		ArrayList<Expression> expressions = new ArrayList<>();
+		for (Definition documentDefinition : document.definitions) {
+			if (!documentDefinition.getName().startsWith(prefix))
+				continue;
+			MDPDefinition definition = MDPDefinition.buildFromJsonString(documentDefinition.getData());
+			definitions.add(definition);
+			addExpressions(definition, expressions);
+		}
+		if (expressions.isEmpty()) {
+			System.err.println("ERROR: No definitions starting with '" + prefix + "' in '" + args[0] + "'");
+			return;
+		}
+		System.out.println(definitions.size() + " definitions, " + expressions.size() + " expressions");
+
+		// random values for every field any definition or expression refers to
+		SplittableRandom random = new SplittableRandom(0);
+		State[] states = new State[NUM_STATES];
+		for (int i = 0; i < NUM_STATES; i++) {
+			states[i] = new State(null, definitions.get(i % definitions.size()));
+			for (int slot = 0; slot < FieldSlotRegistry.size(); slot++)
+				states[i].setDouble(slot, random.nextDouble(-20.0, 20.0));
+		}
+
+		Expression[] expressionArray = expressions.toArray(new Expression[expressions.size()]);
+		for (int round = 0; round < 4; round++) {
+			// the first round is warm up
+			long allocatedBefore = allocatedBytes();
+			long startTime = System.nanoTime();
+			double sum = 0;
+			for (int i = 0; i < evaluations; i++)
+				sum += expressionArray[i % expressionArray.length].evaluate(states[i & (NUM_STATES - 1)]);
+			long elapsed = System.nanoTime() - startTime;
+			long allocated = allocatedBytes() - allocatedBefore;
+			if (round == 0) continue;
+			System.out.printf("%6.1f ns/evaluation  %6.1f bytes/evaluation  (checksum %g)%n",
+					elapsed / (double) evaluations, allocated / (double) evaluations, sum);
+		}
+	}
+
+	private static void addExpressions(MDPDefinition definition, ArrayList<Expression> expressions) {
+		CustomExpressionEvaluator evaluator = CustomExpressionEvaluator.getInstance();
+		expressions.add(evaluator.generateExpression(definition.reward));
+		if (definition.terminalReward != null)
+			expressions.add(evaluator.generateExpression(definition.terminalReward));
+		if (definition.expressions != null) {
+			for (String expression : definition.expressions.values())
+				expressions.add(evaluator.generateExpression(expression));
+		}
+		if (definition.MDPSelectionExpressions != null) {
+			for (Map.Entry<String, ArrayList<String>> entry : definition.MDPSelectionExpressions.entrySet()) {
+				// conditions and results alternate
+				for (int i = 0; i < entry.getValue().size(); i += 2)
+					expressions.add(evaluator.generateExpression(entry.getValue().get(i)));
+			}
+		}
+	}
+
+	private static long allocatedBytes() {
+		return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+				.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	private static void setup() {
+		Locale.setDefault(Locale.US);
+
+		// loading an ORK file resolves its motors, so the motor database must be available
+		GuiModule guiModule = new GuiModule();
+		Injector injector = Guice.createInjector(guiModule, new PluginModule());
+		Application.setInjector(injector);
+		guiModule.startLoader();
+		guiModule.blockUntilLoaded();
+	}
+}
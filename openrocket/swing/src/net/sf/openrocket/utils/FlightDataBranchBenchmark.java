@@ -0,0 +1,71 @@
+package net.sf.openrocket.utils;
+
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+
+import net.sf.openrocket.plugin.PluginModule;
+import net.sf.openrocket.simulation.FlightDataBranch;
+import net.sf.openrocket.simulation.FlightDataType;
+import net.sf.openrocket.startup.Application;
+import net.sf.openrocket.startup.GuiModule;
+
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+
+/**
+ * Measures the cost of recording flight data the way RK4SimulationStepper.storeData does - a new point per step
+ * and a value for every built in data type - into a new FlightDataBranch per flight.
+ *
+ * Usage:
+ *   java -cp OpenRocket.jar net.sf.openrocket.utils.FlightDataBranchBenchmark [steps per flight] [flights]
+ *
+ * The bytes per step include the growth of the branch, so they are an upper bound of the memory a point retains.
+ */
+public class FlightDataBranchBenchmark {
+
+	public static void main(String[] args) {
+		int steps = (args.length > 0) ? Integer.parseInt(args[0]) : 10000;
+		int flights = (args.length > 1) ? Integer.parseInt(args[1]) : 200;
+
+		setup();
+
+		FlightDataType[] types = FlightDataType.ALL_TYPES;
+		System.out.println(types.length + " types, " + steps + " steps per flight, " + flights + " flights");
+
+		for (int round = 0; round < 4; round++) {
+			// the first round is warm up
+			long allocatedBefore = allocatedBytes();
+			long startTime = System.nanoTime();
+			double checksum = 0;
+			for (int flight = 0; flight < flights; flight++) {
+				FlightDataBranch branch = new FlightDataBranch("benchmark", FlightDataType.TYPE_TIME);
+				for (int step = 0; step < steps; step++) {
+					branch.addPoint();
+					for (int i = 0; i < types.length; i++)
+						branch.setValue(types[i], step * 0.01 + i);
+				}
+				checksum += branch.getLast(FlightDataType.TYPE_TIME) + branch.getMaximum(types[types.length - 1]);
+			}
+			long elapsed = System.nanoTime() - startTime;
+			long allocated = allocatedBytes() - allocatedBefore;
+			if (round == 0) continue;
+			long totalSteps = (long) steps * flights;
+			System.out.printf("%8.1f ns/step  %8.1f bytes/step  (checksum %g)%n",
+					elapsed / (double) totalSteps, allocated / (double) totalSteps, checksum);
+		}
+	}
+
+	private static long allocatedBytes() {
+		return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+				.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	private static void setup() {
+		Locale.setDefault(Locale.US);
+
+		// the data types are translated
+		GuiModule guiModule = new GuiModule();
+		Injector injector = Guice.createInjector(guiModule, new PluginModule());
+		Application.setInjector(injector);
+	}
+}
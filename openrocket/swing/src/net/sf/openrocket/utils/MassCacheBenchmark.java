@@ -0,0 +1,89 @@
+package net.sf.openrocket.utils;
+
+import java.util.Locale;
+
+import net.sf.openrocket.masscalc.MassCache;
+import net.sf.openrocket.masscalc.MassCalculation;
+import net.sf.openrocket.masscalc.MassCalculator;
+import net.sf.openrocket.masscalc.RigidBody;
+import net.sf.openrocket.plugin.PluginModule;
+import net.sf.openrocket.rocketcomponent.FlightConfiguration;
+import net.sf.openrocket.rocketcomponent.Rocket;
+import net.sf.openrocket.startup.Application;
+import net.sf.openrocket.startup.GuiModule;
+import net.sf.openrocket.util.TestRockets;
+
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+
+/**
+ * Measures the time of the mass calculations of a simulation step with the MassCache against
+ * calculating them through MassCalculator, on the test rockets.
+ *
+ * Usage:
+ *   java -cp OpenRocket.jar net.sf.openrocket.utils.MassCacheBenchmark [steps]
+ *
+ * Each round calculates the structure and the motors at steps (default 20000) times spread over the
+ * first five seconds of flight, as the RK4 stepper does at each of its sub-steps.  The first of the four
+ * rounds is warm up.  The deviation is the largest difference of the motor CG between the two.
+ */
+public class MassCacheBenchmark {
+
+	public static void main(String[] args) {
+		int steps = (args.length > 0) ? Integer.parseInt(args[0]) : 20000;
+
+		setup();
+
+		Rocket alpha = TestRockets.makeEstesAlphaIII();
+		Rocket falcon = TestRockets.makeFalcon9Heavy();
+		FlightConfiguration[] configurations = {
+				alpha.getFlightConfigurationByIndex(1, false),
+				TestRockets.makeBeta().getSelectedConfiguration(),
+				falcon.getSelectedConfiguration()
+		};
+
+		for (FlightConfiguration configuration : configurations) {
+			configuration.setAllStages();
+			for (int round = 0; round < 4; round++) {
+				double sum = 0;
+				double[] cgx = new double[steps];
+				long start = System.nanoTime();
+				for (int i = 0; i < steps; i++) {
+					double time = 5.0 * i / steps;
+					sum += MassCalculator.calculateStructure(configuration).getMass();
+					RigidBody motors = MassCalculator.calculate(MassCalculation.Type.MOTOR, configuration, time);
+					sum += motors.getMass();
+					cgx[i] = motors.getCM().x;
+				}
+				long uncachedTime = System.nanoTime() - start;
+
+				MassCache cache = new MassCache();
+				double deviation = 0;
+				start = System.nanoTime();
+				for (int i = 0; i < steps; i++) {
+					double time = 5.0 * i / steps;
+					sum += cache.getStructure(configuration).getMass();
+					RigidBody motors = cache.getMotor(configuration, time);
+					sum += motors.getMass();
+					deviation = Math.max(deviation, Math.abs(motors.getCM().x - cgx[i]));
+				}
+				long cachedTime = System.nanoTime() - start;
+
+				if (round == 0 || Double.isNaN(sum)) continue;
+				System.out.printf("%-20s: uncached %8.0f ns/step  cached %6.0f ns/step  speedup %6.1f  CG deviation %.1e m%n",
+						configuration.getRocket().getName(), uncachedTime / (double) steps, cachedTime / (double) steps,
+						uncachedTime / (double) cachedTime, deviation);
+			}
+		}
+	}
+
+	private static void setup() {
+		Locale.setDefault(Locale.US);
+
+		GuiModule guiModule = new GuiModule();
+		Injector injector = Guice.createInjector(guiModule, new PluginModule());
+		Application.setInjector(injector);
+		guiModule.startLoader();
+		guiModule.blockUntilLoaded();
+	}
+}
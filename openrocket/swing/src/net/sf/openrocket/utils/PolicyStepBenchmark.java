@@ -0,0 +1,166 @@
+package net.sf.openrocket.utils;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+
+import net.sf.openrocket.document.Definition;
+import net.sf.openrocket.document.OpenRocketDocument;
+import net.sf.openrocket.document.Simulation;
+import net.sf.openrocket.file.GeneralRocketLoader;
+import net.sf.openrocket.file.RocketLoadException;
+import net.sf.openrocket.plugin.PluginModule;
+import net.sf.openrocket.simulation.BasicEventSimulationEngine;
+import net.sf.openrocket.simulation.SimulationConditions;
+import net.sf.openrocket.simulation.SimulationStatus;
+import net.sf.openrocket.simulation.exception.SimulationException;
+import net.sf.openrocket.simulation.extension.SimulationExtension;
+import net.sf.openrocket.simulation.extension.impl.rocketlander.MDPDefinition;
+import net.sf.openrocket.simulation.extension.impl.rocketlander.RLEpisodeRandom;
+import net.sf.openrocket.simulation.extension.impl.rocketlander.RLModelSingleton;
+import net.sf.openrocket.simulation.extension.impl.rocketlander.RLTrainingRunner;
+import net.sf.openrocket.simulation.extension.impl.rocketlander.RocketLanderExtension;
+import net.sf.openrocket.simulation.extension.impl.rocketlander.StateActionTuple;
+import net.sf.openrocket.simulation.listeners.AbstractSimulationListener;
+import net.sf.openrocket.startup.Application;
+import net.sf.openrocket.startup.GuiModule;
+
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+
+/**
+ * Measures the cost of one RocketLander policy step - building the hierarchical states of a SimulationStatus and
+ * choosing the action of every level - for the MDP definitions stored in an ORK file.
+ *
+ * The statuses of a few episodes of the simulation are recorded first, then the steps of those episodes are replayed
+ * through RLModelSingleton.generateStateAndActionAndStoreHistory.
+ *
+ * Usage:
+ *   java -cp OpenRocket.jar net.sf.openrocket.utils.PolicyStepBenchmark <file.ork> [definition name prefix] [episodes] [rounds]
+ *
+ * The prefix defaults to "hierarchical", the definitions shipped with RL.ork.
+ */
+public class PolicyStepBenchmark {
+
+	public static void main(String[] args) {
+		if (args.length < 1) {
+			System.err.println("Usage: PolicyStepBenchmark <file.ork> [definition name prefix] [episodes] [rounds]");
+			return;
+		}
+		String prefix = (args.length > 1) ? args[1] : "hierarchical";
+		int episodes = (args.length > 2) ? Integer.parseInt(args[2]) : 20;
+		int rounds = (args.length > 3) ? Integer.parseInt(args[3]) : 50;
+
+		setup();
+
+		OpenRocketDocument document;
+		try {
+			document = new GeneralRocketLoader(new File(args[0])).load();
+		} catch (RocketLoadException e) {
+			System.err.println("ERROR: Error loading '" + args[0] + "': " + e.getMessage());
+			return;
+		}
+
+		ArrayList<MDPDefinition> definitions = new ArrayList<>();
+		for (Definition documentDefinition : document.definitions) {
+			if (documentDefinition.getName().startsWith(prefix))
+				definitions.add(MDPDefinition.buildFromJsonString(documentDefinition.getData()));
+		}
+		Simulation simulation = null;
+		for (Simulation candidate : document.getSimulations()) {
+			if (RLTrainingRunner.hasRocketLanderExtension(candidate)) {
+				simulation = candidate;
+				break;
+			}
+		}
+		if (definitions.isEmpty() || (simulation == null)) {
+			System.err.println("ERROR: No definitions starting with '" + prefix + "' or no RocketLander simulation in '" + args[0] + "'");
+			return;
+		}
+		// a fixed seed, so the checksum of the chosen actions can be compared between implementations
+		RLEpisodeRandom.setMasterSeed(0);
+		RLModelSingleton model = RLModelSingleton.getInstance();
+		model.setDefinitions(definitions);
+		model.setSmartPrintBuffer(true);
+
+		ArrayList<ArrayList<SimulationStatus>> recorded = new ArrayList<>();
+		for (int episode = 0; episode < episodes; episode++)
+			recorded.add(recordEpisode(simulation, episode));
+		int steps = 0;
+		for (ArrayList<SimulationStatus> statuses : recorded)
+			steps += statuses.size();
+		System.out.println(definitions.size() + " definitions, " + episodes + " episodes, " + steps + " steps");
+
+		for (int round = 0; round < 4; round++) {
+			// the first round is warm up
+			long allocatedBefore = allocatedBytes();
+			long startTime = System.nanoTime();
+			long levels = 0;
+			long checksum = 0;
+			for (int r = 0; r < rounds; r++) {
+				for (int episode = 0; episode < recorded.size(); episode++) {
+					RLEpisodeRandom.setNextEpisode(episode);
+					RLEpisodeRandom.startEpisode();
+					LinkedHashMap<String, ArrayList<StateActionTuple>> stateActions = model.initializeEpisodeStateActions();
+					for (SimulationStatus status : recorded.get(episode)) {
+						Object[] stateAndAction = model.generateStateAndActionAndStoreHistory(status, stateActions);
+						StateActionTuple.CoupledStates states = (StateActionTuple.CoupledStates) stateAndAction[0];
+						StateActionTuple.CoupledActions actions = (StateActionTuple.CoupledActions) stateAndAction[1];
+						levels += states.size();
+						for (int level = 0; level < states.size(); level++)
+							checksum = 31 * checksum + 17 * states.get(level).hashCode() + actions.get(level).hashCode();
+					}
+				}
+			}
+			long elapsed = System.nanoTime() - startTime;
+			long allocated = allocatedBytes() - allocatedBefore;
+			if (round == 0) continue;
+			long totalSteps = (long) steps * rounds;
+			System.out.printf("%8.1f ns/step  %8.1f bytes/step  %4.2f levels/step  (checksum %x)%n",
+					elapsed / (double) totalSteps, allocated / (double) totalSteps, levels / (double) totalSteps, checksum);
+		}
+		System.exit(0);
+	}
+
+	private static ArrayList<SimulationStatus> recordEpisode(Simulation simulation, int episode) {
+		ArrayList<SimulationStatus> statuses = new ArrayList<>();
+		RLEpisodeRandom.setNextEpisode(episode);
+		simulation.getOptions().setRandomSeed(RLEpisodeRandom.simulationSeed(episode));
+		SimulationConditions conditions = simulation.getOptions().toSimulationConditions();
+		conditions.setSimulation(simulation);
+		try {
+			for (SimulationExtension extension : simulation.getSimulationExtensions()) {
+				if (extension instanceof RocketLanderExtension)
+					extension.initialize(conditions);
+			}
+			conditions.getSimulationListenerList().add(new AbstractSimulationListener() {
+				@Override
+				public void postStep(SimulationStatus status) {
+					statuses.add(new SimulationStatus(status));
+				}
+			});
+			new BasicEventSimulationEngine().simulate(conditions);
+		} catch (SimulationException e) {
+			System.out.println("Episode failed: " + e.getMessage());
+		}
+		return statuses;
+	}
+
+	private static long allocatedBytes() {
+		return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+				.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	private static void setup() {
+		Locale.setDefault(Locale.US);
+
+		// loading an ORK file resolves its motors, so the motor database must be available
+		GuiModule guiModule = new GuiModule();
+		Injector injector = Guice.createInjector(guiModule, new PluginModule());
+		Application.setInjector(injector);
+		guiModule.startLoader();
+		guiModule.blockUntilLoaded();
+	}
+}
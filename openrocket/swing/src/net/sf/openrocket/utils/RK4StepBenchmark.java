@@ -0,0 +1,160 @@
+package net.sf.openrocket.utils;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+
+import net.sf.openrocket.document.OpenRocketDocument;
+import net.sf.openrocket.document.Simulation;
+import net.sf.openrocket.file.GeneralRocketLoader;
+import net.sf.openrocket.file.RocketLoadException;
+import net.sf.openrocket.plugin.PluginModule;
+import net.sf.openrocket.simulation.BasicEventSimulationEngine;
+import net.sf.openrocket.simulation.FlightData;
+import net.sf.openrocket.simulation.FlightDataBranch;
+import net.sf.openrocket.simulation.FlightDataType;
+import net.sf.openrocket.simulation.SimulationConditions;
+import net.sf.openrocket.simulation.SimulationStatus;
+import net.sf.openrocket.simulation.exception.SimulationException;
+import net.sf.openrocket.simulation.listeners.AbstractSimulationListener;
+import net.sf.openrocket.startup.Application;
+import net.sf.openrocket.startup.GuiModule;
+
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+
+/**
+ * Measures the time and heap allocated by the simulation steps of the RK4 stepper, i.e. what happens between the
+ * preStep and the postStep of the other listeners, and prints a checksum of the trajectories so that a change of the
+ * integration can be compared with the previous one.
+ *
+ * Usage:
+ *   java -cp OpenRocket.jar net.sf.openrocket.utils.RK4StepBenchmark <file.ork> [flights]
+ *
+ * Every simulation of the document is flown flights times (default 50) per round, without its simulation extensions
+ * and with a fixed random seed.  The first of the four rounds is warm up.
+ *
+ * The components get random ids when the document is loaded, and some aerodynamic contributions are summed in the
+ * order of maps keyed by them, so the checksums of two runs only agree in their leading digits.  A bitwise comparison
+ * of two steppers has to fly both in the same JVM.
+ */
+public class RK4StepBenchmark {
+
+	private static final com.sun.management.ThreadMXBean threadBean =
+			(com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+	/** Brackets the steps between an opening instance, registered last, and a closing one, registered first. */
+	private static class StepBracket extends AbstractSimulationListener {
+		private static long openedAt;
+		private static long openedTime;
+		private static long allocatedBytes;
+		private static long elapsedTime;
+		private static long steps;
+		private final boolean opening;
+
+		StepBracket(boolean opening) {
+			this.opening = opening;
+		}
+
+		@Override
+		public boolean preStep(SimulationStatus status) {
+			if (opening) {
+				openedAt = threadBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+				openedTime = System.nanoTime();
+			}
+			return true;
+		}
+
+		@Override
+		public void postStep(SimulationStatus status) {
+			if (!opening) {
+				elapsedTime += System.nanoTime() - openedTime;
+				allocatedBytes += threadBean.getThreadAllocatedBytes(Thread.currentThread().getId()) - openedAt;
+				steps++;
+			}
+		}
+	}
+
+	private static final int SEED = 0x2B4D;
+
+	/** The trajectory values of the checksum, everything but the computation time. */
+	private static final FlightDataType[] CHECKSUM_TYPES = {
+			FlightDataType.TYPE_TIME, FlightDataType.TYPE_ALTITUDE, FlightDataType.TYPE_POSITION_X,
+			FlightDataType.TYPE_POSITION_Y, FlightDataType.TYPE_VELOCITY_Z, FlightDataType.TYPE_ACCELERATION_Z,
+			FlightDataType.TYPE_AOA, FlightDataType.TYPE_ROLL_RATE, FlightDataType.TYPE_PITCH_RATE
+	};
+
+	public static void main(String[] args) {
+		if (args.length < 1) {
+			System.err.println("Usage: RK4StepBenchmark <file.ork> [flights]");
+			return;
+		}
+		int flights = (args.length > 1) ? Integer.parseInt(args[1]) : 50;
+
+		setup();
+
+		OpenRocketDocument document;
+		try {
+			document = new GeneralRocketLoader(new File(args[0])).load();
+		} catch (RocketLoadException e) {
+			System.err.println("ERROR: Error loading '" + args[0] + "': " + e.getMessage());
+			return;
+		}
+
+		for (Simulation simulation : document.getSimulations()) {
+			simulation.getOptions().setRandomSeed(SEED);
+			for (int round = 0; round < 4; round++) {
+				StepBracket.allocatedBytes = 0;
+				StepBracket.elapsedTime = 0;
+				StepBracket.steps = 0;
+				double checksum = 0;
+				for (int flight = 0; flight < flights; flight++) {
+					checksum += fly(simulation);
+				}
+				if (round == 0) continue;
+				long steps = Math.max(1, StepBracket.steps);
+				System.out.printf("%s: %d steps, %8.1f ns/step  %8.1f bytes/step  (checksum %.17g)%n",
+						simulation.getName(), StepBracket.steps, StepBracket.elapsedTime / (double) steps,
+						StepBracket.allocatedBytes / (double) steps, checksum);
+			}
+		}
+	}
+
+	private static double fly(Simulation simulation) {
+		SimulationConditions conditions = simulation.getOptions().toSimulationConditions();
+		conditions.setSimulation(simulation);
+		conditions.getSimulationListenerList().add(new StepBracket(false));
+		conditions.getSimulationListenerList().add(new StepBracket(true));
+		FlightData data;
+		try {
+			data = new BasicEventSimulationEngine().simulate(conditions);
+		} catch (SimulationException e) {
+			System.err.println("ERROR: Simulation '" + simulation.getName() + "' failed: " + e.getMessage());
+			return Double.NaN;
+		}
+
+		double checksum = 0;
+		for (int i = 0; i < data.getBranchCount(); i++) {
+			FlightDataBranch branch = data.getBranch(i);
+			for (FlightDataType type : CHECKSUM_TYPES) {
+				if (branch.get(type) == null) continue;
+				for (double value : branch.get(type)) {
+					if (!Double.isNaN(value))
+						checksum += value;
+				}
+			}
+		}
+		return checksum;
+	}
+
+	private static void setup() {
+		Locale.setDefault(Locale.US);
+
+		// loading an ORK file resolves its motors, so the motor database must be available
+		GuiModule guiModule = new GuiModule();
+		Injector injector = Guice.createInjector(guiModule, new PluginModule());
+		Application.setInjector(injector);
+		guiModule.startLoader();
+		guiModule.blockUntilLoaded();
+	}
+}
@@ -0,0 +1,131 @@
+package net.sf.openrocket.utils;
+
+import java.util.SplittableRandom;
+
+import net.sf.openrocket.simulation.extension.impl.rrt.RRT;
+import net.sf.openrocket.simulation.extension.impl.rrt.RRTBoundaries;
+import net.sf.openrocket.simulation.extension.impl.rrt.RRTNearestNeighbourIndex;
+
+/**
+ * Compares RRTNearestNeighbourIndex against the linear scan previously used by RRT.getNearest.  Grows a synthetic
+ * tree in the weighted state space of RRT.distance - sample a target within RRTBoundaries, extend the nearest node a
+ * small random step towards it - and reports the nodes added per second in every size range.
+ * The scan reads flat arrays here, so it is faster than the scan through SimulationStatus getters it replaced.
+ *
+ * Usage:
+ *   java -cp OpenRocket.jar net.sf.openrocket.utils.RRTNearestNeighbourBenchmark [nodes] [report interval]
+ */
+public class RRTNearestNeighbourBenchmark {
+	private static final int DIMENSIONS = RRT.INDEX_DIMENSIONS;
+
+	private interface NearestNeighbours {
+		void add(double[] point);
+		int nearest(double[] query);
+		double coordinate(int id, int dimension);
+	}
+
+	/** The scan of RRT.getNearest before the index. **/
+	private static class LinearScan implements NearestNeighbours {
+		double[] points = new double[1024 * DIMENSIONS];
+		int size = 0;
+		public void add(double[] point) {
+			if (points.length < (size + 1) * DIMENSIONS)
+				points = java.util.Arrays.copyOf(points, 2 * points.length);
+			System.arraycopy(point, 0, points, size * DIMENSIONS, DIMENSIONS);
+			size++;
+		}
+		public int nearest(double[] query) {
+			double min = Double.MAX_VALUE;
+			int nearest = -1;
+			for (int i = 0; i < size; i++) {
+				double distance = 0;
+				for (int d = 0; d < DIMENSIONS; d++) {
+					double difference = query[d] - points[i * DIMENSIONS + d];
+					distance += difference * difference;
+				}
+				if (distance < min) {
+					min = distance;
+					nearest = i;
+				}
+			}
+			return nearest;
+		}
+		public double coordinate(int id, int dimension) {
+			return points[id * DIMENSIONS + dimension];
+		}
+	}
+
+	private static class KdTree implements NearestNeighbours {
+		final RRTNearestNeighbourIndex index = new RRTNearestNeighbourIndex(DIMENSIONS);
+		public void add(double[] point) {
+			index.add(point);
+		}
+		public int nearest(double[] query) {
+			return index.nearest(query);
+		}
+		public double coordinate(int id, int dimension) {
+			return index.getCoordinate(id, dimension);
+		}
+	}
+
+	public static void main(String[] args) {
+		int nodes = (args.length > 0) ? Integer.parseInt(args[0]) : 50 * 1000;
+		int reportInterval = (args.length > 1) ? Integer.parseInt(args[1]) : 10 * 1000;
+
+		// the first run is warm up
+		grow(new LinearScan(), reportInterval, reportInterval, false);
+		grow(new KdTree(), reportInterval, reportInterval, false);
+
+		System.out.println("Nodes: " + nodes);
+		double[] scanRates = grow(new LinearScan(), nodes, reportInterval, true);
+		double[] indexRates = grow(new KdTree(), nodes, reportInterval, true);
+		for (int i = 0; i < scanRates.length; i++) {
+			System.out.printf("%7d - %7d nodes   scan: %10.0f nodes/s   kd-tree: %10.0f nodes/s   speedup: %6.1fx%n",
+					i * reportInterval, (i + 1) * reportInterval, scanRates[i], indexRates[i], indexRates[i] / scanRates[i]);
+		}
+	}
+
+	/**
+	 * @return the nodes added per second in every report interval
+	 */
+	private static double[] grow(NearestNeighbours tree, int nodes, int reportInterval, boolean checksum) {
+		RRTBoundaries boundaries = new RRTBoundaries();
+		SplittableRandom random = new SplittableRandom(0);
+		double[] scales = new double[]{
+				Math.sqrt(RRT.Z_WEIGHT), Math.sqrt(RRT.VELOCITY_Z_WEIGHT),
+				Math.sqrt(RRT.DIRECTION_WEIGHT), Math.sqrt(RRT.DIRECTION_WEIGHT),
+				Math.sqrt(RRT.LATERAL_VELOCITY_WEIGHT), Math.sqrt(RRT.LATERAL_VELOCITY_WEIGHT)
+		};
+		RRTBoundaries.Limits[] limits = new RRTBoundaries.Limits[]{
+				boundaries.z, boundaries.vz, boundaries.ax, boundaries.ay, boundaries.vx, boundaries.vy
+		};
+
+		double[] point = new double[DIMENSIONS];
+		double[] target = new double[DIMENSIONS];
+		for (int d = 0; d < DIMENSIONS; d++)
+			point[d] = scales[d] * 0.5 * (limits[d].min + limits[d].max);
+		tree.add(point);
+
+		double[] rates = new double[nodes / reportInterval];
+		long sum = 0;
+		long startTime = System.nanoTime();
+		for (int i = 1; i <= nodes; i++) {
+			for (int d = 0; d < DIMENSIONS; d++)
+				target[d] = scales[d] * (limits[d].min + random.nextDouble() * (limits[d].max - limits[d].min));
+			int nearest = tree.nearest(target);
+			sum += nearest;
+			for (int d = 0; d < DIMENSIONS; d++) {
+				double step = 0.02 * scales[d] * (limits[d].max - limits[d].min);
+				point[d] = tree.coordinate(nearest, d) + Math.signum(target[d] - tree.coordinate(nearest, d)) * step * random.nextDouble();
+			}
+			tree.add(point);
+			if (i % reportInterval == 0) {
+				long time = System.nanoTime();
+				rates[i / reportInterval - 1] = reportInterval / ((time - startTime) / 1e9);
+				startTime = time;
+			}
+		}
+		if (checksum) System.out.println(tree.getClass().getSimpleName() + " checksum of nearest ids: " + sum);
+		return rates;
+	}
+}
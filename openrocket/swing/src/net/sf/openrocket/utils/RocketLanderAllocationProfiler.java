@@ -0,0 +1,145 @@
+package net.sf.openrocket.utils;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import net.sf.openrocket.document.Definition;
+import net.sf.openrocket.document.OpenRocketDocument;
+import net.sf.openrocket.document.Simulation;
+import net.sf.openrocket.file.GeneralRocketLoader;
+import net.sf.openrocket.file.RocketLoadException;
+import net.sf.openrocket.plugin.PluginModule;
+import net.sf.openrocket.simulation.BasicEventSimulationEngine;
+import net.sf.openrocket.simulation.SimulationConditions;
+import net.sf.openrocket.simulation.SimulationStatus;
+import net.sf.openrocket.simulation.exception.SimulationException;
+import net.sf.openrocket.simulation.extension.SimulationExtension;
+import net.sf.openrocket.simulation.extension.impl.rocketlander.MDPDefinition;
+import net.sf.openrocket.simulation.extension.impl.rocketlander.RLModelSingleton;
+import net.sf.openrocket.simulation.extension.impl.rocketlander.RocketLanderExtension;
+import net.sf.openrocket.simulation.listeners.AbstractSimulationListener;
+import net.sf.openrocket.startup.Application;
+import net.sf.openrocket.startup.GuiModule;
+
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+
+/**
+ * Measures the heap allocated by the RocketLander listener in postStep, i.e. the construction of the hierarchical
+ * states, the policy and the value function updates of a single simulation step.
+ *
+ * Usage:
+ *   java -cp OpenRocket.jar net.sf.openrocket.utils.RocketLanderAllocationProfiler <file.ork> [episodes]
+ *
+ * Every simulation of the document with a RocketLanderExtension is flown episodes times (default 200) with the
+ * enabled MDP definitions of the document.  The first half of the episodes is treated as warm up.
+ */
+public class RocketLanderAllocationProfiler {
+
+	private static final com.sun.management.ThreadMXBean threadBean =
+			(com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+	/** Brackets the listeners registered between an opening and a closing instance. */
+	private static class AllocationBracket extends AbstractSimulationListener {
+		private static long openedAt;
+		private static long allocatedBytes;
+		private static long steps;
+		private final boolean opening;
+
+		AllocationBracket(boolean opening) {
+			this.opening = opening;
+		}
+
+		@Override
+		public void postStep(SimulationStatus status) {
+			long allocated = threadBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+			if (opening) {
+				openedAt = allocated;
+			} else {
+				allocatedBytes += allocated - openedAt;
+				steps++;
+			}
+		}
+	}
+
+	public static void main(String[] args) {
+		if (args.length < 1) {
+			System.err.println("Usage: RocketLanderAllocationProfiler <file.ork> [episodes]");
+			return;
+		}
+		int episodes = (args.length > 1) ? Integer.parseInt(args[1]) : 200;
+
+		setup();
+
+		OpenRocketDocument document;
+		try {
+			document = new GeneralRocketLoader(new File(args[0])).load();
+		} catch (RocketLoadException e) {
+			System.err.println("ERROR: Error loading '" + args[0] + "': " + e.getMessage());
+			return;
+		}
+
+		ArrayList<MDPDefinition> definitions = new ArrayList<>();
+		for (Definition definition : document.definitions) {
+			if (!definition.getIgnore())
+				definitions.add(MDPDefinition.buildFromJsonString(definition.getData()));
+		}
+		RLModelSingleton.getInstance().setDefinitions(definitions);
+		RLModelSingleton.getInstance().setSmartPrintBuffer(true);
+
+		for (Simulation simulation : document.getSimulations()) {
+			if (!hasRocketLanderExtension(simulation.getSimulationExtensions()))
+				continue;
+
+			for (int episode = 0; episode < episodes; episode++) {
+				if (episode == episodes / 2) {
+					// end of warm up
+					AllocationBracket.allocatedBytes = 0;
+					AllocationBracket.steps = 0;
+				}
+				fly(simulation);
+			}
+			RLModelSingleton.getInstance().printAndClearStringBuffer();
+			System.out.printf("%s: %d steps, %.0f bytes allocated per RocketLander postStep%n", simulation.getName(),
+					AllocationBracket.steps, AllocationBracket.allocatedBytes / (double) Math.max(1, AllocationBracket.steps));
+		}
+	}
+
+	private static boolean hasRocketLanderExtension(List<SimulationExtension> extensions) {
+		for (SimulationExtension extension : extensions) {
+			if (extension instanceof RocketLanderExtension)
+				return true;
+		}
+		return false;
+	}
+
+	private static void fly(Simulation simulation) {
+		SimulationConditions conditions = simulation.getOptions().toSimulationConditions();
+		conditions.setSimulation(simulation);
+		conditions.getSimulationListenerList().add(new AllocationBracket(true));
+		try {
+			for (SimulationExtension extension : simulation.getSimulationExtensions()) {
+				if (extension instanceof RocketLanderExtension)
+					extension.initialize(conditions);
+			}
+			conditions.getSimulationListenerList().add(new AllocationBracket(false));
+			new BasicEventSimulationEngine().simulate(conditions);
+		} catch (SimulationException e) {
+			// the lander terminates every episode with an exception
+		}
+	}
+
+	private static void setup() {
+		Locale.setDefault(Locale.US);
+
+		// loading an ORK file resolves its motors, so the motor database must be available
+		GuiModule guiModule = new GuiModule();
+		Injector injector = Guice.createInjector(guiModule, new PluginModule());
+		Application.setInjector(injector);
+		guiModule.startLoader();
+		guiModule.blockUntilLoaded();
+	}
+}
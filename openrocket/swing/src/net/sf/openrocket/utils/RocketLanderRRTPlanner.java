@@ -0,0 +1,107 @@
+package net.sf.openrocket.utils;
+
+import java.io.File;
+import java.util.Locale;
+
+import net.sf.openrocket.document.OpenRocketDocument;
+import net.sf.openrocket.document.Simulation;
+import net.sf.openrocket.file.GeneralRocketLoader;
+import net.sf.openrocket.file.RocketLoadException;
+import net.sf.openrocket.plugin.PluginModule;
+import net.sf.openrocket.simulation.extension.SimulationExtension;
+import net.sf.openrocket.simulation.extension.impl.rocketlander.RLEpisodeRandom;
+import net.sf.openrocket.simulation.extension.impl.rrt.RRTExtension;
+import net.sf.openrocket.simulation.extension.impl.rrt.RRTParallelPlanner;
+import net.sf.openrocket.startup.Application;
+import net.sf.openrocket.startup.GuiModule;
+
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+
+/**
+ * Measures how the RRT planner scales with the number of workers, without the user interface.
+ *
+ * Usage:
+ *   java -cp OpenRocket.jar net.sf.openrocket.utils.RocketLanderRRTPlanner <file.ork> [max workers] [runs] [simulation name] [seed]
+ *
+ * Plans the named simulation, or the first simulation with an RRTExtension, with 1, 2, 4, ... up to max workers
+ * (default: the number of available processors).  Every worker count plans the same runs, run n starting from the
+ * initial conditions of episode n, and the mean nodes expanded per second and time to goal are reported.
+ */
+public class RocketLanderRRTPlanner {
+
+	public static void main(String[] args) throws InterruptedException {
+		if (args.length < 1) {
+			System.err.println("Usage: RocketLanderRRTPlanner <file.ork> [max workers] [runs] [simulation name] [seed]");
+			return;
+		}
+		int maxWorkers = (args.length > 1) ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+		int runs = (args.length > 2) ? Integer.parseInt(args[2]) : 3;
+		String simulationName = (args.length > 3) ? args[3] : null;
+		if (args.length > 4)
+			RLEpisodeRandom.setMasterSeed(Long.parseLong(args[4]));
+
+		setup();
+
+		OpenRocketDocument document;
+		try {
+			document = new GeneralRocketLoader(new File(args[0])).load();
+		} catch (RocketLoadException e) {
+			System.err.println("ERROR: Error loading '" + args[0] + "': " + e.getMessage());
+			return;
+		}
+
+		Simulation simulation = null;
+		for (Simulation candidate : document.getSimulations()) {
+			if (simulationName != null ? candidate.getName().equals(simulationName) : hasRRTExtension(candidate)) {
+				simulation = candidate;
+				break;
+			}
+		}
+		if (simulation == null) {
+			System.err.println("ERROR: No RRT simulation " + (simulationName != null ? "'" + simulationName + "' " : "") + "in '" + args[0] + "'");
+			return;
+		}
+
+		System.out.println("Planning '" + simulation.getName() + "' " + runs + " times, master seed " + RLEpisodeRandom.getMasterSeed());
+		StringBuilder summary = new StringBuilder();
+		for (int workers = 1; workers <= maxWorkers; workers = (workers * 2 > maxWorkers && workers < maxWorkers) ? maxWorkers : workers * 2) {
+			double nodesPerSecond = 0;
+			double secondsToGoal = 0;
+			int goals = 0;
+			for (int run = 0; run < runs; run++) {
+				RRTParallelPlanner planner = new RRTParallelPlanner(simulation, workers);
+				planner.plan(run);
+				planner.printReport();
+				nodesPerSecond += planner.getNodesPerSecond();
+				if (planner.getTree().isGoalReached()) {
+					secondsToGoal += planner.getSeconds();
+					goals++;
+				}
+			}
+			summary.append(String.format("workers: %2d  nodes/s: %8.1f  mean time to goal: %7.2fs  goals: %d/%d%n",
+					workers, nodesPerSecond / runs, (goals > 0) ? secondsToGoal / goals : Double.NaN, goals, runs));
+		}
+		System.out.print(summary);
+		System.exit(0);
+	}
+
+	private static boolean hasRRTExtension(Simulation simulation) {
+		for (SimulationExtension extension : simulation.getSimulationExtensions()) {
+			if (extension instanceof RRTExtension)
+				return true;
+		}
+		return false;
+	}
+
+	private static void setup() {
+		Locale.setDefault(Locale.US);
+
+		// loading an ORK file resolves its motors, so the motor database must be available
+		GuiModule guiModule = new GuiModule();
+		Injector injector = Guice.createInjector(guiModule, new PluginModule());
+		Application.setInjector(injector);
+		guiModule.startLoader();
+		guiModule.blockUntilLoaded();
+	}
+}
@@ -0,0 +1,124 @@
+package net.sf.openrocket.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Locale;
+
+import net.sf.openrocket.document.Definition;
+import net.sf.openrocket.document.OpenRocketDocument;
+import net.sf.openrocket.document.Simulation;
+import net.sf.openrocket.file.GeneralRocketLoader;
+import net.sf.openrocket.file.RocketLoadException;
+import net.sf.openrocket.plugin.PluginModule;
+import net.sf.openrocket.simulation.extension.impl.rocketlander.MDPDefinition;
+import net.sf.openrocket.simulation.extension.impl.rocketlander.RLEpisodeRandom;
+import net.sf.openrocket.simulation.extension.impl.rocketlander.RLModelSingleton;
+import net.sf.openrocket.simulation.extension.impl.rocketlander.RLTrainingRunner;
+import net.sf.openrocket.startup.Application;
+import net.sf.openrocket.startup.GuiModule;
+
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+
+/**
+ * Trains the RocketLander value functions of an ORK file without the user interface.
+ *
+ * Usage:
+ *   java -cp OpenRocket.jar net.sf.openrocket.utils.RocketLanderTrainer [--frozen] [--batch size] <file.ork> <episodes> [workers] [checkpoint interval] [simulation name] [seed] [replay capacity] [replays per transition] [trajectory directory]
+ *
+ * The enabled MDP definitions of the document are trained on the named simulation, or on the first simulation with
+ * a RocketLanderExtension.  Workers default to the number of available processors and the value functions are
+ * stored every 10000 episodes.
+ * Training with the same seed on a single worker is reproducible.  A replay capacity above 0 learns through
+ * prioritized replay buffers on a separate thread, replaying every transition 4 times by default.
+ * With a trajectory directory, every episode is recorded into a new RLTrajectoryFile in it.
+ * With --frozen, the stored value functions are not trained but flown as frozen greedy policies.
+ * With --batch, every worker flies its episodes in lockstep batches of the given size on a BatchSimulationEngine,
+ * which does not deploy recovery devices or separate stages.
+ */
+public class RocketLanderTrainer {
+
+	public static void main(String[] args) throws InterruptedException, IOException {
+		boolean frozen = false;
+		int batchSize = 0;
+		while ((args.length > 0) && args[0].startsWith("--")) {
+			if (args[0].equals("--frozen")) {
+				frozen = true;
+				args = Arrays.copyOfRange(args, 1, args.length);
+			} else if (args[0].equals("--batch") && (args.length > 1)) {
+				batchSize = Integer.parseInt(args[1]);
+				args = Arrays.copyOfRange(args, 2, args.length);
+			} else {
+				break;
+			}
+		}
+		if (args.length < 2) {
+			System.err.println("Usage: RocketLanderTrainer [--frozen] [--batch size] <file.ork> <episodes> [workers] [checkpoint interval] [simulation name] [seed] [replay capacity] [replays per transition] [trajectory directory]");
+			return;
+		}
+		long episodes = Long.parseLong(args[1]);
+		int workers = (args.length > 2) ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+		long checkpointInterval = (args.length > 3) ? Long.parseLong(args[3]) : 10000;
+		String simulationName = (args.length > 4) ? args[4] : null;
+		if (args.length > 5)
+			RLEpisodeRandom.setMasterSeed(Long.parseLong(args[5]));
+		int replayCapacity = (args.length > 6) ? Integer.parseInt(args[6]) : 0;
+		int replaysPerTransition = (args.length > 7) ? Integer.parseInt(args[7]) : 4;
+		File trajectoryDirectory = (args.length > 8) ? new File(args[8]) : null;
+
+		setup();
+
+		OpenRocketDocument document;
+		try {
+			document = new GeneralRocketLoader(new File(args[0])).load();
+		} catch (RocketLoadException e) {
+			System.err.println("ERROR: Error loading '" + args[0] + "': " + e.getMessage());
+			return;
+		}
+
+		Simulation simulation = null;
+		for (Simulation candidate : document.getSimulations()) {
+			if (simulationName != null ? candidate.getName().equals(simulationName) : RLTrainingRunner.hasRocketLanderExtension(candidate)) {
+				simulation = candidate;
+				break;
+			}
+		}
+		if (simulation == null) {
+			System.err.println("ERROR: No RocketLander simulation " + (simulationName != null ? "'" + simulationName + "' " : "") + "in '" + args[0] + "'");
+			return;
+		}
+
+		ArrayList<MDPDefinition> definitions = new ArrayList<>();
+		for (Definition definition : document.definitions) {
+			if (!definition.getIgnore())
+				definitions.add(MDPDefinition.buildFromJsonString(definition.getData()));
+		}
+		RLModelSingleton.getInstance().setDefinitions(definitions);
+
+		System.out.println((frozen ? "Flying '" : "Training '") + simulation.getName() + "' for " + episodes + " episodes on " + workers + " workers");
+		RLTrainingRunner runner = new RLTrainingRunner(simulation, workers);
+		runner.setCheckpointInterval(checkpointInterval);
+		runner.setReplay(replayCapacity, replaysPerTransition);
+		runner.setTrajectoryDirectory(trajectoryDirectory);
+		runner.setBatchSize(batchSize);
+		runner.setReportInterval(Math.max(1, Math.min(1000, episodes / 10)));
+		if (frozen)
+			runner.fly(episodes);
+		else
+			runner.train(episodes);
+		System.exit(0);
+	}
+
+	private static void setup() {
+		Locale.setDefault(Locale.US);
+
+		// loading an ORK file resolves its motors, so the motor database must be available
+		GuiModule guiModule = new GuiModule();
+		Injector injector = Guice.createInjector(guiModule, new PluginModule());
+		Application.setInjector(injector);
+		guiModule.startLoader();
+		guiModule.blockUntilLoaded();
+	}
+}
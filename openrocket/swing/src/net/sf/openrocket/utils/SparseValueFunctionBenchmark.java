@@ -0,0 +1,122 @@
+package net.sf.openrocket.utils;
+
+import java.util.HashMap;
+import java.util.SplittableRandom;
+
+import net.sf.openrocket.simulation.extension.impl.rocketlander.ConcurrentIntFloatHashMap;
+
+/**
+ * Compares ConcurrentIntFloatHashMap against the synchronized HashMap<Integer, Float> previously used by the sparse
+ * value functions.  Reports the retained heap per entry and single-threaded get / put throughput.
+ *
+ * Usage:
+ *   java -cp OpenRocket.jar net.sf.openrocket.utils.SparseValueFunctionBenchmark [entries] [operations]
+ */
+public class SparseValueFunctionBenchmark {
+	private static final int KEY_SPACE = Integer.MAX_VALUE;
+
+	private interface SparseMap {
+		float get(int key);
+		void put(int key, float value);
+	}
+
+	/** The map mode of RLValueFunction before the primitive map. **/
+	private static class BoxedMap implements SparseMap {
+		final HashMap<Integer, Float> map = new HashMap<>();
+		public float get(int key) {
+			synchronized (map) {
+				Float value = map.get(key);
+				return (value == null) ? 0.0f : value;
+			}
+		}
+		public void put(int key, float value) {
+			synchronized (map) {
+				map.put(key, value);
+			}
+		}
+	}
+
+	private static class PrimitiveMap implements SparseMap {
+		final ConcurrentIntFloatHashMap map = new ConcurrentIntFloatHashMap();
+		public float get(int key) {
+			return map.get(key);
+		}
+		public void put(int key, float value) {
+			map.put(key, value);
+		}
+	}
+
+	private interface MapFactory {
+		SparseMap create();
+	}
+
+	public static void main(String[] args) {
+		int entries = (args.length > 0) ? Integer.parseInt(args[0]) : 1000 * 1000;
+		int operations = (args.length > 1) ? Integer.parseInt(args[1]) : 10 * 1000 * 1000;
+		int[] keys = randomKeys(entries);
+
+		System.out.println("Entries: " + entries);
+		double boxedBytes = bytesPerEntry(BoxedMap::new, keys);
+		double primitiveBytes = bytesPerEntry(PrimitiveMap::new, keys);
+		System.out.printf("Bytes/entry  boxed: %6.1f   primitive: %6.1f%n", boxedBytes, primitiveBytes);
+
+		SparseMap boxedMap = fill(new BoxedMap(), keys);
+		SparseMap primitiveMap = fill(new PrimitiveMap(), keys);
+		for (int round = 0; round < 3; round++) {
+			// the first round is warm up
+			double boxedGet = runGets(boxedMap, keys, operations);
+			double primitiveGet = runGets(primitiveMap, keys, operations);
+			double boxedPut = runPuts(boxedMap, keys, operations);
+			double primitivePut = runPuts(primitiveMap, keys, operations);
+			if (round == 0) continue;
+			System.out.printf("get  boxed: %7.2f M ops/s   primitive: %7.2f M ops/s%n", boxedGet / 1e6, primitiveGet / 1e6);
+			System.out.printf("put  boxed: %7.2f M ops/s   primitive: %7.2f M ops/s%n", boxedPut / 1e6, primitivePut / 1e6);
+		}
+	}
+
+	private static int[] randomKeys(int entries) {
+		SplittableRandom random = new SplittableRandom(0);
+		int[] keys = new int[entries];
+		for (int i = 0; i < entries; i++)
+			keys[i] = random.nextInt(KEY_SPACE);
+		return keys;
+	}
+
+	private static SparseMap fill(SparseMap map, int[] keys) {
+		for (int i = 0; i < keys.length; i++)
+			map.put(keys[i], i);
+		return map;
+	}
+
+	private static double bytesPerEntry(MapFactory factory, int[] keys) {
+		Runtime runtime = Runtime.getRuntime();
+		System.gc();
+		long before = runtime.totalMemory() - runtime.freeMemory();
+		SparseMap map = fill(factory.create(), keys);
+		System.gc();
+		long after = runtime.totalMemory() - runtime.freeMemory();
+		// keep the map reachable until after the measurement
+		if (map == null) System.out.println();
+		return (after - before) / (double) keys.length;
+	}
+
+	private static double runGets(SparseMap map, int[] keys, int operations) {
+		SplittableRandom random = new SplittableRandom(1);
+		float sum = 0;
+		long startTime = System.nanoTime();
+		for (int i = 0; i < operations; i++)
+			sum += map.get(keys[random.nextInt(keys.length)]);
+		double seconds = (System.nanoTime() - startTime) / 1e9;
+		if (sum == Float.MIN_VALUE) System.out.println();
+		return operations / seconds;
+	}
+
+	private static double runPuts(SparseMap map, int[] keys, int operations) {
+		SplittableRandom random = new SplittableRandom(2);
+		long startTime = System.nanoTime();
+		for (int i = 0; i < operations; i++)
+			map.put(keys[random.nextInt(keys.length)], i);
+		double seconds = (System.nanoTime() - startTime) / 1e9;
+		return operations / seconds;
+	}
+}
@@ -0,0 +1,116 @@
+package net.sf.openrocket.utils;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import net.sf.openrocket.simulation.extension.impl.rocketlander.RLValueFunction;
+
+/**
+ * Compares the CAS value function table against the previous layout of one ReentrantLock per table entry.
+ * Reports the heap cost of allocating the table and the number of updates per second at 1, 4 and 16 threads.
+ *
+ * Usage:
+ *   java -cp OpenRocket.jar net.sf.openrocket.utils.ValueFunctionBenchmark [tableSize] [updatesPerThread]
+ */
+public class ValueFunctionBenchmark {
+	private static final int[] THREAD_COUNTS = new int[]{1, 4, 16};
+
+	private interface Table {
+		void updateTowards(int index, float target, float alpha);
+	}
+
+	/** The per-entry lock layout used before the CAS table. **/
+	private static class LockedTable implements Table {
+		final float[] values;
+		final ReentrantLock[] locks;
+		LockedTable(int size) {
+			values = new float[size];
+			locks = new ReentrantLock[size];
+			for (int i = 0; i < size; i++) locks[i] = new ReentrantLock();
+		}
+		public void updateTowards(int index, float target, float alpha) {
+			locks[index].lock();
+			values[index] = values[index] + alpha * (target - values[index]);
+			locks[index].unlock();
+		}
+	}
+
+	private static class AtomicTable implements Table {
+		final RLValueFunction valueFunction;
+		AtomicTable(int size) {
+			valueFunction = new RLValueFunction(new float[size]);
+		}
+		public void updateTowards(int index, float target, float alpha) {
+			valueFunction.updateTowards(index, target, alpha);
+		}
+	}
+
+	public static void main(String[] args) throws InterruptedException {
+		int tableSize = (args.length > 0) ? Integer.parseInt(args[0]) : 1000 * 1000;
+		int updatesPerThread = (args.length > 1) ? Integer.parseInt(args[1]) : 2 * 1000 * 1000;
+
+		System.out.println("Table size: " + tableSize + " entries");
+		long lockedBytes = measureAllocation(() -> new LockedTable(tableSize));
+		long atomicBytes = measureAllocation(() -> new AtomicTable(tableSize));
+		System.out.printf("Allocation  locked: %8.1f MB   atomic: %8.1f MB%n", lockedBytes / 1e6, atomicBytes / 1e6);
+
+		Table lockedTable = new LockedTable(tableSize);
+		Table atomicTable = new AtomicTable(tableSize);
+		for (int threads : THREAD_COUNTS) {
+			// warm up both implementations before measuring
+			runUpdates(lockedTable, threads, updatesPerThread / 10, tableSize);
+			runUpdates(atomicTable, threads, updatesPerThread / 10, tableSize);
+			double locked = runUpdates(lockedTable, threads, updatesPerThread, tableSize);
+			double atomic = runUpdates(atomicTable, threads, updatesPerThread, tableSize);
+			System.out.printf("%2d threads  locked: %8.2f M updates/s   atomic: %8.2f M updates/s%n",
+					threads, locked / 1e6, atomic / 1e6);
+		}
+	}
+
+	private interface TableFactory {
+		Table create();
+	}
+
+	private static long measureAllocation(TableFactory factory) {
+		Runtime runtime = Runtime.getRuntime();
+		System.gc();
+		long before = runtime.totalMemory() - runtime.freeMemory();
+		Table table = factory.create();
+		System.gc();
+		long after = runtime.totalMemory() - runtime.freeMemory();
+		// keep the table reachable until after the measurement
+		if (table == null) System.out.println();
+		return after - before;
+	}
+
+	private static double runUpdates(Table table, int threads, int updatesPerThread, int tableSize) throws InterruptedException {
+		CountDownLatch start = new CountDownLatch(1);
+		CountDownLatch done = new CountDownLatch(threads);
+		AtomicLong totalUpdates = new AtomicLong();
+		for (int t = 0; t < threads; t++) {
+			final long seed = t;
+			new Thread(() -> {
+				SplittableRandom random = new SplittableRandom(seed);
+				try {
+					start.await();
+				} catch (InterruptedException e) {
+					return;
+				}
+				// episodes concentrate on a small hot region of the table, mimic that with a skewed index
+				for (int i = 0; i < updatesPerThread; i++) {
+					int index = (int) (tableSize * Math.pow(random.nextDouble(), 4));
+					table.updateTowards(index, (float) random.nextDouble(), 0.1f);
+				}
+				totalUpdates.addAndGet(updatesPerThread);
+				done.countDown();
+			}).start();
+		}
+		long startTime = System.nanoTime();
+		start.countDown();
+		done.await();
+		double seconds = (System.nanoTime() - startTime) / 1e9;
+		return totalUpdates.get() / seconds;
+	}
+}
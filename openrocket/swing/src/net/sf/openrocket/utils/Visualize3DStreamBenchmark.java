@@ -0,0 +1,226 @@
+package net.sf.openrocket.utils;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.locks.LockSupport;
+
+import net.sf.openrocket.simulation.extension.impl.visualize3d.Visualize3DClient;
+import net.sf.openrocket.simulation.extension.impl.visualize3d.Visualize3DProtocol;
+
+/**
+ * Compares the queued Visualize3DClient against a synchronous stream like the one it replaced, sending frames of
+ * concurrent simulations to a local TCP stand-in for Blender.  Every simulation spends some microseconds computing
+ * each frame, and the receiver optionally does too, like a viewer that renders slower than the simulations.
+ * Reports how long the simulation threads spent writing, the longest stall, and how many frames the receiver got
+ * versus dropped or coalesced.  The receiver parses Visualize3DProtocol and checks that the sequence numbers of every
+ * simulation increase.
+ *
+ * Usage:
+ *   java -cp OpenRocket.jar net.sf.openrocket.utils.Visualize3DStreamBenchmark [frames] [receiver microseconds per frame]
+ *       [simulation microseconds per frame] [simulations]
+ */
+public class Visualize3DStreamBenchmark {
+	private static final int FIELDS = Visualize3DProtocol.ROCKET_FIELDS.length;
+
+	private interface FrameStream {
+		void connect(int port) throws IOException;
+		int startSimulation();
+		void write(int simulation, int sequence, float[] frame) throws IOException;
+		void endSimulation(int simulation) throws IOException;
+		void close() throws IOException;
+	}
+
+	/** Synchronous writes of a byte array per frame, as Visualize3DListener did before the client queue. **/
+	private static class SynchronousStream implements FrameStream {
+		Socket socket;
+		DataOutputStream out;
+		int nextSimulation = 0;
+		public void connect(int port) throws IOException {
+			socket = new Socket("127.0.0.1", port);
+			out = new DataOutputStream(socket.getOutputStream());
+			ByteBuffer description = ByteBuffer.allocate(Visualize3DProtocol.fieldSetBytes(Visualize3DProtocol.ROCKET_FIELDS));
+			Visualize3DProtocol.putFieldSet(description, Visualize3DProtocol.ROCKET_FIELD_SET, Visualize3DProtocol.ROCKET_FIELDS);
+			out.write(description.array());
+		}
+		public synchronized int startSimulation() {
+			return nextSimulation++;
+		}
+		public synchronized void write(int simulation, int sequence, float[] frame) throws IOException {
+			byte[] bytes = new byte[Visualize3DProtocol.FRAME_HEADER_BYTES + 4 * FIELDS];
+			Visualize3DProtocol.putFrame(ByteBuffer.wrap(bytes), simulation, sequence, Visualize3DProtocol.ROCKET_FIELD_SET, frame, 0, FIELDS);
+			out.write(bytes, 0, bytes.length);
+		}
+		public synchronized void endSimulation(int simulation) throws IOException {
+			byte[] bytes = new byte[Visualize3DProtocol.END_BYTES];
+			Visualize3DProtocol.putEnd(ByteBuffer.wrap(bytes), simulation);
+			out.write(bytes, 0, bytes.length);
+		}
+		public void close() throws IOException {
+			out.close();
+		}
+	}
+
+	private static class QueuedStream implements FrameStream {
+		final Visualize3DClient client = Visualize3DClient.getInstance();
+		public void connect(int port) {
+			client.setConnectionString("127.0.0.1:" + port + ":framed");
+			client.Connect();
+			while (!client.Connected()) LockSupport.parkNanos(1000000);
+		}
+		public int startSimulation() {
+			return client.startSimulation();
+		}
+		public void write(int simulation, int sequence, float[] frame) {
+			client.offer(simulation, sequence, Visualize3DProtocol.ROCKET_FIELD_SET, frame, FIELDS);
+		}
+		public void endSimulation(int simulation) {
+			client.endSimulation(simulation);
+		}
+		public void close() {
+			client.close();
+		}
+	}
+
+	/** Counts the frames of every connection and checks their order per simulation. **/
+	private static class Receiver implements Runnable {
+		final ServerSocketChannel server;
+		final long nanosPerFrame;
+		volatile long frames = 0;
+		volatile long ends = 0;
+		volatile long outOfOrder = 0;
+		volatile boolean connectionClosed = false;
+
+		Receiver(long nanosPerFrame) throws IOException {
+			this.server = ServerSocketChannel.open();
+			this.server.bind(new InetSocketAddress("127.0.0.1", 0));
+			this.nanosPerFrame = nanosPerFrame;
+		}
+
+		int port() { return server.socket().getLocalPort(); }
+
+		void reset() {
+			frames = 0;
+			ends = 0;
+			outOfOrder = 0;
+			connectionClosed = false;
+		}
+
+		public void run() {
+			ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+			Visualize3DProtocol.Reader reader = new Visualize3DProtocol.Reader();
+			while (true) {
+				try (SocketChannel channel = server.accept()) {
+					buffer.clear();
+					HashMap<Integer, Integer> lastSequences = new HashMap<>();
+					while (channel.read(buffer) >= 0) {
+						buffer.flip();
+						int received = 0;
+						byte type;
+						while ((type = reader.next(buffer)) != 0) {
+							if (type == Visualize3DProtocol.FRAME) {
+								Integer last = lastSequences.put(reader.simulation, reader.sequence);
+								if (last != null && reader.sequence <= last) outOfOrder++;
+								received++;
+							} else if (type == Visualize3DProtocol.END) {
+								ends++;
+							}
+						}
+						buffer.compact();
+						frames += received;
+						if (nanosPerFrame > 0) LockSupport.parkNanos(received * nanosPerFrame);
+					}
+				} catch (IOException e) {
+					System.out.println("Receiver: " + e);
+				}
+				connectionClosed = true;
+			}
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		int frames = (args.length > 0) ? Integer.parseInt(args[0]) : 200 * 1000;
+		long receiverMicros = (args.length > 1) ? Long.parseLong(args[1]) : 0;
+		long simulationMicros = (args.length > 2) ? Long.parseLong(args[2]) : 10;
+		int simulations = (args.length > 3) ? Integer.parseInt(args[3]) : 1;
+
+		Receiver receiver = new Receiver(receiverMicros * 1000);
+		Thread receiverThread = new Thread(receiver, "Visualize3DReceiver");
+		receiverThread.setDaemon(true);
+		receiverThread.start();
+
+		// the first run is warm up
+		stream(new SynchronousStream(), receiver, Math.min(frames, 10000), simulationMicros * 1000, simulations, false);
+		stream(new QueuedStream(), receiver, Math.min(frames, 10000), simulationMicros * 1000, simulations, false);
+
+		System.out.println("Frames: " + frames + "   simulations: " + simulations + "   receiver: " + receiverMicros +
+				" us/frame   simulation: " + simulationMicros + " us/frame");
+		stream(new SynchronousStream(), receiver, frames, simulationMicros * 1000, simulations, true);
+		stream(new QueuedStream(), receiver, frames, simulationMicros * 1000, simulations, true);
+		System.exit(0);
+	}
+
+	private static void stream(FrameStream stream, Receiver receiver, int frames, long simulationNanos,
+							   int simulations, boolean report) throws Exception {
+		Visualize3DClient client = Visualize3DClient.getInstance();
+		long droppedBefore = client.getDroppedFrames();
+		long coalescedBefore = client.getCoalescedFrames();
+		receiver.reset();
+		stream.connect(receiver.port());
+
+		long[] writeNanos = new long[simulations];
+		long[] longestWrites = new long[simulations];
+		ArrayList<Thread> threads = new ArrayList<>();
+		long startTime = System.nanoTime();
+		for (int s = 0; s < simulations; s++) {
+			final int thread = s;
+			threads.add(new Thread(() -> {
+				try {
+					int simulation = stream.startSimulation();
+					float[] frame = new float[FIELDS];
+					for (int i = 0; i < frames / simulations; i++) {
+						long stepEnd = System.nanoTime() + simulationNanos;
+						while (System.nanoTime() < stepEnd);  // the simulation step
+						for (int f = 0; f < frame.length; f++)
+							frame[f] = 0.001f * f * i;
+						long writeStart = System.nanoTime();
+						stream.write(simulation, i, frame);
+						long writeTime = System.nanoTime() - writeStart;
+						writeNanos[thread] += writeTime;
+						longestWrites[thread] = Math.max(longestWrites[thread], writeTime);
+					}
+					stream.endSimulation(simulation);
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}));
+		}
+		for (Thread thread : threads) thread.start();
+		for (Thread thread : threads) thread.join();
+		double simulationSeconds = (System.nanoTime() - startTime) / 1e9;
+		// the client closes its connection after the last simulation ended
+		if (stream instanceof SynchronousStream) stream.close();
+		while (!receiver.connectionClosed) LockSupport.parkNanos(1000000);
+		double totalSeconds = (System.nanoTime() - startTime) / 1e9;
+
+		if (!report) return;
+		long writing = 0, longestWrite = 0;
+		for (int s = 0; s < simulations; s++) {
+			writing += writeNanos[s];
+			longestWrite = Math.max(longestWrite, longestWrites[s]);
+		}
+		boolean queued = stream instanceof QueuedStream;
+		System.out.printf("%-17s  simulations: %7.3fs %9.0f frames/s  writing: %7.3fs  longest write: %8.3fms   " +
+						"delivered: %7d in %7.3fs  ends: %d  out of order: %d  dropped: %d  coalesced: %d%n",
+				stream.getClass().getSimpleName(), simulationSeconds, frames / simulationSeconds, writing / 1e9,
+				longestWrite / 1e6, receiver.frames, totalSeconds, receiver.ends, receiver.outOfOrder,
+				queued ? client.getDroppedFrames() - droppedBefore : 0,
+				queued ? client.getCoalescedFrames() - coalescedBefore : 0);
+	}
+}